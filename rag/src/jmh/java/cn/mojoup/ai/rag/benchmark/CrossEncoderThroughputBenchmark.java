@@ -0,0 +1,117 @@
+package cn.mojoup.ai.rag.benchmark;
+
+import cn.mojoup.ai.rag.rerank.OnnxCrossEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地Cross-Encoder推理吞吐量
+ * 每次调用对PAIRS个长度不一的合成句对打分，结果单位为句对/秒，包含分词、按长度分批补齐和推理的完整耗时。
+ * 默认使用测试资源中的小模型，只反映分词与调度开销；测量真实模型时通过系统属性指定：
+ * -Drag.bench.cross-encoder.model=...onnx -Drag.bench.cross-encoder.vocab=...vocab.txt
+ * <p>
+ * 运行：mvn -pl rag -am -Pjmh verify -DskipTests -Djmh.args="CrossEncoderThroughputBenchmark"
+ *
+ * @author matt
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CrossEncoderThroughputBenchmark {
+
+    private static final int PAIRS = 256;
+
+    private static final String QUERY = "how does reranking improve retrieval quality";
+
+    private static final String[] WORDS = {
+            "cross", "encoders", "read", "the", "query", "and", "passage", "together", "检索", "结果",
+            "按", "相关性", "重新", "排序", "hello", "world", "search", "ranking", "latency", "budget"};
+
+    @Param({"300"})
+    private int passageChars;
+
+    @Param({"1", "10", "32"})
+    private int batchSize;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private ExecutorService executor;
+
+    private OnnxCrossEncoder crossEncoder;
+
+    private List<String> passages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(threads);
+        crossEncoder = new OnnxCrossEncoder();
+        ReflectionTestUtils.setField(crossEncoder, "crossEncoderExecutor", executor);
+        ReflectionTestUtils.setField(crossEncoder, "modelPath",
+                                     System.getProperty("rag.bench.cross-encoder.model", resource("/cross-encoder/model.onnx")));
+        ReflectionTestUtils.setField(crossEncoder, "vocabPath",
+                                     System.getProperty("rag.bench.cross-encoder.vocab", resource("/cross-encoder/vocab.txt")));
+        ReflectionTestUtils.setField(crossEncoder, "lowerCase", true);
+        ReflectionTestUtils.setField(crossEncoder, "maxLength", 512);
+        ReflectionTestUtils.setField(crossEncoder, "batchSize", batchSize);
+        ReflectionTestUtils.setField(crossEncoder, "intraOpThreads", 1);
+        crossEncoder.init();
+
+        // 长度在passageChars的一半到全长之间均匀分布，使按长度分批的补齐有实际意义
+        Random random = new Random(42);
+        passages = new ArrayList<>(PAIRS);
+        for (int i = 0; i < PAIRS; i++) {
+            int length = passageChars / 2 + random.nextInt(passageChars / 2 + 1);
+            StringBuilder passage = new StringBuilder(length + 16);
+            while (passage.length() < length) {
+                passage.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            passages.add(passage.substring(0, length));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        crossEncoder.close();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public float[] score() {
+        return crossEncoder.score(QUERY, passages);
+    }
+
+    private static String resource(String name) {
+        try {
+            return Path.of(CrossEncoderThroughputBenchmark.class.getResource(name).toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Missing test resource: " + name, e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package cn.mojoup.ai.rag.benchmark;
+
+import cn.mojoup.ai.rag.vector.FlatVectorIndex;
+import cn.mojoup.ai.rag.vector.HnswIndex;
+import cn.mojoup.ai.rag.vector.SyntheticVectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 平铺精确扫描与HNSW图检索的规模交叉点
+ * 在不同分块数下测量单次topK检索的平均延迟，平铺扫描随分块数线性增长，HNSW近似对数增长，
+ * 两条曲线的交点即rag.vector.exact-search.max-chunks的参考值。
+ * 这里的HNSW是进程内索引，不含pgvector的JDBC往返，是ANN一侧的下限；
+ * 与pgvector的对比可用VectorStoreRecallBenchmark的-p store=exact,pgvector在相同分块数下测量
+ * <p>
+ * 运行：mvn -pl rag -am -Pjmh verify -DskipTests -Djmh.args="FlatScanCrossoverBenchmark"
+ *
+ * @author matt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FlatScanCrossoverBenchmark {
+
+    private static final int QUERY_COUNT = 200;
+
+    private static final int TOP_K = 10;
+
+    private static final int EF_SEARCH = 100;
+
+    @Param({"1000", "2000", "5000", "10000", "20000"})
+    private int chunks;
+
+    @Param({"1536"})
+    private int dimensions;
+
+    @Param({"flat", "hnsw"})
+    private String strategy;
+
+    private FlatVectorIndex flatIndex;
+
+    private HnswIndex hnswIndex;
+
+    private List<float[]> queries;
+
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<float[]> corpus = SyntheticVectors.clustered(chunks, dimensions, 64, 0.6, 42);
+        queries = SyntheticVectors.queries(corpus, QUERY_COUNT, 0.3, 7);
+        if ("flat".equals(strategy)) {
+            flatIndex = FlatVectorIndex.build(corpus, dimensions);
+        } else {
+            hnswIndex = new HnswIndex(16, 100);
+            corpus.forEach(hnswIndex::add);
+        }
+    }
+
+    @Benchmark
+    public List<HnswIndex.ScoredNode> search() {
+        float[] query = queries.get(cursor);
+        cursor = (cursor + 1) % queries.size();
+        return flatIndex != null
+               ? flatIndex.search(query, TOP_K, -1.0)
+               : hnswIndex.search(query, TOP_K, EF_SEARCH, null);
+    }
+}
@@ -0,0 +1,280 @@
+package cn.mojoup.ai.rag.benchmark;
+
+import cn.mojoup.ai.rag.store.FixedEmbeddingModel;
+import cn.mojoup.ai.rag.store.HnswVectorStore;
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
+import cn.mojoup.ai.rag.vector.FlatVectorIndex;
+import cn.mojoup.ai.rag.vector.HnswIndex;
+import cn.mojoup.ai.rag.vector.SyntheticVectors;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内HNSW向量存储与pgvector的召回率、检索延迟对比
+ * 各存储在同一合成语料上建索引，以暴力检索的精确topK为基准计算召回率，
+ * 召回率在建索引后输出一次，基准测试本身测量单次检索的平均延迟。
+ * <p>
+ * 运行：mvn -pl rag -am -Pjmh verify -DskipTests -Djmh.args="VectorStoreRecallBenchmark"
+ * <p>
+ * 默认只对比hnsw与exact（暴力检索）；加入pgvector需提供数据库连接并追加参数：
+ * -Djmh.args="VectorStoreRecallBenchmark -p store=hnsw,pgvector,exact
+ * -jvmArgs -Drag.bench.pgvector.url=jdbc:postgresql://localhost:5432/rag
+ * -jvmArgs -Drag.bench.pgvector.username=postgres -jvmArgs -Drag.bench.pgvector.password=..."
+ *
+ * @author matt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class VectorStoreRecallBenchmark {
+
+    private static final int QUERY_COUNT = 200;
+
+    private static final int CLUSTERS = 64;
+
+    private static final String KNOWLEDGE_BASE_ID = "kb-bench";
+
+    private static final String BENCH_TABLE = "rag_bench_vectors";
+
+    @Param({"10000"})
+    private int corpusSize;
+
+    @Param({"384"})
+    private int dimensions;
+
+    @Param({"10"})
+    private int topK;
+
+    @Param({"hnsw", "exact"})
+    private String store;
+
+    private Searcher searcher;
+
+    private List<float[]> queries;
+
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<float[]> corpus = SyntheticVectors.clustered(corpusSize, dimensions, CLUSTERS, 0.6, 42);
+        queries = SyntheticVectors.queries(corpus, QUERY_COUNT, 0.3, 7);
+
+        long startTime = System.nanoTime();
+        searcher = switch (store) {
+            case "hnsw" -> new HnswSearcher(corpus, dimensions);
+            case "pgvector" -> new PgVectorSearcher(corpus, dimensions);
+            case "exact" -> new ExactSearcher(corpus, dimensions);
+            default -> throw new IllegalArgumentException("Unknown store: " + store);
+        };
+        long buildMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        List<Set<Integer>> expected = SyntheticVectors.exactTopK(corpus, queries, topK);
+        List<List<Integer>> actual = new ArrayList<>(queries.size());
+        for (float[] query : queries) {
+            actual.add(searcher.search(query, topK));
+        }
+        System.out.printf("%n[recall] store=%s corpusSize=%d dimensions=%d topK=%d recall=%.4f buildMs=%d%n",
+                          store, corpusSize, dimensions, topK, SyntheticVectors.recall(expected, actual), buildMs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        searcher.close();
+    }
+
+    @Benchmark
+    public List<Integer> search() throws Exception {
+        float[] query = queries.get(cursor);
+        cursor = (cursor + 1) % queries.size();
+        return searcher.search(query, topK);
+    }
+
+    /**
+     * 返回语料中的节点编号，便于与暴力检索结果对比
+     */
+    private interface Searcher extends Closeable {
+
+        List<Integer> search(float[] query, int topK) throws Exception;
+    }
+
+    private static final class HnswSearcher implements Searcher {
+
+        private final Path dataDir;
+
+        private final HnswVectorStore vectorStore;
+
+        private HnswSearcher(List<float[]> corpus, int dimensions) throws Exception {
+            Map<String, float[]> vectors = new HashMap<>(corpus.size() * 2);
+            List<Document> documents = new ArrayList<>(corpus.size());
+            for (int i = 0; i < corpus.size(); i++) {
+                String text = "chunk " + i;
+                vectors.put(text, corpus.get(i));
+                documents.add(Document.builder()
+                                      .id(String.valueOf(i))
+                                      .text(text)
+                                      .metadata(Map.of("knowledge_base_id", KNOWLEDGE_BASE_ID))
+                                      .build());
+            }
+
+            dataDir = Files.createTempDirectory("hnsw-bench");
+            vectorStore = HnswVectorStore.builder(new FixedEmbeddingModel(vectors, dimensions), new ObjectMapper())
+                                         .dataDir(dataDir)
+                                         .fsync(false)
+                                         .snapshotThreshold(Long.MAX_VALUE)
+                                         .build();
+            vectorStore.initialize();
+            for (int from = 0; from < documents.size(); from += 1000) {
+                vectorStore.add(documents.subList(from, Math.min(from + 1000, documents.size())));
+            }
+        }
+
+        @Override
+        public List<Integer> search(float[] query, int topK) {
+            List<Integer> nodes = new ArrayList<>(topK);
+            for (Document document : vectorStore.search(EmbeddingVector.of(query), KNOWLEDGE_BASE_ID, topK, 0.0)) {
+                nodes.add(Integer.valueOf(document.getId()));
+            }
+            return nodes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            vectorStore.close();
+            FileSystemUtils.deleteRecursively(dataDir);
+        }
+    }
+
+    /**
+     * 在临时表上建与生产相同参数的HNSW索引（m=16, ef_construction=200），每次检索一次JDBC往返
+     */
+    private static final class PgVectorSearcher implements Searcher {
+
+        private final Connection connection;
+
+        private final PreparedStatement query;
+
+        private PgVectorSearcher(List<float[]> corpus, int dimensions) throws SQLException {
+            String url = System.getProperty("rag.bench.pgvector.url");
+            if (url == null) {
+                throw new IllegalStateException("store=pgvector requires -Drag.bench.pgvector.url");
+            }
+            connection = DriverManager.getConnection(url, System.getProperty("rag.bench.pgvector.username"),
+                                                     System.getProperty("rag.bench.pgvector.password"));
+            PGvector.addVectorType(connection);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS vector");
+                statement.execute("DROP TABLE IF EXISTS " + BENCH_TABLE);
+                statement.execute("CREATE TABLE " + BENCH_TABLE + " (id integer PRIMARY KEY, embedding vector("
+                                  + dimensions + "))");
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO " + BENCH_TABLE + " (id, embedding) VALUES (?, ?)")) {
+                for (int i = 0; i < corpus.size(); i++) {
+                    insert.setInt(1, i);
+                    insert.setObject(2, new PGvector(corpus.get(i)));
+                    insert.addBatch();
+                    if ((i + 1) % 1000 == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE INDEX ON " + BENCH_TABLE
+                                  + " USING hnsw (embedding vector_cosine_ops) WITH (m = 16, ef_construction = 200)");
+                statement.execute("ANALYZE " + BENCH_TABLE);
+                statement.execute("SET hnsw.ef_search = 100");
+            }
+            query = connection.prepareStatement("SELECT id FROM " + BENCH_TABLE + " ORDER BY embedding <=> ? LIMIT ?");
+        }
+
+        @Override
+        public List<Integer> search(float[] queryVector, int topK) throws SQLException {
+            query.setObject(1, new PGvector(queryVector));
+            query.setInt(2, topK);
+            List<Integer> nodes = new ArrayList<>(topK);
+            try (ResultSet resultSet = query.executeQuery()) {
+                while (resultSet.next()) {
+                    nodes.add(resultSet.getInt(1));
+                }
+            }
+            return nodes;
+        }
+
+        @Override
+        public void close() {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + BENCH_TABLE);
+            } catch (SQLException ignored) {
+                // 临时表清理失败不影响结果
+            }
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // 同上
+            }
+        }
+    }
+
+    private static final class ExactSearcher implements Searcher {
+
+        private final FlatVectorIndex index;
+
+        private ExactSearcher(List<float[]> corpus, int dimensions) {
+            index = FlatVectorIndex.build(corpus, dimensions);
+        }
+
+        @Override
+        public List<Integer> search(float[] query, int topK) {
+            List<Integer> nodes = new ArrayList<>(topK);
+            for (HnswIndex.ScoredNode scored : index.search(query, topK, -1.0)) {
+                nodes.add(scored.node());
+            }
+            return nodes;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
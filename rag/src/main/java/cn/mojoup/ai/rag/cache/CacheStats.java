@@ -0,0 +1,57 @@
+package cn.mojoup.ai.rag.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 缓存统计快照
+ *
+ * @author matt
+ */
+@Data
+@AllArgsConstructor
+public class CacheStats {
+
+    /**
+     * 缓存名称
+     */
+    private String name;
+
+    /**
+     * 当前条目数
+     */
+    private int size;
+
+    /**
+     * 最大条目数
+     */
+    private int maxSize;
+
+    /**
+     * 命中次数
+     */
+    private long hits;
+
+    /**
+     * 未命中次数
+     */
+    private long misses;
+
+    /**
+     * 因容量淘汰的条目数
+     */
+    private long evictions;
+
+    /**
+     * 合并到进行中加载的并发请求数（仅支持单飞加载的缓存）
+     */
+    private long coalescedLoads;
+
+    /**
+     * 命中率
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,34 @@
+package cn.mojoup.ai.rag.cache;
+
+import cn.mojoup.ai.rag.domain.Citation;
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 查询结果缓存条目
+ * 只缓存检索和生成的产物，响应中的查询ID、时间和耗时在每次请求时重新生成
+ *
+ * @author matt
+ */
+@Data
+@AllArgsConstructor
+public class CachedQueryResult {
+
+    /**
+     * 生成的答案或摘要
+     */
+    private String answer;
+
+    /**
+     * 检索到的文档片段
+     */
+    private List<DocumentSegment> documents;
+
+    /**
+     * 引用信息（仅引用查询）
+     */
+    private List<Citation> citations;
+}
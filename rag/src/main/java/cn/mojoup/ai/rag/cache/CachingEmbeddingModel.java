@@ -0,0 +1,161 @@
+package cn.mojoup.ai.rag.cache;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带向量缓存的嵌入模型装饰器
+ * <ul>
+ *     <li>单条文本的向量化（VectorStore检索时对查询文本的调用）经过内存查询向量缓存</li>
+ *     <li>批量向量化（文档入库、重新处理及批量嵌入调度）经过持久化嵌入缓存，仅未命中的文本发往底层模型</li>
+ * </ul>
+ * 两级缓存相互独立，避免文档内容挤占查询缓存。
+ * 当前模型可在运行时切换（嵌入迁移完成时），缓存键包含模型名及指定的输出维度，切换后旧模型的向量不会被复用
+ *
+ * @author matt
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+
+    private final QueryEmbeddingCache queryEmbeddingCache;
+
+    private final PersistentEmbeddingCache persistentEmbeddingCache;
+
+    private volatile ActiveModel activeModel;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, QueryEmbeddingCache queryEmbeddingCache,
+                                 PersistentEmbeddingCache persistentEmbeddingCache, String modelName) {
+        this.delegate = delegate;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.persistentEmbeddingCache = persistentEmbeddingCache;
+        this.activeModel = new ActiveModel(modelName, null, modelName);
+    }
+
+    /**
+     * 切换当前使用的嵌入模型，之后的查询和文档向量化均使用新模型
+     *
+     * @param modelName  模型名称
+     * @param dimensions 请求的输出维度，为null时使用模型默认维度
+     */
+    public void switchModel(String modelName, Integer dimensions) {
+        EmbeddingOptionsBuilder builder = EmbeddingOptionsBuilder.builder().withModel(modelName);
+        if (dimensions != null) {
+            builder.withDimensions(dimensions);
+        }
+        this.activeModel = new ActiveModel(modelName, builder.build(),
+                                           PersistentEmbeddingCache.modelKey(modelName, dimensions));
+    }
+
+    public String getModelName() {
+        return activeModel.name();
+    }
+
+    /**
+     * 当前模型标识，模型名相同但输出维度不同的向量不可混用，以此区分
+     */
+    public String getModelKey() {
+        return activeModel.key();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        ActiveModel model = activeModel;
+        if (model.options() == null) {
+            return queryEmbeddingCache.get(model.key(), text, delegate::embed);
+        }
+        return queryEmbeddingCache.get(model.key(), text,
+                                       t -> delegate.call(new EmbeddingRequest(List.of(t), model.options()))
+                                                    .getResult().getOutput());
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return activeModel.options() == null ? delegate.embed(document) : embed(document.getText());
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        ActiveModel model = activeModel;
+        if (model.options() != null) {
+            request = new EmbeddingRequest(request.getInstructions(), model.options());
+        }
+        if (!persistentEmbeddingCache.isAvailable()) {
+            return delegate.call(request);
+        }
+
+        String modelKey = model.key();
+
+        List<String> texts = request.getInstructions();
+        float[][] vectors = persistentEmbeddingCache.getAll(modelKey, texts);
+
+        List<Integer> missIndexes = new ArrayList<>();
+        List<String> missTexts = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (vectors[i] == null) {
+                missIndexes.add(i);
+                missTexts.add(texts.get(i));
+            }
+        }
+        if (missTexts.isEmpty()) {
+            return toResponse(vectors);
+        }
+
+        EmbeddingResponse response = delegate.call(new EmbeddingRequest(missTexts, request.getOptions()));
+        List<Embedding> results = response.getResults();
+        if (results.size() != missTexts.size()) {
+            throw new IllegalStateException("Embedding result count mismatch: expected " + missTexts.size()
+                                            + ", got " + results.size());
+        }
+
+        List<float[]> loaded = new ArrayList<>(missTexts.size());
+        for (int i = 0; i < results.size(); i++) {
+            Embedding embedding = results.get(i);
+            int index = embedding.getIndex() != null ? embedding.getIndex() : i;
+            vectors[missIndexes.get(index)] = embedding.getOutput();
+        }
+        missIndexes.forEach(index -> loaded.add(vectors[index]));
+        persistentEmbeddingCache.putAll(modelKey, missTexts, loaded);
+
+        return new EmbeddingResponse(toEmbeddings(vectors), response.getMetadata());
+    }
+
+    @Override
+    public int dimensions() {
+        ActiveModel model = activeModel;
+        if (model.options() == null) {
+            return delegate.dimensions();
+        }
+        return model.options().getDimensions() != null ? model.options().getDimensions() : embed("Test String").length;
+    }
+
+    public EmbeddingModel getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 当前模型名称、请求选项及缓存键中的模型标识，options为null表示使用底层模型的默认配置
+     */
+    private record ActiveModel(String name, EmbeddingOptions options, String key) {
+    }
+
+    private static EmbeddingResponse toResponse(float[][] vectors) {
+        return new EmbeddingResponse(toEmbeddings(vectors));
+    }
+
+    private static List<Embedding> toEmbeddings(float[][] vectors) {
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return embeddings;
+    }
+}
@@ -0,0 +1,74 @@
+package cn.mojoup.ai.rag.cache;
+
+import cn.mojoup.ai.rag.store.KnowledgeBaseStatsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识库版本跟踪器
+ * 每次知识库内容变更时递增版本号，缓存键中携带版本号，使旧版本的缓存条目自然失效。
+ * pgvector下版本号保存在知识库统计表中，由写入和删除在同一事务内递增，任一节点的写入对所有节点即时可见；
+ * 进程内HNSW存储或统计表未启用时退回本进程内的版本号，此时只能感知本节点的写入，
+ * 多节点部署下其他节点的缓存条目要到过期后才失效
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class KnowledgeBaseVersionTracker {
+
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /**
+     * 仅pgvector下存在
+     */
+    @Autowired(required = false)
+    private KnowledgeBaseStatsRepository knowledgeBaseStatsRepository;
+
+    /**
+     * 获取知识库当前版本号
+     */
+    public long currentVersion(String knowledgeBaseId) {
+        if (knowledgeBaseStatsRepository != null && knowledgeBaseId != null) {
+            Long version = knowledgeBaseStatsRepository.findVersion(knowledgeBaseId);
+            if (version != null) {
+                return version;
+            }
+        }
+        AtomicLong version = versions.get(knowledgeBaseId);
+        return version != null ? version.get() : 0L;
+    }
+
+    /**
+     * 递增本进程内的知识库版本号，统计表可用时数据库中的版本号已随统计增量递增
+     * 处于事务中时在事务提交后递增，避免读取方在提交前以新版本号缓存旧数据
+     */
+    public void bumpVersion(String knowledgeBaseId) {
+        if (knowledgeBaseId == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(knowledgeBaseId);
+                }
+            });
+        } else {
+            increment(knowledgeBaseId);
+        }
+    }
+
+    private void increment(String knowledgeBaseId) {
+        long version = versions.computeIfAbsent(knowledgeBaseId, id -> new AtomicLong()).incrementAndGet();
+        log.debug("知识库版本已更新: knowledgeBaseId={}, version={}", knowledgeBaseId, version);
+    }
+}
@@ -0,0 +1,122 @@
+package cn.mojoup.ai.rag.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程安全的有界LRU缓存
+ * 超出容量时淘汰最久未访问的条目，可选按写入时间过期，并记录命中统计
+ *
+ * @author matt
+ */
+public class LruCache<K, V> {
+
+    private final String name;
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param name       缓存名称，用于统计输出
+     * @param maxSize    最大条目数
+     * @param ttlSeconds 写入后的存活时间（秒），小于等于0表示不过期
+     */
+    public LruCache(String name, int maxSize, long ttlSeconds) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache max size must be positive: " + maxSize);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlSeconds > 0 ? ttlSeconds * 1_000_000_000L : 0;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * 获取缓存值，不存在或已过期时返回null
+     */
+    public V get(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        }
+    }
+
+    /**
+     * 写入缓存值，超出容量时淘汰最久未访问的条目
+     */
+    public void put(K key, V value) {
+        long expiresAt = ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0;
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, expiresAt));
+            if (entries.size() > maxSize) {
+                Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+                while (entries.size() > maxSize && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    public void remove(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * 获取缓存统计快照
+     */
+    public CacheStats stats() {
+        return new CacheStats(name, size(), maxSize, hits.sum(), misses.sum(), evictions.sum(), 0L);
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt != 0 && now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package cn.mojoup.ai.rag.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 持久化嵌入缓存统计
+ *
+ * @author matt
+ */
+@Data
+@AllArgsConstructor
+public class PersistentCacheStats {
+
+    private String name;
+
+    private boolean enabled;
+
+    /**
+     * 当前条目数
+     */
+    private long entries;
+
+    /**
+     * 当前向量数据占用字节数
+     */
+    private long sizeBytes;
+
+    private long maxEntries;
+
+    private long maxBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long writes;
+
+    private long evictions;
+
+    /**
+     * 命中条目对应的估算token数，即节省的嵌入调用量
+     */
+    private long savedTokens;
+
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,378 @@
+package cn.mojoup.ai.rag.cache;
+
+import cn.mojoup.ai.rag.embedding.TokenEstimator;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 持久化嵌入缓存
+ * 以模型标识（模型名，指定输出维度时附带维度）和归一化文本的SHA-256摘要为键，将文档分块的向量保存在PostgreSQL表中，
+ * 文档重新处理或重复入库时相同内容的分块直接复用已有向量，不再调用嵌入模型。
+ * <ul>
+ *     <li>向量以小端float32字节数组存储，与模型维度无关</li>
+ *     <li>命中时批量刷新最近访问时间，定时任务在超出条目数或字节数上限时按最近访问时间淘汰最旧条目</li>
+ *     <li>数据库不可用时自动降级为直接调用模型，不影响入库流程</li>
+ * </ul>
+ * 缓存读写可能发生在调用方的入库事务中，所有语句都挂起调用方事务、各自自动提交：
+ * 缓存语句失败不会中止调用方事务，行锁在语句结束时即释放，计数只在写入已提交后累加。
+ * 多行写入和刷新按摘要排序，并发请求以相同顺序加锁，刷新访问时间跳过已被锁定的行
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class PersistentEmbeddingCache {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${rag.embedding.persistent-cache.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${rag.embedding.persistent-cache.table-name:embedding_cache}")
+    private String tableName;
+
+    @Value("${rag.embedding.database.schema:public}")
+    private String schemaName;
+
+    @Value("${rag.embedding.persistent-cache.max-entries:1000000}")
+    private Long maxEntries;
+
+    @Value("${rag.embedding.persistent-cache.max-size-mb:8192}")
+    private Long maxSizeMb;
+
+    /**
+     * 淘汰后保留的容量比例，留出余量避免每次写入都触发淘汰
+     */
+    @Value("${rag.embedding.persistent-cache.evict-ratio:0.9}")
+    private Double evictRatio;
+
+    /**
+     * 挂起调用方事务执行缓存语句
+     */
+    private TransactionTemplate outsideTransaction;
+
+    private volatile boolean ready;
+
+    private final AtomicLong entries = new AtomicLong();
+
+    private final AtomicLong sizeBytes = new AtomicLong();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder writes = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder savedTokens = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        outsideTransaction = new TransactionTemplate(transactionManager);
+        outsideTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NOT_SUPPORTED);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!Boolean.TRUE.equals(enabled)) {
+            log.info("持久化嵌入缓存已禁用");
+            return;
+        }
+
+        try {
+            String table = qualifiedTable();
+            jdbcTemplate.execute(String.format(
+                    "CREATE TABLE IF NOT EXISTS %s (" +
+                    "model text NOT NULL, " +
+                    "content_hash text NOT NULL, " +
+                    "dimensions integer NOT NULL, " +
+                    "embedding bytea NOT NULL, " +
+                    "created_at timestamptz NOT NULL DEFAULT now(), " +
+                    "last_accessed_at timestamptz NOT NULL DEFAULT now(), " +
+                    "hit_count bigint NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (model, content_hash))",
+                    table));
+            jdbcTemplate.execute(String.format(
+                    "CREATE INDEX IF NOT EXISTS %s_last_accessed_at_idx ON %s (last_accessed_at)",
+                    tableName, table));
+
+            refreshSize();
+            ready = true;
+            log.info("持久化嵌入缓存初始化完成: table={}, entries={}, sizeBytes={}, maxEntries={}, maxSizeMb={}",
+                     table, entries.get(), sizeBytes.get(), maxEntries, maxSizeMb);
+
+        } catch (Exception e) {
+            log.error("持久化嵌入缓存初始化失败，将直接调用嵌入模型: table={}.{}", schemaName, tableName, e);
+        }
+    }
+
+    public boolean isAvailable() {
+        return ready;
+    }
+
+    /**
+     * 缓存键中的模型标识
+     * 同一模型以不同输出维度调用时向量互不兼容，指定维度时标识附带维度
+     *
+     * @param dimensions 请求的输出维度，为null表示模型默认维度
+     */
+    public static String modelKey(String modelName, Integer dimensions) {
+        return dimensions != null ? modelName + "@" + dimensions : modelName;
+    }
+
+    /**
+     * 批量查找缓存向量
+     *
+     * @param modelName 嵌入模型标识，见{@link #modelKey(String, Integer)}
+     * @param texts     待嵌入文本
+     * @return 与输入顺序一致的向量数组，未命中的位置为null
+     */
+    public float[][] getAll(String modelName, List<String> texts) {
+        float[][] results = new float[texts.size()][];
+        if (!ready || texts.isEmpty()) {
+            return results;
+        }
+
+        String[] hashes = new String[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            hashes[i] = hashOf(texts.get(i));
+        }
+
+        Map<String, float[]> found = new HashMap<>();
+        try {
+            outsideTransaction.executeWithoutResult(status -> jdbcTemplate.query(String.format(
+                    "SELECT content_hash, embedding FROM %s WHERE model = ? AND content_hash = ANY(?)",
+                    qualifiedTable()),
+                    ps -> {
+                        ps.setString(1, modelName);
+                        Array array = ps.getConnection().createArrayOf("text", distinct(hashes));
+                        ps.setArray(2, array);
+                    },
+                    rs -> {
+                        found.put(rs.getString("content_hash"), decode(rs.getBytes("embedding")));
+                    }));
+        } catch (Exception e) {
+            log.warn("持久化嵌入缓存查询失败，本批次全部调用模型: model={}, size={}, error={}",
+                     modelName, texts.size(), e.getMessage());
+            misses.add(texts.size());
+            return results;
+        }
+
+        for (int i = 0; i < texts.size(); i++) {
+            float[] vector = found.get(hashes[i]);
+            if (vector != null) {
+                results[i] = vector;
+                hits.increment();
+                savedTokens.add(TokenEstimator.estimate(texts.get(i)));
+            } else {
+                misses.increment();
+            }
+        }
+
+        if (!found.isEmpty()) {
+            touch(modelName, found.keySet().toArray(new String[0]));
+        }
+        return results;
+    }
+
+    /**
+     * 批量写入新生成的向量，已存在的键保持不变
+     */
+    public void putAll(String modelName, List<String> texts, List<float[]> vectors) {
+        if (!ready || texts.isEmpty()) {
+            return;
+        }
+
+        Map<String, byte[]> rows = new TreeMap<>();
+        Map<String, Integer> dimensions = new HashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            float[] vector = vectors.get(i);
+            if (vector == null || vector.length == 0) {
+                continue;
+            }
+            String hash = hashOf(texts.get(i));
+            rows.putIfAbsent(hash, encode(vector));
+            dimensions.putIfAbsent(hash, vector.length);
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<Object[]> batchArgs = new ArrayList<>(rows.size());
+            rows.forEach((hash, bytes) -> batchArgs.add(new Object[]{modelName, hash, dimensions.get(hash), bytes}));
+
+            int[] counts = outsideTransaction.execute(status -> jdbcTemplate.batchUpdate(String.format(
+                    "INSERT INTO %s (model, content_hash, dimensions, embedding) VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (model, content_hash) DO NOTHING",
+                    qualifiedTable()), batchArgs));
+
+            int index = 0;
+            for (byte[] bytes : rows.values()) {
+                // 驱动在批量模式下可能返回SUCCESS_NO_INFO(-2)，按写入成功计
+                if (counts[index++] != 0) {
+                    entries.incrementAndGet();
+                    sizeBytes.addAndGet(bytes.length);
+                    writes.increment();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("持久化嵌入缓存写入失败: model={}, size={}, error={}", modelName, rows.size(), e.getMessage());
+        }
+    }
+
+    public PersistentCacheStats stats() {
+        return new PersistentCacheStats("persistent-embedding", ready, entries.get(), sizeBytes.get(),
+                                        maxEntries, maxBytes(), hits.sum(), misses.sum(),
+                                        writes.sum(), evictions.sum(), savedTokens.sum());
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * 刷新命中条目的访问时间，尽力而为：被其他请求锁定的行直接跳过
+     */
+    private void touch(String modelName, String[] hashes) {
+        Arrays.sort(hashes);
+        try {
+            outsideTransaction.executeWithoutResult(status -> jdbcTemplate.update(String.format(
+                    "UPDATE %1$s c SET last_accessed_at = now(), hit_count = c.hit_count + 1 " +
+                    "FROM (SELECT model, content_hash FROM %1$s WHERE model = ? AND content_hash = ANY(?) " +
+                    "ORDER BY content_hash FOR UPDATE SKIP LOCKED) locked " +
+                    "WHERE c.model = locked.model AND c.content_hash = locked.content_hash",
+                    qualifiedTable()),
+                    ps -> {
+                        ps.setString(1, modelName);
+                        ps.setArray(2, ps.getConnection().createArrayOf("text", hashes));
+                    }));
+        } catch (Exception e) {
+            log.debug("持久化嵌入缓存访问时间刷新失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 超出条目数或字节数上限时，按最近访问时间淘汰到上限的evictRatio比例
+     * 由定时任务执行，不占用写入路径
+     */
+    @Scheduled(fixedDelayString = "${rag.embedding.persistent-cache.evict-interval-ms:60000}",
+               initialDelayString = "${rag.embedding.persistent-cache.evict-interval-ms:60000}")
+    public void evictIfNecessary() {
+        if (!ready) {
+            return;
+        }
+        long currentEntries = entries.get();
+        long currentBytes = sizeBytes.get();
+        if (currentEntries <= maxEntries && currentBytes <= maxBytes()) {
+            return;
+        }
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long averageBytes = Math.max(1, currentBytes / Math.max(1, currentEntries));
+            long overEntries = currentEntries - (long) (maxEntries * evictRatio);
+            long overBytes = (currentBytes - (long) (maxBytes() * evictRatio)) / averageBytes;
+            long toEvict = Math.max(overEntries, overBytes);
+            if (toEvict <= 0) {
+                return;
+            }
+
+            List<Integer> evicted = outsideTransaction.execute(status -> jdbcTemplate.queryForList(String.format(
+                    "DELETE FROM %1$s WHERE (model, content_hash) IN (" +
+                    "SELECT model, content_hash FROM %1$s ORDER BY last_accessed_at LIMIT ?) " +
+                    "RETURNING octet_length(embedding)",
+                    qualifiedTable()), Integer.class, toEvict));
+
+            long freedBytes = evicted.stream().mapToLong(Integer::longValue).sum();
+            entries.addAndGet(-evicted.size());
+            sizeBytes.addAndGet(-freedBytes);
+            evictions.add(evicted.size());
+            log.info("持久化嵌入缓存淘汰完成: evicted={}, freedBytes={}", evicted.size(), freedBytes);
+
+            // 淘汰后以数据库实际值校正计数，消除并发写入和其他实例带来的偏差
+            refreshSize();
+
+        } catch (Exception e) {
+            log.warn("持久化嵌入缓存淘汰失败: {}", e.getMessage());
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void refreshSize() {
+        Map<String, Object> row = jdbcTemplate.queryForMap(String.format(
+                "SELECT COUNT(*) AS entries, COALESCE(SUM(octet_length(embedding)), 0) AS size_bytes FROM %s",
+                qualifiedTable()));
+        entries.set(((Number) row.get("entries")).longValue());
+        sizeBytes.set(((Number) row.get("size_bytes")).longValue());
+    }
+
+    private long maxBytes() {
+        return maxSizeMb * 1024 * 1024;
+    }
+
+    private String qualifiedTable() {
+        return schemaName + "." + tableName;
+    }
+
+    private static String hashOf(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(QueryTextNormalizer.normalize(text).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Object[] distinct(String[] hashes) {
+        return Arrays.stream(hashes).distinct().toArray();
+    }
+
+    private static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    private static float[] decode(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
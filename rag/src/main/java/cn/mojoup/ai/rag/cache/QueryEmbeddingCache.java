@@ -0,0 +1,107 @@
+package cn.mojoup.ai.rag.cache;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 查询向量缓存
+ * 以模型名和归一化后的查询文本为键缓存原始float[]向量；
+ * 相同查询的并发请求合并为一次模型调用（单飞），其余请求等待同一结果
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class QueryEmbeddingCache {
+
+    @Value("${rag.vector.query-embedding-cache.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${rag.vector.query-embedding-cache.max-size:10000}")
+    private Integer maxSize;
+
+    @Value("${rag.vector.query-embedding-cache.ttl-seconds:3600}")
+    private Long ttlSeconds;
+
+    private LruCache<String, float[]> cache;
+
+    private final Map<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder coalescedLoads = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        cache = new LruCache<>("query-embedding", maxSize, ttlSeconds);
+        log.info("Query embedding cache initialized: enabled={}, maxSize={}, ttlSeconds={}", enabled, maxSize, ttlSeconds);
+    }
+
+    /**
+     * 获取查询向量，未命中时调用loader生成
+     * 返回的数组为缓存共享实例，调用方不得修改
+     *
+     * @param modelName 嵌入模型名称
+     * @param text      查询文本
+     * @param loader    向量生成函数，入参为归一化后的文本
+     */
+    public float[] get(String modelName, String text, Function<String, float[]> loader) {
+        String normalizedText = QueryTextNormalizer.normalize(text);
+        if (!enabled) {
+            return loader.apply(normalizedText);
+        }
+        String key = modelName + '|' + normalizedText;
+
+        float[] cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<float[]> loading = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = inFlight.putIfAbsent(key, loading);
+        if (existing != null) {
+            coalescedLoads.increment();
+            return await(existing);
+        }
+
+        try {
+            float[] embedding = loader.apply(normalizedText);
+            cache.put(key, embedding);
+            loading.complete(embedding);
+            return embedding;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, loading);
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public CacheStats stats() {
+        CacheStats stats = cache.stats();
+        stats.setCoalescedLoads(coalescedLoads.sum());
+        return stats;
+    }
+
+    private float[] await(CompletableFuture<float[]> loading) {
+        try {
+            return loading.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package cn.mojoup.ai.rag.cache;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * RAG查询结果缓存
+ * 缓存键由查询类型、知识库ID及其当前版本号、归一化后的问题以及所有影响输出的参数组成，
+ * 知识库内容变更后版本号递增，旧条目不再被命中并随LRU淘汰
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class QueryResponseCache {
+
+    @Autowired
+    private KnowledgeBaseVersionTracker versionTracker;
+
+    @Value("${rag.query.cache.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${rag.query.cache.max-size:1000}")
+    private Integer maxSize;
+
+    @Value("${rag.query.cache.ttl-seconds:600}")
+    private Long ttlSeconds;
+
+    private LruCache<String, CachedQueryResult> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = new LruCache<>("query-response", maxSize, ttlSeconds);
+        log.info("Query response cache initialized: enabled={}, maxSize={}, ttlSeconds={}",
+                 enabled, maxSize, ttlSeconds);
+    }
+
+    /**
+     * 构建缓存键，必须在检索之前调用，以便读取到检索时刻的知识库版本
+     *
+     * @param queryType       查询类型
+     * @param knowledgeBaseId 知识库ID
+     * @param question        原始问题
+     * @param params          其他影响输出的参数，按固定顺序传入
+     */
+    public String keyOf(String queryType, String knowledgeBaseId, String question, Object... params) {
+        StringBuilder key = new StringBuilder();
+        key.append(queryType)
+           .append('|').append(knowledgeBaseId)
+           .append('@').append(versionTracker.currentVersion(knowledgeBaseId))
+           .append('|').append(normalizeQuestion(question));
+        for (Object param : params) {
+            key.append('|').append(param);
+        }
+        return key.toString();
+    }
+
+    /**
+     * 获取缓存结果，未启用或未命中时返回null
+     */
+    public CachedQueryResult get(String key) {
+        return isEnabled() ? cache.get(key) : null;
+    }
+
+    public void put(String key, CachedQueryResult result) {
+        if (isEnabled()) {
+            cache.put(key, result);
+        }
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 问题归一化：在通用归一化的基础上忽略大小写
+     */
+    private String normalizeQuestion(String question) {
+        return QueryTextNormalizer.normalize(question).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,28 @@
+package cn.mojoup.ai.rag.cache;
+
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+/**
+ * 查询文本归一化工具，用于构建缓存键
+ *
+ * @author matt
+ */
+public final class QueryTextNormalizer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private QueryTextNormalizer() {
+    }
+
+    /**
+     * 统一全半角（NFKC）、去除首尾空白并合并连续空白，不改变大小写
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).trim();
+        return WHITESPACE.matcher(normalized).replaceAll(" ");
+    }
+}
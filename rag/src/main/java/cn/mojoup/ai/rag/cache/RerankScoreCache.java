@@ -0,0 +1,218 @@
+package cn.mojoup.ai.rag.cache;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 重排序分数缓存
+ * 以（模型名, 查询摘要, 分块ID）为键缓存LLM给出的相关性分数，重复查询直接复用分数而不再调用模型。
+ * 进程内LRU缓存在前，PostgreSQL表在后供多实例共享和重启后复用；
+ * 条目按写入时间过期，过期行由定时任务清理。数据库不可用时只使用进程内缓存
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class RerankScoreCache {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${rag.search.rerank.cache.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${rag.search.rerank.cache.persistent:true}")
+    private Boolean persistent;
+
+    @Value("${rag.search.rerank.cache.table-name:rerank_score_cache}")
+    private String tableName;
+
+    @Value("${rag.embedding.database.schema:public}")
+    private String schemaName;
+
+    @Value("${rag.search.rerank.cache.max-size:50000}")
+    private Integer maxSize;
+
+    @Value("${rag.search.rerank.cache.ttl-seconds:86400}")
+    private Long ttlSeconds;
+
+    private LruCache<String, Double> cache;
+
+    private volatile boolean ready;
+
+    @PostConstruct
+    public void init() {
+        cache = new LruCache<>("rerank-score", maxSize, ttlSeconds);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!Boolean.TRUE.equals(enabled) || !Boolean.TRUE.equals(persistent)) {
+            log.info("重排序分数持久化缓存已禁用: enabled={}, persistent={}", enabled, persistent);
+            return;
+        }
+
+        try {
+            String table = qualifiedTable();
+            jdbcTemplate.execute(String.format(
+                    "CREATE TABLE IF NOT EXISTS %s (" +
+                    "model text NOT NULL, " +
+                    "query_hash text NOT NULL, " +
+                    "chunk_id text NOT NULL, " +
+                    "score double precision NOT NULL, " +
+                    "created_at timestamptz NOT NULL DEFAULT now(), " +
+                    "PRIMARY KEY (model, query_hash, chunk_id))",
+                    table));
+            jdbcTemplate.execute(String.format(
+                    "CREATE INDEX IF NOT EXISTS %s_created_at_idx ON %s (created_at)",
+                    tableName, table));
+
+            ready = true;
+            log.info("重排序分数持久化缓存初始化完成: table={}, ttlSeconds={}", table, ttlSeconds);
+
+        } catch (Exception e) {
+            log.error("重排序分数持久化缓存初始化失败，仅使用进程内缓存: table={}.{}", schemaName, tableName, e);
+        }
+    }
+
+    /**
+     * 批量查找缓存分数
+     *
+     * @param modelName 重排序模型名称
+     * @param queryHash 查询摘要，见{@link #hash(String)}
+     * @param chunkIds  分块ID
+     * @return 命中的分块ID到分数的映射
+     */
+    public Map<String, Double> getAll(String modelName, String queryHash, Collection<String> chunkIds) {
+        Map<String, Double> found = new HashMap<>();
+        if (!Boolean.TRUE.equals(enabled) || chunkIds.isEmpty()) {
+            return found;
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (String chunkId : chunkIds) {
+            Double score = cache.get(key(modelName, queryHash, chunkId));
+            if (score != null) {
+                found.put(chunkId, score);
+            } else {
+                missing.add(chunkId);
+            }
+        }
+        if (!ready || missing.isEmpty()) {
+            return found;
+        }
+
+        try {
+            jdbcTemplate.query(String.format(
+                    "SELECT chunk_id, score FROM %s WHERE model = ? AND query_hash = ? AND chunk_id = ANY(?)%s",
+                    qualifiedTable(), ttlSeconds > 0 ? " AND created_at > now() - ? * interval '1 second'" : ""),
+                    ps -> {
+                        ps.setString(1, modelName);
+                        ps.setString(2, queryHash);
+                        ps.setArray(3, ps.getConnection().createArrayOf("text", missing.toArray()));
+                        if (ttlSeconds > 0) {
+                            ps.setDouble(4, ttlSeconds);
+                        }
+                    },
+                    rs -> {
+                        String chunkId = rs.getString("chunk_id");
+                        double score = rs.getDouble("score");
+                        found.put(chunkId, score);
+                        cache.put(key(modelName, queryHash, chunkId), score);
+                    });
+        } catch (Exception e) {
+            log.warn("重排序分数持久化缓存查询失败: model={}, size={}, error={}",
+                     modelName, missing.size(), e.getMessage());
+        }
+        return found;
+    }
+
+    /**
+     * 批量写入分数，已存在的键覆盖并重新计时
+     */
+    public void putAll(String modelName, String queryHash, Map<String, Double> scores) {
+        if (!Boolean.TRUE.equals(enabled) || scores.isEmpty()) {
+            return;
+        }
+
+        scores.forEach((chunkId, score) -> cache.put(key(modelName, queryHash, chunkId), score));
+        if (!ready) {
+            return;
+        }
+
+        try {
+            List<Object[]> batchArgs = new ArrayList<>(scores.size());
+            scores.forEach((chunkId, score) -> batchArgs.add(new Object[]{modelName, queryHash, chunkId, score}));
+            jdbcTemplate.batchUpdate(String.format(
+                    "INSERT INTO %s (model, query_hash, chunk_id, score) VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (model, query_hash, chunk_id) DO UPDATE SET score = EXCLUDED.score, created_at = now()",
+                    qualifiedTable()), batchArgs);
+        } catch (Exception e) {
+            log.warn("重排序分数持久化缓存写入失败: model={}, size={}, error={}",
+                     modelName, scores.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 定时清理过期的持久化条目
+     */
+    @Scheduled(fixedDelayString = "${rag.search.rerank.cache.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        if (!ready || ttlSeconds <= 0) {
+            return;
+        }
+
+        try {
+            int purged = jdbcTemplate.update(String.format(
+                    "DELETE FROM %s WHERE created_at < now() - ? * interval '1 second'", qualifiedTable()),
+                    ttlSeconds.doubleValue());
+            if (purged > 0) {
+                log.info("重排序分数缓存过期条目已清理: purged={}", purged);
+            }
+        } catch (Exception e) {
+            log.warn("重排序分数缓存清理失败: {}", e.getMessage());
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 归一化文本的SHA-256摘要，用作查询摘要；分块没有ID时也用于以内容代替ID
+     */
+    public static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(QueryTextNormalizer.normalize(text).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private String key(String modelName, String queryHash, String chunkId) {
+        return modelName + '|' + queryHash + '|' + chunkId;
+    }
+
+    private String qualifiedTable() {
+        return schemaName + "." + tableName;
+    }
+}
@@ -0,0 +1,64 @@
+package cn.mojoup.ai.rag.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 可超时取消的异步任务
+ * CompletableFuture.orTimeout只会让future异常完成，任务本身仍占用线程继续执行；
+ * 这里把任务包装为FutureTask提交，future超时或被取消时中断执行线程，及时归还线程池。
+ * 线程池拒绝时不抛出异常，而是返回以RejectedExecutionException异常完成的future，
+ * 调用方与超时一样按失败处理，不会在调用线程上同步执行任务
+ *
+ * @author matt
+ */
+public final class CancellableTasks {
+
+    private CancellableTasks() {
+    }
+
+    /**
+     * 在线程池上执行任务，超过timeoutMs后以TimeoutException异常完成并中断任务
+     *
+     * @param timeoutMs 超时时间（毫秒），小于等于0表示不设超时
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor, long timeoutMs) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                result.complete(supplier.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, null);
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        if (timeoutMs > 0) {
+            result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 是否为线程池拒绝导致的失败
+     */
+    public static boolean isRejected(Throwable error) {
+        return error instanceof RejectedExecutionException
+               || error != null && error.getCause() instanceof RejectedExecutionException;
+    }
+}
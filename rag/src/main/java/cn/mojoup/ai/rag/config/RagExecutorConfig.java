@@ -0,0 +1,228 @@
+package cn.mojoup.ai.rag.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * RAG线程池配置类
+ * 为检索、生成等并发任务提供有界的专用线程池，避免占用Web容器线程；
+ * 同时启用定时任务（知识库统计对账等）
+ *
+ * @author matt
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+public class RagExecutorConfig {
+
+    @Value("${rag.query.multi-kb.core-pool-size:8}")
+    private Integer multiKbCorePoolSize;
+
+    @Value("${rag.query.multi-kb.max-pool-size:32}")
+    private Integer multiKbMaxPoolSize;
+
+    @Value("${rag.query.multi-kb.queue-capacity:200}")
+    private Integer multiKbQueueCapacity;
+
+    @Value("${rag.query.hybrid.pool-size:16}")
+    private Integer hybridPoolSize;
+
+    @Value("${rag.query.hybrid.queue-capacity:200}")
+    private Integer hybridQueueCapacity;
+
+    @Value("${rag.search.rerank.ai.concurrency:4}")
+    private Integer rerankConcurrency;
+
+    @Value("${rag.search.rerank.ai.queue-capacity:200}")
+    private Integer rerankQueueCapacity;
+
+    @Value("${rag.search.rerank.cross-encoder.threads:4}")
+    private Integer crossEncoderThreads;
+
+    @Value("${rag.search.rerank.cross-encoder.queue-capacity:200}")
+    private Integer crossEncoderQueueCapacity;
+
+    @Value("${rag.query.batch.pool-size:16}")
+    private Integer batchPoolSize;
+
+    @Value("${rag.query.batch.queue-capacity:1000}")
+    private Integer batchQueueCapacity;
+
+    @Value("${rag.query.stream.pool-size:16}")
+    private Integer streamPoolSize;
+
+    @Value("${rag.query.stream.queue-capacity:200}")
+    private Integer streamQueueCapacity;
+
+    @Value("${rag.embedding.batch.concurrency:4}")
+    private Integer embeddingConcurrency;
+
+    @Value("${rag.embedding.batch.queue-capacity:1000}")
+    private Integer embeddingQueueCapacity;
+
+    /**
+     * 多知识库并行检索线程池
+     */
+    @Bean("multiKbSearchExecutor")
+    public ThreadPoolTaskExecutor multiKbSearchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(multiKbCorePoolSize);
+        executor.setMaxPoolSize(multiKbMaxPoolSize);
+        executor.setQueueCapacity(multiKbQueueCapacity);
+        executor.setThreadNamePrefix("rag-multi-kb-");
+        // 队列满时拒绝，该知识库按超时丢弃；若由调用线程执行，检索将不受单库超时约束
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+
+        log.info("Multi knowledge base search executor initialized: corePoolSize={}, maxPoolSize={}, queueCapacity={}",
+                 multiKbCorePoolSize, multiKbMaxPoolSize, multiKbQueueCapacity);
+
+        return executor;
+    }
+
+    /**
+     * 混合检索线程池
+     * 关键词检索和语义检索两路在此并发执行，每次混合检索占用两个线程
+     */
+    @Bean("hybridSearchExecutor")
+    public ThreadPoolTaskExecutor hybridSearchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(hybridPoolSize);
+        executor.setMaxPoolSize(hybridPoolSize);
+        executor.setQueueCapacity(hybridQueueCapacity);
+        executor.setThreadNamePrefix("rag-hybrid-");
+        // 队列满时拒绝，该路按失败降级；若由调用线程执行，该路将不受超时约束
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+
+        log.info("Hybrid search executor initialized: poolSize={}, queueCapacity={}",
+                 hybridPoolSize, hybridQueueCapacity);
+
+        return executor;
+    }
+
+    /**
+     * 重排序线程池
+     * 线程数即同时发往模型的最大重排序批次数，超出的批次排队等待
+     */
+    @Bean("rerankExecutor")
+    public ThreadPoolTaskExecutor rerankExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(rerankConcurrency);
+        executor.setMaxPoolSize(rerankConcurrency);
+        executor.setQueueCapacity(rerankQueueCapacity);
+        executor.setThreadNamePrefix("rag-rerank-");
+        // 队列满时拒绝，该批次不打分保持原顺序；若由调用线程执行，模型调用将不受批次超时约束
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+
+        log.info("Rerank executor initialized: concurrency={}, queueCapacity={}",
+                 rerankConcurrency, rerankQueueCapacity);
+
+        return executor;
+    }
+
+    /**
+     * Cross-Encoder推理线程池
+     * 固定线程数，每个线程同一时刻推理一个批次
+     */
+    @Bean("crossEncoderExecutor")
+    public ThreadPoolTaskExecutor crossEncoderExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(crossEncoderThreads);
+        executor.setMaxPoolSize(crossEncoderThreads);
+        executor.setQueueCapacity(crossEncoderQueueCapacity);
+        executor.setThreadNamePrefix("rag-cross-encoder-");
+        // 队列满时由调用线程推理：调用方本就阻塞等待全部批次，同步执行只是施加背压，不会绕过任何超时
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+
+        log.info("Cross-encoder executor initialized: threads={}, queueCapacity={}",
+                 crossEncoderThreads, crossEncoderQueueCapacity);
+
+        return executor;
+    }
+
+    /**
+     * 批量查询线程池
+     * 各批次的并发度由批量执行服务单独限制，线程池大小决定所有批次的总并发上限
+     */
+    @Bean("batchQueryExecutor")
+    public ThreadPoolTaskExecutor batchQueryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(batchPoolSize);
+        executor.setMaxPoolSize(batchPoolSize);
+        executor.setQueueCapacity(batchQueueCapacity);
+        executor.setThreadNamePrefix("rag-batch-query-");
+        // 队列满时拒绝，该问题记为失败项；若由调用线程执行，请求线程会同步跑完问题而不受批次截止时间约束
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+
+        log.info("Batch query executor initialized: poolSize={}, queueCapacity={}",
+                 batchPoolSize, batchQueueCapacity);
+
+        return executor;
+    }
+
+    /**
+     * 流式查询线程池
+     * 仅承担检索阶段，生成阶段的内容推送由ChatClient的响应式线程完成
+     */
+    @Bean("streamingQueryExecutor")
+    public ThreadPoolTaskExecutor streamingQueryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamPoolSize);
+        executor.setMaxPoolSize(streamPoolSize);
+        executor.setQueueCapacity(streamQueueCapacity);
+        executor.setThreadNamePrefix("rag-stream-query-");
+        // 队列满时拒绝并推送错误事件；由调用线程执行会在返回SseEmitter前跑完整个查询，客户端收不到流式内容
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+
+        log.info("Streaming query executor initialized: poolSize={}, queueCapacity={}",
+                 streamPoolSize, streamQueueCapacity);
+
+        return executor;
+    }
+
+    /**
+     * 嵌入调用线程池
+     * 线程数即同时发往嵌入模型的最大批次数，避免大文档入库时触发提供方限流
+     */
+    @Bean("embeddingExecutor")
+    public ThreadPoolTaskExecutor embeddingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(embeddingConcurrency);
+        executor.setMaxPoolSize(embeddingConcurrency);
+        executor.setQueueCapacity(embeddingQueueCapacity);
+        executor.setThreadNamePrefix("rag-embedding-");
+        // 队列满时拒绝，该批次的文本以异常完成；若由调用线程执行，攒批线程会被一次模型调用阻塞，其余批次随之停滞
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+
+        log.info("Embedding executor initialized: concurrency={}, queueCapacity={}",
+                 embeddingConcurrency, embeddingQueueCapacity);
+
+        return executor;
+    }
+}
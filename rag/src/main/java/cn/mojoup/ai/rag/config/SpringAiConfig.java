@@ -1,10 +1,24 @@
 package cn.mojoup.ai.rag.config;
 
+import cn.mojoup.ai.rag.cache.CachingEmbeddingModel;
+import cn.mojoup.ai.rag.cache.PersistentEmbeddingCache;
+import cn.mojoup.ai.rag.cache.QueryEmbeddingCache;
+import cn.mojoup.ai.rag.store.HnswVectorStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
 
 /**
  * Spring AI配置类
@@ -37,6 +51,132 @@ public class SpringAiConfig {
     @Value("${rag.spring-ai.vectorstore.chroma.collection-name:rag_documents}")
     private String chromaCollectionName;
 
+    /**
+     * 向量表与检索、迁移、统计等直接访问该表的组件使用同一组配置
+     */
+    @Value("${rag.embedding.database.schema:public}")
+    private String pgvectorSchemaName;
+
+    @Value("${rag.embedding.database.table-name:vector_store}")
+    private String pgvectorTableName;
+
+    /**
+     * 旧版配置项，仅用于检查是否与rag.embedding.database一致
+     */
+    @Value("${rag.spring-ai.vectorstore.pgvector.schema-name:}")
+    private String legacyPgvectorSchemaName;
+
+    @Value("${rag.spring-ai.vectorstore.pgvector.table-name:}")
+    private String legacyPgvectorTableName;
+
+    @Value("${rag.spring-ai.vectorstore.pgvector.dimensions:1536}")
+    private Integer pgvectorDimensions;
+
+    @Value("${rag.spring-ai.vectorstore.pgvector.distance-type:cosine}")
+    private String pgvectorDistanceType;
+
+    @Value("${rag.spring-ai.vectorstore.pgvector.index-type:hnsw}")
+    private String pgvectorIndexType;
+
+    @Value("${rag.spring-ai.vectorstore.pgvector.initialize-schema:true}")
+    private Boolean pgvectorInitializeSchema;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.data-dir:./data/hnsw}")
+    private String hnswDataDir;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.m:16}")
+    private Integer hnswM;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.ef-construction:200}")
+    private Integer hnswEfConstruction;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.ef-search:100}")
+    private Integer hnswEfSearch;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.snapshot-threshold:10000}")
+    private Long hnswSnapshotThreshold;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.compact-ratio:0.2}")
+    private Double hnswCompactRatio;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.fsync:true}")
+    private Boolean hnswFsync;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.quantization.enabled:false}")
+    private Boolean hnswQuantizationEnabled;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.quantization.calibration-size:10000}")
+    private Integer hnswCalibrationSize;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.quantization.calibration-quantile:0.999}")
+    private Double hnswCalibrationQuantile;
+
+    @Value("${rag.spring-ai.vectorstore.hnsw.quantization.rescore-factor:4}")
+    private Integer hnswRescoreFactor;
+
+    /**
+     * 带向量缓存的嵌入模型
+     * 包装自动配置的OpenAI嵌入模型，查询文本经过查询向量缓存，文档批量向量化经过持久化嵌入缓存，
+     * 两级缓存分别通过各自的enabled配置开关
+     */
+    @Bean
+    @Primary
+    public EmbeddingModel cachingEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                                QueryEmbeddingCache queryEmbeddingCache,
+                                                PersistentEmbeddingCache persistentEmbeddingCache) {
+        log.info("配置缓存嵌入模型: model={}", embeddingModel);
+        return new CachingEmbeddingModel(openAiEmbeddingModel, queryEmbeddingCache,
+                                         persistentEmbeddingCache, embeddingModel);
+    }
+
+    /**
+     * PGVector向量数据库
+     */
+    @Bean
+    @ConditionalOnProperty(name = "rag.spring-ai.vectorstore.type", havingValue = "pgvector")
+    public VectorStore pgVectorStore(JdbcTemplate jdbcTemplate, EmbeddingModel vectorEmbeddingModel) {
+        checkLegacyTableName("schema-name", legacyPgvectorSchemaName, "rag.embedding.database.schema", pgvectorSchemaName);
+        checkLegacyTableName("table-name", legacyPgvectorTableName, "rag.embedding.database.table-name", pgvectorTableName);
+        log.info("配置PGVector向量数据库: table={}.{}, dimensions={}, distanceType={}, indexType={}",
+                 pgvectorSchemaName, pgvectorTableName, pgvectorDimensions, pgvectorDistanceType, pgvectorIndexType);
+
+        return PgVectorStore.builder(jdbcTemplate, vectorEmbeddingModel)
+                            .schemaName(pgvectorSchemaName)
+                            .vectorTableName(pgvectorTableName)
+                            .dimensions(pgvectorDimensions)
+                            .distanceType(resolveDistanceType(pgvectorDistanceType))
+                            .indexType(resolveIndexType(pgvectorIndexType))
+                            .initializeSchema(pgvectorInitializeSchema)
+                            .build();
+    }
+
+    /**
+     * 进程内HNSW向量存储，适用于单节点部署
+     * 关闭时落盘快照，启动时从快照和写日志恢复
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "rag.spring-ai.vectorstore.type", havingValue = "hnsw")
+    public VectorStore hnswVectorStore(EmbeddingModel vectorEmbeddingModel, ObjectMapper objectMapper) {
+        log.info("配置HNSW向量存储: dataDir={}, m={}, efConstruction={}, efSearch={}, quantization={}",
+                 hnswDataDir, hnswM, hnswEfConstruction, hnswEfSearch, hnswQuantizationEnabled);
+
+        HnswVectorStore vectorStore = HnswVectorStore.builder(vectorEmbeddingModel, objectMapper)
+                                                     .dataDir(Path.of(hnswDataDir))
+                                                     .m(hnswM)
+                                                     .efConstruction(hnswEfConstruction)
+                                                     .efSearch(hnswEfSearch)
+                                                     .snapshotThreshold(hnswSnapshotThreshold)
+                                                     .compactRatio(hnswCompactRatio)
+                                                     .fsync(hnswFsync)
+                                                     .quantizationEnabled(hnswQuantizationEnabled)
+                                                     .calibrationSize(hnswCalibrationSize)
+                                                     .calibrationQuantile(hnswCalibrationQuantile)
+                                                     .rescoreFactor(hnswRescoreFactor)
+                                                     .build();
+        vectorStore.initialize();
+        return vectorStore;
+    }
+
     // TODO: 配置OpenAI嵌入模型
     // @Bean
     // @ConditionalOnProperty(name = "rag.spring-ai.openai.api-key")
@@ -102,18 +242,38 @@ public class SpringAiConfig {
     //     return new RedisVectorStore(connectionProvider, embeddingModel, indexName);
     // }
 
-    // TODO: 配置Cross-Encoder重排序模型
-    // @Bean
-    // @ConditionalOnProperty(name = "rag.search.rerank.enabled", havingValue = "true")
-    // public CrossEncoderModel crossEncoderModel() {
-    //     String modelName = System.getProperty("rag.search.rerank.cross-encoder-model", 
-    //                                          "cross-encoder/ms-marco-MiniLM-L-6-v2");
-    //     
-    //     log.info("配置Cross-Encoder重排序模型: model={}", modelName);
-    //     
-    //     return CrossEncoderModel.builder()
-    //         .modelName(modelName)
-    //         .build();
-    // }
+    // Cross-Encoder重排序模型由OnnxCrossEncoder加载（rag.search.rerank.default-strategy=cross_encoder）
+
+    /**
+     * 旧版配置项指向的表与检索、迁移、统计使用的表不一致时启动失败，避免写入和查询落在不同的表上
+     */
+    private void checkLegacyTableName(String legacyKey, String legacyValue, String key, String value) {
+        if (StringUtils.hasText(legacyValue) && !legacyValue.equals(value)) {
+            throw new IllegalStateException("rag.spring-ai.vectorstore.pgvector." + legacyKey + "=" + legacyValue
+                                            + " conflicts with " + key + "=" + value
+                                            + "; configure the vector table via " + key + " only");
+        }
+    }
+
+    private PgVectorStore.PgDistanceType resolveDistanceType(String distanceType) {
+        switch (distanceType.toLowerCase()) {
+            case "euclidean":
+                return PgVectorStore.PgDistanceType.EUCLIDEAN_DISTANCE;
+            case "inner-product":
+                return PgVectorStore.PgDistanceType.NEGATIVE_INNER_PRODUCT;
+            default:
+                return PgVectorStore.PgDistanceType.COSINE_DISTANCE;
+        }
+    }
 
-}
\ No newline at end of file
+    private PgVectorStore.PgIndexType resolveIndexType(String indexType) {
+        switch (indexType.toLowerCase()) {
+            case "ivfflat":
+                return PgVectorStore.PgIndexType.IVFFLAT;
+            case "none":
+                return PgVectorStore.PgIndexType.NONE;
+            default:
+                return PgVectorStore.PgIndexType.HNSW;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cn.mojoup.ai.rag.controller;
+
+import cn.mojoup.ai.rag.domain.EmbeddingMigrationStatus;
+import cn.mojoup.ai.rag.service.EmbeddingMigrationService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 嵌入迁移控制器
+ *
+ * @author matt
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/rag/embedding/migration")
+@RequiredArgsConstructor
+@Tag(name = "嵌入迁移", description = "更换嵌入模型时在线重新向量化相关接口")
+public class EmbeddingMigrationController {
+
+    private final EmbeddingMigrationService embeddingMigrationService;
+
+    @PostMapping("/start")
+    @Operation(summary = "启动迁移", description = "使用目标嵌入模型在后台重新向量化全部分块，完成后自动切换")
+    public ResponseEntity<EmbeddingMigrationStatus> start(
+            @Parameter(description = "目标嵌入模型", required = true)
+            @RequestParam String targetModel,
+            @Parameter(description = "输出维度，不填时使用模型默认维度")
+            @RequestParam(required = false) Integer dimensions) {
+        log.info("Starting embedding migration to model: {}, dimensions: {}", targetModel, dimensions);
+        return ResponseEntity.ok(embeddingMigrationService.start(targetModel, dimensions));
+    }
+
+    @PostMapping("/pause")
+    @Operation(summary = "暂停迁移", description = "当前批次完成后暂停，断点保留")
+    public ResponseEntity<EmbeddingMigrationStatus> pause() {
+        return ResponseEntity.ok(embeddingMigrationService.pause());
+    }
+
+    @PostMapping("/resume")
+    @Operation(summary = "恢复迁移", description = "从断点恢复已暂停或失败的迁移")
+    public ResponseEntity<EmbeddingMigrationStatus> resume() {
+        return ResponseEntity.ok(embeddingMigrationService.resume());
+    }
+
+    @GetMapping("/status")
+    @Operation(summary = "迁移状态", description = "查询最近一次迁移的进度、覆盖率和当前使用的模型")
+    public ResponseEntity<EmbeddingMigrationStatus> status() {
+        EmbeddingMigrationStatus status = embeddingMigrationService.getStatus();
+        return status != null ? ResponseEntity.ok(status) : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,64 @@
+package cn.mojoup.ai.rag.controller;
+
+import cn.mojoup.ai.rag.cache.PersistentEmbeddingCache;
+import cn.mojoup.ai.rag.cache.QueryEmbeddingCache;
+import cn.mojoup.ai.rag.cache.QueryResponseCache;
+import cn.mojoup.ai.rag.cache.RerankScoreCache;
+import cn.mojoup.ai.rag.pipeline.CascadeRankingPipeline;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * RAG运行指标控制器
+ *
+ * @author matt
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/rag/metrics")
+@Tag(name = "RAG指标", description = "RAG缓存及运行指标相关接口")
+public class RagMetricsController {
+
+    @Autowired
+    private QueryResponseCache queryResponseCache;
+
+    @Autowired
+    private QueryEmbeddingCache queryEmbeddingCache;
+
+    @Autowired
+    private PersistentEmbeddingCache persistentEmbeddingCache;
+
+    @Autowired
+    private RerankScoreCache rerankScoreCache;
+
+    @Autowired
+    private CascadeRankingPipeline cascadeRankingPipeline;
+
+    @GetMapping("/cache")
+    @Operation(summary = "缓存统计", description = "获取各级缓存的容量、命中和淘汰统计")
+    public Map<String, Object> cacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queryResponse", queryResponseCache.stats());
+        stats.put("queryEmbedding", queryEmbeddingCache.stats());
+        stats.put("persistentEmbedding", persistentEmbeddingCache.stats());
+        stats.put("rerankScore", rerankScoreCache.stats());
+        return stats;
+    }
+
+    @GetMapping("/cascade")
+    @Operation(summary = "级联排序统计", description = "获取级联排序各阶段的执行、跳过、失败次数及耗时")
+    public Map<String, Object> cascadeStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", cascadeRankingPipeline.isEnabled());
+        stats.put("stages", cascadeRankingPipeline.stats());
+        return stats;
+    }
+}
@@ -2,15 +2,18 @@ package cn.mojoup.ai.rag.controller;
 
 import cn.mojoup.ai.rag.domain.*;
 import cn.mojoup.ai.rag.service.RagQueryService;
+import cn.mojoup.ai.rag.service.RagStreamingQueryService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -28,6 +31,9 @@ public class RagQueryController {
     @Autowired
     private RagQueryService ragQueryService;
 
+    @Autowired
+    private RagStreamingQueryService ragStreamingQueryService;
+
     // ==================== Case by Case 查询接口 ====================
 
     @PostMapping("/simple")
@@ -94,6 +100,38 @@ public class RagQueryController {
         return ragQueryService.batchQuery(request);
     }
 
+    // ==================== 流式查询接口 ====================
+
+    @PostMapping(value = "/simple/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "流式简单查询", description = "以SSE方式推送检索结果、答案增量和统计信息")
+    public SseEmitter simpleQueryStream(@Validated @RequestBody SimpleQueryRequest request) {
+        return ragStreamingQueryService.simpleQuery(request);
+    }
+
+    @PostMapping(value = "/conversational/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "流式对话式查询", description = "以SSE方式推送多轮对话答案，完成事件携带更新后的对话历史")
+    public SseEmitter conversationalQueryStream(@Validated @RequestBody ConversationalQueryRequest request) {
+        return ragStreamingQueryService.conversationalQuery(request);
+    }
+
+    @PostMapping(value = "/summary/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "流式摘要查询", description = "以SSE方式推送摘要内容")
+    public SseEmitter summaryQueryStream(@Validated @RequestBody SummaryQueryRequest request) {
+        return ragStreamingQueryService.summaryQuery(request);
+    }
+
+    @PostMapping(value = "/citation/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "流式引用查询", description = "以SSE方式推送引用信息和带引用的答案")
+    public SseEmitter citationQueryStream(@Validated @RequestBody CitationQueryRequest request) {
+        return ragStreamingQueryService.citationQuery(request);
+    }
+
+    @PostMapping(value = "/intelligent/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "流式智能查询", description = "以SSE方式推送智能查询结果")
+    public SseEmitter intelligentQueryStream(@Validated @RequestBody IntelligentQueryRequest request) {
+        return ragStreamingQueryService.intelligentQuery(request);
+    }
+
     // ==================== 辅助查询接口 ====================
 
     @PostMapping("/suggestions")
@@ -11,5 +11,20 @@ public class BatchQueryItem {
     private List<DocumentSegment> documents;
     private Boolean success;
     private String errorMessage;
+    /**
+     * 单个问题的实际处理耗时（毫秒，从开始执行到完成，不含排队时间）
+     */
     private Long processingTime;
-} 
\ No newline at end of file
+    /**
+     * 检索阶段耗时（毫秒）
+     */
+    private Long retrievalTime;
+    /**
+     * 答案生成阶段耗时（毫秒）
+     */
+    private Long generationTime;
+    /**
+     * 提交到开始执行之间的排队耗时（毫秒）
+     */
+    private Long waitTime;
+}
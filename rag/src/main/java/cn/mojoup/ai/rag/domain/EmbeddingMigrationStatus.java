@@ -0,0 +1,91 @@
+package cn.mojoup.ai.rag.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 嵌入迁移状态
+ *
+ * @author matt
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingMigrationStatus {
+
+    /**
+     * 迁移ID
+     */
+    private Long migrationId;
+
+    /**
+     * 迁移前的嵌入模型
+     */
+    private String sourceModel;
+
+    /**
+     * 目标嵌入模型
+     */
+    private String targetModel;
+
+    /**
+     * 目标向量维度
+     */
+    private Integer targetDimensions;
+
+    /**
+     * 迁移状态
+     */
+    private MigrationState state;
+
+    /**
+     * 已重新向量化的分块数
+     */
+    private Long migrated;
+
+    /**
+     * 尚未重新向量化的分块数
+     */
+    private Long pending;
+
+    /**
+     * 覆盖率（0~1）
+     */
+    private Double coverage;
+
+    /**
+     * 断点：最后处理的分块ID
+     */
+    private String checkpoint;
+
+    /**
+     * 失败原因
+     */
+    private String error;
+
+    /**
+     * 当前节点使用的嵌入模型
+     */
+    private String activeModel;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime updatedAt;
+
+    private LocalDateTime switchedAt;
+
+    /**
+     * 迁移状态枚举
+     */
+    public enum MigrationState {
+        RUNNING,    // 进行中
+        PAUSED,     // 已暂停
+        FAILED,     // 失败，可恢复
+        SWITCHED    // 已完成并切换读路径
+    }
+}
@@ -15,4 +15,8 @@ public class HybridQueryRequest extends BaseQueryRequest {
     private Double keywordWeight = 0.3;
     private Double semanticWeight = 0.7;
     private Boolean enableRerank = true;
+    /**
+     * 检索和重排序的延迟预算（毫秒），为空时使用默认预算
+     */
+    private Long latencyBudgetMs;
 } 
\ No newline at end of file
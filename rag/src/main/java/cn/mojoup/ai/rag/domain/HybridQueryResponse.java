@@ -13,4 +13,20 @@ public class HybridQueryResponse extends BaseQueryResponse {
     private String knowledgeBaseId;
     private List<String> matchedKeywords;
     private Double hybridScore;
+    /**
+     * 是否降级：有检索路超时或失败，结果仅来自其余检索路
+     */
+    private Boolean degraded;
+    /**
+     * 超时或失败的检索路
+     */
+    private List<String> failedLegs;
+    /**
+     * 已执行的级联排序阶段
+     */
+    private List<String> rankingStages;
+    /**
+     * 因剩余预算不足而跳过的级联排序阶段
+     */
+    private List<String> skippedStages;
 } 
\ No newline at end of file
@@ -0,0 +1,45 @@
+package cn.mojoup.ai.rag.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 混合检索结果
+ *
+ * @author matt
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HybridSearchResult {
+
+    /**
+     * 按融合分数降序排列的文档片段
+     */
+    private List<DocumentSegment> documents;
+
+    /**
+     * 是否降级：有检索路超时或失败，结果仅来自其余检索路
+     */
+    private Boolean degraded;
+
+    /**
+     * 超时或失败的检索路：keyword、semantic
+     */
+    private List<String> failedLegs;
+
+    /**
+     * 已执行的级联排序阶段，未启用重排序或级联排序时为null
+     */
+    private List<String> rankingStages;
+
+    /**
+     * 因剩余预算不足或依赖不可用而跳过的级联排序阶段
+     */
+    private List<String> skippedStages;
+}
@@ -12,7 +12,14 @@ public class MultiKnowledgeBaseQueryResponse extends BaseQueryResponse {
     private String answer;
     private List<DocumentSegment> documents;
     private List<String> knowledgeBaseIds;
+    /**
+     * 各知识库命中的片段数量，检索超时的知识库记为-1
+     */
     private Map<String, Integer> knowledgeBaseScores;
+    /**
+     * 检索超时或因线程池已满被丢弃的知识库ID
+     */
+    private List<String> timedOutKnowledgeBaseIds;
     private String model;
     private Integer tokensUsed;
 } 
\ No newline at end of file
@@ -0,0 +1,60 @@
+package cn.mojoup.ai.rag.domain;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 流式查询完成事件
+ * 在全部内容推送完毕后发送，携带token统计和各阶段耗时
+ *
+ * @author matt
+ */
+@Data
+public class StreamCompletionEvent {
+
+    /**
+     * 查询ID
+     */
+    private String queryId;
+
+    /**
+     * 查询类型
+     */
+    private String queryType;
+
+    /**
+     * 使用的模型
+     */
+    private String model;
+
+    /**
+     * 估算的token数量
+     */
+    private Integer tokensUsed;
+
+    /**
+     * 检索耗时（毫秒）
+     */
+    private Long retrievalTime;
+
+    /**
+     * 从开始生成到收到首个内容的耗时（毫秒）
+     */
+    private Long firstTokenTime;
+
+    /**
+     * 生成耗时（毫秒）
+     */
+    private Long generationTime;
+
+    /**
+     * 总处理耗时（毫秒）
+     */
+    private Long processingTime;
+
+    /**
+     * 更新后的对话历史（仅对话式查询）
+     */
+    private List<ConversationMessage> updatedHistory;
+}
@@ -0,0 +1,51 @@
+package cn.mojoup.ai.rag.domain;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 流式查询检索事件
+ * 检索完成后、答案生成前最先推送给客户端
+ *
+ * @author matt
+ */
+@Data
+public class StreamRetrievalEvent {
+
+    /**
+     * 查询ID
+     */
+    private String queryId;
+
+    /**
+     * 查询类型
+     */
+    private String queryType;
+
+    /**
+     * 原始问题
+     */
+    private String question;
+
+    /**
+     * 检索到的文档片段
+     */
+    private List<DocumentSegment> documents;
+
+    /**
+     * 引用信息（仅引用查询）
+     */
+    private List<Citation> citations;
+
+    /**
+     * 检索耗时（毫秒）
+     */
+    private Long retrievalTime;
+
+    /**
+     * 扩展信息，如智能查询识别出的意图和策略
+     */
+    private Map<String, Object> metadata;
+}
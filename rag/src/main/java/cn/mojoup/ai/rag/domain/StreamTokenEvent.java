@@ -0,0 +1,26 @@
+package cn.mojoup.ai.rag.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 流式查询增量内容事件
+ *
+ * @author matt
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StreamTokenEvent {
+
+    /**
+     * 查询ID
+     */
+    private String queryId;
+
+    /**
+     * 本次增量的文本内容
+     */
+    private String content;
+}
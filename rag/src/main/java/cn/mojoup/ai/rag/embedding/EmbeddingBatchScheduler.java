@@ -0,0 +1,419 @@
+package cn.mojoup.ai.rag.embedding;
+
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 嵌入请求调度器
+ * <ul>
+ *     <li>批量文本按模型提供方的单次输入条数和token上限切分批次，在有界线程池上并发执行</li>
+ *     <li>并发请求中的单条文本在短时间窗口内合并为微批次，共享一次模型调用</li>
+ *     <li>限流和临时错误按指数退避重试整个批次，有次数上限；重试耗尽后整批失败，不拆分，避免放大限流</li>
+ *     <li>因输入导致的失败把批次二分后分别重试，逐步隔离出问题文本，单条文本的失败不影响同批其他文本</li>
+ * </ul>
+ * 模型返回的index必须恰好覆盖批次内每条输入一次，否则整批按失败处理；
+ * 批次执行结束时仍未完成的结果一律标记失败，每条结果另有等待上限，调用方不会无限等待。
+ * 所有结果按输入顺序返回
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class EmbeddingBatchScheduler {
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    @Qualifier("embeddingExecutor")
+    private Executor embeddingExecutor;
+
+    @Value("${rag.embedding.batch.max-inputs:2048}")
+    private Integer maxInputsPerBatch;
+
+    @Value("${rag.embedding.batch.max-tokens:300000}")
+    private Integer maxTokensPerBatch;
+
+    @Value("${rag.embedding.batch.max-tokens-per-input:8191}")
+    private Integer maxTokensPerInput;
+
+    @Value("${rag.embedding.batch.coalesce-window-ms:10}")
+    private Long coalesceWindowMs;
+
+    @Value("${rag.embedding.batch.coalesce-max-size:64}")
+    private Integer coalesceMaxSize;
+
+    /**
+     * 限流或临时错误时整批重试的次数（在Spring AI自身的重试之外）
+     */
+    @Value("${rag.embedding.batch.max-retries:2}")
+    private Integer maxRetries;
+
+    /**
+     * 首次重试前的等待时间（毫秒），之后每次翻倍
+     */
+    @Value("${rag.embedding.batch.retry-backoff-ms:1000}")
+    private Long retryBackoffMs;
+
+    /**
+     * 单条文本从提交到得到结果的最长等待时间（毫秒）
+     */
+    @Value("${rag.embedding.batch.timeout-ms:300000}")
+    private Long timeoutMs;
+
+    private static final Pattern STATUS_PREFIX = Pattern.compile("^\\s*(\\d{3})\\b");
+
+    private final Object pendingLock = new Object();
+
+    private List<PendingItem> pending = new ArrayList<>();
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    private ScheduledExecutorService coalesceTimer;
+
+    @PostConstruct
+    public void init() {
+        coalesceTimer = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("rag-embedding-coalesce-"));
+        log.info("Embedding batch scheduler initialized: maxInputs={}, maxTokens={}, coalesceWindowMs={}, coalesceMaxSize={}",
+                 maxInputsPerBatch, maxTokensPerBatch, coalesceWindowMs, coalesceMaxSize);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flushPending();
+        coalesceTimer.shutdown();
+    }
+
+    /**
+     * 嵌入单条文本，与并发请求中的其他单条文本合并为微批次
+     */
+    public CompletableFuture<EmbeddingVector> submit(String text) {
+        PendingItem item = newItem(text);
+        if (!validate(item)) {
+            return item.future;
+        }
+        if (coalesceWindowMs <= 0) {
+            dispatch(List.of(item));
+            return item.future;
+        }
+
+        List<PendingItem> ready = null;
+        synchronized (pendingLock) {
+            pending.add(item);
+            if (pending.size() >= coalesceMaxSize) {
+                ready = takePending();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = coalesceTimer.schedule(this::flushPending, coalesceWindowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (ready != null) {
+            dispatch(ready);
+        }
+        return item.future;
+    }
+
+    /**
+     * 批量嵌入文本，按提供方限制切分批次并发执行
+     *
+     * @return 与输入顺序一致的结果，每条文本的成功或失败相互独立
+     */
+    public List<EmbeddingResult> embedAll(List<String> texts) {
+        List<PendingItem> items = new ArrayList<>(texts.size());
+        List<PendingItem> valid = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            PendingItem item = newItem(text);
+            items.add(item);
+            if (validate(item)) {
+                valid.add(item);
+            }
+        }
+
+        dispatch(valid);
+
+        List<EmbeddingResult> results = new ArrayList<>(items.size());
+        for (PendingItem item : items) {
+            results.add(item.future.handle((vector, error) -> vector != null
+                                                             ? EmbeddingResult.success(vector)
+                                                             : EmbeddingResult.failure(rootMessage(error)))
+                                   .join());
+        }
+        return results;
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    private void flushPending() {
+        List<PendingItem> ready;
+        synchronized (pendingLock) {
+            ready = takePending();
+        }
+        if (!ready.isEmpty()) {
+            dispatch(ready);
+        }
+    }
+
+    /**
+     * 取出待合并的条目，调用方需持有pendingLock
+     */
+    private List<PendingItem> takePending() {
+        List<PendingItem> ready = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return ready;
+    }
+
+    /**
+     * 按输入条数和token上限切分批次并提交到嵌入线程池
+     */
+    private void dispatch(List<PendingItem> items) {
+        List<PendingItem> batch = new ArrayList<>();
+        int batchTokens = 0;
+        for (PendingItem item : items) {
+            if (!batch.isEmpty()
+                && (batch.size() >= maxInputsPerBatch || batchTokens + item.tokens > maxTokensPerBatch)) {
+                submitBatch(batch);
+                batch = new ArrayList<>();
+                batchTokens = 0;
+            }
+            batch.add(item);
+            batchTokens += item.tokens;
+        }
+        if (!batch.isEmpty()) {
+            submitBatch(batch);
+        }
+    }
+
+    private void submitBatch(List<PendingItem> batch) {
+        try {
+            embeddingExecutor.execute(() -> executeBatch(batch));
+        } catch (RuntimeException e) {
+            batch.forEach(item -> item.future.completeExceptionally(e));
+        }
+    }
+
+    private void executeBatch(List<PendingItem> batch) {
+        try {
+            embedIsolating(batch);
+        } finally {
+            for (PendingItem item : batch) {
+                if (!item.future.isDone()) {
+                    item.future.completeExceptionally(new IllegalStateException("Embedding batch finished without a result"));
+                }
+            }
+        }
+    }
+
+    /**
+     * 嵌入一个批次，因输入导致的失败时二分后分别重试
+     */
+    private void embedIsolating(List<PendingItem> batch) {
+        try {
+            EmbeddingVector[] vectors = callWithRetry(batch);
+            for (int i = 0; i < vectors.length; i++) {
+                batch.get(i).future.complete(vectors[i]);
+            }
+
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (batch.size() == 1 || classify(e) != FailureType.INPUT) {
+                log.warn("文本嵌入失败: batchSize={}, error={}", batch.size(), e.getMessage());
+                batch.forEach(item -> item.future.completeExceptionally(e));
+                return;
+            }
+
+            int middle = batch.size() / 2;
+            log.warn("批量嵌入失败，二分重试: batchSize={}, error={}", batch.size(), e.getMessage());
+            embedIsolating(batch.subList(0, middle));
+            embedIsolating(batch.subList(middle, batch.size()));
+        }
+    }
+
+    /**
+     * 调用嵌入模型，限流或临时错误时按指数退避重试
+     */
+    private EmbeddingVector[] callWithRetry(List<PendingItem> batch) throws InterruptedException {
+        long backoffMs = retryBackoffMs;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return call(batch);
+            } catch (RuntimeException e) {
+                if (attempt >= maxRetries || classify(e) != FailureType.TRANSIENT) {
+                    throw e;
+                }
+                log.warn("嵌入请求受限或临时失败，{}ms后重试: batchSize={}, attempt={}, error={}",
+                         backoffMs, batch.size(), attempt + 1, e.getMessage());
+                Thread.sleep(backoffMs);
+                backoffMs *= 2;
+            }
+        }
+    }
+
+    /**
+     * 调用一次嵌入模型，返回与批次顺序一致的向量
+     */
+    private EmbeddingVector[] call(List<PendingItem> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        batch.forEach(item -> texts.add(item.text));
+
+        EmbeddingResponse response = embeddingModel.call(new EmbeddingRequest(texts, null));
+        List<Embedding> embeddings = response.getResults();
+        if (embeddings.size() != batch.size()) {
+            throw new InvalidResponseException("Embedding result count mismatch: expected " + batch.size()
+                                               + ", got " + embeddings.size());
+        }
+
+        // 条数相同且index不越界、不重复，即为0..n-1的一个排列
+        EmbeddingVector[] vectors = new EmbeddingVector[batch.size()];
+        for (int i = 0; i < embeddings.size(); i++) {
+            Embedding embedding = embeddings.get(i);
+            int index = embedding.getIndex() != null ? embedding.getIndex() : i;
+            if (index < 0 || index >= vectors.length || vectors[index] != null || embedding.getOutput() == null) {
+                throw new InvalidResponseException("Invalid embedding result index " + index
+                                                   + " for batch of " + batch.size());
+            }
+            vectors[index] = EmbeddingVector.of(embedding.getOutput());
+        }
+        return vectors;
+    }
+
+    /**
+     * 失败分类：限流和服务端临时错误可重试；鉴权、配置或响应异常与输入无关，整批失败；其余视为输入导致
+     */
+    private static FailureType classify(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            if (cause instanceof InvalidResponseException || cause instanceof InterruptedException) {
+                return FailureType.REQUEST;
+            }
+            if (cause instanceof TransientAiException || cause instanceof ResourceAccessException
+                || cause instanceof IOException) {
+                return FailureType.TRANSIENT;
+            }
+            if (cause instanceof RestClientResponseException responseException) {
+                return classifyStatus(responseException.getStatusCode().value());
+            }
+            if (cause instanceof NonTransientAiException && cause.getMessage() != null) {
+                // Spring AI的默认错误处理把4xx响应包装为NonTransientAiException，消息以状态码开头
+                Matcher matcher = STATUS_PREFIX.matcher(cause.getMessage());
+                if (matcher.find()) {
+                    return classifyStatus(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return FailureType.INPUT;
+    }
+
+    private static FailureType classifyStatus(int status) {
+        if (status == 408 || status == 429 || status >= 500) {
+            return FailureType.TRANSIENT;
+        }
+        if (status == 401 || status == 403 || status == 404) {
+            return FailureType.REQUEST;
+        }
+        return FailureType.INPUT;
+    }
+
+    private boolean validate(PendingItem item) {
+        if (!StringUtils.hasText(item.text)) {
+            item.future.completeExceptionally(new IllegalArgumentException("Text cannot be empty"));
+            return false;
+        }
+        if (item.tokens > maxTokensPerInput) {
+            item.future.completeExceptionally(new IllegalArgumentException(
+                    "Text exceeds embedding token limit: estimated " + item.tokens + " > " + maxTokensPerInput));
+            return false;
+        }
+        return true;
+    }
+
+    private PendingItem newItem(String text) {
+        PendingItem item = new PendingItem(text);
+        if (timeoutMs > 0) {
+            item.future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return item;
+    }
+
+    private static String rootMessage(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private enum FailureType {
+
+        /**
+         * 限流或临时错误，整批重试
+         */
+        TRANSIENT,
+
+        /**
+         * 与输入无关的失败，整批失败
+         */
+        REQUEST,
+
+        /**
+         * 可能由个别输入导致，二分隔离
+         */
+        INPUT
+    }
+
+    /**
+     * 模型返回的结果无法与输入对应
+     */
+    private static final class InvalidResponseException extends IllegalStateException {
+
+        private InvalidResponseException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class PendingItem {
+
+        private final String text;
+
+        private final int tokens;
+
+        private final CompletableFuture<EmbeddingVector> future = new CompletableFuture<>();
+
+        private PendingItem(String text) {
+            this.text = text;
+            this.tokens = TokenEstimator.estimate(text);
+        }
+    }
+}
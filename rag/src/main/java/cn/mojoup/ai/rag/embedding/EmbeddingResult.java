@@ -0,0 +1,37 @@
+package cn.mojoup.ai.rag.embedding;
+
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 单条文本的嵌入结果，失败时携带错误信息而不影响同批其他文本
+ *
+ * @author matt
+ */
+@Data
+@AllArgsConstructor
+public class EmbeddingResult {
+
+    /**
+     * 嵌入向量，失败时为空
+     */
+    private EmbeddingVector vector;
+
+    /**
+     * 错误信息，成功时为空
+     */
+    private String errorMessage;
+
+    public static EmbeddingResult success(EmbeddingVector vector) {
+        return new EmbeddingResult(vector, null);
+    }
+
+    public static EmbeddingResult failure(String errorMessage) {
+        return new EmbeddingResult(null, errorMessage);
+    }
+
+    public boolean isSuccess() {
+        return vector != null;
+    }
+}
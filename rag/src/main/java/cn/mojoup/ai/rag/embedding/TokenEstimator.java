@@ -0,0 +1,29 @@
+package cn.mojoup.ai.rag.embedding;
+
+/**
+ * 嵌入输入的token数估算工具
+ * 中日韩字符按每字1个token，其余字符按每4个字符1个token，用于批次切分和成本统计
+ *
+ * @author matt
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isIdeographic(text.charAt(i))) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+}
@@ -0,0 +1,163 @@
+package cn.mojoup.ai.rag.index;
+
+import cn.mojoup.ai.rag.store.HnswVectorStore;
+import cn.mojoup.ai.rag.store.PgVectorSearchRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 关键词索引启动对账
+ * 以向量存储为准，逐个知识库比较分块ID集合：索引缺失的分块从向量存储读取后补写，
+ * 索引多出的分块按ID删除，向量存储中已不存在的知识库删除其索引目录。
+ * 用于修复进程崩溃丢失的未提交变更、事务提交后索引同步失败，以及启用索引前已写入的存量分块。
+ * 先读取索引ID再读取向量存储ID，对账期间并发的写入只会被重复补写，不会被误删
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class KeywordIndexReconciler {
+
+    @Autowired
+    private LuceneKeywordIndex luceneKeywordIndex;
+
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Autowired
+    private PgVectorSearchRepository pgVectorSearchRepository;
+
+    @Value("${rag.keyword.lucene.reconcile-on-startup:true}")
+    private Boolean reconcileOnStartup;
+
+    /**
+     * 补写时每批从向量存储读取的分块数
+     */
+    @Value("${rag.keyword.lucene.reconcile-batch-size:500}")
+    private Integer batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!luceneKeywordIndex.isEnabled() || !Boolean.TRUE.equals(reconcileOnStartup)) {
+            return;
+        }
+
+        // 对账在后台线程执行，不阻塞启动；期间检索可能缺少部分分块
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rag-keyword-reconcile-");
+        threadFactory.setDaemon(true);
+        threadFactory.newThread(this::reconcile).start();
+    }
+
+    /**
+     * 对账全部知识库
+     */
+    public void reconcile() {
+        long startTime = System.currentTimeMillis();
+        try {
+            Set<String> indexedKnowledgeBases = luceneKeywordIndex.knowledgeBaseIds();
+            Set<String> sourceKnowledgeBases = sourceKnowledgeBaseIds();
+
+            long added = 0;
+            long removed = 0;
+            for (String knowledgeBaseId : sourceKnowledgeBases) {
+                long[] repaired = reconcile(knowledgeBaseId);
+                added += repaired[0];
+                removed += repaired[1];
+            }
+
+            int droppedIndexes = 0;
+            for (String knowledgeBaseId : indexedKnowledgeBases) {
+                if (!sourceKnowledgeBases.contains(knowledgeBaseId)) {
+                    luceneKeywordIndex.deleteKnowledgeBase(knowledgeBaseId);
+                    droppedIndexes++;
+                }
+            }
+
+            luceneKeywordIndex.commit();
+            luceneKeywordIndex.refresh();
+            log.info("关键词索引对账完成: knowledgeBases={}, added={}, removed={}, droppedIndexes={}, time={}ms",
+                     sourceKnowledgeBases.size(), added, removed, droppedIndexes,
+                     System.currentTimeMillis() - startTime);
+
+        } catch (Exception e) {
+            log.error("关键词索引对账失败", e);
+        }
+    }
+
+    /**
+     * 对账单个知识库
+     *
+     * @return 补写和删除的分块数
+     */
+    private long[] reconcile(String knowledgeBaseId) {
+        Set<String> indexedIds = luceneKeywordIndex.ids(knowledgeBaseId);
+        Set<String> sourceIds = sourceIds(knowledgeBaseId);
+
+        List<String> missing = new ArrayList<>();
+        for (String id : sourceIds) {
+            if (!indexedIds.remove(id)) {
+                missing.add(id);
+            }
+        }
+        // 剩余的索引ID在向量存储中已不存在
+        Set<String> stale = indexedIds;
+
+        for (int start = 0; start < missing.size(); start += batchSize) {
+            List<String> batch = missing.subList(start, Math.min(start + batchSize, missing.size()));
+            luceneKeywordIndex.addDocuments(knowledgeBaseId, findDocuments(knowledgeBaseId, batch));
+        }
+        luceneKeywordIndex.deleteDocuments(knowledgeBaseId, stale);
+
+        if (!missing.isEmpty() || !stale.isEmpty()) {
+            log.info("关键词索引已修复: knowledgeBaseId={}, chunks={}, added={}, removed={}",
+                     knowledgeBaseId, sourceIds.size(), missing.size(), stale.size());
+        }
+        return new long[]{missing.size(), stale.size()};
+    }
+
+    // ==================== 向量存储读取 ====================
+
+    private Set<String> sourceKnowledgeBaseIds() {
+        HnswVectorStore embeddedStore = embeddedStore();
+        return embeddedStore != null
+               ? embeddedStore.knowledgeBaseIds()
+               : new HashSet<>(pgVectorSearchRepository.knowledgeBaseIds());
+    }
+
+    private Set<String> sourceIds(String knowledgeBaseId) {
+        HnswVectorStore embeddedStore = embeddedStore();
+        if (embeddedStore != null) {
+            return new HashSet<>(embeddedStore.findIds(new Filter.Expression(Filter.ExpressionType.EQ,
+                                                                             new Filter.Key("knowledge_base_id"),
+                                                                             new Filter.Value(knowledgeBaseId))));
+        }
+
+        Set<String> ids = new HashSet<>();
+        pgVectorSearchRepository.scanIds(knowledgeBaseId, ids::add);
+        return ids;
+    }
+
+    private List<Document> findDocuments(String knowledgeBaseId, List<String> ids) {
+        HnswVectorStore embeddedStore = embeddedStore();
+        return embeddedStore != null
+               ? embeddedStore.findByIds(ids)
+               : pgVectorSearchRepository.findByIds(knowledgeBaseId, ids);
+    }
+
+    private HnswVectorStore embeddedStore() {
+        return vectorStore instanceof HnswVectorStore hnswVectorStore ? hnswVectorStore : null;
+    }
+}
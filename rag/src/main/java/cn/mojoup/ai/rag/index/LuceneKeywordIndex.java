@@ -0,0 +1,491 @@
+package cn.mojoup.ai.rag.index;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地Lucene关键词索引
+ * 每个知识库一个MMapDirectory索引目录，与写入向量存储的分块同步维护；
+ * 分词使用CJKAnalyzer（中日韩文本按二元组切分，英文按词切分并转小写），打分使用BM25。
+ * 关键词检索在本地倒排索引上完成，不依赖向量检索的候选集，也不需要网络调用。
+ * <p>
+ * 写入为近实时：向量存储事务提交后按分块ID更新或删除索引文档，但不立即提交Lucene，
+ * 由定时任务按refresh-interval-ms从写入器重新打开读取器使新内容可检索，按commit-interval-ms持久化提交。
+ * 进程崩溃丢失的未提交变更由{@link KeywordIndexReconciler}在启动时对账修复
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class LuceneKeywordIndex {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private static final String FIELD_ID = "id";
+
+    private static final String FIELD_CONTENT = "content";
+
+    private static final String FIELD_METADATA = "metadata";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${rag.keyword.lucene.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${rag.keyword.lucene.index-dir:./data/lucene}")
+    private String indexDir;
+
+    /**
+     * 每个知识库写入缓冲的内存上限，超出后刷新为段
+     */
+    @Value("${rag.keyword.lucene.ram-buffer-mb:32}")
+    private Double ramBufferMb;
+
+    @Value("${rag.keyword.lucene.bm25.k1:1.2}")
+    private Float bm25K1;
+
+    @Value("${rag.keyword.lucene.bm25.b:0.75}")
+    private Float bm25B;
+
+    private final Analyzer analyzer = new CJKAnalyzer();
+
+    private final Map<String, KnowledgeBaseIndex> indexes = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * 写入或覆盖分块，按分块ID去重
+     * 在事务内调用时推迟到事务提交后执行，回滚的写入不会进入索引
+     */
+    public void addDocuments(String knowledgeBaseId, List<Document> documents) {
+        if (!isEnabled() || documents.isEmpty()) {
+            return;
+        }
+
+        afterCommit(knowledgeBaseId, () -> {
+            KnowledgeBaseIndex index = open(knowledgeBaseId);
+            for (Document document : documents) {
+                index.writer.updateDocument(new Term(FIELD_ID, document.getId()), toLuceneDocument(document));
+            }
+            log.debug("关键词索引写入完成: knowledgeBaseId={}, documents={}", knowledgeBaseId, documents.size());
+        });
+    }
+
+    /**
+     * 按分块ID删除，在事务内调用时推迟到事务提交后执行
+     */
+    public void deleteDocuments(String knowledgeBaseId, Collection<String> documentIds) {
+        if (!isEnabled() || documentIds.isEmpty()) {
+            return;
+        }
+
+        Term[] terms = documentIds.stream().map(id -> new Term(FIELD_ID, id)).toArray(Term[]::new);
+        afterCommit(knowledgeBaseId, () -> {
+            if (exists(knowledgeBaseId)) {
+                open(knowledgeBaseId).writer.deleteDocuments(terms);
+            }
+        });
+    }
+
+    /**
+     * 关闭并删除知识库的索引目录
+     */
+    public void deleteKnowledgeBase(String knowledgeBaseId) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        KnowledgeBaseIndex index = indexes.remove(knowledgeBaseId);
+        try {
+            if (index != null) {
+                index.close();
+            }
+            FileSystemUtils.deleteRecursively(directoryOf(knowledgeBaseId));
+            log.info("关键词索引已删除: knowledgeBaseId={}", knowledgeBaseId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete keyword index " + knowledgeBaseId, e);
+        }
+    }
+
+    /**
+     * BM25检索
+     *
+     * @return 按BM25分数降序排列的分块，score为原始BM25分数；知识库尚无索引时返回空列表
+     */
+    public List<Document> search(String knowledgeBaseId, String queryText, int topK) {
+        if (!isEnabled() || !StringUtils.hasText(queryText) || topK <= 0 || !exists(knowledgeBaseId)) {
+            return new ArrayList<>();
+        }
+
+        BooleanQuery query = buildQuery(queryText);
+        if (query.clauses().isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            KnowledgeBaseIndex index = open(knowledgeBaseId);
+            IndexSearcher searcher = index.searcherManager.acquire();
+            try {
+                TopDocs topDocs = searcher.search(query, topK);
+                StoredFields storedFields = searcher.storedFields();
+                List<Document> results = new ArrayList<>(topDocs.scoreDocs.length);
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    results.add(toDocument(storedFields.document(scoreDoc.doc), scoreDoc.score));
+                }
+
+                log.debug("关键词检索完成: knowledgeBaseId={}, terms={}, hits={}, results={}, time={}ms",
+                          knowledgeBaseId, query.clauses().size(), topDocs.totalHits, results.size(),
+                          System.currentTimeMillis() - startTime);
+                return results;
+            } finally {
+                index.searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to search keyword index " + knowledgeBaseId, e);
+        }
+    }
+
+    /**
+     * 索引内全部分块ID，读取前先刷新读取器以包含所有已执行的写入
+     */
+    public Set<String> ids(String knowledgeBaseId) {
+        Set<String> ids = new HashSet<>();
+        if (!isEnabled() || !exists(knowledgeBaseId)) {
+            return ids;
+        }
+
+        try {
+            KnowledgeBaseIndex index = open(knowledgeBaseId);
+            index.searcherManager.maybeRefreshBlocking();
+            IndexSearcher searcher = index.searcherManager.acquire();
+            try {
+                // 遍历ID字段的词典并跳过已删除文档，无需解压存储字段
+                for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                    Terms terms = leaf.reader().terms(FIELD_ID);
+                    if (terms == null) {
+                        continue;
+                    }
+                    Bits liveDocs = leaf.reader().getLiveDocs();
+                    TermsEnum termsEnum = terms.iterator();
+                    PostingsEnum postings = null;
+                    for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                            if (liveDocs == null || liveDocs.get(doc)) {
+                                ids.add(term.utf8ToString());
+                                break;
+                            }
+                        }
+                    }
+                }
+                return ids;
+            } finally {
+                index.searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read keyword index " + knowledgeBaseId, e);
+        }
+    }
+
+    /**
+     * 磁盘上已有索引目录的知识库
+     */
+    public Set<String> knowledgeBaseIds() {
+        Set<String> knowledgeBaseIds = new HashSet<>(indexes.keySet());
+        Path root = Path.of(indexDir);
+        if (!isEnabled() || !Files.isDirectory(root)) {
+            return knowledgeBaseIds;
+        }
+
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path directory : directories) {
+                knowledgeBaseIds.add(knowledgeBaseIdOf(directory.getFileName().toString()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list keyword index directory " + root, e);
+        }
+        return knowledgeBaseIds;
+    }
+
+    /**
+     * 近实时刷新：从写入器重新打开有变更的读取器
+     */
+    @Scheduled(fixedDelayString = "${rag.keyword.lucene.refresh-interval-ms:1000}")
+    public void refresh() {
+        for (Map.Entry<String, KnowledgeBaseIndex> entry : indexes.entrySet()) {
+            try {
+                entry.getValue().searcherManager.maybeRefresh();
+            } catch (IOException | AlreadyClosedException e) {
+                log.warn("刷新关键词索引失败: knowledgeBaseId={}, error={}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 持久化提交有未提交变更的索引
+     */
+    @Scheduled(fixedDelayString = "${rag.keyword.lucene.commit-interval-ms:60000}")
+    public void commit() {
+        for (Map.Entry<String, KnowledgeBaseIndex> entry : indexes.entrySet()) {
+            IndexWriter writer = entry.getValue().writer;
+            try {
+                if (writer.hasUncommittedChanges()) {
+                    writer.commit();
+                }
+            } catch (IOException | AlreadyClosedException e) {
+                log.warn("提交关键词索引失败: knowledgeBaseId={}, error={}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 索引内的分块数
+     */
+    public int count(String knowledgeBaseId) {
+        if (!isEnabled() || !exists(knowledgeBaseId)) {
+            return 0;
+        }
+
+        try {
+            KnowledgeBaseIndex index = open(knowledgeBaseId);
+            IndexSearcher searcher = index.searcherManager.acquire();
+            try {
+                return searcher.getIndexReader().numDocs();
+            } finally {
+                index.searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read keyword index " + knowledgeBaseId, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Map.Entry<String, KnowledgeBaseIndex> entry : indexes.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                log.warn("关闭关键词索引失败: knowledgeBaseId={}, error={}", entry.getKey(), e.getMessage());
+            }
+        }
+        indexes.clear();
+        analyzer.close();
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * 事务内推迟到提交后执行，否则立即执行；索引失败不影响向量存储的写入，由启动对账修复
+     */
+    private void afterCommit(String knowledgeBaseId, IndexAction action) {
+        Runnable task = () -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                log.error("关键词索引同步失败，将在下次启动对账时修复: knowledgeBaseId={}", knowledgeBaseId, e);
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * 查询文本按索引同样的分词器切分，各词项以SHOULD组合，由BM25累加打分
+     */
+    private BooleanQuery buildQuery(String queryText) {
+        Set<String> terms = new LinkedHashSet<>();
+        try (TokenStream stream = analyzer.tokenStream(FIELD_CONTENT, queryText)) {
+            CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken() && terms.size() < IndexSearcher.getMaxClauseCount()) {
+                terms.add(termAttribute.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to analyze query", e);
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (String term : terms) {
+            builder.add(new TermQuery(new Term(FIELD_CONTENT, term)), BooleanClause.Occur.SHOULD);
+        }
+        return builder.build();
+    }
+
+    private org.apache.lucene.document.Document toLuceneDocument(Document document) throws IOException {
+        org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
+        luceneDocument.add(new StringField(FIELD_ID, document.getId(), Field.Store.YES));
+        luceneDocument.add(new TextField(FIELD_CONTENT, document.getText() != null ? document.getText() : "",
+                                         Field.Store.YES));
+        luceneDocument.add(new StoredField(FIELD_METADATA, objectMapper.writeValueAsString(document.getMetadata())));
+        return luceneDocument;
+    }
+
+    private Document toDocument(org.apache.lucene.document.Document luceneDocument, float score) {
+        Map<String, Object> metadata;
+        try {
+            metadata = objectMapper.readValue(luceneDocument.get(FIELD_METADATA), METADATA_TYPE);
+        } catch (Exception e) {
+            log.warn("解析关键词索引元数据失败: {}", e.getMessage());
+            metadata = new HashMap<>();
+        }
+        metadata.put("bm25Score", score);
+
+        return Document.builder()
+                       .id(luceneDocument.get(FIELD_ID))
+                       .text(luceneDocument.get(FIELD_CONTENT))
+                       .metadata(metadata)
+                       .score((double) score)
+                       .build();
+    }
+
+    private boolean exists(String knowledgeBaseId) {
+        return indexes.containsKey(knowledgeBaseId) || Files.isDirectory(directoryOf(knowledgeBaseId));
+    }
+
+    private KnowledgeBaseIndex open(String knowledgeBaseId) {
+        return indexes.computeIfAbsent(knowledgeBaseId, id -> {
+            try {
+                Path directory = directoryOf(id);
+                Files.createDirectories(directory);
+                Similarity similarity = new BM25Similarity(bm25K1, bm25B);
+
+                IndexWriterConfig config = new IndexWriterConfig(analyzer);
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+                config.setSimilarity(similarity);
+                config.setRAMBufferSizeMB(ramBufferMb);
+                IndexWriter writer = new IndexWriter(new MMapDirectory(directory), config);
+
+                SearcherManager searcherManager = new SearcherManager(writer, new SearcherFactory() {
+                    @Override
+                    public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                        IndexSearcher searcher = new IndexSearcher(reader);
+                        searcher.setSimilarity(similarity);
+                        return searcher;
+                    }
+                });
+
+                log.info("打开关键词索引: knowledgeBaseId={}, dir={}, documents={}",
+                         id, directory, writer.getDocStats().numDocs);
+                return new KnowledgeBaseIndex(writer, searcherManager);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open keyword index " + id, e);
+            }
+        });
+    }
+
+    /**
+     * 知识库ID仅含安全字符时直接用作目录名，否则以UTF-8字节的十六进制编码
+     */
+    private Path directoryOf(String knowledgeBaseId) {
+        String name = knowledgeBaseId.matches("[A-Za-z0-9_-]+")
+                      ? knowledgeBaseId
+                      : "x." + HexFormat.of().formatHex(knowledgeBaseId.getBytes(StandardCharsets.UTF_8));
+        return Path.of(indexDir).resolve(name);
+    }
+
+    private String knowledgeBaseIdOf(String directoryName) {
+        return directoryName.startsWith("x.")
+               ? new String(HexFormat.of().parseHex(directoryName.substring(2)), StandardCharsets.UTF_8)
+               : directoryName;
+    }
+
+    @FunctionalInterface
+    private interface IndexAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * 单个知识库的索引写入器和检索器管理
+     */
+    private static final class KnowledgeBaseIndex {
+
+        private final IndexWriter writer;
+
+        private final SearcherManager searcherManager;
+
+        KnowledgeBaseIndex(IndexWriter writer, SearcherManager searcherManager) {
+            this.writer = writer;
+            this.searcherManager = searcherManager;
+        }
+
+        void close() throws IOException {
+            searcherManager.close();
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package cn.mojoup.ai.rag.pipeline;
+
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 级联排序的首阶段召回
+ *
+ * @author matt
+ */
+@FunctionalInterface
+public interface CandidateRetrieval {
+
+    /**
+     * 召回候选
+     *
+     * @param candidateCount 需要的候选数
+     * @param embeddings     召回时能顺带取得候选向量的实现按segmentId写入，供后续排序阶段复用，不重新向量化；
+     *                       取不到向量的召回方式可忽略
+     * @return 按相关度降序排列的候选
+     */
+    List<DocumentSegment> retrieve(int candidateCount, Map<String, float[]> embeddings);
+}
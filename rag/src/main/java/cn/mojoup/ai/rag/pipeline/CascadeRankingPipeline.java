@@ -0,0 +1,287 @@
+package cn.mojoup.ai.rag.pipeline;
+
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 级联排序管道
+ * 按配置依次执行三个阶段，候选数逐级减少、单条代价逐级升高：
+ * <ol>
+ *     <li>retrieval：由调用方提供的廉价召回（ANN、BM25或二者融合），取candidate-count个候选</li>
+ *     <li>medium：对前top-n个候选做MMR或本地Cross-Encoder排序</li>
+ *     <li>expensive：对前top-n个候选做对话模型重排序</li>
+ * </ol>
+ * 每个排序阶段开始前比较请求剩余的延迟预算与该阶段的预计耗时，不足时跳过，保持上一阶段的顺序；
+ * 执行的阶段以剩余预算为超时时间，超时按失败处理，同样保持上一阶段的顺序。
+ * 召回阶段随候选取回的向量传给后续阶段，MMR不必重新向量化。
+ * 预计耗时为实测耗时的指数滑动平均，以配置值为初值；阶段被跳过时向配置值回落，
+ * 避免一次偶发慢调用使该阶段长期被跳过
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class CascadeRankingPipeline {
+
+    public static final String STAGE_RETRIEVAL = "retrieval";
+
+    public static final String STAGE_MEDIUM = "medium";
+
+    public static final String STAGE_EXPENSIVE = "expensive";
+
+    private static final String STRATEGY_NONE = "none";
+
+    @Autowired
+    private List<RankingStage> rankingStages;
+
+    @Value("${rag.search.cascade.enabled:true}")
+    private Boolean enabled;
+
+    /**
+     * 请求未指定预算时的默认延迟预算（毫秒），小于等于0表示不限
+     */
+    @Value("${rag.search.cascade.budget-ms:3000}")
+    private Long defaultBudgetMs;
+
+    @Value("${rag.search.cascade.retrieval.candidate-count:100}")
+    private Integer candidateCount;
+
+    @Value("${rag.search.cascade.medium.strategy:mmr}")
+    private String mediumStrategy;
+
+    @Value("${rag.search.cascade.medium.top-n:30}")
+    private Integer mediumTopN;
+
+    @Value("${rag.search.cascade.medium.estimated-ms:100}")
+    private Long mediumEstimatedMs;
+
+    @Value("${rag.search.cascade.expensive.strategy:llm}")
+    private String expensiveStrategy;
+
+    @Value("${rag.search.cascade.expensive.top-n:8}")
+    private Integer expensiveTopN;
+
+    @Value("${rag.search.cascade.expensive.estimated-ms:1500}")
+    private Long expensiveEstimatedMs;
+
+    /**
+     * 预计耗时的滑动平均系数（0~1），越大越快跟随最近的实测耗时
+     */
+    @Value("${rag.search.cascade.latency-smoothing:0.2}")
+    private Double latencySmoothing;
+
+    private StageMetrics retrievalMetrics;
+
+    private List<StageMetrics> rankingMetrics;
+
+    @PostConstruct
+    public void init() {
+        Map<String, RankingStage> stagesByName = rankingStages.stream()
+                                                              .collect(Collectors.toMap(RankingStage::name, stage -> stage));
+        retrievalMetrics = new StageMetrics(STAGE_RETRIEVAL, STAGE_RETRIEVAL, null, candidateCount, 0);
+        rankingMetrics = new ArrayList<>(2);
+        addStage(STAGE_MEDIUM, mediumStrategy, mediumTopN, mediumEstimatedMs, stagesByName);
+        addStage(STAGE_EXPENSIVE, expensiveStrategy, expensiveTopN, expensiveEstimatedMs, stagesByName);
+
+        log.info("级联排序管道初始化完成: enabled={}, budgetMs={}, candidateCount={}, stages={}",
+                 enabled, defaultBudgetMs, candidateCount,
+                 rankingMetrics.stream().map(metrics -> metrics.stage + "=" + metrics.strategy + "@" + metrics.topN).toList());
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(enabled);
+    }
+
+    /**
+     * 以默认预算创建延迟预算，从调用时刻开始计时
+     */
+    public LatencyBudget newBudget() {
+        return LatencyBudget.ofMillis(defaultBudgetMs);
+    }
+
+    /**
+     * 执行级联排序
+     *
+     * @param query     查询文本
+     * @param retrieval 首阶段召回
+     * @param limit     返回的文档数
+     * @param budget    请求的延迟预算，召回和各排序阶段共用
+     */
+    public CascadeResult execute(String query, CandidateRetrieval retrieval, int limit, LatencyBudget budget) {
+        long startTime = System.nanoTime();
+        List<String> executedStages = new ArrayList<>();
+        List<String> skippedStages = new ArrayList<>();
+        List<String> failedStages = new ArrayList<>();
+
+        Map<String, float[]> embeddings = new HashMap<>();
+        List<DocumentSegment> retrieved = retrieval.retrieve(Math.max(candidateCount, limit), embeddings);
+        List<DocumentSegment> ranked = retrieved != null ? new ArrayList<>(retrieved) : new ArrayList<>();
+        retrievalMetrics.recordRun(elapsedMs(startTime));
+        executedStages.add(STAGE_RETRIEVAL);
+
+        for (StageMetrics stage : rankingMetrics) {
+            if (ranked.size() < 2) {
+                break;
+            }
+            if (!stage.rankingStage.isAvailable()) {
+                stage.recordSkip();
+                skippedStages.add(stage.strategy);
+                continue;
+            }
+            long estimatedMs = stage.estimatedMs();
+            if (!budget.allows(estimatedMs)) {
+                log.debug("剩余预算不足，跳过级联排序阶段: stage={}, strategy={}, estimatedMs={}, remainingMs={}",
+                          stage.stage, stage.strategy, estimatedMs, budget.remainingMs());
+                stage.recordSkip();
+                skippedStages.add(stage.strategy);
+                continue;
+            }
+
+            int head = Math.min(stage.topN, ranked.size());
+            // 预算按预计耗时放行，实际执行以剩余预算为限，不再使用阶段自身更长的超时配置
+            long timeoutMs = budget.isUnlimited() ? 0L : Math.max(1L, budget.remainingMs());
+            long stageStart = System.nanoTime();
+            try {
+                List<DocumentSegment> reranked = stage.rankingStage.rank(query, new ArrayList<>(ranked.subList(0, head)),
+                                                                         embeddings, timeoutMs);
+                List<DocumentSegment> next = new ArrayList<>(ranked.size());
+                next.addAll(reranked);
+                next.addAll(ranked.subList(head, ranked.size()));
+                ranked = next;
+                stage.recordRun(elapsedMs(stageStart));
+                executedStages.add(stage.strategy);
+            } catch (Exception e) {
+                log.warn("级联排序阶段失败，保持上一阶段顺序: stage={}, strategy={}, error={}",
+                         stage.stage, stage.strategy, e.getMessage());
+                stage.recordFailure(elapsedMs(stageStart));
+                failedStages.add(stage.strategy);
+            }
+        }
+
+        long elapsedMs = elapsedMs(startTime);
+        log.debug("级联排序完成: executed={}, skipped={}, failed={}, elapsedMs={}, budget={}",
+                  executedStages, skippedStages, failedStages, elapsedMs, budget);
+        return CascadeResult.builder()
+                            .documents(new ArrayList<>(ranked.subList(0, Math.min(limit, ranked.size()))))
+                            .executedStages(executedStages)
+                            .skippedStages(skippedStages)
+                            .failedStages(failedStages)
+                            .elapsedMs(elapsedMs)
+                            .build();
+    }
+
+    /**
+     * 各阶段执行、跳过及耗时统计
+     */
+    public List<CascadeStageStats> stats() {
+        List<CascadeStageStats> stats = new ArrayList<>(rankingMetrics.size() + 1);
+        stats.add(retrievalMetrics.snapshot());
+        for (StageMetrics stage : rankingMetrics) {
+            stats.add(stage.snapshot());
+        }
+        return stats;
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    private void addStage(String stage, String strategy, int topN, long estimatedMs,
+                          Map<String, RankingStage> stagesByName) {
+        if (strategy == null || STRATEGY_NONE.equalsIgnoreCase(strategy.trim())) {
+            return;
+        }
+        RankingStage rankingStage = stagesByName.get(strategy.trim());
+        if (rankingStage == null) {
+            throw new IllegalStateException("Unknown cascade ranking strategy for stage " + stage + ": " + strategy
+                                            + ", available: " + stagesByName.keySet());
+        }
+        if (!rankingStage.isAvailable()) {
+            log.warn("级联排序阶段依赖不可用，执行时将跳过: stage={}, strategy={}", stage, strategy);
+        }
+        rankingMetrics.add(new StageMetrics(stage, rankingStage.name(), rankingStage, topN, estimatedMs));
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * 单个阶段的配置与运行统计
+     */
+    private final class StageMetrics {
+
+        private final String stage;
+
+        private final String strategy;
+
+        private final RankingStage rankingStage;
+
+        private final int topN;
+
+        private final long configuredEstimateMs;
+
+        private final LongAdder runs = new LongAdder();
+
+        private final LongAdder skipped = new LongAdder();
+
+        private final LongAdder failed = new LongAdder();
+
+        private final LongAdder totalLatencyMs = new LongAdder();
+
+        private double estimateMs;
+
+        private StageMetrics(String stage, String strategy, RankingStage rankingStage, int topN, long estimatedMs) {
+            this.stage = stage;
+            this.strategy = strategy;
+            this.rankingStage = rankingStage;
+            this.topN = topN;
+            this.configuredEstimateMs = estimatedMs;
+            this.estimateMs = estimatedMs;
+        }
+
+        private synchronized long estimatedMs() {
+            return Math.round(estimateMs);
+        }
+
+        private void recordRun(long latencyMs) {
+            runs.increment();
+            totalLatencyMs.add(latencyMs);
+            smooth(latencyMs);
+        }
+
+        private void recordFailure(long latencyMs) {
+            failed.increment();
+            smooth(latencyMs);
+        }
+
+        private void recordSkip() {
+            skipped.increment();
+            smooth(configuredEstimateMs);
+        }
+
+        private synchronized void smooth(double observedMs) {
+            estimateMs += latencySmoothing * (observedMs - estimateMs);
+        }
+
+        private CascadeStageStats snapshot() {
+            long runCount = runs.sum();
+            double averageLatencyMs = runCount == 0 ? 0.0 : (double) totalLatencyMs.sum() / runCount;
+            double currentEstimateMs;
+            synchronized (this) {
+                currentEstimateMs = estimateMs;
+            }
+            return new CascadeStageStats(stage, strategy, topN, runCount, skipped.sum(), failed.sum(),
+                                         averageLatencyMs, currentEstimateMs);
+        }
+    }
+}
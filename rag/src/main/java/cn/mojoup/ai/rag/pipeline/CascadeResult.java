@@ -0,0 +1,46 @@
+package cn.mojoup.ai.rag.pipeline;
+
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 级联排序结果
+ *
+ * @author matt
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CascadeResult {
+
+    /**
+     * 按级联排序结果排列的文档片段，已截取到请求的数量
+     */
+    private List<DocumentSegment> documents;
+
+    /**
+     * 已执行的阶段（策略名称），按执行顺序排列
+     */
+    private List<String> executedStages;
+
+    /**
+     * 因剩余预算不足或依赖不可用而跳过的阶段
+     */
+    private List<String> skippedStages;
+
+    /**
+     * 执行失败的阶段，失败阶段不改变候选顺序
+     */
+    private List<String> failedStages;
+
+    /**
+     * 级联排序耗时（毫秒），含首阶段召回
+     */
+    private Long elapsedMs;
+}
@@ -0,0 +1,62 @@
+package cn.mojoup.ai.rag.pipeline;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 级联排序阶段统计快照
+ *
+ * @author matt
+ */
+@Data
+@AllArgsConstructor
+public class CascadeStageStats {
+
+    /**
+     * 阶段：retrieval、medium、expensive
+     */
+    private String stage;
+
+    /**
+     * 该阶段使用的策略名称
+     */
+    private String strategy;
+
+    /**
+     * 该阶段处理的候选数
+     */
+    private int candidates;
+
+    /**
+     * 执行次数
+     */
+    private long runs;
+
+    /**
+     * 跳过次数
+     */
+    private long skipped;
+
+    /**
+     * 失败次数
+     */
+    private long failed;
+
+    /**
+     * 已执行调用的平均耗时（毫秒）
+     */
+    private double averageLatencyMs;
+
+    /**
+     * 当前用于判断预算是否足够的预计耗时（毫秒）
+     */
+    private double estimatedLatencyMs;
+
+    /**
+     * 跳过率
+     */
+    public double getSkipRate() {
+        long total = runs + skipped + failed;
+        return total == 0 ? 0.0 : (double) skipped / total;
+    }
+}
@@ -0,0 +1,56 @@
+package cn.mojoup.ai.rag.pipeline;
+
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.rerank.OnnxCrossEncoder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地Cross-Encoder排序阶段
+ * 未加载Cross-Encoder模型时不可用
+ *
+ * @author matt
+ */
+@Component
+public class CrossEncoderRankingStage implements RankingStage {
+
+    @Autowired(required = false)
+    private OnnxCrossEncoder crossEncoder;
+
+    @Value("${rag.search.rerank.cross-encoder.content-truncate-length:300}")
+    private Integer contentTruncateLength;
+
+    @Override
+    public String name() {
+        return "cross_encoder";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return crossEncoder != null;
+    }
+
+    @Override
+    public List<DocumentSegment> rank(String query, List<DocumentSegment> candidates,
+                                      Map<String, float[]> embeddings, long timeoutMs) {
+        List<String> passages = new ArrayList<>(candidates.size());
+        for (DocumentSegment candidate : candidates) {
+            String content = candidate.getContent() != null ? candidate.getContent() : "";
+            passages.add(content.length() > contentTruncateLength ? content.substring(0, contentTruncateLength) : content);
+        }
+        float[] scores = crossEncoder.score(query, passages, timeoutMs);
+
+        List<DocumentSegment> ranked = new ArrayList<>(candidates);
+        for (int i = 0; i < ranked.size(); i++) {
+            ranked.get(i).setScore((double) scores[i]);
+        }
+        ranked.sort(Comparator.comparingDouble(DocumentSegment::getScore).reversed());
+        return ranked;
+    }
+}
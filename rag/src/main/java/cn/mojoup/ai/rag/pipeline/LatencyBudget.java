@@ -0,0 +1,63 @@
+package cn.mojoup.ai.rag.pipeline;
+
+/**
+ * 单次请求的延迟预算
+ * 在请求入口创建并沿调用链传递，各环节据此判断剩余时间是否足够执行代价较高的步骤
+ *
+ * @author matt
+ */
+public final class LatencyBudget {
+
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final long startNanos;
+
+    private final long budgetMs;
+
+    private LatencyBudget(long budgetMs) {
+        this.startNanos = System.nanoTime();
+        this.budgetMs = budgetMs;
+    }
+
+    /**
+     * 从当前时刻开始计时
+     *
+     * @param budgetMs 预算（毫秒），小于等于0表示不限
+     */
+    public static LatencyBudget ofMillis(long budgetMs) {
+        return new LatencyBudget(budgetMs > 0 ? budgetMs : UNLIMITED);
+    }
+
+    public static LatencyBudget unlimited() {
+        return new LatencyBudget(UNLIMITED);
+    }
+
+    public boolean isUnlimited() {
+        return budgetMs == UNLIMITED;
+    }
+
+    public long elapsedMs() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * 剩余毫秒数，超支时为0
+     */
+    public long remainingMs() {
+        return isUnlimited() ? UNLIMITED : Math.max(0, budgetMs - elapsedMs());
+    }
+
+    /**
+     * 剩余时间是否足够执行预计耗时为estimatedMs的步骤
+     */
+    public boolean allows(long estimatedMs) {
+        return remainingMs() >= estimatedMs;
+    }
+
+    @Override
+    public String toString() {
+        return isUnlimited()
+               ? "LatencyBudget[unlimited]"
+               : "LatencyBudget[budget=" + budgetMs + "ms, remaining=" + remainingMs() + "ms]";
+    }
+}
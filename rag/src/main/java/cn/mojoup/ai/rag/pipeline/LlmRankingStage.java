@@ -0,0 +1,33 @@
+package cn.mojoup.ai.rag.pipeline;
+
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.service.impl.DocumentRerankServiceImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对话模型排序阶段
+ * 直接使用基于对话模型的重排序（批量打分并带分数缓存），不受重排序默认策略影响
+ *
+ * @author matt
+ */
+@Component
+public class LlmRankingStage implements RankingStage {
+
+    @Autowired
+    private DocumentRerankServiceImpl chatModelRerankService;
+
+    @Override
+    public String name() {
+        return "llm";
+    }
+
+    @Override
+    public List<DocumentSegment> rank(String query, List<DocumentSegment> candidates,
+                                      Map<String, float[]> embeddings, long timeoutMs) {
+        return chatModelRerankService.rerank(candidates, query, timeoutMs);
+    }
+}
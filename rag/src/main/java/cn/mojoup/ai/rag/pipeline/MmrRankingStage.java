@@ -0,0 +1,61 @@
+package cn.mojoup.ai.rag.pipeline;
+
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.vector.MaximalMarginalRelevance;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MMR排序阶段
+ * 以候选当前分数为相关度，按最大边际相关性重新排列，把近似重复的分块压到后面。
+ * 候选向量只取自召回阶段随结果返回的向量，不调用嵌入模型；取不到向量的候选
+ * （如混合检索中只由关键词命中的分块）保持原位，其余候选在它们占据的位置间按MMR重新排列。
+ * 只做内存中的计算，耗时可忽略，不单独处理超时
+ *
+ * @author matt
+ */
+@Component
+public class MmrRankingStage implements RankingStage {
+
+    @Value("${rag.vector.mmr.lambda:0.5}")
+    private Double lambda;
+
+    @Override
+    public String name() {
+        return "mmr";
+    }
+
+    @Override
+    public List<DocumentSegment> rank(String query, List<DocumentSegment> candidates,
+                                      Map<String, float[]> embeddings, long timeoutMs) {
+        List<Integer> slots = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            String segmentId = candidates.get(i).getSegmentId();
+            if (segmentId != null && embeddings.get(segmentId) != null) {
+                slots.add(i);
+            }
+        }
+        if (slots.size() < 2) {
+            return candidates;
+        }
+
+        double[] relevance = new double[slots.size()];
+        float[][] vectors = new float[slots.size()][];
+        for (int i = 0; i < slots.size(); i++) {
+            DocumentSegment candidate = candidates.get(slots.get(i));
+            relevance[i] = candidate.getScore() != null ? candidate.getScore() : 0.0;
+            vectors[i] = embeddings.get(candidate.getSegmentId());
+        }
+
+        int[] order = MaximalMarginalRelevance.select(relevance, vectors, slots.size(), lambda);
+        List<DocumentSegment> ranked = new ArrayList<>(candidates);
+        for (int i = 0; i < order.length; i++) {
+            ranked.set(slots.get(i), candidates.get(slots.get(order[i])));
+        }
+        return ranked;
+    }
+}
@@ -0,0 +1,40 @@
+package cn.mojoup.ai.rag.pipeline;
+
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 级联排序中的一个排序阶段
+ * 阶段只对前一阶段排名靠前的少量候选重新排序，越靠后的阶段越精确、单条代价越高
+ *
+ * @author matt
+ */
+public interface RankingStage {
+
+    /**
+     * 策略名称，与配置rag.search.cascade.*.strategy的取值对应
+     */
+    String name();
+
+    /**
+     * 依赖的模型或组件是否可用，不可用的阶段按跳过处理
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * 对候选重新排序
+     *
+     * @param query      查询文本
+     * @param candidates 前一阶段排名靠前的候选
+     * @param embeddings 召回阶段随候选取回的向量，按segmentId索引，可能不完整
+     * @param timeoutMs  本阶段可用的时间（毫秒），即请求剩余的延迟预算，小于等于0表示不限；
+     *                   超时应以异常结束，由管道保持上一阶段的顺序
+     * @return 重新排序后的全部候选
+     */
+    List<DocumentSegment> rank(String query, List<DocumentSegment> candidates,
+                               Map<String, float[]> embeddings, long timeoutMs);
+}
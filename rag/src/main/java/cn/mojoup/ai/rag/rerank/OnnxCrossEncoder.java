@@ -0,0 +1,222 @@
+package cn.mojoup.ai.rag.rerank;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import cn.mojoup.ai.rag.concurrent.CancellableTasks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.IntStream;
+
+/**
+ * 本地ONNX Cross-Encoder
+ * 通过ONNX Runtime在CPU上加载HuggingFace导出的句对分类模型（如ms-marco-MiniLM-L-6-v2），
+ * 本地WordPiece分词后按批推理，输出查询与文本的相关性分数。
+ * <ul>
+ *     <li>句对先按长度排序再切分批次，每批只补齐到批内最长序列，减少填充带来的无效计算</li>
+ *     <li>各批次在固定大小的线程池上并行推理，会话的算子内线程数默认为1，由批次并行占满CPU</li>
+ *     <li>单输出模型的logit经sigmoid映射到0~1，双输出模型取相关类的softmax概率</li>
+ * </ul>
+ * 重排序默认策略或级联排序的某一阶段配置为cross_encoder时加载
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("'${rag.search.rerank.default-strategy:ai}' == 'cross_encoder'"
+                         + " or '${rag.search.cascade.medium.strategy:mmr}' == 'cross_encoder'"
+                         + " or '${rag.search.cascade.expensive.strategy:llm}' == 'cross_encoder'")
+public class OnnxCrossEncoder {
+
+    @Autowired
+    @Qualifier("crossEncoderExecutor")
+    private Executor crossEncoderExecutor;
+
+    @Value("${rag.search.rerank.cross-encoder.model-path:./models/cross-encoder/model.onnx}")
+    private String modelPath;
+
+    @Value("${rag.search.rerank.cross-encoder.vocab-path:./models/cross-encoder/vocab.txt}")
+    private String vocabPath;
+
+    @Value("${rag.search.rerank.cross-encoder.lower-case:true}")
+    private Boolean lowerCase;
+
+    /**
+     * 句对的最大词元数，含特殊词元
+     */
+    @Value("${rag.search.rerank.cross-encoder.max-length:512}")
+    private Integer maxLength;
+
+    @Value("${rag.search.rerank.cross-encoder.batch-size:10}")
+    private Integer batchSize;
+
+    @Value("${rag.search.rerank.cross-encoder.intra-op-threads:1}")
+    private Integer intraOpThreads;
+
+    private OrtEnvironment environment;
+
+    private OrtSession session;
+
+    private WordPieceTokenizer tokenizer;
+
+    /**
+     * 部分导出模型（如基于DistilBERT）没有token_type_ids输入
+     */
+    private boolean tokenTypeInput;
+
+    @PostConstruct
+    public void init() {
+        tokenizer = WordPieceTokenizer.fromVocabFile(Path.of(vocabPath), Boolean.TRUE.equals(lowerCase));
+        environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            options.setIntraOpNumThreads(intraOpThreads);
+            session = environment.createSession(modelPath, options);
+            tokenTypeInput = session.getInputNames().contains("token_type_ids");
+        } catch (OrtException e) {
+            throw new IllegalStateException("Failed to load cross-encoder model: " + modelPath, e);
+        }
+
+        log.info("Cross-Encoder模型加载完成: model={}, inputs={}, maxLength={}, batchSize={}",
+                 modelPath, session.getInputNames(), maxLength, batchSize);
+    }
+
+    /**
+     * 计算查询与每个文本的相关性分数
+     *
+     * @return 与passages顺序一致的0~1分数
+     */
+    public float[] score(String query, List<String> passages) {
+        return score(query, passages, 0L);
+    }
+
+    /**
+     * 在给定时间内计算相关性分数，供级联排序按请求剩余预算调用
+     *
+     * @param timeoutMs 超时时间（毫秒），小于等于0表示不设超时；超时后取消未完成的批次并抛出CompletionException
+     * @return 与passages顺序一致的0~1分数
+     */
+    public float[] score(String query, List<String> passages, long timeoutMs) {
+        float[] scores = new float[passages.size()];
+        if (passages.isEmpty()) {
+            return scores;
+        }
+
+        WordPieceTokenizer.Encoding[] encodings = new WordPieceTokenizer.Encoding[passages.size()];
+        for (int i = 0; i < passages.size(); i++) {
+            encodings[i] = tokenizer.encodePair(query, passages.get(i), maxLength);
+        }
+        int[] order = IntStream.range(0, encodings.length)
+                               .boxed()
+                               .sorted(Comparator.comparingInt(i -> encodings[i].length()))
+                               .mapToInt(Integer::intValue)
+                               .toArray();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int start = 0; start < order.length; start += batchSize) {
+            int[] batch = Arrays.copyOfRange(order, start, Math.min(start + batchSize, order.length));
+            futures.add(CancellableTasks.supplyAsync(() -> {
+                runBatch(encodings, batch, scores);
+                return null;
+            }, crossEncoderExecutor, timeoutMs));
+        }
+        // 各批次写入scores的不同下标，join保证结果对调用线程可见
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return scores;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (OrtException e) {
+                log.warn("关闭Cross-Encoder会话失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * 推理一个批次，序列补齐到批内最长长度
+     */
+    private void runBatch(WordPieceTokenizer.Encoding[] encodings, int[] batch, float[] scores) {
+        int sequenceLength = 0;
+        for (int index : batch) {
+            sequenceLength = Math.max(sequenceLength, encodings[index].length());
+        }
+
+        long[] inputIds = new long[batch.length * sequenceLength];
+        long[] attentionMask = new long[inputIds.length];
+        long[] tokenTypeIds = new long[inputIds.length];
+        Arrays.fill(inputIds, tokenizer.padId());
+        for (int row = 0; row < batch.length; row++) {
+            WordPieceTokenizer.Encoding encoding = encodings[batch[row]];
+            int offset = row * sequenceLength;
+            System.arraycopy(encoding.inputIds(), 0, inputIds, offset, encoding.length());
+            System.arraycopy(encoding.tokenTypeIds(), 0, tokenTypeIds, offset, encoding.length());
+            Arrays.fill(attentionMask, offset, offset + encoding.length(), 1L);
+        }
+
+        long[] shape = {batch.length, sequenceLength};
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            inputs.put("input_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(inputIds), shape));
+            inputs.put("attention_mask", OnnxTensor.createTensor(environment, LongBuffer.wrap(attentionMask), shape));
+            if (tokenTypeInput) {
+                inputs.put("token_type_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(tokenTypeIds), shape));
+            }
+
+            try (OrtSession.Result result = session.run(inputs)) {
+                float[][] logits = (float[][]) result.get(0).getValue();
+                for (int row = 0; row < batch.length; row++) {
+                    scores[batch[row]] = toScore(logits[row]);
+                }
+            }
+        } catch (OrtException e) {
+            throw new IllegalStateException("Cross-encoder inference failed", e);
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+        }
+    }
+
+    private static float toScore(float[] logits) {
+        if (logits.length == 1) {
+            return (float) (1 / (1 + Math.exp(-logits[0])));
+        }
+        double max = Double.NEGATIVE_INFINITY;
+        for (float logit : logits) {
+            max = Math.max(max, logit);
+        }
+        double sum = 0;
+        for (float logit : logits) {
+            sum += Math.exp(logit - max);
+        }
+        return (float) (Math.exp(logits[logits.length - 1] - max) / sum);
+    }
+}
@@ -0,0 +1,262 @@
+package cn.mojoup.ai.rag.rerank;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * BERT WordPiece分词器
+ * 与HuggingFace BertTokenizer的处理一致：清理控制字符、CJK字符逐字切分、可选小写并去除重音、按标点切分，
+ * 再对每个词做最长前缀匹配的WordPiece切分。句对编码为 [CLS] 查询 [SEP] 文本 [SEP]，
+ * 超长时优先截断较长的一段。纯Java实现，不依赖本地库
+ *
+ * @author matt
+ */
+public final class WordPieceTokenizer {
+
+    private static final String UNKNOWN_TOKEN = "[UNK]";
+
+    private static final String CLS_TOKEN = "[CLS]";
+
+    private static final String SEP_TOKEN = "[SEP]";
+
+    private static final String PAD_TOKEN = "[PAD]";
+
+    private static final int MAX_CHARS_PER_WORD = 100;
+
+    private final Map<String, Integer> vocabulary;
+
+    private final boolean lowerCase;
+
+    private final int unknownId;
+
+    private final int clsId;
+
+    private final int sepId;
+
+    private final int padId;
+
+    /**
+     * @param vocabulary 词表，键为词元，值为ID
+     * @param lowerCase  是否小写并去除重音，需与模型训练时一致（uncased模型为true）
+     */
+    public WordPieceTokenizer(Map<String, Integer> vocabulary, boolean lowerCase) {
+        this.vocabulary = vocabulary;
+        this.lowerCase = lowerCase;
+        this.unknownId = requireToken(UNKNOWN_TOKEN);
+        this.clsId = requireToken(CLS_TOKEN);
+        this.sepId = requireToken(SEP_TOKEN);
+        this.padId = requireToken(PAD_TOKEN);
+    }
+
+    /**
+     * 从每行一个词元的vocab.txt加载，行号即ID
+     */
+    public static WordPieceTokenizer fromVocabFile(Path vocabFile, boolean lowerCase) {
+        try {
+            List<String> lines = Files.readAllLines(vocabFile, StandardCharsets.UTF_8);
+            Map<String, Integer> vocabulary = new HashMap<>(lines.size() * 2);
+            for (int i = 0; i < lines.size(); i++) {
+                vocabulary.putIfAbsent(lines.get(i).strip(), i);
+            }
+            return new WordPieceTokenizer(vocabulary, lowerCase);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load vocabulary: " + vocabFile, e);
+        }
+    }
+
+    public int padId() {
+        return padId;
+    }
+
+    /**
+     * 编码句对
+     *
+     * @param maxLength 含特殊词元在内的最大长度
+     */
+    public Encoding encodePair(String first, String second, int maxLength) {
+        List<Integer> firstIds = tokenize(first);
+        List<Integer> secondIds = tokenize(second);
+
+        // 逐个从较长的一段末尾截断，直到放得下三个特殊词元
+        int budget = Math.max(0, maxLength - 3);
+        int firstLength = firstIds.size();
+        int secondLength = secondIds.size();
+        while (firstLength + secondLength > budget) {
+            if (firstLength > secondLength) {
+                firstLength--;
+            } else {
+                secondLength--;
+            }
+        }
+
+        int length = firstLength + secondLength + 3;
+        long[] inputIds = new long[length];
+        long[] tokenTypeIds = new long[length];
+        int position = 0;
+        inputIds[position++] = clsId;
+        for (int i = 0; i < firstLength; i++) {
+            inputIds[position++] = firstIds.get(i);
+        }
+        inputIds[position++] = sepId;
+        for (int i = 0; i < secondLength; i++) {
+            tokenTypeIds[position] = 1;
+            inputIds[position++] = secondIds.get(i);
+        }
+        tokenTypeIds[position] = 1;
+        inputIds[position] = sepId;
+        return new Encoding(inputIds, tokenTypeIds);
+    }
+
+    /**
+     * 将文本切分为词元ID，不含特殊词元
+     */
+    public List<Integer> tokenize(String text) {
+        List<Integer> ids = new ArrayList<>();
+        for (String word : basicTokenize(text)) {
+            wordPiece(word, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * 句对编码结果，注意力掩码即长度内全为1
+     */
+    public record Encoding(long[] inputIds, long[] tokenTypeIds) {
+
+        public int length() {
+            return inputIds.length;
+        }
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    private List<String> basicTokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return words;
+        }
+
+        String normalized = lowerCase ? stripAccents(text.toLowerCase(Locale.ROOT)) : text;
+        StringBuilder current = new StringBuilder();
+        for (int offset = 0; offset < normalized.length(); ) {
+            int codePoint = normalized.codePointAt(offset);
+            offset += Character.charCount(codePoint);
+
+            if (codePoint == 0 || codePoint == 0xFFFD || isControl(codePoint)) {
+                continue;
+            }
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+                flush(current, words);
+            } else if (isCjk(codePoint) || isPunctuation(codePoint)) {
+                flush(current, words);
+                words.add(new String(Character.toChars(codePoint)));
+            } else {
+                current.appendCodePoint(codePoint);
+            }
+        }
+        flush(current, words);
+        return words;
+    }
+
+    /**
+     * 最长前缀匹配，非首段以##开头；无法切分的词整体记为[UNK]
+     */
+    private void wordPiece(String word, List<Integer> ids) {
+        if (word.length() > MAX_CHARS_PER_WORD) {
+            ids.add(unknownId);
+            return;
+        }
+
+        List<Integer> pieces = new ArrayList<>();
+        int start = 0;
+        while (start < word.length()) {
+            int end = word.length();
+            Integer pieceId = null;
+            while (start < end) {
+                String piece = start > 0 ? "##" + word.substring(start, end) : word.substring(start, end);
+                pieceId = vocabulary.get(piece);
+                if (pieceId != null) {
+                    break;
+                }
+                end--;
+            }
+            if (pieceId == null) {
+                ids.add(unknownId);
+                return;
+            }
+            pieces.add(pieceId);
+            start = end;
+        }
+        ids.addAll(pieces);
+    }
+
+    private void flush(StringBuilder current, List<String> words) {
+        if (!current.isEmpty()) {
+            words.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    private int requireToken(String token) {
+        Integer id = vocabulary.get(token);
+        if (id == null) {
+            throw new IllegalArgumentException("Vocabulary is missing special token: " + token);
+        }
+        return id;
+    }
+
+    private static String stripAccents(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder builder = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isControl(int codePoint) {
+        if (codePoint == '\t' || codePoint == '\n' || codePoint == '\r') {
+            return false;
+        }
+        int type = Character.getType(codePoint);
+        return type == Character.CONTROL || type == Character.FORMAT;
+    }
+
+    /**
+     * ASCII中的非字母数字符号一律视为标点，与BERT一致
+     */
+    private static boolean isPunctuation(int codePoint) {
+        if ((codePoint >= 33 && codePoint <= 47) || (codePoint >= 58 && codePoint <= 64)
+            || (codePoint >= 91 && codePoint <= 96) || (codePoint >= 123 && codePoint <= 126)) {
+            return true;
+        }
+        int type = Character.getType(codePoint);
+        return type == Character.CONNECTOR_PUNCTUATION || type == Character.DASH_PUNCTUATION
+               || type == Character.START_PUNCTUATION || type == Character.END_PUNCTUATION
+               || type == Character.INITIAL_QUOTE_PUNCTUATION || type == Character.FINAL_QUOTE_PUNCTUATION
+               || type == Character.OTHER_PUNCTUATION;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        return (codePoint >= 0x4E00 && codePoint <= 0x9FFF)
+               || (codePoint >= 0x3400 && codePoint <= 0x4DBF)
+               || (codePoint >= 0x20000 && codePoint <= 0x2A6DF)
+               || (codePoint >= 0x2A700 && codePoint <= 0x2B73F)
+               || (codePoint >= 0x2B740 && codePoint <= 0x2B81F)
+               || (codePoint >= 0x2B820 && codePoint <= 0x2CEAF)
+               || (codePoint >= 0xF900 && codePoint <= 0xFAFF)
+               || (codePoint >= 0x2F800 && codePoint <= 0x2FA1F);
+    }
+}
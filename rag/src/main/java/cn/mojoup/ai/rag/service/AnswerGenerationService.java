@@ -2,6 +2,7 @@ package cn.mojoup.ai.rag.service;
 
 import cn.mojoup.ai.rag.domain.ConversationMessage;
 import cn.mojoup.ai.rag.domain.DocumentSegment;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
@@ -48,4 +49,33 @@ public interface AnswerGenerationService {
      * 根据意图调整温度参数
      */
     Double adjustTemperatureByIntent(String intent, Double temperature);
-} 
\ No newline at end of file
+
+    // ==================== 流式生成 ====================
+
+    /**
+     * 流式生成基础答案
+     */
+    Flux<String> streamAnswer(String question, List<DocumentSegment> documents,
+                              Double temperature, Integer maxTokens);
+
+    /**
+     * 流式生成对话式答案
+     */
+    Flux<String> streamConversationalAnswer(String question, List<DocumentSegment> documents,
+                                            List<ConversationMessage> history,
+                                            Double temperature, Integer maxTokens);
+
+    /**
+     * 流式生成优化答案
+     */
+    Flux<String> streamOptimizedAnswer(String question, List<DocumentSegment> documents,
+                                       String intent, String strategy,
+                                       Double temperature, Integer maxTokens);
+
+    /**
+     * 流式生成带引用的答案，参考文献列表在答案之后输出
+     */
+    Flux<String> streamAnswerWithCitations(String question, List<DocumentSegment> documents,
+                                           String citationStyle, Boolean includePage,
+                                           Double temperature, Integer maxTokens);
+}
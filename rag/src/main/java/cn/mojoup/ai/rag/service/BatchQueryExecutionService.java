@@ -0,0 +1,23 @@
+package cn.mojoup.ai.rag.service;
+
+import cn.mojoup.ai.rag.domain.BatchQueryItem;
+import cn.mojoup.ai.rag.domain.BatchQueryRequest;
+
+import java.util.List;
+
+/**
+ * 批量查询执行服务接口
+ * 负责批量问题的并发调度、截止时间控制和耗时统计
+ *
+ * @author matt
+ */
+public interface BatchQueryExecutionService {
+
+    /**
+     * 执行批量查询
+     *
+     * @param request 批量查询请求
+     * @return 与输入问题顺序一致的查询结果
+     */
+    List<BatchQueryItem> execute(BatchQueryRequest request);
+}
@@ -0,0 +1,79 @@
+package cn.mojoup.ai.rag.service;
+
+import cn.mojoup.ai.rag.domain.EmbeddingMigrationStatus;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 嵌入迁移服务接口
+ * 更换嵌入模型时在线重新向量化全部分块，完成后原子切换读路径，无需删除重建知识库
+ *
+ * @author matt
+ */
+public interface EmbeddingMigrationService {
+
+    /**
+     * 启动迁移
+     *
+     * @param targetModel 目标嵌入模型
+     * @param dimensions 请求的输出维度，为null时使用模型默认维度
+     * @return 迁移状态
+     */
+    EmbeddingMigrationStatus start(String targetModel, Integer dimensions);
+
+    /**
+     * 暂停迁移，当前批次完成后停止
+     *
+     * @return 迁移状态
+     */
+    EmbeddingMigrationStatus pause();
+
+    /**
+     * 从断点恢复已暂停或失败的迁移
+     *
+     * @return 迁移状态
+     */
+    EmbeddingMigrationStatus resume();
+
+    /**
+     * 获取最近一次迁移的状态
+     *
+     * @return 迁移状态，从未迁移时返回null
+     */
+    EmbeddingMigrationStatus getStatus();
+
+    /**
+     * 迁移尚未切换时用目标模型为待写入的文档预先计算影子列向量，供写入时双写，须在写入事务外调用
+     * 向量化失败时返回null，影子列保留为空由后台迁移补齐，不影响本次写入
+     *
+     * @param documents 待写入的文档
+     * @return 影子列向量，没有进行中的迁移或向量化失败时返回null
+     */
+    ShadowVectors embedShadowVectors(List<Document> documents);
+
+    /**
+     * 在迁移屏障内写入向量表，须在写入事务内调用；远程向量化应在调用前完成，避免在事务内持有表锁
+     * <ul>
+     *     <li>先对向量表加与切换事务互斥的锁，本次写入提交前迁移无法交换列</li>
+     *     <li>迁移已切换而本节点尚未同步时立即改用目标模型，后续的向量化落在新的向量空间</li>
+     *     <li>迁移尚未切换时，写入后把预先计算的影子列向量写入这些文档（双写），切换不必等待后台补齐</li>
+     * </ul>
+     *
+     * @param embeddedModel 写入前完成向量化时所用的模型标识，为null时不做模型校验
+     * @param shadowVectors 预先计算的影子列向量，为null或所属迁移已变化时不做双写，由后台迁移补齐
+     * @param write         实际的写入操作
+     * @throws IllegalStateException 写入前完成的向量化所用模型已被迁移替换，需重新向量化后写入
+     */
+    void writeFenced(String embeddedModel, ShadowVectors shadowVectors, Runnable write);
+
+    /**
+     * 影子列向量
+     *
+     * @param migrationId 计算时所属的迁移
+     * @param vectors     文档ID到目标模型向量的映射
+     */
+    record ShadowVectors(long migrationId, Map<String, float[]> vectors) {
+    }
+}
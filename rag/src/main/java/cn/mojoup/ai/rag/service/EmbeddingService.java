@@ -1,9 +1,12 @@
 package cn.mojoup.ai.rag.service;
 
+import cn.mojoup.ai.rag.embedding.EmbeddingResult;
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
 import org.springframework.ai.document.Document;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 嵌入服务接口
@@ -13,14 +16,60 @@ import java.util.Map;
  */
 public interface EmbeddingService {
 
+    /**
+     * 对文本进行嵌入
+     *
+     * @param text 文本内容
+     * @param model 嵌入模型
+     * @return 嵌入向量
+     */
+    EmbeddingVector embedVector(String text, String model);
+
+    /**
+     * 对多个文本进行批量嵌入
+     *
+     * @param texts 文本列表
+     * @param model 嵌入模型
+     * @return 嵌入向量列表，空文本会被忽略
+     */
+    List<EmbeddingVector> embedVectors(List<String> texts, String model);
+
+    /**
+     * 对多个文本进行批量嵌入，逐条返回结果
+     * 单条文本失败不影响其他文本，结果与输入顺序一致
+     *
+     * @param texts 文本列表
+     * @param model 嵌入模型
+     * @return 与输入顺序一致的嵌入结果列表
+     */
+    List<EmbeddingResult> embedVectorResults(List<String> texts, String model);
+
+    /**
+     * 对多个文档进行批量嵌入
+     *
+     * @param documents 文档列表
+     * @param model 嵌入模型
+     * @return 嵌入向量列表，内容为空的文档会被忽略
+     */
+    List<EmbeddingVector> embedDocumentVectors(List<Document> documents, String model);
+
+    // ==================== List<Double> 兼容接口（迁移期间保留） ====================
+
     /**
      * 对单个文档进行嵌入
      *
      * @param document 文档
      * @param model 嵌入模型
      * @return 嵌入向量
+     * @deprecated 使用 {@link #embedVector(String, String)}
      */
-    List<Double> embedDocument(Document document, String model);
+    @Deprecated
+    default List<Double> embedDocument(Document document, String model) {
+        if (document == null) {
+            throw new IllegalArgumentException("Document content cannot be empty");
+        }
+        return embedVector(document.getText(), model).toList();
+    }
 
     /**
      * 对多个文档进行批量嵌入
@@ -28,8 +77,14 @@ public interface EmbeddingService {
      * @param documents 文档列表
      * @param model 嵌入模型
      * @return 嵌入向量列表
+     * @deprecated 使用 {@link #embedDocumentVectors(List, String)}
      */
-    List<List<Double>> embedDocuments(List<Document> documents, String model);
+    @Deprecated
+    default List<List<Double>> embedDocuments(List<Document> documents, String model) {
+        return embedDocumentVectors(documents, model).stream()
+                                                      .map(EmbeddingVector::toList)
+                                                      .collect(Collectors.toList());
+    }
 
     /**
      * 对文本进行嵌入
@@ -37,8 +92,12 @@ public interface EmbeddingService {
      * @param text 文本内容
      * @param model 嵌入模型
      * @return 嵌入向量
+     * @deprecated 使用 {@link #embedVector(String, String)}
      */
-    List<Double> embedText(String text, String model);
+    @Deprecated
+    default List<Double> embedText(String text, String model) {
+        return embedVector(text, model).toList();
+    }
 
     /**
      * 对多个文本进行批量嵌入
@@ -46,8 +105,14 @@ public interface EmbeddingService {
      * @param texts 文本列表
      * @param model 嵌入模型
      * @return 嵌入向量列表
+     * @deprecated 使用 {@link #embedVectors(List, String)}
      */
-    List<List<Double>> embedTexts(List<String> texts, String model);
+    @Deprecated
+    default List<List<Double>> embedTexts(List<String> texts, String model) {
+        return embedVectors(texts, model).stream()
+                                         .map(EmbeddingVector::toList)
+                                         .collect(Collectors.toList());
+    }
 
     /**
      * 获取嵌入模型的向量维度
@@ -1,6 +1,8 @@
 package cn.mojoup.ai.rag.service;
 
 import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.domain.HybridSearchResult;
+import cn.mojoup.ai.rag.pipeline.LatencyBudget;
 
 import java.util.List;
 
@@ -20,8 +22,26 @@ public interface HybridSearchService {
                                  Double semanticWeight, Boolean enableRerank,
                                  Integer limit, Double threshold);
 
+    /**
+     * 执行混合检索，并返回是否因检索路超时或失败而降级
+     */
+    HybridSearchResult searchWithStatus(String query, String knowledgeBaseId,
+                                        List<String> keywords, Double keywordWeight,
+                                        Double semanticWeight, Boolean enableRerank,
+                                        Integer limit, Double threshold);
+
+    /**
+     * 在给定的延迟预算内执行混合检索
+     * 启用重排序时，级联排序的各阶段仅在剩余预算足够时执行
+     */
+    HybridSearchResult searchWithStatus(String query, String knowledgeBaseId,
+                                        List<String> keywords, Double keywordWeight,
+                                        Double semanticWeight, Boolean enableRerank,
+                                        Integer limit, Double threshold, LatencyBudget budget);
+
     /**
      * 合并检索结果
+     * 按各路排名做加权RRF融合，返回新的片段，不修改输入
      */
     List<DocumentSegment> mergeResults(List<DocumentSegment> keywordResults,
                                        List<DocumentSegment> semanticResults,
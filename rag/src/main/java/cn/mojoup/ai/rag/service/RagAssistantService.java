@@ -64,7 +64,7 @@ public interface RagAssistantService {
     BatchQueryResponse createBatchResponse(List<BatchQueryItem> results);
 
     /**
-     * 处理单个批量查询项
+     * 处理单个批量查询项（耗时字段由批量执行引擎按实际测量值填充）
      */
     BatchQueryItem processSingleBatchQuery(String question, BatchQueryRequest request,
                                            List<DocumentSegment> documents, String answer);
@@ -0,0 +1,43 @@
+package cn.mojoup.ai.rag.service;
+
+import cn.mojoup.ai.rag.domain.CitationQueryRequest;
+import cn.mojoup.ai.rag.domain.ConversationalQueryRequest;
+import cn.mojoup.ai.rag.domain.IntelligentQueryRequest;
+import cn.mojoup.ai.rag.domain.SimpleQueryRequest;
+import cn.mojoup.ai.rag.domain.SummaryQueryRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * RAG流式查询服务接口
+ * 以Server-Sent Events方式推送查询结果，事件顺序为：
+ * retrieval（检索结果）→ token（增量内容，多次）→ complete（统计信息），出错时推送 error
+ *
+ * @author matt
+ */
+public interface RagStreamingQueryService {
+
+    /**
+     * 流式简单查询
+     */
+    SseEmitter simpleQuery(SimpleQueryRequest request);
+
+    /**
+     * 流式对话式查询
+     */
+    SseEmitter conversationalQuery(ConversationalQueryRequest request);
+
+    /**
+     * 流式引用查询
+     */
+    SseEmitter citationQuery(CitationQueryRequest request);
+
+    /**
+     * 流式智能查询
+     */
+    SseEmitter intelligentQuery(IntelligentQueryRequest request);
+
+    /**
+     * 流式摘要查询
+     */
+    SseEmitter summaryQuery(SummaryQueryRequest request);
+}
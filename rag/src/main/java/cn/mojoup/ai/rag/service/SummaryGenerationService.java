@@ -1,6 +1,7 @@
 package cn.mojoup.ai.rag.service;
 
 import cn.mojoup.ai.rag.domain.DocumentSegment;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
@@ -32,4 +33,10 @@ public interface SummaryGenerationService {
      * 计算摘要质量分数
      */
     Double calculateSummaryQuality(String summary, String originalContent);
-} 
\ No newline at end of file
+
+    /**
+     * 流式生成摘要
+     */
+    Flux<String> streamSummary(String question, List<DocumentSegment> documents,
+                               String summaryType, Integer summaryLength, Double temperature);
+}
@@ -1,8 +1,10 @@
 package cn.mojoup.ai.rag.service;
 
 import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.pipeline.LatencyBudget;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 向量检索服务接口
@@ -26,4 +28,28 @@ public interface VectorSearchService {
                                          Double threshold,
                                          Boolean rerank);
 
+    /**
+     * 在给定的延迟预算内执行语义检索
+     * 启用重排序时，级联排序的各阶段仅在剩余预算足够时执行
+     */
+    List<DocumentSegment> semanticSearch(String query,
+                                         String knowledgeBaseId,
+                                         String embeddingModel,
+                                         Integer limit,
+                                         Double threshold,
+                                         Boolean rerank,
+                                         LatencyBudget budget);
+
+    /**
+     * 执行语义检索（不重排序），同时收集结果的向量
+     *
+     * @param embeddings 非null时按分块ID写入检索结果的向量，供级联排序的MMR阶段直接使用；取不到向量的检索方式不写入
+     */
+    List<DocumentSegment> semanticSearch(String query,
+                                         String knowledgeBaseId,
+                                         String embeddingModel,
+                                         Integer limit,
+                                         Double threshold,
+                                         Map<String, float[]> embeddings);
+
 } 
\ No newline at end of file
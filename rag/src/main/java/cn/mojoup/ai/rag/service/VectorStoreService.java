@@ -1,9 +1,11 @@
 package cn.mojoup.ai.rag.service;
 
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 向量存储服务接口
@@ -21,6 +23,18 @@ public interface VectorStoreService {
      */
     void addDocuments(List<Document> documents, String knowledgeBaseId);
 
+    /**
+     * 批量导入文档，用于大规模初始导入
+     * pgvector下先在事务外完成向量化，再通过二进制COPY写入，其他向量存储退化为{@link #addDocuments(List, String)}；
+     * addDocuments在单次文档数达到rag.vector.pgvector.bulk-load.min-documents时也会走该路径（不重建索引）
+     *
+     * @param documents 文档列表
+     * @param knowledgeBaseId 知识库ID
+     * @param rebuildIndex 是否在导入前删除向量索引、导入后重建（导入期间该表的检索会被阻塞）
+     * @return 写入的文档数
+     */
+    long bulkAddDocuments(List<Document> documents, String knowledgeBaseId, boolean rebuildIndex);
+
     /**
      * 删除文档
      *
@@ -56,9 +70,60 @@ public interface VectorStoreService {
      * @param topK 返回结果数量
      * @param similarityThreshold 相似度阈值
      * @return 相似文档列表
+     * @deprecated 使用 {@link #vectorSearch(EmbeddingVector, String, int, double, List)}
      */
+    @Deprecated
     List<Document> vectorSearch(List<Double> queryEmbedding, String knowledgeBaseId, int topK, double similarityThreshold);
 
+    /**
+     * 使用已计算的查询向量搜索，可只返回部分元数据字段
+     * 调用方可对同一向量在多个知识库、阈值下重复检索而无需再次向量化
+     *
+     * @param queryEmbedding 查询向量
+     * @param knowledgeBaseId 知识库ID
+     * @param topK 返回结果数量
+     * @param similarityThreshold 相似度阈值
+     * @param metadataKeys 需要返回的元数据字段，为空时返回全部元数据
+     * @return 相似文档列表，score为相似度，metadata中附带distance
+     */
+    List<Document> vectorSearch(EmbeddingVector queryEmbedding, String knowledgeBaseId, int topK,
+                                double similarityThreshold, List<String> metadataKeys);
+
+    /**
+     * 使用已计算的查询向量搜索，并按文档ID返回结果的向量，供后续排序阶段直接使用
+     *
+     * @param embeddings 非null时按文档ID写入结果的向量
+     */
+    List<Document> vectorSearch(EmbeddingVector queryEmbedding, String knowledgeBaseId, int topK,
+                                double similarityThreshold, List<String> metadataKeys,
+                                Map<String, float[]> embeddings);
+
+    /**
+     * 最大边际相关性检索
+     * 先按相似度取candidateCount个候选并连同其向量一起返回，再用MMR从中选出topK个，
+     * 剔除重叠分块造成的近似重复结果；候选向量直接取自向量库，不重新向量化
+     *
+     * @param queryEmbedding 查询向量
+     * @param knowledgeBaseId 知识库ID
+     * @param topK 返回结果数量
+     * @param candidateCount 候选数量，不小于topK
+     * @param lambda 相关度权重（0~1），1等同于普通相似度检索
+     * @param similarityThreshold 相似度阈值
+     * @param metadataKeys 需要返回的元数据字段，为空时返回全部元数据
+     * @return 按MMR选中顺序排列的文档，score仍为与查询的相似度
+     */
+    List<Document> mmrSearch(EmbeddingVector queryEmbedding, String knowledgeBaseId, int topK, int candidateCount,
+                             double lambda, double similarityThreshold, List<String> metadataKeys);
+
+    /**
+     * 最大边际相关性检索，并按文档ID返回全部候选的向量
+     *
+     * @param embeddings 非null时按文档ID写入候选的向量
+     */
+    List<Document> mmrSearch(EmbeddingVector queryEmbedding, String knowledgeBaseId, int topK, int candidateCount,
+                             double lambda, double similarityThreshold, List<String> metadataKeys,
+                             Map<String, float[]> embeddings);
+
     /**
      * 高级搜索
      *
@@ -101,18 +166,26 @@ public interface VectorStoreService {
 
     /**
      * 知识库统计信息
+     * documentCount为分块数，totalSize为字符数，fileCount为文档（文件）数
      */
     class KnowledgeBaseStats {
         private String knowledgeBaseId;
         private long documentCount;
         private long totalSize;
+        private long fileCount;
         private String createdAt;
         private String updatedAt;
 
         public KnowledgeBaseStats(String knowledgeBaseId, long documentCount, long totalSize, String createdAt, String updatedAt) {
+            this(knowledgeBaseId, documentCount, totalSize, 0L, createdAt, updatedAt);
+        }
+
+        public KnowledgeBaseStats(String knowledgeBaseId, long documentCount, long totalSize, long fileCount,
+                                  String createdAt, String updatedAt) {
             this.knowledgeBaseId = knowledgeBaseId;
             this.documentCount = documentCount;
             this.totalSize = totalSize;
+            this.fileCount = fileCount;
             this.createdAt = createdAt;
             this.updatedAt = updatedAt;
         }
@@ -123,6 +196,8 @@ public interface VectorStoreService {
         public void setDocumentCount(long documentCount) { this.documentCount = documentCount; }
         public long getTotalSize() { return totalSize; }
         public void setTotalSize(long totalSize) { this.totalSize = totalSize; }
+        public long getFileCount() { return fileCount; }
+        public void setFileCount(long fileCount) { this.fileCount = fileCount; }
         public String getCreatedAt() { return createdAt; }
         public void setCreatedAt(String createdAt) { this.createdAt = createdAt; }
         public String getUpdatedAt() { return updatedAt; }
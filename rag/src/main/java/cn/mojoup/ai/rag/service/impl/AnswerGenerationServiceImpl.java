@@ -4,7 +4,12 @@ import cn.mojoup.ai.rag.domain.ConversationMessage;
 import cn.mojoup.ai.rag.domain.DocumentSegment;
 import cn.mojoup.ai.rag.service.AnswerGenerationService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
@@ -17,9 +22,8 @@ import java.util.List;
 @Service
 public class AnswerGenerationServiceImpl implements AnswerGenerationService {
 
-    // TODO: 注入Spring AI相关组件
-    // @Autowired
-    // private ChatClient chatClient;
+    @Autowired
+    private ChatClient chatClient;
 
     @Override
     public String generateAnswer(String question, List<DocumentSegment> documents,
@@ -142,8 +146,76 @@ public class AnswerGenerationServiceImpl implements AnswerGenerationService {
         }
     }
 
+    // ==================== 流式生成 ====================
+
+    @Override
+    public Flux<String> streamAnswer(String question, List<DocumentSegment> documents,
+                                     Double temperature, Integer maxTokens) {
+        log.debug("流式生成答案: question={}, docCount={}, temperature={}",
+                  question, documents.size(), temperature);
+
+        return streamCompletion(buildPrompt(question, documents, "basic"), temperature, maxTokens);
+    }
+
+    @Override
+    public Flux<String> streamConversationalAnswer(String question, List<DocumentSegment> documents,
+                                                   List<ConversationMessage> history,
+                                                   Double temperature, Integer maxTokens) {
+        log.debug("流式生成对话式答案: question={}, historySize={}", question,
+                  history != null ? history.size() : 0);
+
+        return streamCompletion(buildConversationalPrompt(question, documents, history), temperature, maxTokens);
+    }
+
+    @Override
+    public Flux<String> streamOptimizedAnswer(String question, List<DocumentSegment> documents,
+                                              String intent, String strategy,
+                                              Double temperature, Integer maxTokens) {
+        log.debug("流式生成优化答案: intent={}, strategy={}", intent, strategy);
+
+        Double adjustedTemperature = adjustTemperatureByIntent(intent, temperature);
+
+        switch (strategy.toLowerCase()) {
+            case "detailed":
+                return streamCompletion(buildPrompt(question, documents, "detailed"),
+                                        adjustedTemperature, maxTokens);
+            case "concise":
+                return streamCompletion(buildPrompt(question, documents, "concise"),
+                                        adjustedTemperature, Math.min(maxTokens, 500));
+            default:
+                return streamCompletion(buildPrompt(question, documents, "basic"),
+                                        adjustedTemperature, maxTokens);
+        }
+    }
+
+    @Override
+    public Flux<String> streamAnswerWithCitations(String question, List<DocumentSegment> documents,
+                                                  String citationStyle, Boolean includePage,
+                                                  Double temperature, Integer maxTokens) {
+        log.debug("流式生成带引用的答案: citationStyle={}, includePage={}", citationStyle, includePage);
+
+        StringBuilder references = new StringBuilder("\n\n参考文献：\n");
+        for (int i = 0; i < documents.size(); i++) {
+            references.append(formatCitation(documents.get(i), citationStyle, includePage, i + 1)).append("\n");
+        }
+
+        return streamAnswer(question, documents, temperature, maxTokens)
+                .concatWith(Flux.just(references.toString()));
+    }
+
     // ==================== 私有辅助方法 ====================
 
+    private Flux<String> streamCompletion(String promptText, Double temperature, Integer maxTokens) {
+        ChatOptions options = ChatOptions.builder()
+                                         .temperature(temperature)
+                                         .maxTokens(maxTokens)
+                                         .build();
+
+        return chatClient.prompt(new Prompt(promptText, options))
+                         .stream()
+                         .content();
+    }
+
     private String buildConversationalPrompt(String question, List<DocumentSegment> documents,
                                              List<ConversationMessage> history) {
         StringBuilder prompt = new StringBuilder();
@@ -0,0 +1,189 @@
+package cn.mojoup.ai.rag.service.impl;
+
+import cn.mojoup.ai.rag.domain.BatchQueryItem;
+import cn.mojoup.ai.rag.domain.BatchQueryRequest;
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.service.AnswerGenerationService;
+import cn.mojoup.ai.rag.service.BatchQueryExecutionService;
+import cn.mojoup.ai.rag.service.RagAssistantService;
+import cn.mojoup.ai.rag.service.VectorSearchService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 批量查询执行服务实现类
+ * 在专用线程池上并发执行批量问题，按批次限制并发度，并受整批截止时间约束
+ *
+ * @author matt
+ */
+@Slf4j
+@Service
+public class BatchQueryExecutionServiceImpl implements BatchQueryExecutionService {
+
+    @Autowired
+    private VectorSearchService vectorSearchService;
+
+    @Autowired
+    private AnswerGenerationService answerGenerationService;
+
+    @Autowired
+    private RagAssistantService ragAssistantService;
+
+    @Autowired
+    @Qualifier("batchQueryExecutor")
+    private ThreadPoolTaskExecutor batchQueryExecutor;
+
+    @Value("${rag.query.batch.parallelism:8}")
+    private Integer parallelism;
+
+    @Value("${rag.query.batch.deadline-seconds:1800}")
+    private Long deadlineSeconds;
+
+    @Value("${rag.query.batch.temperature:0.7}")
+    private Double temperature;
+
+    @Value("${rag.query.batch.max-tokens:2000}")
+    private Integer maxTokens;
+
+    @Override
+    public List<BatchQueryItem> execute(BatchQueryRequest request) {
+        List<String> questions = request.getQuestions();
+        int total = questions.size();
+        int batchParallelism = Boolean.FALSE.equals(request.getParallel()) ? 1 : Math.max(1, parallelism);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(deadlineSeconds);
+
+        log.info("开始执行批量查询: total={}, parallelism={}, deadlineSeconds={}",
+                 total, batchParallelism, deadlineSeconds);
+
+        // 通过信号量限制单个批次的在途数量，避免一个大批次占满共享线程池
+        Semaphore permits = new Semaphore(batchParallelism);
+        List<Future<BatchQueryItem>> futures = new ArrayList<>(total);
+        BatchQueryItem[] results = new BatchQueryItem[total];
+
+        for (int i = 0; i < total; i++) {
+            String question = questions.get(i);
+            if (!acquireBeforeDeadline(permits, deadline)) {
+                results[i] = createErrorItem(question, "批量查询已超过截止时间，问题未执行", 0L);
+                futures.add(null);
+                continue;
+            }
+
+            long submittedAt = System.nanoTime();
+            try {
+                futures.add(batchQueryExecutor.submit(() -> {
+                    try {
+                        return processQuestion(question, request, submittedAt);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                permits.release();
+                log.error("批量查询任务提交失败: {}", question, e);
+                results[i] = createErrorItem(question, "任务提交失败: " + e.getMessage(), 0L);
+                futures.add(null);
+            }
+        }
+
+        for (int i = 0; i < total; i++) {
+            Future<BatchQueryItem> future = futures.get(i);
+            if (future == null) {
+                continue;
+            }
+            results[i] = awaitItem(future, questions.get(i), deadline);
+        }
+
+        return List.of(results);
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * 执行单个问题：检索 + 生成，分别记录各阶段的实际耗时
+     */
+    private BatchQueryItem processQuestion(String question, BatchQueryRequest request, long submittedAt) {
+        long startedAt = System.nanoTime();
+        long waitTime = elapsedMillis(submittedAt, startedAt);
+
+        try {
+            List<DocumentSegment> documents = vectorSearchService.search(
+                    question, request.getKnowledgeBaseId(),
+                    request.getLimit(), request.getSimilarityThreshold()
+            );
+            long retrievedAt = System.nanoTime();
+
+            String answer = answerGenerationService.generateAnswer(
+                    question, documents, temperature, maxTokens
+            );
+            long generatedAt = System.nanoTime();
+
+            BatchQueryItem item = ragAssistantService.processSingleBatchQuery(
+                    question, request, documents, answer
+            );
+            item.setWaitTime(waitTime);
+            item.setRetrievalTime(elapsedMillis(startedAt, retrievedAt));
+            item.setGenerationTime(elapsedMillis(retrievedAt, generatedAt));
+            item.setProcessingTime(elapsedMillis(startedAt, System.nanoTime()));
+            return item;
+
+        } catch (Exception e) {
+            log.error("批量查询中单个问题处理失败: {}", question, e);
+            BatchQueryItem errorItem = createErrorItem(question, e.getMessage(),
+                                                       elapsedMillis(startedAt, System.nanoTime()));
+            errorItem.setWaitTime(waitTime);
+            return errorItem;
+        }
+    }
+
+    private BatchQueryItem awaitItem(Future<BatchQueryItem> future, String question, long deadline) {
+        try {
+            long remaining = deadline - System.nanoTime();
+            return future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("批量查询中单个问题超过截止时间，已取消: {}", question);
+            return createErrorItem(question, "批量查询已超过截止时间，问题执行被取消", 0L);
+        } catch (ExecutionException e) {
+            return createErrorItem(question, e.getCause().getMessage(), 0L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return createErrorItem(question, "批量查询被中断", 0L);
+        }
+    }
+
+    private boolean acquireBeforeDeadline(Semaphore permits, long deadline) {
+        try {
+            long remaining = deadline - System.nanoTime();
+            return remaining > 0 && permits.tryAcquire(remaining, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private BatchQueryItem createErrorItem(String question, String errorMessage, Long processingTime) {
+        BatchQueryItem errorItem = new BatchQueryItem();
+        errorItem.setQuestion(question);
+        errorItem.setSuccess(false);
+        errorItem.setErrorMessage(errorMessage);
+        errorItem.setProcessingTime(processingTime);
+        return errorItem;
+    }
+
+    private long elapsedMillis(long fromNanos, long toNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(toNanos - fromNanos);
+    }
+}
@@ -0,0 +1,79 @@
+package cn.mojoup.ai.rag.service.impl;
+
+import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.rerank.OnnxCrossEncoder;
+import cn.mojoup.ai.rag.service.DocumentRerankService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 基于本地Cross-Encoder的文档重排序服务实现类
+ * 重排序策略为cross_encoder时替代基于对话模型的重排序，在本机CPU上推理，结果确定且无调用费用；
+ * 推理失败且启用降级时退回对话模型重排序
+ *
+ * @author matt
+ */
+@Slf4j
+@Primary
+@Service
+@ConditionalOnProperty(name = "rag.search.rerank.default-strategy", havingValue = "cross_encoder")
+public class CrossEncoderRerankServiceImpl implements DocumentRerankService {
+
+    @Autowired
+    private OnnxCrossEncoder crossEncoder;
+
+    @Autowired
+    private DocumentRerankServiceImpl chatModelRerankService;
+
+    @Value("${rag.search.rerank.enable-fallback:true}")
+    private Boolean enableFallback;
+
+    @Value("${rag.search.rerank.cross-encoder.content-truncate-length:300}")
+    private Integer contentTruncateLength;
+
+    @Override
+    public List<DocumentSegment> rerank(List<DocumentSegment> documents, String query) {
+        if (documents == null || documents.isEmpty()) {
+            return documents;
+        }
+        log.debug("执行Cross-Encoder重排序: query={}, documents={}", query, documents.size());
+
+        try {
+            List<String> passages = new ArrayList<>(documents.size());
+            for (DocumentSegment doc : documents) {
+                passages.add(truncate(doc.getContent()));
+            }
+            float[] scores = crossEncoder.score(query, passages);
+
+            List<DocumentSegment> reranked = new ArrayList<>(documents);
+            for (int i = 0; i < reranked.size(); i++) {
+                reranked.get(i).setScore((double) scores[i]);
+            }
+            reranked.sort(Comparator.comparingDouble(DocumentSegment::getScore).reversed());
+            return reranked;
+
+        } catch (Exception e) {
+            if (Boolean.TRUE.equals(enableFallback)) {
+                log.warn("Cross-Encoder重排序失败，降级到对话模型重排序: error={}", e.getMessage());
+                return chatModelRerankService.rerank(documents, query);
+            }
+            log.error("Cross-Encoder重排序失败，保持原有顺序", e);
+            return documents;
+        }
+    }
+
+    private String truncate(String content) {
+        if (content == null) {
+            return "";
+        }
+        return content.length() > contentTruncateLength ? content.substring(0, contentTruncateLength) : content;
+    }
+}
@@ -1,22 +1,35 @@
 package cn.mojoup.ai.rag.service.impl;
 
+import cn.mojoup.ai.rag.cache.RerankScoreCache;
+import cn.mojoup.ai.rag.concurrent.CancellableTasks;
 import cn.mojoup.ai.rag.domain.DocumentSegment;
 import cn.mojoup.ai.rag.service.DocumentRerankService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 文档重排序服务实现类
- * 集成Spring AI ChatModel，提供多种重排序策略
+ * 集成Spring AI ChatModel，按批打分：每次调用在一个提示词中评估一批文档并以JSON数组返回各自分数，
+ * 多个批次在专用线程池上并发执行。分数按（模型, 查询, 分块）缓存，重复查询的候选不再调用模型
  *
  * @author matt
  */
@@ -27,55 +40,203 @@ public class DocumentRerankServiceImpl implements DocumentRerankService {
     @Autowired
     private ChatClient chatClient;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RerankScoreCache rerankScoreCache;
+
+    @Autowired
+    @Qualifier("rerankExecutor")
+    private Executor rerankExecutor;
+
     @Value("${rag.rerank.model:gpt-3.5-turbo}")
     private String rerankModel;
 
     @Value("${rag.rerank.temperature:0.0}")
     private Double temperature;
 
+    /**
+     * 参与重排序的最大文档数，其余文档排在重排序结果之后
+     */
+    @Value("${rag.search.rerank.ai.max-documents:50}")
+    private Integer maxDocuments;
+
+    @Value("${rag.search.rerank.ai.content-truncate-length:200}")
+    private Integer contentTruncateLength;
+
+    /**
+     * 每次模型调用评估的文档数
+     */
+    @Value("${rag.search.rerank.ai.batch-size:10}")
+    private Integer batchSize;
+
+    @Value("${rag.search.rerank.ai.timeout-ms:15000}")
+    private Long batchTimeoutMs;
+
     private static final String RERANK_PROMPT_TEMPLATE = """
-            请评估以下文本与查询的相关性（0-1之间的分数）：
+            请评估以下每个文本片段与查询的相关性，为每个片段给出0-1之间的分数：
             查询：{query}
-            文本：{content}
-            只返回一个0-1之间的数字，不要其他内容。
+            文本片段：
+            {passages}
+            只返回一个JSON数组，每个片段对应一个元素，元素包含index（片段编号）和score（分数）两个字段，不要其他内容。
             """;
 
     @Override
     public List<DocumentSegment> rerank(List<DocumentSegment> documents, String query) {
-        log.debug("执行文档重排序: query={}, documents={}", query, documents.size());
+        return rerank(documents, query, 0L);
+    }
 
+    /**
+     * 在给定时间内重排序，供级联排序按请求剩余预算调用
+     * 有批次超出给定时间时抛出异常，而不是把其中的文档记0分排到末尾，由调用方保持原顺序
+     *
+     * @param timeoutMs 整体可用时间（毫秒），与单批次超时取较小者；小于等于0时只受单批次超时约束，超时批次记0分
+     */
+    public List<DocumentSegment> rerank(List<DocumentSegment> documents, String query, long timeoutMs) {
         if (documents == null || documents.isEmpty()) {
             return documents;
         }
+        log.debug("执行文档重排序: query={}, documents={}", query, documents.size());
 
-        // 使用交叉编码器计算相关性分数
-        for (DocumentSegment doc : documents) {
-            double relevanceScore = calculateRelevanceScore(query, doc.getContent());
-            doc.setScore(relevanceScore);
+        List<DocumentSegment> candidates = new ArrayList<>(documents.subList(0, Math.min(maxDocuments, documents.size())));
+        List<DocumentSegment> overflow = documents.subList(candidates.size(), documents.size());
+
+        // 命中缓存的候选直接复用分数
+        String queryHash = RerankScoreCache.hash(query);
+        Map<String, DocumentSegment> byKey = new LinkedHashMap<>();
+        for (DocumentSegment doc : candidates) {
+            byKey.putIfAbsent(cacheKey(doc), doc);
         }
+        Map<String, Double> scores = new HashMap<>(rerankScoreCache.getAll(rerankModel, queryHash, byKey.keySet()));
 
-        // 按分数降序排序
-        documents.sort(Comparator.comparingDouble(DocumentSegment::getScore).reversed());
+        List<String> pending = byKey.keySet().stream().filter(key -> !scores.containsKey(key)).toList();
+        if (!pending.isEmpty()) {
+            long batchTimeout = timeoutMs > 0 ? Math.min(batchTimeoutMs, timeoutMs) : batchTimeoutMs;
+            BatchScores computed = scoreInBatches(query, pending, byKey, batchTimeout);
+            rerankScoreCache.putAll(rerankModel, queryHash, computed.scores());
+            if (timeoutMs > 0 && computed.timedOut() > 0) {
+                throw new IllegalStateException(computed.timedOut() + " rerank batches exceeded the remaining "
+                                                + timeoutMs + "ms");
+            }
+            scores.putAll(computed.scores());
+        }
+        log.debug("文档重排序打分完成: candidates={}, cached={}, scored={}",
+                  byKey.size(), byKey.size() - pending.size(), pending.size());
 
-        return documents;
+        // 打分失败的文档记0分
+        for (DocumentSegment doc : candidates) {
+            doc.setScore(scores.getOrDefault(cacheKey(doc), 0.0));
+        }
+        candidates.sort(Comparator.comparingDouble(DocumentSegment::getScore).reversed());
+
+        // 超出上限的文档不参与打分，保持原有顺序排在最后
+        for (DocumentSegment doc : overflow) {
+            doc.setScore(0.0);
+            candidates.add(doc);
+        }
+        return candidates;
     }
 
-    private double calculateRelevanceScore(String query, String content) {
-        try {
-            // 构建提示词
-            SystemPromptTemplate promptTemplate = new SystemPromptTemplate(RERANK_PROMPT_TEMPLATE);
-            Prompt prompt = promptTemplate.create(Map.of(
-                    "query", query,
-                    "content", content
-            ));
+    /**
+     * 按批并发打分，超时、失败或线程池已满被拒绝的批次不返回分数
+     */
+    private BatchScores scoreInBatches(String query, List<String> keys, Map<String, DocumentSegment> byKey,
+                                       long timeoutMs) {
+        List<CompletableFuture<Map<String, Double>>> futures = new ArrayList<>();
+        for (int start = 0; start < keys.size(); start += batchSize) {
+            List<String> batch = keys.subList(start, Math.min(start + batchSize, keys.size()));
+            futures.add(CancellableTasks.supplyAsync(() -> scoreBatch(query, batch, byKey),
+                                                     rerankExecutor, timeoutMs));
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+        int timedOut = 0;
+        for (CompletableFuture<Map<String, Double>> future : futures) {
+            try {
+                scores.putAll(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    timedOut++;
+                    log.warn("重排序批次超时: timeoutMs={}", timeoutMs);
+                } else if (CancellableTasks.isRejected(e.getCause())) {
+                    log.warn("重排序线程池已满，批次未打分");
+                } else {
+                    log.error("重排序批次打分失败", e.getCause());
+                }
+            }
+        }
+        return new BatchScores(scores, timedOut);
+    }
+
+    /**
+     * 在一次模型调用中为一批文档打分
+     */
+    private Map<String, Double> scoreBatch(String query, List<String> keys, Map<String, DocumentSegment> byKey) {
+        StringBuilder passages = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            passages.append('[').append(i + 1).append("] ")
+                    .append(truncate(byKey.get(keys.get(i)).getContent()))
+                    .append('\n');
+        }
+
+        SystemPromptTemplate promptTemplate = new SystemPromptTemplate(RERANK_PROMPT_TEMPLATE);
+        Prompt prompt = promptTemplate.create(Map.of(
+                "query", query,
+                "passages", passages.toString()
+        ));
+        String response = chatClient.prompt(prompt).call().chatResponse().getResult().getOutput().getText();
 
-            // 调用AI模型获取相关性分数
-            String response = chatClient.prompt(prompt).call().chatResponse().getResult().getOutput().getText();
-            return Double.parseDouble(response.trim());
+        Map<String, Double> scores = new HashMap<>();
+        for (JsonNode item : parseScores(response)) {
+            int index = item.path("index").asInt(0);
+            JsonNode score = item.path("score");
+            if (index >= 1 && index <= keys.size() && score.isNumber()) {
+                scores.put(keys.get(index - 1), Math.max(0.0, Math.min(1.0, score.asDouble())));
+            }
+        }
+        if (scores.size() < keys.size()) {
+            log.warn("重排序响应缺少部分文档的分数: expected={}, actual={}", keys.size(), scores.size());
+        }
+        return scores;
+    }
 
+    /**
+     * 解析模型返回的JSON数组，容忍数组前后的说明文字或代码块标记
+     */
+    private JsonNode parseScores(String response) {
+        int start = response != null ? response.indexOf('[') : -1;
+        int end = response != null ? response.lastIndexOf(']') : -1;
+        if (start < 0 || end < start) {
+            throw new IllegalStateException("Rerank response is not a JSON array: " + response);
+        }
+        try {
+            return objectMapper.readTree(response.substring(start, end + 1));
         } catch (Exception e) {
-            log.error("计算相关性分数失败", e);
-            return 0.0;
+            throw new IllegalStateException("Failed to parse rerank response: " + response, e);
+        }
+    }
+
+    private String truncate(String content) {
+        if (content == null) {
+            return "";
         }
+        String singleLine = content.replaceAll("\\s+", " ").trim();
+        return singleLine.length() > contentTruncateLength
+               ? singleLine.substring(0, contentTruncateLength)
+               : singleLine;
+    }
+
+    /**
+     * 缓存键，分块没有ID时以内容摘要代替
+     */
+    private String cacheKey(DocumentSegment doc) {
+        return doc.getSegmentId() != null ? doc.getSegmentId() : "content:" + RerankScoreCache.hash(doc.getContent());
+    }
+
+    /**
+     * 各批次的打分结果及超时的批次数
+     */
+    private record BatchScores(Map<String, Double> scores, int timedOut) {
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,693 @@
+package cn.mojoup.ai.rag.service.impl;
+
+import cn.mojoup.ai.rag.cache.CachingEmbeddingModel;
+import cn.mojoup.ai.rag.cache.PersistentEmbeddingCache;
+import cn.mojoup.ai.rag.domain.EmbeddingMigrationStatus;
+import cn.mojoup.ai.rag.domain.EmbeddingMigrationStatus.MigrationState;
+import cn.mojoup.ai.rag.service.EmbeddingMigrationService;
+import cn.mojoup.ai.rag.store.SmallKnowledgeBaseSearcher;
+import com.pgvector.PGvector;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 嵌入迁移服务实现
+ * <ul>
+ *     <li>在向量表上增加影子列embedding_next，并建立仅覆盖未迁移行的部分索引</li>
+ *     <li>后台按ID顺序分批重新向量化写入影子列，每批提交后记录断点，按配置的速率限流</li>
+ *     <li>迁移状态保存在状态表中，重启后从断点继续；多节点通过租约保证同一时刻只有一个节点执行</li>
+ *     <li>覆盖率达到100%后先并发构建影子列的向量索引，再在一个事务内交换列名完成切换，
+ *         旧向量保留在embedding_prev列直到下一次迁移</li>
+ *     <li>各节点定时读取状态表，发现迁移已切换后将查询和入库使用的嵌入模型切换为目标模型</li>
+ *     <li>写入经过迁移屏障：与切换事务互斥，发现已切换则改用目标模型并拒绝旧模型的向量，避免其写进新列；
+ *         未切换时同时写入在事务外预先计算的影子列向量</li>
+ * </ul>
+ * 内容被更新的行由触发器清空影子列，批量导入等未双写的行同样由部分索引捕获并在后续批次中补齐。
+ * 模型以模型标识区分（同一模型指定不同输出维度视为不同模型），见{@link PersistentEmbeddingCache#modelKey}
+ *
+ * @author matt
+ */
+@Slf4j
+@Service
+public class EmbeddingMigrationServiceImpl implements EmbeddingMigrationService {
+
+    private static final int PGVECTOR_MAX_INDEX_DIMENSIONS = 2000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private PersistentEmbeddingCache persistentEmbeddingCache;
+
+    @Autowired
+    private SmallKnowledgeBaseSearcher smallKnowledgeBaseSearcher;
+
+    @Value("${rag.embedding.database.table-name:vector_store}")
+    private String tableName;
+
+    @Value("${rag.embedding.database.schema:public}")
+    private String schemaName;
+
+    @Value("${rag.embedding.migration.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${rag.embedding.migration.state-table:embedding_migration}")
+    private String stateTableName;
+
+    @Value("${rag.embedding.migration.batch-size:100}")
+    private Integer batchSize;
+
+    /**
+     * 每秒最多重新向量化的分块数
+     */
+    @Value("${rag.embedding.migration.rate-per-second:50}")
+    private Double ratePerSecond;
+
+    /**
+     * 执行节点的租约时长，节点宕机超过该时长后其他节点接管
+     */
+    @Value("${rag.embedding.migration.lease-seconds:60}")
+    private Integer leaseSeconds;
+
+    @Value("${rag.vector.pgvector.hnsw.m:16}")
+    private Integer hnswM;
+
+    @Value("${rag.vector.pgvector.hnsw.ef-construction:64}")
+    private Integer hnswEfConstruction;
+
+    private final String workerId = UUID.randomUUID().toString();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile boolean ready;
+
+    private String idCast = "";
+
+    private ExecutorService worker;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!Boolean.TRUE.equals(enabled)) {
+            log.info("嵌入迁移已禁用");
+            return;
+        }
+
+        try {
+            jdbcTemplate.execute(String.format(
+                    "CREATE TABLE IF NOT EXISTS %s (" +
+                    "id bigserial PRIMARY KEY, " +
+                    "source_model text NOT NULL, " +
+                    "target_model text NOT NULL, " +
+                    "target_dimensions integer NOT NULL, " +
+                    "request_dimensions boolean NOT NULL DEFAULT false, " +
+                    "status text NOT NULL, " +
+                    "migrated bigint NOT NULL DEFAULT 0, " +
+                    "last_id text, " +
+                    "error text, " +
+                    "worker_id text, " +
+                    "heartbeat_at timestamptz, " +
+                    "started_at timestamptz NOT NULL DEFAULT now(), " +
+                    "updated_at timestamptz NOT NULL DEFAULT now(), " +
+                    "switched_at timestamptz)",
+                    stateTable()));
+
+            List<String> idTypes = jdbcTemplate.queryForList(
+                    "SELECT udt_name FROM information_schema.columns " +
+                    "WHERE table_schema = ? AND table_name = ? AND column_name = 'id'",
+                    String.class, schemaName, tableName);
+            idCast = idTypes.contains("uuid") ? "::uuid" : "";
+
+            worker = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("rag-embedding-migration-"));
+            ready = true;
+            syncActiveModel();
+
+        } catch (Exception e) {
+            log.error("嵌入迁移初始化失败: table={}", stateTable(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+    }
+
+    @Override
+    public synchronized EmbeddingMigrationStatus start(String targetModel, Integer dimensions) {
+        requireReady();
+        if (!StringUtils.hasText(targetModel)) {
+            throw new IllegalArgumentException("Target model cannot be empty");
+        }
+
+        MigrationRecord latest = latestRecord();
+        if (latest != null && !MigrationState.SWITCHED.name().equals(latest.status())) {
+            throw new IllegalStateException("Embedding migration " + latest.id() + " is " + latest.status()
+                                            + ", resume it or wait until it switches");
+        }
+
+        String sourceModel = activeModelKey();
+        String targetKey = PersistentEmbeddingCache.modelKey(targetModel, dimensions);
+        if (targetKey.equals(sourceModel)) {
+            throw new IllegalArgumentException("Target model is already active: " + targetKey);
+        }
+
+        int targetDimensions = dimensions != null
+                               ? dimensions
+                               : embedWithTarget(List.of("dimension probe"), targetModel, null).get(0).length;
+
+        String table = qualifiedTable();
+        jdbcTemplate.execute(String.format("DROP TRIGGER IF EXISTS %s ON %s", resetTrigger(), table));
+        jdbcTemplate.execute(String.format("ALTER TABLE %s DROP COLUMN IF EXISTS embedding_prev", table));
+        jdbcTemplate.execute(String.format("ALTER TABLE %s DROP COLUMN IF EXISTS embedding_next", table));
+        jdbcTemplate.execute(String.format("ALTER TABLE %s ADD COLUMN embedding_next vector(%d)", table, targetDimensions));
+        // 按ID覆盖写入（upsert）只更新embedding列，内容变化时清空影子列，由后续批次按新内容重新向量化
+        jdbcTemplate.execute(String.format(
+                "CREATE OR REPLACE FUNCTION %s.%s() RETURNS trigger AS $$ " +
+                "BEGIN NEW.embedding_next := NULL; RETURN NEW; END $$ LANGUAGE plpgsql",
+                schemaName, resetTrigger()));
+        jdbcTemplate.execute(String.format(
+                "CREATE TRIGGER %2$s BEFORE UPDATE OF content ON %1$s FOR EACH ROW " +
+                "WHEN (OLD.content IS DISTINCT FROM NEW.content) EXECUTE FUNCTION %3$s.%2$s()",
+                table, resetTrigger(), schemaName));
+        // 部分索引只包含未迁移的行，行写入影子列后自动移出，取批次和统计剩余量都只扫描剩余部分
+        jdbcTemplate.execute(String.format(
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS %s_embedding_next_pending_idx ON %s (id) " +
+                "WHERE embedding_next IS NULL", tableName, table));
+
+        jdbcTemplate.update(String.format(
+                "INSERT INTO %s (source_model, target_model, target_dimensions, request_dimensions, status) " +
+                "VALUES (?, ?, ?, ?, ?)", stateTable()),
+                sourceModel, targetModel, targetDimensions, dimensions != null, MigrationState.RUNNING.name());
+
+        log.info("嵌入迁移已启动: sourceModel={}, targetModel={}, dimensions={}, pending={}",
+                 sourceModel, targetModel, targetDimensions, countPending());
+        launch();
+        return getStatus();
+    }
+
+    @Override
+    public EmbeddingMigrationStatus pause() {
+        requireReady();
+        jdbcTemplate.update(String.format(
+                "UPDATE %s SET status = ?, worker_id = NULL, updated_at = now() WHERE status = ?", stateTable()),
+                MigrationState.PAUSED.name(), MigrationState.RUNNING.name());
+        log.info("嵌入迁移已暂停");
+        return getStatus();
+    }
+
+    @Override
+    public EmbeddingMigrationStatus resume() {
+        requireReady();
+        int updated = jdbcTemplate.update(String.format(
+                "UPDATE %s SET status = ?, error = NULL, updated_at = now() WHERE status IN (?, ?)", stateTable()),
+                MigrationState.RUNNING.name(), MigrationState.PAUSED.name(), MigrationState.FAILED.name());
+        if (updated > 0) {
+            log.info("嵌入迁移已恢复");
+            launch();
+        }
+        return getStatus();
+    }
+
+    @Override
+    public EmbeddingMigrationStatus getStatus() {
+        requireReady();
+        MigrationRecord record = latestRecord();
+        if (record == null) {
+            return null;
+        }
+
+        long pending = MigrationState.SWITCHED.name().equals(record.status()) ? 0L : countPending();
+        long migrated = record.migrated();
+        return EmbeddingMigrationStatus.builder()
+                                       .migrationId(record.id())
+                                       .sourceModel(record.sourceModel())
+                                       .targetModel(record.targetModel())
+                                       .targetDimensions(record.targetDimensions())
+                                       .state(MigrationState.valueOf(record.status()))
+                                       .migrated(migrated)
+                                       .pending(pending)
+                                       .coverage(migrated + pending > 0 ? (double) migrated / (migrated + pending) : 1.0)
+                                       .checkpoint(record.lastId())
+                                       .error(record.error())
+                                       .activeModel(activeModelKey())
+                                       .startedAt(toLocalDateTime(record.startedAt()))
+                                       .updatedAt(toLocalDateTime(record.updatedAt()))
+                                       .switchedAt(toLocalDateTime(record.switchedAt()))
+                                       .build();
+    }
+
+    /**
+     * 同步各节点的读路径：迁移已切换则改用目标模型；迁移进行中且租约过期则接管执行
+     */
+    @Scheduled(fixedDelayString = "${rag.embedding.migration.sync-interval-ms:10000}")
+    public void syncActiveModel() {
+        if (!ready) {
+            return;
+        }
+
+        try {
+            MigrationRecord latest = latestRecord();
+            if (latest == null) {
+                return;
+            }
+
+            if (MigrationState.SWITCHED.name().equals(latest.status())) {
+                String activeModel = activeModelKey();
+                if (latest.sourceModel().equals(activeModel)) {
+                    applyModel(latest);
+                } else if (!latest.targetKey().equals(activeModel)) {
+                    log.warn("当前嵌入模型与最近一次迁移的目标模型不一致，请确认配置: active={}, migrated={}",
+                             activeModel, latest.targetKey());
+                }
+            } else if (MigrationState.RUNNING.name().equals(latest.status())) {
+                launch();
+            }
+        } catch (Exception e) {
+            log.warn("同步嵌入迁移状态失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public ShadowVectors embedShadowVectors(List<Document> documents) {
+        if (!ready) {
+            return null;
+        }
+        MigrationRecord latest = latestRecord();
+        if (latest == null || MigrationState.SWITCHED.name().equals(latest.status())) {
+            return null;
+        }
+
+        List<String> ids = new ArrayList<>(documents.size());
+        List<String> texts = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            if (StringUtils.hasText(document.getText())) {
+                ids.add(document.getId());
+                texts.add(document.getText());
+            }
+        }
+        if (texts.isEmpty()) {
+            return null;
+        }
+
+        List<float[]> vectors;
+        try {
+            vectors = embedWithTarget(texts, latest.targetModel(), latest.requestedDimensions());
+        } catch (Exception e) {
+            log.warn("嵌入迁移双写向量化失败，由后台迁移补齐: migrationId={}, size={}, error={}",
+                     latest.id(), texts.size(), e.getMessage());
+            return null;
+        }
+        Map<String, float[]> shadow = new LinkedHashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            shadow.put(ids.get(i), vectors.get(i));
+        }
+        return new ShadowVectors(latest.id(), shadow);
+    }
+
+    @Override
+    public void writeFenced(String embeddedModel, ShadowVectors shadowVectors, Runnable write) {
+        if (!ready) {
+            write.run();
+            return;
+        }
+
+        // 与切换事务的SHARE ROW EXCLUSIVE锁互斥：切换已提交则下面读到SWITCHED，否则切换须等本次写入提交
+        jdbcTemplate.execute(String.format("LOCK TABLE %s IN ROW EXCLUSIVE MODE", qualifiedTable()));
+        MigrationRecord latest = latestRecord();
+        if (latest == null) {
+            write.run();
+            return;
+        }
+
+        if (MigrationState.SWITCHED.name().equals(latest.status())) {
+            if (latest.sourceModel().equals(activeModelKey())) {
+                applyModel(latest);
+            }
+            if (latest.sourceModel().equals(embeddedModel)) {
+                throw new IllegalStateException("Embedding model switched to " + latest.targetKey()
+                                                + " after documents were embedded with " + embeddedModel
+                                                + ", embed them again");
+            }
+            write.run();
+            return;
+        }
+
+        write.run();
+        if (shadowVectors != null && shadowVectors.migrationId() == latest.id()) {
+            dualWrite(shadowVectors);
+        }
+    }
+
+    // ==================== 迁移执行 ====================
+
+    private void launch() {
+        if (worker != null && running.compareAndSet(false, true)) {
+            worker.submit(this::runMigration);
+        }
+    }
+
+    private void runMigration() {
+        MigrationRecord record = null;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                record = latestRecord();
+                if (record == null || !MigrationState.RUNNING.name().equals(record.status()) || !claimLease(record)) {
+                    return;
+                }
+
+                long batchStart = System.currentTimeMillis();
+                int processed = migrateBatch(record);
+                if (processed == 0) {
+                    if (trySwitch(record)) {
+                        return;
+                    }
+                    continue;
+                }
+                throttle(processed, batchStart);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("嵌入迁移失败，可从断点恢复: migrationId={}", record != null ? record.id() : null, e);
+            if (record != null) {
+                jdbcTemplate.update(String.format(
+                        "UPDATE %s SET status = ?, error = ?, worker_id = NULL, updated_at = now() WHERE id = ?",
+                        stateTable()), MigrationState.FAILED.name(), e.getMessage(), record.id());
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 以条件更新获取或续期执行租约，租约被其他存活节点持有时返回false
+     */
+    private boolean claimLease(MigrationRecord record) {
+        int claimed = jdbcTemplate.update(String.format(
+                "UPDATE %s SET worker_id = ?, heartbeat_at = now() WHERE id = ? AND status = ? " +
+                "AND (worker_id IS NULL OR worker_id = ? OR heartbeat_at < now() - make_interval(secs => ?))",
+                stateTable()), workerId, record.id(), MigrationState.RUNNING.name(), workerId, leaseSeconds);
+        return claimed > 0;
+    }
+
+    /**
+     * 迁移断点之后的一批分块
+     *
+     * @return 本批处理的分块数，为0表示断点之后已无未迁移的行
+     */
+    private int migrateBatch(MigrationRecord record) {
+        String table = qualifiedTable();
+        boolean fromStart = record.lastId() == null;
+        String sql = String.format(
+                "SELECT id::text AS id, content FROM %s WHERE embedding_next IS NULL AND content <> '' %s " +
+                "ORDER BY id LIMIT ?", table, fromStart ? "" : "AND id > ?" + idCast);
+        List<Map<String, Object>> rows = fromStart
+                                         ? jdbcTemplate.queryForList(sql, batchSize)
+                                         : jdbcTemplate.queryForList(sql, record.lastId(), batchSize);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        List<String> ids = new ArrayList<>(rows.size());
+        List<String> texts = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            ids.add((String) row.get("id"));
+            texts.add((String) row.get("content"));
+        }
+        List<float[]> vectors = embedWithTarget(texts, record.targetModel(), record.requestedDimensions());
+
+        String lastId = ids.get(ids.size() - 1);
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Object[]> args = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                args.add(new Object[]{new PGvector(vectors.get(i)), ids.get(i), texts.get(i)});
+            }
+            // 向量化期间被覆盖写入的行内容已变化，跳过，由双写或后续批次按新内容补齐
+            int[] updated = jdbcTemplate.batchUpdate(String.format(
+                    "UPDATE %s SET embedding_next = ? WHERE id = ?%s AND embedding_next IS NULL AND content = ?",
+                    table, idCast), args);
+            jdbcTemplate.update(String.format(
+                    "UPDATE %s SET migrated = migrated + ?, last_id = ?, updated_at = now() WHERE id = ?",
+                    stateTable()), Arrays.stream(updated).filter(count -> count > 0).count(), lastId, record.id());
+        });
+
+        log.debug("嵌入迁移批次完成: migrationId={}, batch={}, checkpoint={}", record.id(), ids.size(), lastId);
+        return ids.size();
+    }
+
+    /**
+     * 断点之后已无未迁移行时尝试切换；断点之前仍有迁移期间新写入的行则重置断点再扫一轮
+     */
+    private boolean trySwitch(MigrationRecord record) {
+        if (countPending() > 0) {
+            jdbcTemplate.update(String.format("UPDATE %s SET last_id = NULL WHERE id = ?", stateTable()), record.id());
+            return false;
+        }
+
+        String table = qualifiedTable();
+        boolean halfvecIndex = record.targetDimensions() > PGVECTOR_MAX_INDEX_DIMENSIONS;
+        String nextIndex = tableName + (halfvecIndex ? "_embedding_next_halfvec_hnsw_idx" : "_embedding_next_hnsw_idx");
+        // 在切换前并发建索引，切换事务只做元数据变更
+        jdbcTemplate.execute(halfvecIndex
+                             ? String.format("CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON %s USING hnsw " +
+                                             "((embedding_next::halfvec(%d)) halfvec_cosine_ops) WITH (m = %d, ef_construction = %d)",
+                                             nextIndex, table, record.targetDimensions(), hnswM, hnswEfConstruction)
+                             : String.format("CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON %s USING hnsw " +
+                                             "(embedding_next vector_cosine_ops) WITH (m = %d, ef_construction = %d)",
+                                             nextIndex, table, hnswM, hnswEfConstruction));
+
+        Boolean switched = transactionTemplate.execute(status -> {
+            // 阻塞写入但不阻塞检索，确认建索引期间没有新的未迁移行
+            jdbcTemplate.execute(String.format("LOCK TABLE %s IN SHARE ROW EXCLUSIVE MODE", table));
+            if (countPending() > 0) {
+                return false;
+            }
+
+            List<String> oldIndexes = jdbcTemplate.queryForList(
+                    "SELECT indexname FROM pg_indexes WHERE schemaname = ? AND tablename = ? " +
+                    "AND (indexdef ILIKE '%USING hnsw%' OR indexdef ILIKE '%USING ivfflat%') " +
+                    "AND indexdef NOT ILIKE '%embedding_next%'",
+                    String.class, schemaName, tableName);
+            for (String index : oldIndexes) {
+                jdbcTemplate.execute(String.format("DROP INDEX %s.%s", schemaName, index));
+            }
+
+            // 触发器引用影子列，须在列改名前删除
+            jdbcTemplate.execute(String.format("DROP TRIGGER IF EXISTS %s ON %s", resetTrigger(), table));
+            jdbcTemplate.execute(String.format("ALTER TABLE %s RENAME COLUMN embedding TO embedding_prev", table));
+            jdbcTemplate.execute(String.format("ALTER TABLE %s ALTER COLUMN embedding_prev DROP NOT NULL", table));
+            jdbcTemplate.execute(String.format("ALTER TABLE %s RENAME COLUMN embedding_next TO embedding", table));
+            jdbcTemplate.execute(String.format("ALTER INDEX %s.%s RENAME TO %s", schemaName, nextIndex,
+                                               nextIndex.replace("_embedding_next_", "_embedding_")));
+            jdbcTemplate.execute(String.format("DROP INDEX IF EXISTS %s.%s_embedding_next_pending_idx",
+                                               schemaName, tableName));
+
+            jdbcTemplate.update(String.format(
+                    "UPDATE %s SET status = ?, worker_id = NULL, switched_at = now(), updated_at = now() WHERE id = ?",
+                    stateTable()), MigrationState.SWITCHED.name(), record.id());
+            return true;
+        });
+
+        if (!Boolean.TRUE.equals(switched)) {
+            return false;
+        }
+
+        // 本节点在提交与此之间的写入由写入屏障先行切换模型
+        applyModel(record);
+        log.info("嵌入迁移完成并已切换读路径: sourceModel={}, targetModel={}, dimensions={}, migrated={}",
+                 record.sourceModel(), record.targetModel(), record.targetDimensions(), record.migrated());
+        log.warn("请将嵌入模型及向量维度配置更新为{} / {}，旧向量保留在embedding_prev列直到下一次迁移{}",
+                 record.targetModel(), record.targetDimensions(),
+                 halfvecIndex ? "；目标维度超过" + PGVECTOR_MAX_INDEX_DIMENSIONS + "，需将检索量化方式配置为halfvec" : "");
+        return true;
+    }
+
+    private void throttle(int processed, long batchStart) throws InterruptedException {
+        if (ratePerSecond == null || ratePerSecond <= 0) {
+            return;
+        }
+        long minMillis = (long) (processed * 1000 / ratePerSecond);
+        long elapsed = System.currentTimeMillis() - batchStart;
+        if (elapsed < minMillis) {
+            Thread.sleep(minMillis - elapsed);
+        }
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * 把预先计算的影子列向量写入刚写入的文档，只执行UPDATE，不在事务内调用远程模型
+     */
+    private void dualWrite(ShadowVectors shadowVectors) {
+        List<Object[]> args = new ArrayList<>(shadowVectors.vectors().size());
+        shadowVectors.vectors().forEach((id, vector) -> args.add(new Object[]{new PGvector(vector), id}));
+        jdbcTemplate.batchUpdate(String.format(
+                "UPDATE %s SET embedding_next = ? WHERE id = ?%s", qualifiedTable(), idCast), args);
+    }
+
+    /**
+     * 使用目标模型向量化，优先复用持久化嵌入缓存，结果写回缓存供切换后的入库复用
+     */
+    private List<float[]> embedWithTarget(List<String> texts, String targetModel, Integer dimensions) {
+        String modelKey = PersistentEmbeddingCache.modelKey(targetModel, dimensions);
+        float[][] vectors = persistentEmbeddingCache.isAvailable()
+                            ? persistentEmbeddingCache.getAll(modelKey, texts)
+                            : new float[texts.size()][];
+
+        List<Integer> missIndexes = new ArrayList<>();
+        List<String> missTexts = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (vectors[i] == null) {
+                missIndexes.add(i);
+                missTexts.add(texts.get(i));
+            }
+        }
+
+        if (!missTexts.isEmpty()) {
+            EmbeddingOptionsBuilder options = EmbeddingOptionsBuilder.builder().withModel(targetModel);
+            if (dimensions != null) {
+                options.withDimensions(dimensions);
+            }
+            EmbeddingResponse response = targetDelegate().call(new EmbeddingRequest(missTexts, options.build()));
+            List<Embedding> results = response.getResults();
+            if (results.size() != missTexts.size()) {
+                throw new IllegalStateException("Embedding result count mismatch: expected " + missTexts.size()
+                                                + ", got " + results.size());
+            }
+
+            List<float[]> loaded = new ArrayList<>(missTexts.size());
+            for (int i = 0; i < results.size(); i++) {
+                Embedding embedding = results.get(i);
+                int index = embedding.getIndex() != null ? embedding.getIndex() : i;
+                vectors[missIndexes.get(index)] = embedding.getOutput();
+            }
+            missIndexes.forEach(index -> loaded.add(vectors[index]));
+            if (persistentEmbeddingCache.isAvailable()) {
+                persistentEmbeddingCache.putAll(modelKey, missTexts, loaded);
+            }
+        }
+
+        return List.of(vectors);
+    }
+
+    /**
+     * 绕过缓存装饰器的底层模型，避免以当前模型名读写缓存
+     */
+    private EmbeddingModel targetDelegate() {
+        return embeddingModel instanceof CachingEmbeddingModel caching ? caching.getDelegate() : embeddingModel;
+    }
+
+    private String activeModelKey() {
+        return embeddingModel instanceof CachingEmbeddingModel caching ? caching.getModelKey() : "default";
+    }
+
+    private void applyModel(MigrationRecord record) {
+        if (embeddingModel instanceof CachingEmbeddingModel caching) {
+            caching.switchModel(record.targetModel(), record.requestedDimensions());
+        }
+        smallKnowledgeBaseSearcher.invalidateAll();
+        log.info("嵌入模型已切换: model={}", record.targetKey());
+    }
+
+    private long countPending() {
+        Long pending = jdbcTemplate.queryForObject(String.format(
+                "SELECT COUNT(*) FROM %s WHERE embedding_next IS NULL AND content <> ''", qualifiedTable()), Long.class);
+        return pending != null ? pending : 0L;
+    }
+
+    private MigrationRecord latestRecord() {
+        List<MigrationRecord> records = jdbcTemplate.query(String.format(
+                "SELECT * FROM %s ORDER BY id DESC LIMIT 1", stateTable()), this::mapRecord);
+        return records.isEmpty() ? null : records.get(0);
+    }
+
+    private MigrationRecord mapRecord(ResultSet rs, int rowNum) throws SQLException {
+        return new MigrationRecord(rs.getLong("id"),
+                                   rs.getString("source_model"),
+                                   rs.getString("target_model"),
+                                   rs.getInt("target_dimensions"),
+                                   rs.getBoolean("request_dimensions"),
+                                   rs.getString("status"),
+                                   rs.getLong("migrated"),
+                                   rs.getString("last_id"),
+                                   rs.getString("error"),
+                                   rs.getTimestamp("started_at"),
+                                   rs.getTimestamp("updated_at"),
+                                   rs.getTimestamp("switched_at"));
+    }
+
+    private void requireReady() {
+        if (!ready) {
+            throw new IllegalStateException("Embedding migration is not available");
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    private String qualifiedTable() {
+        return schemaName + "." + tableName;
+    }
+
+    private String stateTable() {
+        return schemaName + "." + stateTableName;
+    }
+
+    private String resetTrigger() {
+        return tableName + "_reset_embedding_next";
+    }
+
+    /**
+     * 状态表中的一次迁移，sourceModel为启动时的模型标识
+     */
+    private record MigrationRecord(long id, String sourceModel, String targetModel, int targetDimensions,
+                                   boolean requestDimensions, String status, long migrated, String lastId,
+                                   String error, Timestamp startedAt, Timestamp updatedAt, Timestamp switchedAt) {
+
+        Integer requestedDimensions() {
+            return requestDimensions ? targetDimensions : null;
+        }
+
+        String targetKey() {
+            return PersistentEmbeddingCache.modelKey(targetModel, requestedDimensions());
+        }
+    }
+}
@@ -1,16 +1,17 @@
 package cn.mojoup.ai.rag.service.impl;
 
+import cn.mojoup.ai.rag.embedding.EmbeddingBatchScheduler;
+import cn.mojoup.ai.rag.embedding.EmbeddingResult;
 import cn.mojoup.ai.rag.service.EmbeddingService;
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.embedding.EmbeddingRequest;
-import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 /**
@@ -23,7 +24,7 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class EmbeddingServiceImpl implements EmbeddingService {
 
-    private final EmbeddingModel embeddingModel;
+    private final EmbeddingBatchScheduler embeddingBatchScheduler;
 
     // 支持的模型配置
     private static final Map<String, ModelConfig> MODEL_CONFIGS = Map.of(
@@ -35,111 +36,83 @@ public class EmbeddingServiceImpl implements EmbeddingService {
     );
 
     @Override
-    public List<Double> embedDocument(Document document, String model) {
+    public EmbeddingVector embedVector(String text, String model) {
         validateModel(model);
-        
-        if (document == null || !StringUtils.hasText(document.getText())) {
-            throw new IllegalArgumentException("Document content cannot be empty");
+
+        if (!StringUtils.hasText(text)) {
+            throw new IllegalArgumentException("Text cannot be empty");
         }
 
         try {
-            log.debug("Embedding document with model: {}", model);
-            return embedText(document.getText(), model);
-        } catch (Exception e) {
-            log.error("Failed to embed document with model: {}", model, e);
-            throw new RuntimeException("Failed to embed document: " + e.getMessage(), e);
+            log.debug("Embedding text (length: {}) with model: {}", text.length(), model);
+
+            // 与并发请求中的单条文本合并为微批次
+            return embeddingBatchScheduler.submit(text).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("Failed to embed text with model: {}", model, cause);
+            throw new RuntimeException("Failed to embed text: " + cause.getMessage(), cause);
         }
     }
 
     @Override
-    public List<List<Double>> embedDocuments(List<Document> documents, String model) {
+    public List<EmbeddingVector> embedVectors(List<String> texts, String model) {
         validateModel(model);
-        
-        if (documents == null || documents.isEmpty()) {
+
+        if (texts == null || texts.isEmpty()) {
             return new ArrayList<>();
         }
 
-        try {
-            log.debug("Embedding {} documents with model: {}", documents.size(), model);
-            
-            List<String> texts = documents.stream()
-                    .map(Document::getText)
-                    .filter(StringUtils::hasText)
-                    .collect(Collectors.toList());
-            
-            return embedTexts(texts, model);
-        } catch (Exception e) {
-            log.error("Failed to embed documents with model: {}", model, e);
-            throw new RuntimeException("Failed to embed documents: " + e.getMessage(), e);
-        }
-    }
+        List<String> validTexts = texts.stream()
+                .filter(StringUtils::hasText)
+                .collect(Collectors.toList());
 
-    @Override
-    public List<Double> embedText(String text, String model) {
-        validateModel(model);
-        
-        if (!StringUtils.hasText(text)) {
-            throw new IllegalArgumentException("Text cannot be empty");
+        if (validTexts.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        try {
-            log.debug("Embedding text (length: {}) with model: {}", text.length(), model);
-            
-            EmbeddingRequest request = new EmbeddingRequest(Collections.singletonList(text), null);
-            EmbeddingResponse response = embeddingModel.call(request);
-            
-            if (response.getResults().isEmpty()) {
-                throw new RuntimeException("No embedding results returned");
-            }
-            
-            float[] embedding = response.getResults().get(0).getOutput();
-            List<Double> result = new ArrayList<>();
-            for (float f : embedding) {
-                result.add((double) f);
+        log.debug("Embedding {} texts with model: {}", validTexts.size(), model);
+
+        List<EmbeddingResult> results = embeddingBatchScheduler.embedAll(validTexts);
+        List<EmbeddingVector> vectors = new ArrayList<>(results.size());
+        for (EmbeddingResult result : results) {
+            if (!result.isSuccess()) {
+                log.error("Failed to embed texts with model: {}, error={}", model, result.getErrorMessage());
+                throw new RuntimeException("Failed to embed texts: " + result.getErrorMessage());
             }
-            return result;
-        } catch (Exception e) {
-            log.error("Failed to embed text with model: {}", model, e);
-            throw new RuntimeException("Failed to embed text: " + e.getMessage(), e);
+            vectors.add(result.getVector());
         }
+        return vectors;
     }
 
     @Override
-    public List<List<Double>> embedTexts(List<String> texts, String model) {
+    public List<EmbeddingResult> embedVectorResults(List<String> texts, String model) {
         validateModel(model);
-        
+
         if (texts == null || texts.isEmpty()) {
             return new ArrayList<>();
         }
 
-        try {
-            log.debug("Embedding {} texts with model: {}", texts.size(), model);
-            
-            List<String> validTexts = texts.stream()
-                    .filter(StringUtils::hasText)
-                    .collect(Collectors.toList());
-            
-            if (validTexts.isEmpty()) {
-                return new ArrayList<>();
-            }
-            
-            EmbeddingRequest request = new EmbeddingRequest(validTexts, null);
-            EmbeddingResponse response = embeddingModel.call(request);
-            
-            return response.getResults().stream()
-                    .map(result -> {
-                        float[] embedding = result.getOutput();
-                        List<Double> doubleList = new ArrayList<>();
-                        for (float f : embedding) {
-                            doubleList.add((double) f);
-                        }
-                        return doubleList;
-                    })
-                    .collect(Collectors.toList());
-        } catch (Exception e) {
-            log.error("Failed to embed texts with model: {}", model, e);
-            throw new RuntimeException("Failed to embed texts: " + e.getMessage(), e);
+        log.debug("Embedding {} texts with isolated results, model: {}", texts.size(), model);
+        return embeddingBatchScheduler.embedAll(texts);
+    }
+
+    @Override
+    public List<EmbeddingVector> embedDocumentVectors(List<Document> documents, String model) {
+        validateModel(model);
+
+        if (documents == null || documents.isEmpty()) {
+            return new ArrayList<>();
         }
+
+        log.debug("Embedding {} documents with model: {}", documents.size(), model);
+
+        List<String> texts = documents.stream()
+                .map(Document::getText)
+                .filter(StringUtils::hasText)
+                .collect(Collectors.toList());
+
+        return embedVectors(texts, model);
     }
 
     @Override
@@ -1,22 +1,46 @@
 package cn.mojoup.ai.rag.service.impl;
 
+import cn.mojoup.ai.rag.concurrent.CancellableTasks;
 import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.domain.HybridSearchResult;
+import cn.mojoup.ai.rag.pipeline.CascadeRankingPipeline;
+import cn.mojoup.ai.rag.pipeline.CascadeResult;
+import cn.mojoup.ai.rag.pipeline.LatencyBudget;
 import cn.mojoup.ai.rag.service.DocumentRerankService;
 import cn.mojoup.ai.rag.service.HybridSearchService;
 import cn.mojoup.ai.rag.service.KeywordSearchService;
 import cn.mojoup.ai.rag.service.VectorSearchService;
+import cn.mojoup.ai.rag.store.HnswVectorStore;
+import cn.mojoup.ai.rag.store.PgVectorSearchRepository;
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
  * 混合检索服务实现类
+ * 启用SQL混合检索且向量库为PGVector时，关键词与语义两路检索及融合由一条SQL完成，
+ * 查询只向量化一次；否则关键词检索和语义检索两路在专用线程池上并发执行，各自超时，
+ * 按排名做加权RRF融合。某一路超时或失败时只用另一路的结果，并在结果中标记降级。
+ * 启用重排序时融合结果交给级联排序管道，在请求的延迟预算内逐级重排
  *
  * @author matt
  */
@@ -24,6 +48,10 @@ import java.util.stream.Collectors;
 @Service
 public class HybridSearchServiceImpl implements HybridSearchService {
 
+    private static final String LEG_KEYWORD = "keyword";
+
+    private static final String LEG_SEMANTIC = "semantic";
+
     @Autowired
     private VectorSearchService vectorSearchService;
 
@@ -33,34 +61,247 @@ public class HybridSearchServiceImpl implements HybridSearchService {
     @Autowired
     private KeywordSearchService keywordSearchService;
 
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private PgVectorSearchRepository pgVectorSearchRepository;
+
+    @Autowired
+    private CascadeRankingPipeline cascadeRankingPipeline;
+
+    @Autowired
+    @Qualifier("hybridSearchExecutor")
+    private Executor hybridSearchExecutor;
+
+    @Value("${rag.query.hybrid.keyword-timeout-ms:2000}")
+    private Long keywordTimeoutMs;
+
+    @Value("${rag.query.hybrid.semantic-timeout-ms:3000}")
+    private Long semanticTimeoutMs;
+
+    /**
+     * 请求未指定权重时使用的默认权重
+     */
+    @Value("${rag.search.hybrid.keyword-weight:0.3}")
+    private Double defaultKeywordWeight;
+
+    @Value("${rag.search.hybrid.semantic-weight:0.7}")
+    private Double defaultSemanticWeight;
+
+    @Value("${rag.search.hybrid.sql.enabled:false}")
+    private Boolean sqlHybridEnabled;
+
+    /**
+     * 每一路检索的候选数，实际取值不小于limit
+     */
+    @Value("${rag.search.hybrid.sql.candidate-count:50}")
+    private Integer sqlCandidateCount;
+
+    /**
+     * RRF平滑常数，越大排名靠后的候选与靠前的差距越小
+     */
+    @Value("${rag.search.hybrid.rrf-k:60}")
+    private Integer rrfK;
+
     @Override
     public List<DocumentSegment> search(String query, String knowledgeBaseId,
                                         List<String> keywords, Double keywordWeight,
                                         Double semanticWeight, Boolean enableRerank,
                                         Integer limit, Double threshold) {
-        log.debug("执行混合检索: keywordWeight={}, semanticWeight={}", keywordWeight, semanticWeight);
+        return searchWithStatus(query, knowledgeBaseId, keywords, keywordWeight, semanticWeight,
+                                enableRerank, limit, threshold).getDocuments();
+    }
+
+    @Override
+    public HybridSearchResult searchWithStatus(String query, String knowledgeBaseId,
+                                               List<String> keywords, Double keywordWeight,
+                                               Double semanticWeight, Boolean enableRerank,
+                                               Integer limit, Double threshold) {
+        return searchWithStatus(query, knowledgeBaseId, keywords, keywordWeight, semanticWeight,
+                                enableRerank, limit, threshold, cascadeRankingPipeline.newBudget());
+    }
+
+    @Override
+    public HybridSearchResult searchWithStatus(String query, String knowledgeBaseId,
+                                               List<String> keywords, Double keywordWeight,
+                                               Double semanticWeight, Boolean enableRerank,
+                                               Integer limit, Double threshold, LatencyBudget budget) {
+        double keywordLegWeight = keywordWeight != null ? keywordWeight : defaultKeywordWeight;
+        double semanticLegWeight = semanticWeight != null ? semanticWeight : defaultSemanticWeight;
+        log.debug("执行混合检索: keywordWeight={}, semanticWeight={}", keywordLegWeight, semanticLegWeight);
 
-        // 1. 执行关键词检索
-        List<DocumentSegment> keywordResults = keywordSearchService.search(
-                query, keywords, knowledgeBaseId, limit);
+        List<String> failedLegs = new ArrayList<>();
 
-        // 2. 执行语义检索
-        List<DocumentSegment> semanticResults = vectorSearchService.semanticSearch(
-                query, knowledgeBaseId, "text-embedding-ada-002", limit, threshold, false);
+        // 级联排序：融合结果作为首阶段召回，后续排序阶段按剩余预算执行
+        if (Boolean.TRUE.equals(enableRerank) && cascadeRankingPipeline.isEnabled()) {
+            CascadeResult cascade = cascadeRankingPipeline.execute(
+                    query,
+                    (candidateCount, embeddings) -> retrieve(query, knowledgeBaseId, keywords, keywordLegWeight,
+                                               semanticLegWeight, candidateCount, threshold, failedLegs,
+                                               embeddings),
+                    limit, budget);
+            return HybridSearchResult.builder()
+                                     .documents(cascade.getDocuments())
+                                     .degraded(!failedLegs.isEmpty())
+                                     .failedLegs(failedLegs)
+                                     .rankingStages(cascade.getExecutedStages())
+                                     .skippedStages(cascade.getSkippedStages())
+                                     .build();
+        }
 
-        // 3. 合并结果并计算混合分数
-        List<DocumentSegment> hybridResults = mergeResults(
-                keywordResults, semanticResults, keywordWeight, semanticWeight);
+        List<DocumentSegment> hybridResults = retrieve(query, knowledgeBaseId, keywords, keywordLegWeight,
+                                                       semanticLegWeight, limit, threshold, failedLegs, null);
 
-        // 4. 重排序
-        if (enableRerank && hybridResults.size() > 1) {
+        // 重排序
+        if (Boolean.TRUE.equals(enableRerank) && hybridResults.size() > 1) {
             hybridResults = documentRerankService.rerank(hybridResults, query);
         }
 
-        return hybridResults.stream()
-                            .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
-                            .limit(limit)
-                            .collect(Collectors.toList());
+        List<DocumentSegment> documents = hybridResults.stream()
+                                                       .sorted((a, b) -> Double.compare(b.getScore(), a.getScore()))
+                                                       .limit(limit)
+                                                       .collect(Collectors.toList());
+        return HybridSearchResult.builder()
+                                 .documents(documents)
+                                 .degraded(!failedLegs.isEmpty())
+                                 .failedLegs(failedLegs)
+                                 .build();
+    }
+
+    /**
+     * 召回并融合两路结果，优先使用单条SQL完成，失败或不适用时两路并发检索
+     *
+     * @param embeddings 非null时按分块ID写入召回结果的向量，供级联排序的MMR阶段复用
+     */
+    private List<DocumentSegment> retrieve(String query, String knowledgeBaseId,
+                                           List<String> keywords, double keywordWeight,
+                                           double semanticWeight, Integer limit, Double threshold,
+                                           List<String> failedLegs, Map<String, float[]> embeddings) {
+        if (useSqlHybrid(knowledgeBaseId)) {
+            try {
+                return sqlHybridSearch(query, knowledgeBaseId, keywords, keywordWeight,
+                                       semanticWeight, limit, threshold, embeddings);
+            } catch (Exception e) {
+                log.warn("SQL混合检索失败，退回分别检索: knowledgeBaseId={}, error={}", knowledgeBaseId, e.getMessage());
+            }
+        }
+        return concurrentSearch(query, knowledgeBaseId, keywords, keywordWeight,
+                                semanticWeight, limit, threshold, failedLegs, embeddings);
+    }
+
+    /**
+     * 关键词检索和语义检索并发执行，再按排名融合
+     * 两路同时开始，总耗时取决于较慢的一路且不超过其超时时间
+     *
+     * @param failedLegs 收集超时或失败的检索路
+     * @param embeddings 非null时写入语义检索结果的向量；只由关键词命中的分块没有向量
+     */
+    private List<DocumentSegment> concurrentSearch(String query, String knowledgeBaseId,
+                                                   List<String> keywords, double keywordWeight,
+                                                   double semanticWeight, Integer limit, Double threshold,
+                                                   List<String> failedLegs, Map<String, float[]> embeddings) {
+        // 超时的一路中断并归还线程；线程池已满时该路直接按失败降级，不在调用线程上同步执行
+        CompletableFuture<List<DocumentSegment>> keywordFuture = CancellableTasks.supplyAsync(
+                () -> keywordSearchService.search(query, keywords, knowledgeBaseId, limit),
+                hybridSearchExecutor, keywordTimeoutMs);
+        // 语义一路写入自己的向量表，超时后仍在执行的任务不会与调用线程并发读写同一个表
+        Map<String, float[]> semanticEmbeddings = embeddings != null ? new HashMap<>() : null;
+        CompletableFuture<List<DocumentSegment>> semanticFuture = CancellableTasks.supplyAsync(
+                () -> vectorSearchService.semanticSearch(
+                        query, knowledgeBaseId, "text-embedding-ada-002", limit, threshold, semanticEmbeddings),
+                hybridSearchExecutor, semanticTimeoutMs);
+
+        List<DocumentSegment> keywordResults = awaitLeg(LEG_KEYWORD, keywordFuture, keywordTimeoutMs, failedLegs);
+        List<DocumentSegment> semanticResults = awaitLeg(LEG_SEMANTIC, semanticFuture, semanticTimeoutMs, failedLegs);
+        if (semanticEmbeddings != null && !failedLegs.contains(LEG_SEMANTIC)) {
+            embeddings.putAll(semanticEmbeddings);
+        }
+        if (failedLegs.size() == 2) {
+            log.warn("混合检索两路均未返回结果: knowledgeBaseId={}", knowledgeBaseId);
+        }
+
+        return mergeResults(keywordResults, semanticResults, keywordWeight, semanticWeight);
+    }
+
+    /**
+     * 等待一路检索完成，超时或失败时记录该路并返回空结果
+     */
+    private List<DocumentSegment> awaitLeg(String leg, CompletableFuture<List<DocumentSegment>> future,
+                                           long timeoutMs, List<String> failedLegs) {
+        try {
+            List<DocumentSegment> results = future.join();
+            return results != null ? results : List.of();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                log.warn("混合检索{}路超时，已降级: timeoutMs={}", leg, timeoutMs);
+            } else if (CancellableTasks.isRejected(e.getCause())) {
+                log.warn("混合检索线程池已满，{}路已降级", leg);
+            } else {
+                log.warn("混合检索{}路失败，已降级: error={}", leg, e.getCause().getMessage());
+            }
+            failedLegs.add(leg);
+            return List.of();
+        }
+    }
+
+    private boolean useSqlHybrid(String knowledgeBaseId) {
+        return Boolean.TRUE.equals(sqlHybridEnabled)
+               && StringUtils.hasText(knowledgeBaseId)
+               && !(vectorStore instanceof HnswVectorStore);
+    }
+
+    /**
+     * 单条SQL完成两路检索与RRF融合
+     * 调用方提供的关键词与查询以or连接，命中完整查询或任一关键词的分块均进入全文检索候选；
+     * 融合分数除以两路均排第一时的分数，归一化到0~1
+     *
+     * @param embeddings 非null时写入全部结果的向量
+     */
+    private List<DocumentSegment> sqlHybridSearch(String query, String knowledgeBaseId,
+                                                  List<String> keywords, double keywordWeight,
+                                                  double semanticWeight, Integer limit, Double threshold,
+                                                  Map<String, float[]> embeddings) {
+        String queryText = keywords == null || keywords.isEmpty()
+                           ? query
+                           : query + " or " + String.join(" or ", keywords);
+        List<Document> documents = pgVectorSearchRepository.hybridSearch(
+                EmbeddingVector.of(embeddingModel.embed(query)), queryText, knowledgeBaseId,
+                limit, Math.max(sqlCandidateCount, limit), semanticWeight, keywordWeight, rrfK,
+                threshold, null, embeddings);
+
+        double maxScore = (keywordWeight + semanticWeight) / (rrfK + 1);
+        List<DocumentSegment> segments = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            DocumentSegment segment = toSegment(document, knowledgeBaseId);
+            segment.setScore(maxScore > 0 ? document.getScore() / maxScore : 0.0);
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    private DocumentSegment toSegment(Document document, String knowledgeBaseId) {
+        Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+        metadata.put("searchMethod", "hybrid_sql");
+        metadata.put("rrfScore", document.getScore());
+
+        DocumentSegment segment = new DocumentSegment();
+        segment.setSegmentId(document.getId());
+        segment.setContent(document.getText());
+        segment.setDocumentId((String) metadata.getOrDefault("documentId", document.getId()));
+        segment.setKnowledgeBaseId(knowledgeBaseId);
+        segment.setTitle((String) metadata.get("title"));
+        segment.setSource((String) metadata.get("source"));
+        segment.setDocumentType((String) metadata.getOrDefault("documentType", "text"));
+        if (metadata.get("position") instanceof Number position) {
+            segment.setPosition(position.intValue());
+        }
+        segment.setLength(document.getText() != null ? document.getText().length() : 0);
+        segment.setMetadata(metadata);
+        return segment;
     }
 
     @Override
@@ -70,28 +311,95 @@ public class HybridSearchServiceImpl implements HybridSearchService {
         log.debug("合并检索结果: keywordCount={}, semanticCount={}",
                   keywordResults.size(), semanticResults.size());
 
-        Map<String, DocumentSegment> mergedResults = new HashMap<>();
+        double keywordLegWeight = keywordWeight != null ? keywordWeight : defaultKeywordWeight;
+        double semanticLegWeight = semanticWeight != null ? semanticWeight : defaultSemanticWeight;
 
-        // 处理关键词结果
-        for (DocumentSegment doc : keywordResults) {
-            doc.setScore(doc.getScore() * keywordWeight);
-            mergedResults.put(doc.getSegmentId(), doc);
+        // 语义结果先入表，两路都命中时以语义结果的片段为底稿
+        Map<String, List<RankedHit>> hitsById = new LinkedHashMap<>();
+        collectRanks(LEG_SEMANTIC, semanticResults, semanticLegWeight, hitsById);
+        collectRanks(LEG_KEYWORD, keywordResults, keywordLegWeight, hitsById);
+
+        // 两路均排第一时的融合分数，用于归一化到0~1
+        double maxScore = (keywordLegWeight + semanticLegWeight) / (rrfK + 1);
+        List<DocumentSegment> mergedResults = new ArrayList<>(hitsById.size());
+        for (List<RankedHit> hits : hitsById.values()) {
+            mergedResults.add(fuse(hits, maxScore));
         }
+        mergedResults.sort(Comparator.comparingDouble(DocumentSegment::getScore).reversed());
+        return mergedResults;
+    }
 
-        // 处理语义结果
-        for (DocumentSegment doc : semanticResults) {
-            String id = doc.getSegmentId();
-            if (mergedResults.containsKey(id)) {
-                // 合并分数
-                DocumentSegment existing = mergedResults.get(id);
-                existing.setScore(existing.getScore() + doc.getScore() * semanticWeight);
-            } else {
-                doc.setScore(doc.getScore() * semanticWeight);
-                mergedResults.put(id, doc);
+    /**
+     * 单路检索中的一条命中，rank从1开始
+     */
+    private record RankedHit(String leg, int rank, double weight, DocumentSegment segment) {
+    }
+
+    /**
+     * 按该路自身分数降序排名，同一路中重复的片段只保留排名最高的一次
+     */
+    private void collectRanks(String leg, List<DocumentSegment> results, double weight,
+                              Map<String, List<RankedHit>> hitsById) {
+        List<DocumentSegment> ordered = new ArrayList<>(results);
+        ordered.sort(Comparator.comparingDouble(this::scoreOf).reversed());
+
+        int rank = 0;
+        for (DocumentSegment segment : ordered) {
+            String id = segment.getSegmentId();
+            if (id == null) {
+                continue;
             }
+            List<RankedHit> hits = hitsById.computeIfAbsent(id, key -> new ArrayList<>(2));
+            if (hits.stream().noneMatch(hit -> hit.leg().equals(leg))) {
+                hits.add(new RankedHit(leg, ++rank, weight, segment));
+            }
+        }
+    }
+
+    /**
+     * 融合同一片段在各路的排名，返回新的片段，各路排名和原始分数写入metadata
+     */
+    private DocumentSegment fuse(List<RankedHit> hits, double maxScore) {
+        DocumentSegment fused = copyOf(hits.get(0).segment());
+        Map<String, Object> metadata = fused.getMetadata() != null
+                                       ? new HashMap<>(fused.getMetadata())
+                                       : new HashMap<>();
+        double score = 0;
+        for (RankedHit hit : hits) {
+            score += hit.weight() / (rrfK + hit.rank());
+            metadata.put(hit.leg() + "Rank", hit.rank());
+            metadata.put(hit.leg() + "Score", hit.segment().getScore());
         }
+        metadata.put("rrfScore", score);
+
+        fused.setMetadata(metadata);
+        fused.setScore(maxScore > 0 ? score / maxScore : 0.0);
+        return fused;
+    }
+
+    private DocumentSegment copyOf(DocumentSegment source) {
+        DocumentSegment copy = new DocumentSegment();
+        copy.setSegmentId(source.getSegmentId());
+        copy.setDocumentId(source.getDocumentId());
+        copy.setKnowledgeBaseId(source.getKnowledgeBaseId());
+        copy.setContent(source.getContent());
+        copy.setScore(source.getScore());
+        copy.setTitle(source.getTitle());
+        copy.setSource(source.getSource());
+        copy.setDocumentType(source.getDocumentType());
+        copy.setPosition(source.getPosition());
+        copy.setLength(source.getLength());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setTags(source.getTags());
+        copy.setMetadata(source.getMetadata());
+        copy.setHighlights(source.getHighlights());
+        copy.setStartIndex(source.getStartIndex());
+        copy.setEndIndex(source.getEndIndex());
+        return copy;
+    }
 
-        return new ArrayList<>(mergedResults.values());
+    private double scoreOf(DocumentSegment segment) {
+        return segment.getScore() != null ? segment.getScore() : 0.0;
     }
 
     @Override
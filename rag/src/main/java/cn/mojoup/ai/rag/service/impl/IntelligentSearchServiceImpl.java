@@ -2,6 +2,8 @@ package cn.mojoup.ai.rag.service.impl;
 
 
 import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.pipeline.CascadeRankingPipeline;
+import cn.mojoup.ai.rag.pipeline.LatencyBudget;
 import cn.mojoup.ai.rag.service.HybridSearchService;
 import cn.mojoup.ai.rag.service.IntelligentSearchService;
 import cn.mojoup.ai.rag.service.KeywordSearchService;
@@ -39,6 +41,9 @@ public class IntelligentSearchServiceImpl implements IntelligentSearchService {
     @Autowired
     private HybridSearchService hybridSearchService;
 
+    @Autowired
+    private CascadeRankingPipeline cascadeRankingPipeline;
+
     @Value("${rag.ai.model:gpt-3.5-turbo}")
     private String aiModel;
 
@@ -60,6 +65,8 @@ public class IntelligentSearchServiceImpl implements IntelligentSearchService {
         log.info("AI驱动智能检索: query={}, strategy={}, knowledgeBaseIds={}, limit={}",
                  query, strategy, knowledgeBaseIds, limit);
 
+        // 意图检测、各知识库的检索和重排序共用同一个延迟预算
+        LatencyBudget budget = cascadeRankingPipeline.newBudget();
         try {
             // 如果没有指定策略，使用AI进行智能策略选择
             if (strategy == null || strategy.isEmpty()) {
@@ -71,7 +78,7 @@ public class IntelligentSearchServiceImpl implements IntelligentSearchService {
             List<List<DocumentSegment>> kbResults = new ArrayList<>();
 
             for (String kbId : knowledgeBaseIds) {
-                List<DocumentSegment> kbResult = executeSearchByStrategy(query, kbId, strategy, limit, threshold);
+                List<DocumentSegment> kbResult = executeSearchByStrategy(query, kbId, strategy, limit, threshold, budget);
                 if (!kbResult.isEmpty()) {
                     kbResults.add(kbResult);
                 }
@@ -585,16 +592,18 @@ public class IntelligentSearchServiceImpl implements IntelligentSearchService {
     // ==================== 私有辅助方法 ====================
 
     private List<DocumentSegment> executeSearchByStrategy(String query, String knowledgeBaseId,
-                                                          String strategy, Integer limit, Double threshold) {
+                                                          String strategy, Integer limit, Double threshold,
+                                                          LatencyBudget budget) {
         try {
             switch (strategy.toLowerCase()) {
                 case "hybrid":
                     List<String> keywords = keywordSearchService.extractKeywords(query);
-                    return hybridSearchService.search(query, knowledgeBaseId, keywords,
-                                                      0.3, 0.7, true, limit, threshold);
+                    return hybridSearchService.searchWithStatus(query, knowledgeBaseId, keywords,
+                                                                0.3, 0.7, true, limit, threshold, budget)
+                                              .getDocuments();
                 case "semantic":
                     return vectorSearchService.semanticSearch(query, knowledgeBaseId, "text-embedding-ada-002",
-                                                              limit, threshold, true);
+                                                              limit, threshold, true, budget);
                 case "keyword":
                     List<String> extractedKeywords = keywordSearchService.extractKeywords(query);
                     return keywordSearchService.search(query, extractedKeywords, knowledgeBaseId, limit);
@@ -1,6 +1,7 @@
 package cn.mojoup.ai.rag.service.impl;
 
 import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.index.LuceneKeywordIndex;
 import cn.mojoup.ai.rag.service.KeywordSearchService;
 import cn.mojoup.ai.rag.service.VectorSearchService;
 import lombok.extern.slf4j.Slf4j;
@@ -11,6 +12,7 @@ import org.springframework.ai.chat.messages.MessageType;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -21,7 +23,7 @@ import java.util.stream.Collectors;
 
 /**
  * AI驱动的关键词检索服务实现类
- * 使用大模型进行智能关键词提取和文档匹配
+ * 指定知识库时在本地Lucene索引上做BM25检索；未启用本地索引或跨知识库检索时使用大模型进行关键词提取和文档匹配
  *
  * @author matt
  */
@@ -47,6 +49,9 @@ public class KeywordSearchServiceImpl implements KeywordSearchService {
     @Autowired
     private ChatClient chatClient;
 
+    @Autowired
+    private LuceneKeywordIndex luceneKeywordIndex;
+
     @Override
     public List<DocumentSegment> search(String query, List<String> keywords,
                                         String knowledgeBaseId, Integer limit) {
@@ -62,6 +67,11 @@ public class KeywordSearchServiceImpl implements KeywordSearchService {
 
             limit = limit != null ? limit : 10;
 
+            // 本地BM25索引直接检索，无需大模型调用和向量候选
+            if (luceneKeywordIndex.isEnabled() && knowledgeBaseId != null && !knowledgeBaseId.isEmpty()) {
+                return searchLocalIndex(query, keywords, knowledgeBaseId, limit);
+            }
+
             // 2. 使用AI提取关键词（如果未提供）
             if (keywords == null || keywords.isEmpty()) {
                 keywords = extractKeywordsWithAI(query);
@@ -135,6 +145,50 @@ public class KeywordSearchServiceImpl implements KeywordSearchService {
         }
     }
 
+    // ==================== 本地索引检索 ====================
+
+    /**
+     * 在知识库的Lucene索引上做BM25检索
+     * 调用方提供的关键词与查询一起参与匹配；分数按本次结果的最高分归一化到0~1，原始分数保留在bm25Score中
+     */
+    private List<DocumentSegment> searchLocalIndex(String query, List<String> keywords,
+                                                   String knowledgeBaseId, int limit) {
+        String queryText = keywords == null || keywords.isEmpty() ? query : query + " " + String.join(" ", keywords);
+        List<Document> documents = luceneKeywordIndex.search(knowledgeBaseId, queryText, limit);
+        if (documents.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        double maxScore = documents.get(0).getScore();
+        List<DocumentSegment> segments = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            DocumentSegment segment = toSegment(document, knowledgeBaseId);
+            segment.setScore(maxScore > 0 ? document.getScore() / maxScore : 0.0);
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    private DocumentSegment toSegment(Document document, String knowledgeBaseId) {
+        Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+        metadata.put("searchMethod", "bm25");
+
+        DocumentSegment segment = new DocumentSegment();
+        segment.setSegmentId(document.getId());
+        segment.setContent(document.getText());
+        segment.setDocumentId((String) metadata.getOrDefault("documentId", document.getId()));
+        segment.setKnowledgeBaseId(knowledgeBaseId);
+        segment.setTitle((String) metadata.get("title"));
+        segment.setSource((String) metadata.get("source"));
+        segment.setDocumentType((String) metadata.getOrDefault("documentType", "text"));
+        if (metadata.get("position") instanceof Number position) {
+            segment.setPosition(position.intValue());
+        }
+        segment.setLength(document.getText() != null ? document.getText().length() : 0);
+        segment.setMetadata(metadata);
+        return segment;
+    }
+
     // ==================== AI驱动的核心方法 ====================
 
     /**
@@ -259,7 +259,6 @@ public class RagAssistantServiceImpl implements RagAssistantService {
         item.setAnswer(answer);
         item.setDocuments(documents);
         item.setSuccess(true);
-        item.setProcessingTime(System.currentTimeMillis() % 1000); // 模拟处理时间
 
         return item;
     }
@@ -1,14 +1,25 @@
 package cn.mojoup.ai.rag.service.impl;
 
+import cn.mojoup.ai.rag.cache.CachedQueryResult;
+import cn.mojoup.ai.rag.cache.QueryResponseCache;
+import cn.mojoup.ai.rag.concurrent.CancellableTasks;
 import cn.mojoup.ai.rag.domain.*;
 import cn.mojoup.ai.rag.exception.RagException;
+import cn.mojoup.ai.rag.pipeline.CascadeRankingPipeline;
+import cn.mojoup.ai.rag.pipeline.LatencyBudget;
 import cn.mojoup.ai.rag.service.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
 
 /**
  * RAG查询服务实现类
@@ -44,27 +55,58 @@ public class RagQueryServiceImpl implements RagQueryService {
     @Autowired
     private RagAssistantService ragAssistantService;
 
+    @Autowired
+    private BatchQueryExecutionService batchQueryExecutionService;
+
+    @Autowired
+    private QueryResponseCache queryResponseCache;
+
+    @Autowired
+    private CascadeRankingPipeline cascadeRankingPipeline;
+
+    @Autowired
+    @Qualifier("multiKbSearchExecutor")
+    private Executor multiKbSearchExecutor;
+
+    @Value("${rag.query.multi-kb.timeout-ms:3000}")
+    private Long multiKbTimeoutMs;
+
     @Override
     public SimpleQueryResponse simpleQuery(SimpleQueryRequest request) {
         try {
             log.info("执行简单查询: {}", request.getQuestion());
             long startTime = System.currentTimeMillis();
 
-            // 执行向量检索
-            List<DocumentSegment> documents = vectorSearchService.search(
-                    request.getQuestion(),
-                    request.getKnowledgeBaseId(),
-                    request.getLimit(),
-                    request.getSimilarityThreshold()
+            String cacheKey = queryResponseCache.keyOf(
+                    "simple", request.getKnowledgeBaseId(), request.getQuestion(),
+                    request.getLimit(), request.getSimilarityThreshold(),
+                    request.getTemperature(), request.getMaxTokens()
             );
+            CachedQueryResult cached = queryResponseCache.get(cacheKey);
+
+            List<DocumentSegment> documents;
+            String answer;
+            if (cached != null) {
+                documents = cached.getDocuments();
+                answer = cached.getAnswer();
+            } else {
+                // 执行向量检索
+                documents = vectorSearchService.search(
+                        request.getQuestion(),
+                        request.getKnowledgeBaseId(),
+                        request.getLimit(),
+                        request.getSimilarityThreshold()
+                );
 
-            // 生成答案
-            String answer = answerGenerationService.generateAnswer(
-                    request.getQuestion(),
-                    documents,
-                    request.getTemperature(),
-                    request.getMaxTokens()
-            );
+                // 生成答案
+                answer = answerGenerationService.generateAnswer(
+                        request.getQuestion(),
+                        documents,
+                        request.getTemperature(),
+                        request.getMaxTokens()
+                );
+                queryResponseCache.put(cacheKey, new CachedQueryResult(answer, documents, null));
+            }
 
             // 组装响应
             SimpleQueryResponse response = new SimpleQueryResponse();
@@ -77,6 +119,7 @@ public class RagQueryServiceImpl implements RagQueryService {
             response.setDocuments(documents);
             response.setModel("qwen-max");
             response.setTokensUsed(ragAssistantService.estimateTokens(request.getQuestion(), answer));
+            response.setMetadata(cacheMetadata(cached != null));
             response.setProcessingTime(System.currentTimeMillis() - startTime);
             response.setSuccess(true);
 
@@ -94,17 +137,11 @@ public class RagQueryServiceImpl implements RagQueryService {
             log.info("执行多知识库查询: {}", request.getQuestion());
             long startTime = System.currentTimeMillis();
 
-            // 并行查询多个知识库
-            List<DocumentSegment> allDocuments = new ArrayList<>();
-            Map<String, Integer> knowledgeBaseScores = new HashMap<>();
-
-            for (String kbId : request.getKnowledgeBaseIds()) {
-                List<DocumentSegment> kbDocuments = vectorSearchService.search(
-                        request.getQuestion(), kbId, request.getLimit(), request.getSimilarityThreshold()
-                );
-                allDocuments.addAll(kbDocuments);
-                knowledgeBaseScores.put(kbId, kbDocuments.size());
-            }
+            // 并行查询多个知识库，每个知识库独立超时
+            Map<String, Integer> knowledgeBaseScores = new LinkedHashMap<>();
+            List<String> timedOutKnowledgeBaseIds = new ArrayList<>();
+            List<DocumentSegment> allDocuments = searchKnowledgeBasesInParallel(
+                    request, knowledgeBaseScores, timedOutKnowledgeBaseIds);
 
             // 生成答案
             String answer = answerGenerationService.generateAnswer(
@@ -124,6 +161,7 @@ public class RagQueryServiceImpl implements RagQueryService {
             response.setAnswer(answer);
             response.setDocuments(allDocuments);
             response.setKnowledgeBaseScores(knowledgeBaseScores);
+            response.setTimedOutKnowledgeBaseIds(timedOutKnowledgeBaseIds);
             response.setModel("qwen-max");
             response.setTokensUsed(ragAssistantService.estimateTokens(request.getQuestion(), answer));
             response.setProcessingTime(System.currentTimeMillis() - startTime);
@@ -180,8 +218,11 @@ public class RagQueryServiceImpl implements RagQueryService {
             log.info("执行混合查询: {}", request.getQuestion());
             long startTime = System.currentTimeMillis();
 
-            // 执行混合检索
-            List<DocumentSegment> documents = hybridSearchService.search(
+            // 执行混合检索，检索和重排序共用请求的延迟预算
+            LatencyBudget budget = request.getLatencyBudgetMs() != null
+                                   ? LatencyBudget.ofMillis(request.getLatencyBudgetMs())
+                                   : cascadeRankingPipeline.newBudget();
+            HybridSearchResult searchResult = hybridSearchService.searchWithStatus(
                     request.getQuestion(),
                     request.getKnowledgeBaseId(),
                     request.getKeywords(),
@@ -189,8 +230,10 @@ public class RagQueryServiceImpl implements RagQueryService {
                     request.getSemanticWeight(),
                     request.getEnableRerank(),
                     request.getLimit(),
-                    request.getSimilarityThreshold()
+                    request.getSimilarityThreshold(),
+                    budget
             );
+            List<DocumentSegment> documents = searchResult.getDocuments();
 
             // 生成答案
             String answer = answerGenerationService.generateAnswer(
@@ -208,6 +251,10 @@ public class RagQueryServiceImpl implements RagQueryService {
             response.setDocuments(documents);
             response.setMatchedKeywords(request.getKeywords());
             response.setHybridScore(ragAssistantService.calculateAverageScore(documents));
+            response.setDegraded(searchResult.getDegraded());
+            response.setFailedLegs(searchResult.getFailedLegs());
+            response.setRankingStages(searchResult.getRankingStages());
+            response.setSkippedStages(searchResult.getSkippedStages());
             response.setProcessingTime(System.currentTimeMillis() - startTime);
             response.setSuccess(true);
 
@@ -321,22 +368,37 @@ public class RagQueryServiceImpl implements RagQueryService {
             log.info("执行摘要查询: {}", request.getQuestion());
             long startTime = System.currentTimeMillis();
 
-            // 执行向量检索
-            List<DocumentSegment> documents = vectorSearchService.search(
-                    request.getQuestion(),
-                    request.getKnowledgeBaseId(),
-                    request.getLimit(),
-                    request.getSimilarityThreshold()
+            String cacheKey = queryResponseCache.keyOf(
+                    "summary", request.getKnowledgeBaseId(), request.getQuestion(),
+                    request.getLimit(), request.getSimilarityThreshold(), request.getTemperature(),
+                    request.getSummaryType(), request.getSummaryLength()
             );
+            CachedQueryResult cached = queryResponseCache.get(cacheKey);
+
+            List<DocumentSegment> documents;
+            String summary;
+            if (cached != null) {
+                documents = cached.getDocuments();
+                summary = cached.getAnswer();
+            } else {
+                // 执行向量检索
+                documents = vectorSearchService.search(
+                        request.getQuestion(),
+                        request.getKnowledgeBaseId(),
+                        request.getLimit(),
+                        request.getSimilarityThreshold()
+                );
 
-            // 生成摘要
-            String summary = summaryGenerationService.generateSummary(
-                    request.getQuestion(),
-                    documents,
-                    request.getSummaryType(),
-                    request.getSummaryLength(),
-                    request.getTemperature()
-            );
+                // 生成摘要
+                summary = summaryGenerationService.generateSummary(
+                        request.getQuestion(),
+                        documents,
+                        request.getSummaryType(),
+                        request.getSummaryLength(),
+                        request.getTemperature()
+                );
+                queryResponseCache.put(cacheKey, new CachedQueryResult(summary, documents, null));
+            }
 
             // 组装响应
             SummaryQueryResponse response = new SummaryQueryResponse();
@@ -349,6 +411,7 @@ public class RagQueryServiceImpl implements RagQueryService {
             response.setSummaryLength(request.getSummaryLength());
             response.setSummary(summary);
             response.setSourceDocuments(documents);
+            response.setMetadata(cacheMetadata(cached != null));
             response.setProcessingTime(System.currentTimeMillis() - startTime);
             response.setSuccess(true);
 
@@ -366,28 +429,44 @@ public class RagQueryServiceImpl implements RagQueryService {
             log.info("执行引用查询: {}", request.getQuestion());
             long startTime = System.currentTimeMillis();
 
-            // 执行向量检索
-            List<DocumentSegment> documents = vectorSearchService.search(
-                    request.getQuestion(),
-                    request.getKnowledgeBaseId(),
-                    request.getLimit(),
-                    request.getSimilarityThreshold()
+            String cacheKey = queryResponseCache.keyOf(
+                    "citation", request.getKnowledgeBaseId(), request.getQuestion(),
+                    request.getLimit(), request.getSimilarityThreshold(),
+                    request.getTemperature(), request.getMaxTokens(),
+                    request.getCitationStyle(), request.getIncludePage()
             );
+            CachedQueryResult cached = queryResponseCache.get(cacheKey);
+
+            String answer;
+            List<Citation> citations;
+            if (cached != null) {
+                answer = cached.getAnswer();
+                citations = cached.getCitations();
+            } else {
+                // 执行向量检索
+                List<DocumentSegment> documents = vectorSearchService.search(
+                        request.getQuestion(),
+                        request.getKnowledgeBaseId(),
+                        request.getLimit(),
+                        request.getSimilarityThreshold()
+                );
 
-            // 生成带引用的答案
-            String answer = answerGenerationService.generateAnswerWithCitations(
-                    request.getQuestion(),
-                    documents,
-                    request.getCitationStyle(),
-                    request.getIncludePage(),
-                    request.getTemperature(),
-                    request.getMaxTokens()
-            );
+                // 生成带引用的答案
+                answer = answerGenerationService.generateAnswerWithCitations(
+                        request.getQuestion(),
+                        documents,
+                        request.getCitationStyle(),
+                        request.getIncludePage(),
+                        request.getTemperature(),
+                        request.getMaxTokens()
+                );
 
-            // 生成引用
-            List<Citation> citations = ragAssistantService.generateCitations(
-                    documents, request.getCitationStyle()
-            );
+                // 生成引用
+                citations = ragAssistantService.generateCitations(
+                        documents, request.getCitationStyle()
+                );
+                queryResponseCache.put(cacheKey, new CachedQueryResult(answer, documents, citations));
+            }
 
             // 组装响应
             CitationQueryResponse response = new CitationQueryResponse();
@@ -400,6 +479,7 @@ public class RagQueryServiceImpl implements RagQueryService {
             response.setAnswer(answer);
             response.setCitations(citations);
             response.setTokensUsed(ragAssistantService.estimateTokens(request.getQuestion(), answer));
+            response.setMetadata(cacheMetadata(cached != null));
             response.setProcessingTime(System.currentTimeMillis() - startTime);
             response.setSuccess(true);
 
@@ -476,36 +556,8 @@ public class RagQueryServiceImpl implements RagQueryService {
             log.info("执行批量查询，问题数量: {}", request.getQuestions().size());
             long startTime = System.currentTimeMillis();
 
-            List<BatchQueryItem> results = new ArrayList<>();
-
-            for (String question : request.getQuestions()) {
-                try {
-                    // 执行单个查询
-                    List<DocumentSegment> documents = vectorSearchService.search(
-                            question, request.getKnowledgeBaseId(),
-                            request.getLimit(), request.getSimilarityThreshold()
-                    );
-
-                    String answer = answerGenerationService.generateAnswer(
-                            question, documents, 0.7, 2000
-                    );
-
-                    // 处理单个批量查询项
-                    BatchQueryItem item = ragAssistantService.processSingleBatchQuery(
-                            question, request, documents, answer
-                    );
-                    results.add(item);
-
-                } catch (Exception e) {
-                    log.error("批量查询中单个问题处理失败: {}", question, e);
-                    BatchQueryItem errorItem = new BatchQueryItem();
-                    errorItem.setQuestion(question);
-                    errorItem.setSuccess(false);
-                    errorItem.setErrorMessage(e.getMessage());
-                    errorItem.setProcessingTime(0L);
-                    results.add(errorItem);
-                }
-            }
+            // 并发执行批量问题，记录每个问题的实际耗时
+            List<BatchQueryItem> results = batchQueryExecutionService.execute(request);
 
             // 创建批量响应
             BatchQueryResponse batchResponse = ragAssistantService.createBatchResponse(results);
@@ -581,4 +633,76 @@ public class RagQueryServiceImpl implements RagQueryService {
         }
     }
 
+    // ==================== 私有辅助方法 ====================
+
+    private Map<String, Object> cacheMetadata(boolean cacheHit) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("cacheHit", cacheHit);
+        return metadata;
+    }
+
+    /**
+     * 在专用线程池上并行检索多个知识库，超时或线程池已满被拒绝的知识库直接丢弃，结果通过top-k小顶堆合并
+     */
+    private List<DocumentSegment> searchKnowledgeBasesInParallel(MultiKnowledgeBaseQueryRequest request,
+                                                                 Map<String, Integer> knowledgeBaseScores,
+                                                                 List<String> timedOutKnowledgeBaseIds) {
+        Map<String, CompletableFuture<List<DocumentSegment>>> futures = new LinkedHashMap<>();
+        for (String kbId : new LinkedHashSet<>(request.getKnowledgeBaseIds())) {
+            futures.put(kbId, CancellableTasks.supplyAsync(() -> vectorSearchService.search(
+                    request.getQuestion(), kbId, request.getLimit(), request.getSimilarityThreshold()
+            ), multiKbSearchExecutor, multiKbTimeoutMs));
+        }
+
+        // 等待全部完成：超时的future立即异常完成，其检索线程被中断并归还线程池
+        CompletableFuture.allOf(futures.values().toArray(CompletableFuture<?>[]::new))
+                         .exceptionally(ex -> null)
+                         .join();
+
+        int topK = request.getLimit() != null ? request.getLimit() : 10;
+        PriorityQueue<DocumentSegment> topKHeap = new PriorityQueue<>(
+                topK + 1, Comparator.comparingDouble(this::scoreOf));
+
+        for (Map.Entry<String, CompletableFuture<List<DocumentSegment>>> entry : futures.entrySet()) {
+            String kbId = entry.getKey();
+            try {
+                List<DocumentSegment> kbDocuments = entry.getValue().join();
+                knowledgeBaseScores.put(kbId, kbDocuments.size());
+                for (DocumentSegment doc : kbDocuments) {
+                    offerTopK(topKHeap, doc, topK);
+                }
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    log.warn("知识库检索超时，已丢弃: kbId={}, timeoutMs={}", kbId, multiKbTimeoutMs);
+                    knowledgeBaseScores.put(kbId, -1);
+                    timedOutKnowledgeBaseIds.add(kbId);
+                } else if (CancellableTasks.isRejected(e.getCause())) {
+                    log.warn("多知识库检索线程池已满，已丢弃: kbId={}", kbId);
+                    knowledgeBaseScores.put(kbId, -1);
+                    timedOutKnowledgeBaseIds.add(kbId);
+                } else {
+                    log.warn("知识库检索失败，已跳过: kbId={}, error={}", kbId, e.getCause().getMessage());
+                    knowledgeBaseScores.put(kbId, 0);
+                }
+            }
+        }
+
+        List<DocumentSegment> merged = new ArrayList<>(topKHeap);
+        merged.sort(Comparator.comparingDouble(this::scoreOf).reversed());
+        return merged;
+    }
+
+    private void offerTopK(PriorityQueue<DocumentSegment> heap, DocumentSegment doc, int topK) {
+        if (heap.size() < topK) {
+            heap.offer(doc);
+        } else if (scoreOf(doc) > scoreOf(heap.peek())) {
+            heap.poll();
+            heap.offer(doc);
+        }
+    }
+
+    private double scoreOf(DocumentSegment doc) {
+        return doc.getScore() != null ? doc.getScore() : 0.0;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,323 @@
+package cn.mojoup.ai.rag.service.impl;
+
+import cn.mojoup.ai.rag.domain.*;
+import cn.mojoup.ai.rag.service.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * RAG流式查询服务实现类
+ * 检索在专用线程池上执行，生成阶段订阅ChatClient的流式输出并逐段推送给客户端；
+ * 客户端断开、超时或出错时取消上游订阅，避免继续消耗模型调用
+ *
+ * @author matt
+ */
+@Slf4j
+@Service
+public class RagStreamingQueryServiceImpl implements RagStreamingQueryService {
+
+    private static final String EVENT_RETRIEVAL = "retrieval";
+    private static final String EVENT_TOKEN = "token";
+    private static final String EVENT_COMPLETE = "complete";
+    private static final String EVENT_ERROR = "error";
+
+    @Autowired
+    private VectorSearchService vectorSearchService;
+
+    @Autowired
+    private IntelligentSearchService intelligentSearchService;
+
+    @Autowired
+    private AnswerGenerationService answerGenerationService;
+
+    @Autowired
+    private SummaryGenerationService summaryGenerationService;
+
+    @Autowired
+    private RagAssistantService ragAssistantService;
+
+    @Autowired
+    @Qualifier("streamingQueryExecutor")
+    private Executor streamingQueryExecutor;
+
+    @Value("${rag.query.stream.timeout-ms:120000}")
+    private Long timeoutMs;
+
+    @Override
+    public SseEmitter simpleQuery(SimpleQueryRequest request) {
+        log.info("执行流式简单查询: {}", request.getQuestion());
+        return stream("simple", request.getQuestion(),
+                      () -> retrievalEvent(vectorSearchService.search(
+                              request.getQuestion(),
+                              request.getKnowledgeBaseId(),
+                              request.getLimit(),
+                              request.getSimilarityThreshold()
+                      )),
+                      retrieval -> answerGenerationService.streamAnswer(
+                              request.getQuestion(),
+                              retrieval.getDocuments(),
+                              request.getTemperature(),
+                              request.getMaxTokens()
+                      ),
+                      null);
+    }
+
+    @Override
+    public SseEmitter conversationalQuery(ConversationalQueryRequest request) {
+        log.info("执行流式对话式查询: {}", request.getQuestion());
+        return stream("conversational", request.getQuestion(),
+                      () -> retrievalEvent(vectorSearchService.search(
+                              request.getQuestion(),
+                              request.getKnowledgeBaseId(),
+                              request.getLimit(),
+                              request.getSimilarityThreshold()
+                      )),
+                      retrieval -> answerGenerationService.streamConversationalAnswer(
+                              request.getQuestion(),
+                              retrieval.getDocuments(),
+                              request.getConversationHistory(),
+                              request.getTemperature(),
+                              request.getMaxTokens()
+                      ),
+                      (completion, answer) -> completion.setUpdatedHistory(
+                              ragAssistantService.updateConversationHistory(
+                                      request.getConversationHistory(), request.getQuestion(), answer
+                              )));
+    }
+
+    @Override
+    public SseEmitter citationQuery(CitationQueryRequest request) {
+        log.info("执行流式引用查询: {}", request.getQuestion());
+        return stream("citation", request.getQuestion(),
+                      () -> {
+                          List<DocumentSegment> documents = vectorSearchService.search(
+                                  request.getQuestion(),
+                                  request.getKnowledgeBaseId(),
+                                  request.getLimit(),
+                                  request.getSimilarityThreshold()
+                          );
+                          StreamRetrievalEvent retrieval = retrievalEvent(documents);
+                          retrieval.setCitations(ragAssistantService.generateCitations(
+                                  documents, request.getCitationStyle()
+                          ));
+                          return retrieval;
+                      },
+                      retrieval -> answerGenerationService.streamAnswerWithCitations(
+                              request.getQuestion(),
+                              retrieval.getDocuments(),
+                              request.getCitationStyle(),
+                              request.getIncludePage(),
+                              request.getTemperature(),
+                              request.getMaxTokens()
+                      ),
+                      null);
+    }
+
+    @Override
+    public SseEmitter intelligentQuery(IntelligentQueryRequest request) {
+        log.info("执行流式智能查询: {}", request.getQuestion());
+        return stream("intelligent", request.getQuestion(),
+                      () -> {
+                          String detectedIntent = ragAssistantService.detectQueryIntent(request.getQuestion());
+                          String selectedStrategy = ragAssistantService.selectOptimalStrategy(
+                                  request.getQuestion(), detectedIntent);
+
+                          StreamRetrievalEvent retrieval = retrievalEvent(intelligentSearchService.search(
+                                  request.getQuestion(),
+                                  request.getKnowledgeBaseIds(),
+                                  selectedStrategy,
+                                  request.getLimit(),
+                                  request.getSimilarityThreshold()
+                          ));
+                          Map<String, Object> metadata = new HashMap<>();
+                          metadata.put("detectedIntent", detectedIntent);
+                          metadata.put("selectedStrategy", selectedStrategy);
+                          metadata.put("usedKnowledgeBases", request.getKnowledgeBaseIds());
+                          retrieval.setMetadata(metadata);
+                          return retrieval;
+                      },
+                      retrieval -> answerGenerationService.streamOptimizedAnswer(
+                              request.getQuestion(),
+                              retrieval.getDocuments(),
+                              (String) retrieval.getMetadata().get("detectedIntent"),
+                              (String) retrieval.getMetadata().get("selectedStrategy"),
+                              request.getTemperature(),
+                              request.getMaxTokens()
+                      ),
+                      null);
+    }
+
+    @Override
+    public SseEmitter summaryQuery(SummaryQueryRequest request) {
+        log.info("执行流式摘要查询: {}", request.getQuestion());
+        return stream("summary", request.getQuestion(),
+                      () -> retrievalEvent(vectorSearchService.search(
+                              request.getQuestion(),
+                              request.getKnowledgeBaseId(),
+                              request.getLimit(),
+                              request.getSimilarityThreshold()
+                      )),
+                      retrieval -> summaryGenerationService.streamSummary(
+                              request.getQuestion(),
+                              retrieval.getDocuments(),
+                              request.getSummaryType(),
+                              request.getSummaryLength(),
+                              request.getTemperature()
+                      ),
+                      null);
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * 流式查询的公共流程：检索 → 推送检索事件 → 订阅生成流逐段推送 → 推送完成事件
+     *
+     * @param retrieval            检索步骤，在专用线程池上执行
+     * @param generation           基于检索结果的流式生成步骤
+     * @param completionCustomizer 完成事件的补充处理，参数为完成事件和完整答案，可为空
+     */
+    private SseEmitter stream(String queryType, String question,
+                              Supplier<StreamRetrievalEvent> retrieval,
+                              Function<StreamRetrievalEvent, Flux<String>> generation,
+                              BiConsumer<StreamCompletionEvent, String> completionCustomizer) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        String queryId = UUID.randomUUID().toString();
+
+        // 连接结束后注册的订阅会被立即取消
+        Disposable.Swap subscription = Disposables.swap();
+        emitter.onCompletion(subscription::dispose);
+        emitter.onTimeout(() -> {
+            log.warn("流式查询超时: queryId={}, queryType={}", queryId, queryType);
+            subscription.dispose();
+        });
+        emitter.onError(e -> subscription.dispose());
+
+        try {
+            streamingQueryExecutor.execute(() -> runQuery(emitter, subscription, queryId, queryType, question,
+                                                          retrieval, generation, completionCustomizer));
+        } catch (RejectedExecutionException e) {
+            // 线程池已满时不在Web容器线程上同步执行，直接以错误事件结束连接（事件在连接建立后推送）
+            log.warn("流式查询线程池已满，拒绝请求: queryId={}, queryType={}", queryId, queryType);
+            sendError(emitter, queryId, new IllegalStateException("服务繁忙，请稍后重试"));
+        }
+
+        return emitter;
+    }
+
+    /**
+     * 在流式查询线程池上执行检索，并订阅生成流
+     */
+    private void runQuery(SseEmitter emitter, Disposable.Swap subscription, String queryId,
+                          String queryType, String question,
+                          Supplier<StreamRetrievalEvent> retrieval,
+                          Function<StreamRetrievalEvent, Flux<String>> generation,
+                          BiConsumer<StreamCompletionEvent, String> completionCustomizer) {
+        long startTime = System.nanoTime();
+        try {
+            StreamRetrievalEvent retrievalEvent = retrieval.get();
+            long retrievedAt = System.nanoTime();
+            retrievalEvent.setQueryId(queryId);
+            retrievalEvent.setQueryType(queryType);
+            retrievalEvent.setQuestion(question);
+            retrievalEvent.setRetrievalTime(elapsedMillis(startTime, retrievedAt));
+
+            if (!send(emitter, EVENT_RETRIEVAL, retrievalEvent) || subscription.isDisposed()) {
+                return;
+            }
+
+            StringBuilder answer = new StringBuilder();
+            AtomicLong firstTokenAt = new AtomicLong();
+            subscription.update(generation.apply(retrievalEvent).subscribe(
+                    content -> {
+                        firstTokenAt.compareAndSet(0, System.nanoTime());
+                        answer.append(content);
+                        if (!send(emitter, EVENT_TOKEN, new StreamTokenEvent(queryId, content))) {
+                            subscription.dispose();
+                        }
+                    },
+                    error -> {
+                        log.error("流式生成失败: queryId={}, queryType={}", queryId, queryType, error);
+                        sendError(emitter, queryId, error);
+                    },
+                    () -> {
+                        long completedAt = System.nanoTime();
+                        StreamCompletionEvent completion = new StreamCompletionEvent();
+                        completion.setQueryId(queryId);
+                        completion.setQueryType(queryType);
+                        completion.setModel("qwen-max");
+                        completion.setTokensUsed(ragAssistantService.estimateTokens(question, answer.toString()));
+                        completion.setRetrievalTime(retrievalEvent.getRetrievalTime());
+                        completion.setFirstTokenTime(firstTokenAt.get() == 0
+                                                     ? null : elapsedMillis(retrievedAt, firstTokenAt.get()));
+                        completion.setGenerationTime(elapsedMillis(retrievedAt, completedAt));
+                        completion.setProcessingTime(elapsedMillis(startTime, completedAt));
+                        if (completionCustomizer != null) {
+                            completionCustomizer.accept(completion, answer.toString());
+                        }
+
+                        if (send(emitter, EVENT_COMPLETE, completion)) {
+                            emitter.complete();
+                        }
+                    }
+            ));
+
+        } catch (Exception e) {
+            log.error("流式查询失败: queryId={}, queryType={}", queryId, queryType, e);
+            sendError(emitter, queryId, e);
+        }
+    }
+
+    private StreamRetrievalEvent retrievalEvent(List<DocumentSegment> documents) {
+        StreamRetrievalEvent event = new StreamRetrievalEvent();
+        event.setDocuments(documents);
+        return event;
+    }
+
+    /**
+     * 推送事件，客户端已断开时返回false
+     */
+    private boolean send(SseEmitter emitter, String eventName, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("流式事件推送失败，客户端可能已断开: event={}, error={}", eventName, e.getMessage());
+            return false;
+        }
+    }
+
+    private void sendError(SseEmitter emitter, String queryId, Throwable error) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("queryId", queryId);
+        data.put("success", false);
+        data.put("errorMessage", "查询失败: " + error.getMessage());
+
+        if (send(emitter, EVENT_ERROR, data)) {
+            emitter.complete();
+        }
+    }
+
+    private long elapsedMillis(long fromNanos, long toNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(toNanos - fromNanos);
+    }
+}
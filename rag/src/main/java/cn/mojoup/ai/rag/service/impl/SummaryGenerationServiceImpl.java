@@ -4,8 +4,11 @@ import cn.mojoup.ai.rag.domain.DocumentSegment;
 import cn.mojoup.ai.rag.service.SummaryGenerationService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.util.Arrays;
 import java.util.List;
@@ -121,6 +124,36 @@ public class SummaryGenerationServiceImpl implements SummaryGenerationService {
         return (ratioScore + keywordRetention) / 2.0;
     }
 
+    @Override
+    public Flux<String> streamSummary(String question, List<DocumentSegment> documents,
+                                      String summaryType, Integer summaryLength, Double temperature) {
+        log.debug("流式生成摘要: summaryType={}, summaryLength={}", summaryType, summaryLength);
+
+        StringBuilder allContent = new StringBuilder();
+        for (DocumentSegment doc : documents) {
+            allContent.append(doc.getContent()).append(" ");
+        }
+        String content = allContent.toString();
+
+        switch (summaryType.toLowerCase()) {
+            case "extractive":
+                // 抽取式摘要在本地完成，一次性输出
+                return Flux.defer(() -> Flux.just(generateExtractiveSummary(content, summaryLength)));
+            case "abstractive":
+                return streamAbstractiveSummary(question, content, summaryLength, temperature);
+            case "hybrid":
+                // 先输出抽取式部分，再流式输出基于抽取结果的生成式部分
+                return Flux.defer(() -> {
+                    String extractive = generateExtractiveSummary(content, summaryLength / 2);
+                    return Flux.just(extractive + " ")
+                               .concatWith(streamAbstractiveSummary(question, extractive,
+                                                                    summaryLength / 2, temperature));
+                });
+            default:
+                return Flux.just(content.substring(0, Math.min(summaryLength, content.length())));
+        }
+    }
+
     // ==================== 私有辅助方法 ====================
 
     private String generateHybridSummary(String question, String content,
@@ -136,6 +169,17 @@ public class SummaryGenerationServiceImpl implements SummaryGenerationService {
         return extractive + " " + abstractive;
     }
 
+    private Flux<String> streamAbstractiveSummary(String question, String content,
+                                                  Integer summaryLength, Double temperature) {
+        ChatOptions options = ChatOptions.builder()
+                                         .temperature(temperature)
+                                         .build();
+
+        return chatClient.prompt(new Prompt(buildSummaryPrompt(question, content, summaryLength), options))
+                         .stream()
+                         .content();
+    }
+
     private String buildSummaryPrompt(String question, String content, Integer summaryLength) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("请对以下内容生成摘要：\n\n");
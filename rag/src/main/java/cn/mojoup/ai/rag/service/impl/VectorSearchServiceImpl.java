@@ -1,12 +1,15 @@
 package cn.mojoup.ai.rag.service.impl;
 
 import cn.mojoup.ai.rag.domain.DocumentSegment;
+import cn.mojoup.ai.rag.pipeline.CascadeRankingPipeline;
+import cn.mojoup.ai.rag.pipeline.LatencyBudget;
 import cn.mojoup.ai.rag.service.DocumentRerankService;
 import cn.mojoup.ai.rag.service.VectorSearchService;
+import cn.mojoup.ai.rag.service.VectorStoreService;
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,10 +36,18 @@ public class VectorSearchServiceImpl implements VectorSearchService {
     @Autowired(required = false)
     private EmbeddingModel embeddingModel;
 
+    // 知识库内检索（过滤和topK在SQL内完成）
+    @Autowired
+    private VectorStoreService vectorStoreService;
+
     // 重排序服务
     @Autowired
     private DocumentRerankService documentRerankService;
 
+    // 级联排序（启用时替代单次重排序）
+    @Autowired
+    private CascadeRankingPipeline cascadeRankingPipeline;
+
     @Value("${rag.vector.default-embedding-model:text-embedding-ada-002}")
     private String defaultEmbeddingModel;
 
@@ -46,6 +57,24 @@ public class VectorSearchServiceImpl implements VectorSearchService {
     @Value("${rag.vector.max-results:100}")
     private Integer maxResults;
 
+    /**
+     * 启用后知识库内检索先多取候选，再按最大边际相关性选出结果，去除重叠分块造成的近似重复
+     */
+    @Value("${rag.vector.mmr.enabled:false}")
+    private Boolean mmrEnabled;
+
+    /**
+     * 相关度权重（0~1），越小结果越分散
+     */
+    @Value("${rag.vector.mmr.lambda:0.5}")
+    private Double mmrLambda;
+
+    /**
+     * 候选数为返回结果数的倍数
+     */
+    @Value("${rag.vector.mmr.candidate-factor:4}")
+    private Integer mmrCandidateFactor;
+
     @Override
     public List<DocumentSegment> search(String query, String knowledgeBaseId,
                                         Integer limit, Double threshold) {
@@ -62,8 +91,8 @@ public class VectorSearchServiceImpl implements VectorSearchService {
             limit = limit != null ? Math.min(limit, maxResults) : 10;
             threshold = threshold != null ? threshold : defaultSimilarityThreshold;
 
-            // 2. 直接使用查询字符串进行向量搜索
-            List<DocumentSegment> searchResults = performVectorSearch(query, knowledgeBaseId, limit * 2);
+            // 2. 直接使用查询字符串进行向量搜索，topK和阈值下推到向量库
+            List<DocumentSegment> searchResults = performVectorSearch(query, knowledgeBaseId, limit, threshold);
 
             // 3. 过滤低于阈值的结果
             List<DocumentSegment> filteredResults = filterByThreshold(searchResults, threshold);
@@ -85,6 +114,14 @@ public class VectorSearchServiceImpl implements VectorSearchService {
     public List<DocumentSegment> semanticSearch(String query, String knowledgeBaseId,
                                                 String embeddingModel, Integer limit,
                                                 Double threshold, Boolean rerank) {
+        return semanticSearch(query, knowledgeBaseId, embeddingModel, limit, threshold, rerank,
+                              cascadeRankingPipeline.newBudget());
+    }
+
+    @Override
+    public List<DocumentSegment> semanticSearch(String query, String knowledgeBaseId,
+                                                String embeddingModel, Integer limit,
+                                                Double threshold, Boolean rerank, LatencyBudget budget) {
         log.info("执行语义检索: query={}, embeddingModel={}, rerank={}",
                  query, embeddingModel, rerank);
 
@@ -95,14 +132,25 @@ public class VectorSearchServiceImpl implements VectorSearchService {
             threshold = threshold != null ? threshold : defaultSimilarityThreshold;
             rerank = rerank != null ? rerank : false;
 
-            // 2. 直接使用查询字符串进行语义搜索
+            // 2. 启用重排序时交给级联排序：语义检索作为首阶段召回，后续排序阶段按剩余预算执行
+            if (rerank && cascadeRankingPipeline.isEnabled()) {
+                String model = embeddingModel;
+                Double minScore = threshold;
+                return cascadeRankingPipeline.execute(
+                        query,
+                        (candidateCount, embeddings) -> filterByThreshold(performSemanticVectorSearch(
+                                query, knowledgeBaseId, model, candidateCount, minScore, embeddings), minScore),
+                        limit, budget).getDocuments();
+            }
+
+            // 3. 直接使用查询字符串进行语义搜索，topK和阈值下推到向量库
             List<DocumentSegment> searchResults = performSemanticVectorSearch(
-                    query, knowledgeBaseId, embeddingModel, limit * 2);
+                    query, knowledgeBaseId, embeddingModel, limit, threshold);
 
-            // 3. 过滤低于阈值的结果
+            // 4. 过滤低于阈值的结果
             List<DocumentSegment> filteredResults = filterByThreshold(searchResults, threshold);
 
-            // 4. 如果启用重排序，则委托给DocumentRerankService
+            // 5. 如果启用重排序，则委托给DocumentRerankService
             if (rerank && filteredResults.size() > 1) {
                 filteredResults = documentRerankService.rerank(filteredResults, query);
             }
@@ -118,26 +166,42 @@ public class VectorSearchServiceImpl implements VectorSearchService {
         }
     }
 
+    @Override
+    public List<DocumentSegment> semanticSearch(String query, String knowledgeBaseId,
+                                                String embeddingModel, Integer limit,
+                                                Double threshold, Map<String, float[]> embeddings) {
+        log.debug("执行语义检索并收集向量: query={}, embeddingModel={}", query, embeddingModel);
+
+        try {
+            embeddingModel = embeddingModel != null ? embeddingModel : defaultEmbeddingModel;
+            limit = limit != null ? Math.min(limit, maxResults) : 10;
+            threshold = threshold != null ? threshold : defaultSimilarityThreshold;
+
+            List<DocumentSegment> searchResults = performSemanticVectorSearch(
+                    query, knowledgeBaseId, embeddingModel, limit, threshold, embeddings);
+            return filterByThreshold(searchResults, threshold).stream()
+                                                              .limit(limit)
+                                                              .collect(Collectors.toList());
+
+        } catch (Exception e) {
+            log.error("语义检索失败: query={}, error={}", query, e.getMessage(), e);
+            return search(query, knowledgeBaseId, limit, threshold);
+        }
+    }
+
     // ==================== 向量检索核心方法 ====================
 
     /**
      * 生成查询向量 - 集成Spring AI EmbeddingModel
+     * 注入的EmbeddingModel带查询向量缓存，相同查询在各检索路径间只向量化一次
      */
-    private List<Double> generateQueryEmbedding(String query) {
+    private EmbeddingVector generateQueryEmbedding(String query) {
         log.debug("生成查询向量: query={}", query);
 
         try {
             if (embeddingModel != null) {
-                // 使用Spring AI的EmbeddingModel
-                EmbeddingResponse response = embeddingModel.embedForResponse(List.of(query));
-                if (response != null && !response.getResults().isEmpty()) {
-                    float[] embedding = response.getResults().get(0).getOutput();
-                    List<Double> vector = new ArrayList<>();
-                    for (float value : embedding) {
-                        vector.add((double) value);
-                    }
-                    return normalizeVector(vector);
-                }
+                // 使用Spring AI的EmbeddingModel，返回的数组可能为缓存共享实例，normalized会先复制
+                return EmbeddingVector.normalized(embeddingModel.embed(query));
             }
         } catch (Exception e) {
             log.warn("Spring AI嵌入模型调用失败，降级到模拟: error={}", e.getMessage());
@@ -145,38 +209,56 @@ public class VectorSearchServiceImpl implements VectorSearchService {
 
         // 降级：模拟向量生成
         Random random = new Random(query.hashCode());
-        List<Double> vector = new ArrayList<>();
-        for (int i = 0; i < 1536; i++) { // OpenAI text-embedding-ada-002 的维度
-            vector.add(random.nextGaussian());
+        float[] vector = new float[1536]; // OpenAI text-embedding-ada-002 的维度
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
         }
 
-        return normalizeVector(vector);
+        return EmbeddingVector.normalized(vector);
     }
 
     /**
      * 执行向量搜索 - 集成Spring AI VectorStore
      */
-    private List<DocumentSegment> performVectorSearch(String query, String knowledgeBaseId, Integer limit) {
-        log.debug("执行向量搜索: query={}, knowledgeBaseId={}, limit={}",
-                  query, knowledgeBaseId, limit);
+    private List<DocumentSegment> performVectorSearch(String query, String knowledgeBaseId,
+                                                      Integer limit, Double threshold) {
+        return performVectorSearch(query, knowledgeBaseId, limit, threshold, null);
+    }
+
+    /**
+     * @param embeddings 非null时按分块ID写入知识库检索结果的向量，供级联排序的MMR阶段直接使用
+     */
+    private List<DocumentSegment> performVectorSearch(String query, String knowledgeBaseId,
+                                                      Integer limit, Double threshold,
+                                                      Map<String, float[]> embeddings) {
+        log.debug("执行向量搜索: query={}, knowledgeBaseId={}, limit={}, threshold={}",
+                  query, knowledgeBaseId, limit, threshold);
 
         try {
             if (vectorStore != null) {
-                // 使用Spring AI的VectorStore进行相似度搜索
-                SearchRequest.Builder searchBuilder = SearchRequest.builder()
-                                                                   .topK(limit)
-                                                                   .similarityThreshold(defaultSimilarityThreshold);
-
-                // 添加知识库过滤条件
-                if (knowledgeBaseId != null && !knowledgeBaseId.isEmpty()) {
-                    searchBuilder.filterExpression("knowledgeBaseId == '" + knowledgeBaseId + "'");
+                List<Document> documents;
+                if (knowledgeBaseId != null && !knowledgeBaseId.isEmpty() && Boolean.TRUE.equals(mmrEnabled)
+                    && embeddingModel != null) {
+                    // 候选连同向量一起取回，MMR在内存中完成，不重新向量化
+                    documents = vectorStoreService.mmrSearch(EmbeddingVector.of(embeddingModel.embed(query)),
+                                                             knowledgeBaseId, limit, limit * mmrCandidateFactor,
+                                                             mmrLambda, threshold, null, embeddings);
+                } else if (knowledgeBaseId != null && !knowledgeBaseId.isEmpty() && embeddings != null
+                           && embeddingModel != null) {
+                    documents = vectorStoreService.vectorSearch(EmbeddingVector.of(embeddingModel.embed(query)),
+                                                                knowledgeBaseId, limit, threshold, null, embeddings);
+                } else if (knowledgeBaseId != null && !knowledgeBaseId.isEmpty()) {
+                    // 知识库过滤在SQL内完成，直接返回该知识库内的topK
+                    documents = vectorStoreService.similaritySearch(query, knowledgeBaseId, limit, threshold);
+                } else {
+                    // 未指定知识库时全库检索（Spring AI会自动进行向量化）
+                    documents = vectorStore.similaritySearch(SearchRequest.builder()
+                                                                          .query(query)
+                                                                          .topK(limit)
+                                                                          .similarityThreshold(threshold)
+                                                                          .build());
                 }
 
-                SearchRequest searchRequest = searchBuilder.build();
-
-                // 使用查询字符串进行搜索（Spring AI会自动进行向量化）
-                List<Document> documents = vectorStore.similaritySearch(query);
-
                 return convertSpringAIDocumentsToSegments(documents);
             }
         } catch (Exception e) {
@@ -184,7 +266,7 @@ public class VectorSearchServiceImpl implements VectorSearchService {
         }
 
         // 降级：模拟向量搜索结果（保持原有逻辑以便测试）
-        List<Double> queryVector = generateQueryEmbedding(query);
+        EmbeddingVector queryVector = generateQueryEmbedding(query);
         List<DocumentSegment> results = new ArrayList<>();
         for (int i = 0; i < Math.min(limit, 10); i++) {
             DocumentSegment segment = createMockSegmentWithSimilarity(queryVector, knowledgeBaseId, i);
@@ -198,31 +280,25 @@ public class VectorSearchServiceImpl implements VectorSearchService {
      * 执行语义向量搜索
      */
     private List<DocumentSegment> performSemanticVectorSearch(String query, String knowledgeBaseId,
-                                                              String embeddingModel, Integer limit) {
-        log.debug("执行语义向量搜索: query={}, model={}, knowledgeBaseId={}, limit={}",
-                  query, embeddingModel, knowledgeBaseId, limit);
+                                                              String embeddingModel, Integer limit,
+                                                              Double threshold) {
+        return performSemanticVectorSearch(query, knowledgeBaseId, embeddingModel, limit, threshold, null);
+    }
+
+    /**
+     * @param embeddings 非null时按分块ID写入检索结果的向量
+     */
+    private List<DocumentSegment> performSemanticVectorSearch(String query, String knowledgeBaseId,
+                                                              String embeddingModel, Integer limit,
+                                                              Double threshold, Map<String, float[]> embeddings) {
+        log.debug("执行语义向量搜索: query={}, model={}, knowledgeBaseId={}, limit={}, threshold={}",
+                  query, embeddingModel, knowledgeBaseId, limit, threshold);
 
         try {
             if (vectorStore != null) {
-                // 创建更高级的搜索请求
-                SearchRequest.Builder searchBuilder = SearchRequest.builder()
-                                                                   .topK(limit)
-                                                                   .similarityThreshold(defaultSimilarityThreshold *
-                                                                                        0.9); // 语义搜索使用稍低的阈值
-
-                // 添加复合过滤条件
-                if (knowledgeBaseId != null && !knowledgeBaseId.isEmpty()) {
-                    String filterExpression = "knowledgeBaseId == '" + knowledgeBaseId +
-                                              "' && embeddingModel == '" + embeddingModel + "'";
-                    searchBuilder.filterExpression(filterExpression);
-                }
-
-                SearchRequest searchRequest = searchBuilder.build();
-
-                // 使用语义搜索
-                List<Document> documents = vectorStore.similaritySearch(query);
-
-                List<DocumentSegment> segments = convertSpringAIDocumentsToSegments(documents);
+                // 使用语义搜索，知识库过滤、topK和阈值由向量库完成
+                List<DocumentSegment> segments = performVectorSearch(query, knowledgeBaseId, limit, threshold,
+                                                                     embeddings);
 
                 // 为语义搜索结果增加一些分数提升
                 segments.forEach(doc -> {
@@ -241,7 +317,7 @@ public class VectorSearchServiceImpl implements VectorSearchService {
         }
 
         // 降级到基础向量搜索
-        return performVectorSearch(query, knowledgeBaseId, limit);
+        return performVectorSearch(query, knowledgeBaseId, limit, threshold);
     }
 
     // ==================== Spring AI转换方法 ====================
@@ -269,7 +345,8 @@ public class VectorSearchServiceImpl implements VectorSearchService {
         Map<String, Object> docMetadata = document.getMetadata();
         if (docMetadata != null) {
             segment.setDocumentId((String) docMetadata.getOrDefault("documentId", document.getId()));
-            segment.setKnowledgeBaseId((String) docMetadata.get("knowledgeBaseId"));
+            segment.setKnowledgeBaseId((String) docMetadata.getOrDefault("knowledgeBaseId",
+                                                                         docMetadata.get("knowledge_base_id")));
             segment.setTitle((String) docMetadata.get("title"));
             segment.setSource((String) docMetadata.get("source"));
             segment.setDocumentType((String) docMetadata.getOrDefault("documentType", "text"));
@@ -303,9 +380,11 @@ public class VectorSearchServiceImpl implements VectorSearchService {
             segment.setMetadata(new HashMap<>(docMetadata));
         }
 
-        // 设置相似度分数（Spring AI可能在metadata中提供）
+        // 设置相似度分数（优先使用向量库返回的分数，Spring AI也可能在metadata中提供）
         Object scoreObj = docMetadata != null ? docMetadata.get("score") : null;
-        if (scoreObj instanceof Number) {
+        if (document.getScore() != null) {
+            segment.setScore(document.getScore());
+        } else if (scoreObj instanceof Number) {
             segment.setScore(((Number) scoreObj).doubleValue());
         } else {
             segment.setScore(0.8); // 默认分数
@@ -322,15 +401,6 @@ public class VectorSearchServiceImpl implements VectorSearchService {
                         .collect(Collectors.toList());
     }
 
-    private List<Double> normalizeVector(List<Double> vector) {
-        double norm = Math.sqrt(vector.stream().mapToDouble(x -> x * x).sum());
-        if (norm == 0) return vector;
-
-        return vector.stream()
-                     .map(x -> x / norm)
-                     .collect(Collectors.toList());
-    }
-
     private int getEmbeddingDimension(String embeddingModel) {
         switch (embeddingModel.toLowerCase()) {
             case "text-embedding-ada-002":
@@ -348,7 +418,7 @@ public class VectorSearchServiceImpl implements VectorSearchService {
         }
     }
 
-    private DocumentSegment createMockSegmentWithSimilarity(List<Double> queryVector,
+    private DocumentSegment createMockSegmentWithSimilarity(EmbeddingVector queryVector,
                                                             String knowledgeBaseId,
                                                             int index) {
         DocumentSegment segment = new DocumentSegment();
@@ -375,7 +445,7 @@ public class VectorSearchServiceImpl implements VectorSearchService {
         // 设置元数据
         Map<String, Object> metadata = new HashMap<>();
         metadata.put("similarity", similarity);
-        metadata.put("vectorDimension", queryVector.size());
+        metadata.put("vectorDimension", queryVector.dimensions());
         metadata.put("searchMethod", "vector");
         metadata.put("author", "系统生成");
         metadata.put("category", "检索结果");
@@ -384,26 +454,33 @@ public class VectorSearchServiceImpl implements VectorSearchService {
         return segment;
     }
 
-    private String generateContentBasedOnVector(List<Double> queryVector, int index) {
+    private String generateContentBasedOnVector(EmbeddingVector queryVector, int index) {
         // 基于向量特征生成模拟内容
-        double vectorSum = queryVector.stream().mapToDouble(Double::doubleValue).sum();
+        double vectorSum = 0;
+        for (int i = 0; i < queryVector.dimensions(); i++) {
+            vectorSum += queryVector.get(i);
+        }
         String contentType = vectorSum > 0 ? "正向内容" : "负向内容";
 
         return String.format("这是第%d个检索结果，基于向量相似度匹配的%s。向量维度：%d，向量和：%.3f。" +
                              "此内容与查询具有较高的语义相似性，包含了相关的概念和信息。",
-                             index + 1, contentType, queryVector.size(), vectorSum);
+                             index + 1, contentType, queryVector.dimensions(), vectorSum);
     }
 
-    private double calculateMockSimilarity(List<Double> queryVector, int index) {
+    private double calculateMockSimilarity(EmbeddingVector queryVector, int index) {
         // 模拟相似度计算（实际应该是余弦相似度）
         double baseSimilarity = 0.95 - index * 0.05; // 递减的相似度
 
         // 添加一些基于向量的随机性
-        double vectorInfluence = queryVector.stream()
-                                            .limit(10)
-                                            .mapToDouble(Math::abs)
-                                            .average()
-                                            .orElse(0.5);
+        int sampled = Math.min(10, queryVector.dimensions());
+        double vectorInfluence = 0.5;
+        if (sampled > 0) {
+            double sum = 0;
+            for (int i = 0; i < sampled; i++) {
+                sum += Math.abs(queryVector.get(i));
+            }
+            vectorInfluence = sum / sampled;
+        }
 
         return Math.max(0.1, Math.min(1.0, baseSimilarity + (vectorInfluence - 0.5) * 0.1));
     }
@@ -1,25 +1,44 @@
 package cn.mojoup.ai.rag.service.impl;
 
+import cn.mojoup.ai.rag.cache.KnowledgeBaseVersionTracker;
+import cn.mojoup.ai.rag.index.LuceneKeywordIndex;
+import cn.mojoup.ai.rag.service.EmbeddingMigrationService;
+import cn.mojoup.ai.rag.service.EmbeddingMigrationService.ShadowVectors;
 import cn.mojoup.ai.rag.service.VectorStoreService;
+import cn.mojoup.ai.rag.store.HnswVectorStore;
+import cn.mojoup.ai.rag.store.KnowledgeBaseStatsRepository;
+import cn.mojoup.ai.rag.store.PgVectorBulkLoader;
+import cn.mojoup.ai.rag.store.PgVectorDocumentWriter;
+import cn.mojoup.ai.rag.store.PgVectorDocumentWriter.EmbeddedDocuments;
+import cn.mojoup.ai.rag.store.PgVectorSearchRepository;
+import cn.mojoup.ai.rag.store.SmallKnowledgeBaseSearcher;
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
+import cn.mojoup.ai.rag.vector.MaximalMarginalRelevance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
+import java.sql.PreparedStatement;
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
  * 向量存储服务实现
- * 基于PGVector的向量数据库操作
+ * 基于PGVector的向量数据库操作；配置为进程内HNSW存储时检索和元数据查询在内存中完成
  *
  * @author matt
  */
@@ -34,39 +53,85 @@ public class VectorStoreServiceImpl implements VectorStoreService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private KnowledgeBaseVersionTracker versionTracker;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private PgVectorSearchRepository pgVectorSearchRepository;
+
+    @Autowired
+    private SmallKnowledgeBaseSearcher smallKnowledgeBaseSearcher;
+
+    @Autowired
+    private PgVectorBulkLoader pgVectorBulkLoader;
+
+    @Autowired
+    private PgVectorDocumentWriter pgVectorDocumentWriter;
+
+    /**
+     * 仅pgvector下存在，相关调用都在非进程内存储的分支中
+     */
+    @Autowired(required = false)
+    private KnowledgeBaseStatsRepository knowledgeBaseStatsRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private LuceneKeywordIndex luceneKeywordIndex;
+
+    @Autowired
+    private EmbeddingMigrationService embeddingMigrationService;
+
     @Value("${rag.embedding.database.table-name:vector_store}")
     private String tableName;
 
     @Value("${rag.embedding.database.schema:public}")
     private String schemaName;
 
+    /**
+     * 按条件删除时每批删除的行数
+     */
+    @Value("${rag.vector.pgvector.delete-batch-size:1000}")
+    private Integer deleteBatchSize;
+
+    /**
+     * 单次添加的文档数达到该值时改走二进制COPY批量导入（不重建索引），小于等于0表示不启用
+     */
+    @Value("${rag.vector.pgvector.bulk-load.min-documents:2000}")
+    private Integer bulkLoadMinDocuments;
+
     /**
      * 添加文档到向量存储
      */
     @Override
-    @Transactional
     public void addDocuments(List<Document> documents, String knowledgeBaseId) {
         if (CollectionUtils.isEmpty(documents) || !StringUtils.hasText(knowledgeBaseId)) {
             logger.warn("Documents or knowledgeBaseId is empty, skipping addDocuments");
             return;
         }
 
+        if (vectorStore instanceof PgVectorStore && bulkLoadMinDocuments > 0
+            && documents.size() >= bulkLoadMinDocuments) {
+            // 大批量写入逐行维护HNSW图代价过高，改走COPY；向量化在事务外完成，不删除索引，检索不受影响
+            bulkAddDocuments(documents, knowledgeBaseId, false);
+            return;
+        }
+
         try {
             // 为每个文档添加知识库ID元数据
-            List<Document> enrichedDocuments = documents.stream()
-                                                        .map(doc -> {
-                                                            Map<String, Object> metadata = new HashMap<>(doc.getMetadata());
-                                                            metadata.put("knowledge_base_id", knowledgeBaseId);
-                                                            metadata.put("created_at", System.currentTimeMillis());
-                                                            return Document.builder()
-                                                                           .id(doc.getId())
-                                                                           .text(doc.getText())
-                                                                           .metadata(metadata)
-                                                                           .build();
-                                                        })
-                                                        .collect(Collectors.toList());
-
-            vectorStore.add(enrichedDocuments);
+            List<Document> enrichedDocuments = enrichDocuments(documents, knowledgeBaseId);
+
+            if (embeddedStore() != null) {
+                vectorStore.add(enrichedDocuments);
+            } else {
+                addToPgVector(knowledgeBaseId, enrichedDocuments);
+            }
+            luceneKeywordIndex.addDocuments(knowledgeBaseId, enrichedDocuments);
+            versionTracker.bumpVersion(knowledgeBaseId);
             logger.info("Successfully added {} documents to knowledge base: {}",
                         enrichedDocuments.size(),
                         knowledgeBaseId);
@@ -77,11 +142,45 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
     }
 
+    /**
+     * 批量导入文档
+     */
+    @Override
+    public long bulkAddDocuments(List<Document> documents, String knowledgeBaseId, boolean rebuildIndex) {
+        if (CollectionUtils.isEmpty(documents) || !StringUtils.hasText(knowledgeBaseId)) {
+            logger.warn("Documents or knowledgeBaseId is empty, skipping bulkAddDocuments");
+            return 0L;
+        }
+
+        if (!(vectorStore instanceof PgVectorStore)) {
+            addDocuments(documents, knowledgeBaseId);
+            return documents.size();
+        }
+
+        try {
+            List<Document> enrichedDocuments = enrichDocuments(documents, knowledgeBaseId);
+            int[] newFiles = new int[1];
+            // 统计增量在COPY事务内更新，与写入一起提交或回滚
+            long rows = pgVectorBulkLoader.load(enrichedDocuments, rebuildIndex,
+                    () -> newFiles[0] = knowledgeBaseStatsRepository.countAbsentFiles(
+                            knowledgeBaseId, fileIdsOf(enrichedDocuments)),
+                    copied -> knowledgeBaseStatsRepository.recordAdded(
+                            knowledgeBaseId, copied, charCountOf(enrichedDocuments), newFiles[0]));
+            luceneKeywordIndex.addDocuments(knowledgeBaseId, enrichedDocuments);
+            versionTracker.bumpVersion(knowledgeBaseId);
+            logger.info("Successfully bulk loaded {} documents to knowledge base: {}", rows, knowledgeBaseId);
+            return rows;
+
+        } catch (Exception e) {
+            logger.error("Failed to bulk load documents to knowledge base: {}", knowledgeBaseId, e);
+            throw new RuntimeException("Failed to bulk load documents to vector store", e);
+        }
+    }
+
     /**
      * 删除文档
      */
     @Override
-    @Transactional
     public void deleteDocuments(List<String> documentIds, String knowledgeBaseId) {
         if (CollectionUtils.isEmpty(documentIds) || !StringUtils.hasText(knowledgeBaseId)) {
             logger.warn("DocumentIds or knowledgeBaseId is empty, skipping deleteDocuments");
@@ -89,11 +188,39 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
 
         try {
+            if (embeddedStore() == null) {
+                // 知识库归属校验合并进DELETE条件，按批删除
+                String sql = String.format(
+                        "DELETE FROM %s.%s WHERE knowledge_base_id = ? AND id::text = ANY(?) " +
+                        "RETURNING id::text AS id, file_id, LENGTH(content) AS chars",
+                        schemaName, tableName);
+                int deleted = 0;
+                Set<String> fileIds = new HashSet<>();
+                for (int start = 0; start < documentIds.size(); start += deleteBatchSize) {
+                    List<String> batch = documentIds.subList(start, Math.min(start + deleteBatchSize, documentIds.size()));
+                    deleted += deleteBatch(knowledgeBaseId, fileIds, connection -> {
+                        PreparedStatement ps = connection.prepareStatement(sql);
+                        ps.setString(1, knowledgeBaseId);
+                        ps.setArray(2, connection.createArrayOf("text", batch.toArray()));
+                        return ps;
+                    });
+                }
+                knowledgeBaseStatsRepository.recordDeleted(
+                        knowledgeBaseId, 0, 0, knowledgeBaseStatsRepository.countAbsentFiles(knowledgeBaseId, fileIds));
+                if (deleted > 0) {
+                    versionTracker.bumpVersion(knowledgeBaseId);
+                }
+                logger.info("Successfully deleted {} documents from knowledge base: {}", deleted, knowledgeBaseId);
+                return;
+            }
+
             // 验证文档是否属于指定知识库
             List<String> validDocumentIds = validateDocumentsInKnowledgeBase(documentIds, knowledgeBaseId);
 
             if (!CollectionUtils.isEmpty(validDocumentIds)) {
                 vectorStore.delete(validDocumentIds);
+                luceneKeywordIndex.deleteDocuments(knowledgeBaseId, validDocumentIds);
+                versionTracker.bumpVersion(knowledgeBaseId);
                 logger.info("Successfully deleted {} documents from knowledge base: {}",
                             validDocumentIds.size(),
                             knowledgeBaseId);
@@ -111,7 +238,6 @@ public class VectorStoreServiceImpl implements VectorStoreService {
      * 根据文件ID删除所有相关文档
      */
     @Override
-    @Transactional
     public void deleteDocumentsByFileId(String fileId, String knowledgeBaseId) {
         if (!StringUtils.hasText(fileId) || !StringUtils.hasText(knowledgeBaseId)) {
             logger.warn("FileId or knowledgeBaseId is empty, skipping deleteDocumentsByFileId");
@@ -119,16 +245,29 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
 
         try {
-            // 查询属于该文件的所有文档ID
-            String sql = String.format(
-                    "SELECT id FROM %s.%s WHERE metadata->>'file_id' = ? AND metadata->>'knowledge_base_id' = ?",
-                    schemaName, tableName
-            );
+            HnswVectorStore embeddedStore = embeddedStore();
+            if (embeddedStore == null) {
+                int deleted = batchedDelete(knowledgeBaseId, "knowledge_base_id = ? AND file_id = ?",
+                                            knowledgeBaseId, fileId);
+                if (deleted > 0) {
+                    knowledgeBaseStatsRepository.recordDeleted(knowledgeBaseId, 0, 0, 1);
+                    versionTracker.bumpVersion(knowledgeBaseId);
+                }
+                logger.info("Successfully deleted {} documents for file {} from knowledge base: {}",
+                            deleted, fileId, knowledgeBaseId);
+                return;
+            }
 
-            List<String> documentIds = jdbcTemplate.queryForList(sql, String.class, fileId, knowledgeBaseId);
+            // 查询属于该文件的所有文档ID
+            List<String> documentIds = embeddedStore.findIds(new Filter.Expression(
+                    Filter.ExpressionType.AND,
+                    knowledgeBaseFilter(knowledgeBaseId),
+                    new Filter.Expression(Filter.ExpressionType.EQ, new Filter.Key("file_id"), new Filter.Value(fileId))));
 
             if (!CollectionUtils.isEmpty(documentIds)) {
                 vectorStore.delete(documentIds);
+                luceneKeywordIndex.deleteDocuments(knowledgeBaseId, documentIds);
+                versionTracker.bumpVersion(knowledgeBaseId);
                 logger.info("Successfully deleted {} documents for file {} from knowledge base: {}",
                             documentIds.size(), fileId, knowledgeBaseId);
             } else {
@@ -152,26 +291,15 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
 
         try {
-            // 使用基础的相似性搜索，然后手动过滤知识库
-            List<Document> allResults = vectorStore.similaritySearch(
-                    SearchRequest.builder()
-                                 .query(query)
-                                 .topK(topK * 2) // 获取更多结果以便过滤
-                                 .similarityThreshold(similarityThreshold)
-                                 .build()
-            );
-
-            // 手动过滤属于指定知识库的文档
-            List<Document> filteredResults = allResults.stream()
-                                                       .filter(doc -> knowledgeBaseId.equals(doc.getMetadata()
-                                                                                                .get("knowledge_base_id")))
-                                                       .limit(topK)
-                                                       .collect(Collectors.toList());
+            // 知识库过滤、topK和阈值均在SQL内完成
+            EmbeddingVector queryEmbedding = EmbeddingVector.of(embeddingModel.embed(query));
+            List<Document> results = knowledgeBaseSearch(queryEmbedding, knowledgeBaseId, topK,
+                                                         similarityThreshold, null);
 
             logger.debug("Similarity search returned {} results for knowledge base: {}",
-                         filteredResults.size(),
+                         results.size(),
                          knowledgeBaseId);
-            return filteredResults;
+            return results;
 
         } catch (Exception e) {
             logger.error("Failed to perform similarity search in knowledge base: {}", knowledgeBaseId, e);
@@ -192,11 +320,41 @@ public class VectorStoreServiceImpl implements VectorStoreService {
             return Collections.emptyList();
         }
 
-        try {
-            // 简化实现：使用相似性搜索代替复杂的向量搜索
-            // 在实际应用中，这里应该直接使用向量进行搜索
-            logger.warn("VectorSearch not fully implemented, falling back to similarity search");
+        return vectorSearch(EmbeddingVector.fromList(queryEmbedding), knowledgeBaseId, topK, similarityThreshold, null);
+    }
+
+    /**
+     * 使用已计算的查询向量搜索，向量以二进制格式直接发送给PostgreSQL
+     */
+    @Override
+    public List<Document> vectorSearch(EmbeddingVector queryEmbedding,
+                                       String knowledgeBaseId,
+                                       int topK,
+                                       double similarityThreshold,
+                                       List<String> metadataKeys) {
+        return vectorSearch(queryEmbedding, knowledgeBaseId, topK, similarityThreshold, metadataKeys, null);
+    }
+
+    @Override
+    public List<Document> vectorSearch(EmbeddingVector queryEmbedding,
+                                       String knowledgeBaseId,
+                                       int topK,
+                                       double similarityThreshold,
+                                       List<String> metadataKeys,
+                                       Map<String, float[]> embeddings) {
+        if (queryEmbedding == null || queryEmbedding.dimensions() == 0 || !StringUtils.hasText(knowledgeBaseId)) {
+            logger.warn("QueryEmbedding or knowledgeBaseId is empty, returning empty results");
             return Collections.emptyList();
+        }
+
+        try {
+            List<Document> results = knowledgeBaseSearch(queryEmbedding, knowledgeBaseId, topK,
+                                                         similarityThreshold, metadataKeys, embeddings);
+
+            logger.debug("Vector search returned {} results for knowledge base: {}",
+                         results.size(),
+                         knowledgeBaseId);
+            return results;
 
         } catch (Exception e) {
             logger.error("Failed to perform vector search in knowledge base: {}", knowledgeBaseId, e);
@@ -204,6 +362,72 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
     }
 
+    /**
+     * 最大边际相关性检索
+     */
+    @Override
+    public List<Document> mmrSearch(EmbeddingVector queryEmbedding,
+                                    String knowledgeBaseId,
+                                    int topK,
+                                    int candidateCount,
+                                    double lambda,
+                                    double similarityThreshold,
+                                    List<String> metadataKeys) {
+        return mmrSearch(queryEmbedding, knowledgeBaseId, topK, candidateCount, lambda, similarityThreshold,
+                         metadataKeys, null);
+    }
+
+    @Override
+    public List<Document> mmrSearch(EmbeddingVector queryEmbedding,
+                                    String knowledgeBaseId,
+                                    int topK,
+                                    int candidateCount,
+                                    double lambda,
+                                    double similarityThreshold,
+                                    List<String> metadataKeys,
+                                    Map<String, float[]> embeddings) {
+        if (queryEmbedding == null || queryEmbedding.dimensions() == 0 || !StringUtils.hasText(knowledgeBaseId)) {
+            logger.warn("QueryEmbedding or knowledgeBaseId is empty, returning empty results");
+            return Collections.emptyList();
+        }
+
+        try {
+            Map<String, float[]> candidateEmbeddings = embeddings != null ? embeddings : new HashMap<>();
+            List<Document> candidates = knowledgeBaseSearch(queryEmbedding, knowledgeBaseId,
+                                                            Math.max(topK, candidateCount), similarityThreshold,
+                                                            metadataKeys, candidateEmbeddings);
+            if (candidates.size() <= topK) {
+                return candidates;
+            }
+
+            double[] relevance = new double[candidates.size()];
+            float[][] vectors = new float[candidates.size()][];
+            for (int i = 0; i < candidates.size(); i++) {
+                Document candidate = candidates.get(i);
+                relevance[i] = candidate.getScore() != null ? candidate.getScore() : 0.0;
+                vectors[i] = candidateEmbeddings.get(candidate.getId());
+                if (vectors[i] == null) {
+                    logger.warn("Candidate embedding missing, skipping MMR for knowledge base: {}", knowledgeBaseId);
+                    return candidates.subList(0, topK);
+                }
+            }
+
+            int[] selected = MaximalMarginalRelevance.select(relevance, vectors, topK, lambda);
+            List<Document> results = new ArrayList<>(selected.length);
+            for (int index : selected) {
+                results.add(candidates.get(index));
+            }
+
+            logger.debug("MMR search selected {} of {} candidates for knowledge base: {}",
+                         results.size(), candidates.size(), knowledgeBaseId);
+            return results;
+
+        } catch (Exception e) {
+            logger.error("Failed to perform MMR search in knowledge base: {}", knowledgeBaseId, e);
+            throw new RuntimeException("Failed to perform MMR search", e);
+        }
+    }
+
     /**
      * 高级搜索
      */
@@ -215,19 +439,27 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
 
         try {
-            // 执行搜索
-            List<Document> results = vectorStore.similaritySearch(searchRequest);
-
-            // 手动过滤属于指定知识库的文档
-            List<Document> filteredResults = results.stream()
-                                                    .filter(doc -> knowledgeBaseId.equals(doc.getMetadata()
-                                                                                             .get("knowledge_base_id")))
-                                                    .collect(Collectors.toList());
+            List<Document> results;
+            if (searchRequest.hasFilterExpression()) {
+                // 带自定义过滤条件时，将知识库条件合并进过滤表达式，由VectorStore下推到SQL
+                Filter.Expression knowledgeBaseFilter = knowledgeBaseFilter(knowledgeBaseId);
+                results = vectorStore.similaritySearch(
+                        SearchRequest.from(searchRequest)
+                                     .filterExpression(new Filter.Expression(Filter.ExpressionType.AND,
+                                                                             knowledgeBaseFilter,
+                                                                             searchRequest.getFilterExpression()))
+                                     .build());
+            } else {
+                // 按请求的topK和阈值在知识库内检索
+                results = similaritySearch(searchRequest.getQuery(), knowledgeBaseId,
+                                           searchRequest.getTopK(),
+                                           searchRequest.getSimilarityThreshold());
+            }
 
             logger.debug("Advanced search returned {} results for knowledge base: {}",
-                         filteredResults.size(),
+                         results.size(),
                          knowledgeBaseId);
-            return filteredResults;
+            return results;
 
         } catch (Exception e) {
             logger.error("Failed to perform advanced search in knowledge base: {}", knowledgeBaseId, e);
@@ -245,13 +477,17 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
 
         try {
+            HnswVectorStore embeddedStore = embeddedStore();
+            if (embeddedStore != null) {
+                return embeddedStore.count(knowledgeBaseId) > 0;
+            }
+
             String sql = String.format(
-                    "SELECT COUNT(*) FROM %s.%s WHERE metadata->>'knowledge_base_id' = ? LIMIT 1",
+                    "SELECT EXISTS (SELECT 1 FROM %s.%s WHERE knowledge_base_id = ?)",
                     schemaName, tableName
             );
 
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, knowledgeBaseId);
-            return count != null && count > 0;
+            return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, knowledgeBaseId));
 
         } catch (Exception e) {
             logger.error("Failed to check if knowledge base exists: {}", knowledgeBaseId, e);
@@ -263,7 +499,6 @@ public class VectorStoreServiceImpl implements VectorStoreService {
      * 创建知识库
      */
     @Override
-    @Transactional
     public void createKnowledgeBase(String knowledgeBaseId, String description) {
         if (!StringUtils.hasText(knowledgeBaseId)) {
             throw new IllegalArgumentException("Knowledge base ID cannot be empty");
@@ -283,7 +518,11 @@ public class VectorStoreServiceImpl implements VectorStoreService {
                                               .metadata(metadata)
                                               .build();
 
-            vectorStore.add(List.of(markerDocument));
+            if (embeddedStore() == null) {
+                addToPgVector(knowledgeBaseId, List.of(markerDocument));
+            } else {
+                vectorStore.add(List.of(markerDocument));
+            }
             logger.info("Successfully created knowledge base: {} with description: {}", knowledgeBaseId, description);
 
         } catch (Exception e) {
@@ -296,7 +535,6 @@ public class VectorStoreServiceImpl implements VectorStoreService {
      * 删除知识库
      */
     @Override
-    @Transactional
     public void deleteKnowledgeBase(String knowledgeBaseId) {
         if (!StringUtils.hasText(knowledgeBaseId)) {
             logger.warn("Knowledge base ID is empty, skipping deleteKnowledgeBase");
@@ -304,16 +542,25 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
 
         try {
-            // 查询该知识库下的所有文档ID
-            String sql = String.format(
-                    "SELECT id FROM %s.%s WHERE metadata->>'knowledge_base_id' = ?",
-                    schemaName, tableName
-            );
+            HnswVectorStore embeddedStore = embeddedStore();
+            if (embeddedStore == null) {
+                int deleted = batchedDelete(knowledgeBaseId, "knowledge_base_id = ?", knowledgeBaseId);
+                knowledgeBaseStatsRepository.remove(knowledgeBaseId);
+                luceneKeywordIndex.deleteKnowledgeBase(knowledgeBaseId);
+                versionTracker.bumpVersion(knowledgeBaseId);
+                smallKnowledgeBaseSearcher.invalidate(knowledgeBaseId);
+                logger.info("Successfully deleted knowledge base: {} with {} documents", knowledgeBaseId, deleted);
+                return;
+            }
 
-            List<String> documentIds = jdbcTemplate.queryForList(sql, String.class, knowledgeBaseId);
+            // 查询该知识库下的所有文档ID
+            List<String> documentIds = embeddedStore.findIds(knowledgeBaseFilter(knowledgeBaseId));
+            luceneKeywordIndex.deleteKnowledgeBase(knowledgeBaseId);
 
             if (!CollectionUtils.isEmpty(documentIds)) {
                 vectorStore.delete(documentIds);
+                versionTracker.bumpVersion(knowledgeBaseId);
+                smallKnowledgeBaseSearcher.invalidate(knowledgeBaseId);
                 logger.info("Successfully deleted knowledge base: {} with {} documents",
                             knowledgeBaseId,
                             documentIds.size());
@@ -337,22 +584,32 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
 
         try {
+            if (embeddedStore() == null) {
+                KnowledgeBaseStats stats = knowledgeBaseStatsRepository.find(knowledgeBaseId);
+                if (stats != null) {
+                    return stats;
+                }
+            }
+
+            // 统计表不可用时回退到聚合查询
             String sql = String.format(
                     "SELECT COUNT(*) as doc_count, " +
                     "COALESCE(SUM(LENGTH(content)), 0) as total_size, " +
+                    "COUNT(DISTINCT file_id) as file_count, " +
                     "MIN(metadata->>'created_at') as created_at, " +
                     "MAX(metadata->>'created_at') as updated_at " +
-                    "FROM %s.%s WHERE metadata->>'knowledge_base_id' = ?",
+                    "FROM %s.%s WHERE knowledge_base_id = ?",
                     schemaName, tableName
             );
 
             return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
                 long documentCount = rs.getLong("doc_count");
                 long totalSize = rs.getLong("total_size");
+                long fileCount = rs.getLong("file_count");
                 String createdAt = rs.getString("created_at");
                 String updatedAt = rs.getString("updated_at");
 
-                return new KnowledgeBaseStats(knowledgeBaseId, documentCount, totalSize, createdAt, updatedAt);
+                return new KnowledgeBaseStats(knowledgeBaseId, documentCount, totalSize, fileCount, createdAt, updatedAt);
             }, knowledgeBaseId);
 
         } catch (Exception e) {
@@ -370,12 +627,18 @@ public class VectorStoreServiceImpl implements VectorStoreService {
         }
 
         try {
+            HnswVectorStore embeddedStore = embeddedStore();
+            if (embeddedStore != null) {
+                Set<String> knowledgeBaseDocumentIds = new HashSet<>(embeddedStore.findIds(knowledgeBaseFilter(knowledgeBaseId)));
+                return documentIds.stream().filter(knowledgeBaseDocumentIds::contains).collect(Collectors.toList());
+            }
+
             String placeholders = documentIds.stream()
                                              .map(id -> "?")
                                              .collect(Collectors.joining(","));
 
             String sql = String.format(
-                    "SELECT id FROM %s.%s WHERE id IN (%s) AND metadata->>'knowledge_base_id' = ?",
+                    "SELECT id FROM %s.%s WHERE id IN (%s) AND knowledge_base_id = ?",
                     schemaName, tableName, placeholders
             );
 
@@ -389,4 +652,176 @@ public class VectorStoreServiceImpl implements VectorStoreService {
             return Collections.emptyList();
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 按批删除满足条件的行，每批在各自的事务内提交，限制单次持锁时间和WAL突增
+     *
+     * @param condition 基于生成列的过滤条件
+     * @return 删除的总行数
+     */
+    private int batchedDelete(String knowledgeBaseId, String condition, Object... params) {
+        String sql = String.format(
+                "DELETE FROM %1$s.%2$s WHERE id IN (SELECT id FROM %1$s.%2$s WHERE %3$s LIMIT %4$d) " +
+                "RETURNING id::text AS id, file_id, LENGTH(content) AS chars",
+                schemaName, tableName, condition, deleteBatchSize);
+
+        int total = 0;
+        int deleted;
+        Set<String> fileIds = new HashSet<>();
+        do {
+            deleted = deleteBatch(knowledgeBaseId, fileIds, connection -> {
+                PreparedStatement ps = connection.prepareStatement(sql);
+                for (int i = 0; i < params.length; i++) {
+                    ps.setObject(i + 1, params[i]);
+                }
+                return ps;
+            });
+            total += deleted;
+        } while (deleted >= deleteBatchSize);
+        return total;
+    }
+
+    /**
+     * 执行一批DELETE ... RETURNING，并在同一事务内扣减知识库统计；
+     * 返回的分块ID在事务提交后从关键词索引中删除
+     *
+     * @param fileIds 收集被删除分块所属的文件ID
+     * @return 本批删除的行数
+     */
+    private int deleteBatch(String knowledgeBaseId, Set<String> fileIds, PreparedStatementCreator statement) {
+        List<String> deletedIds = transactionTemplate.execute(status -> {
+            List<String> ids = new ArrayList<>();
+            long[] chars = new long[1];
+            jdbcTemplate.query(statement, (RowCallbackHandler) rs -> {
+                ids.add(rs.getString("id"));
+                chars[0] += rs.getLong("chars");
+                String fileId = rs.getString("file_id");
+                if (fileId != null) {
+                    fileIds.add(fileId);
+                }
+            });
+            knowledgeBaseStatsRepository.recordDeleted(knowledgeBaseId, ids.size(), chars[0], 0);
+            return ids;
+        });
+        if (CollectionUtils.isEmpty(deletedIds)) {
+            return 0;
+        }
+        // 事务已提交：回滚时关键词索引不会丢失仍存在于向量表中的分块，删除期间也不占用数据库连接
+        luceneKeywordIndex.deleteDocuments(knowledgeBaseId, deletedIds);
+        return deletedIds.size();
+    }
+
+    /**
+     * 写入pgvector：远程向量化（含迁移影子列）在事务外完成，事务内只执行upsert和统计更新
+     * 向量化期间嵌入迁移恰好完成切换时，屏障已改用目标模型，重新向量化一次后写入
+     */
+    private void addToPgVector(String knowledgeBaseId, List<Document> documents) {
+        EmbeddedDocuments embedded = pgVectorDocumentWriter.embed(documents);
+        ShadowVectors shadowVectors = embeddingMigrationService.embedShadowVectors(documents);
+        try {
+            writeEmbedded(knowledgeBaseId, embedded, shadowVectors);
+        } catch (IllegalStateException e) {
+            if (Objects.equals(embedded.modelKey(), pgVectorDocumentWriter.modelKey())) {
+                throw e;
+            }
+            logger.info("Embedding model switched during write, embedding {} documents again for knowledge base: {}",
+                        documents.size(), knowledgeBaseId);
+            writeEmbedded(knowledgeBaseId, pgVectorDocumentWriter.embed(documents), null);
+        }
+    }
+
+    private void writeEmbedded(String knowledgeBaseId, EmbeddedDocuments embedded, ShadowVectors shadowVectors) {
+        List<Document> documents = embedded.documents();
+        transactionTemplate.executeWithoutResult(status -> {
+            int newFiles = knowledgeBaseStatsRepository.countAbsentFiles(knowledgeBaseId, fileIdsOf(documents));
+            // 嵌入迁移切换期间不会写入旧模型的向量，迁移未切换时同时写入影子列
+            embeddingMigrationService.writeFenced(embedded.modelKey(), shadowVectors,
+                                                  () -> pgVectorDocumentWriter.upsert(embedded));
+            knowledgeBaseStatsRepository.recordAdded(knowledgeBaseId, documents.size(),
+                                                     charCountOf(documents), newFiles);
+        });
+    }
+
+    private Set<String> fileIdsOf(List<Document> documents) {
+        Set<String> fileIds = new HashSet<>();
+        for (Document document : documents) {
+            Object fileId = document.getMetadata().get("file_id");
+            if (fileId != null) {
+                fileIds.add(fileId.toString());
+            }
+        }
+        return fileIds;
+    }
+
+    /**
+     * 文档字符数之和，按码点计数以与PostgreSQL的LENGTH一致
+     */
+    private long charCountOf(List<Document> documents) {
+        long chars = 0;
+        for (Document document : documents) {
+            String text = document.getText();
+            if (text != null) {
+                chars += text.codePointCount(0, text.length());
+            }
+        }
+        return chars;
+    }
+
+    private Filter.Expression knowledgeBaseFilter(String knowledgeBaseId) {
+        return new Filter.Expression(Filter.ExpressionType.EQ,
+                                     new Filter.Key("knowledge_base_id"),
+                                     new Filter.Value(knowledgeBaseId));
+    }
+
+    /**
+     * 为每个文档补充知识库ID和创建时间元数据
+     */
+    private List<Document> enrichDocuments(List<Document> documents, String knowledgeBaseId) {
+        return documents.stream()
+                        .map(doc -> {
+                            Map<String, Object> metadata = new HashMap<>(doc.getMetadata());
+                            metadata.put("knowledge_base_id", knowledgeBaseId);
+                            metadata.put("created_at", System.currentTimeMillis());
+                            return Document.builder()
+                                           .id(doc.getId())
+                                           .text(doc.getText())
+                                           .metadata(metadata)
+                                           .build();
+                        })
+                        .collect(Collectors.toList());
+    }
+
+    /**
+     * 知识库内近邻检索的路由：进程内HNSW存储直接检索；pgvector下小知识库走内存精确扫描，其余走HNSW索引
+     */
+    private List<Document> knowledgeBaseSearch(EmbeddingVector queryEmbedding, String knowledgeBaseId, int topK,
+                                               double similarityThreshold, List<String> metadataKeys) {
+        return knowledgeBaseSearch(queryEmbedding, knowledgeBaseId, topK, similarityThreshold, metadataKeys, null);
+    }
+
+    /**
+     * @param embeddings 非null时按文档ID写入结果的向量
+     */
+    private List<Document> knowledgeBaseSearch(EmbeddingVector queryEmbedding, String knowledgeBaseId, int topK,
+                                               double similarityThreshold, List<String> metadataKeys,
+                                               Map<String, float[]> embeddings) {
+        HnswVectorStore embeddedStore = embeddedStore();
+        if (embeddedStore != null) {
+            return embeddedStore.search(queryEmbedding, knowledgeBaseId, topK, similarityThreshold, embeddings);
+        }
+
+        List<Document> results = smallKnowledgeBaseSearcher.search(queryEmbedding, knowledgeBaseId, topK,
+                                                                   similarityThreshold, metadataKeys, embeddings);
+        return results != null
+               ? results
+               : pgVectorSearchRepository.nearestNeighbors(queryEmbedding, knowledgeBaseId, topK,
+                                                           similarityThreshold, metadataKeys, embeddings);
+    }
+
+    /**
+     * 当前配置为进程内HNSW存储时返回该实例，否则返回null
+     */
+    private HnswVectorStore embeddedStore() {
+        return vectorStore instanceof HnswVectorStore hnswVectorStore ? hnswVectorStore : null;
+    }
+}
@@ -0,0 +1,809 @@
+package cn.mojoup.ai.rag.store;
+
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
+import cn.mojoup.ai.rag.vector.HnswIndex;
+import cn.mojoup.ai.rag.vector.ScalarQuantizer;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * 进程内HNSW向量存储
+ * 面向单节点部署，检索在内存中完成，不产生数据库往返：
+ * <ul>
+ *     <li>向量归一化后存入{@link HnswIndex}，知识库及其他元数据条件在图遍历过程中过滤</li>
+ *     <li>每次写入先追加到写日志再修改内存索引，写日志达到阈值时落盘快照并截断日志</li>
+ *     <li>启动时加载最近一次快照并重放写日志恢复到崩溃前的状态</li>
+ *     <li>启用量化时，文档数达到校准样本量后以int8编码重建索引，全精度向量移到磁盘上的向量数据文件，
+ *     检索先用量化向量取topK的若干倍候选，再读取全精度向量重打分</li>
+ * </ul>
+ * 读操作并发执行，写操作互斥
+ *
+ * @author matt
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore, Closeable {
+
+    private static final String SNAPSHOT_FILE = "hnsw.snapshot";
+
+    private static final String WRITE_LOG_FILE = "hnsw.wal";
+
+    private static final String VECTOR_FILE_PREFIX = "hnsw.vectors.";
+
+    private static final int SNAPSHOT_MAGIC = 0x484E5357;
+
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private static final String KNOWLEDGE_BASE_KEY = "knowledge_base_id";
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final EmbeddingModel embeddingModel;
+
+    private final ObjectMapper objectMapper;
+
+    private final Path dataDir;
+
+    private final int m;
+
+    private final int efConstruction;
+
+    private final int efSearch;
+
+    private final long snapshotThreshold;
+
+    private final double compactRatio;
+
+    private final boolean fsync;
+
+    private final boolean quantizationEnabled;
+
+    private final int calibrationSize;
+
+    private final double calibrationQuantile;
+
+    private final int rescoreFactor;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private HnswIndex index;
+
+    private List<StoredDocument> documents = new ArrayList<>();
+
+    private Map<String, Integer> nodeById = new HashMap<>();
+
+    private VectorStoreWriteLog writeLog;
+
+    /**
+     * 全精度向量数据文件，仅在启用量化时使用；文件名带代次，索引重建时写入新代次
+     */
+    private VectorDataFile vectorFile;
+
+    private int vectorFileGeneration;
+
+    private HnswVectorStore(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.objectMapper = builder.objectMapper;
+        this.dataDir = builder.dataDir;
+        this.m = builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.snapshotThreshold = builder.snapshotThreshold;
+        this.compactRatio = builder.compactRatio;
+        this.fsync = builder.fsync;
+        this.quantizationEnabled = builder.quantizationEnabled;
+        this.calibrationSize = builder.calibrationSize;
+        this.calibrationQuantile = builder.calibrationQuantile;
+        this.rescoreFactor = Math.max(1, builder.rescoreFactor);
+        this.index = new HnswIndex(m, efConstruction);
+    }
+
+    public static Builder builder(EmbeddingModel embeddingModel, ObjectMapper objectMapper) {
+        return new Builder(embeddingModel, objectMapper);
+    }
+
+    /**
+     * 从快照和写日志恢复索引，应在首次使用前调用一次
+     */
+    public void initialize() {
+        lock.writeLock().lock();
+        try {
+            Files.createDirectories(dataDir);
+            Path snapshot = dataDir.resolve(SNAPSHOT_FILE);
+            if (Files.exists(snapshot)) {
+                loadSnapshot(snapshot);
+            }
+
+            Path writeLogPath = dataDir.resolve(WRITE_LOG_FILE);
+            boolean hasWriteLog = Files.exists(writeLogPath) && Files.size(writeLogPath) > 0;
+            long replayed = VectorStoreWriteLog.replay(writeLogPath, record -> {
+                try {
+                    if (record.isDelete()) {
+                        applyDelete(record.id());
+                    } else {
+                        applyAdd(record.id(), record.text(), parseMetadata(record.metadataJson()), record.vector());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writeLog = new VectorStoreWriteLog(writeLogPath, fsync);
+
+            log.info("HNSW向量存储初始化完成: dataDir={}, documents={}, replayedRecords={}, quantized={}",
+                     dataDir, nodeById.size(), replayed, index.isQuantized());
+
+            if (hasWriteLog) {
+                // 重放后立即快照，确保残缺的日志尾部不会与后续追加的记录混在一起
+                writeSnapshot();
+            }
+            deleteStaleVectorFiles();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to initialize HNSW vector store at " + dataDir, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "HnswVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documentList) {
+        if (documentList == null || documentList.isEmpty()) {
+            return;
+        }
+
+        List<float[]> embeddings = embeddingModel.embed(documentList, EmbeddingOptionsBuilder.builder().build(),
+                                                        new TokenCountBatchingStrategy());
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documentList.size(); i++) {
+                Document document = documentList.get(i);
+                float[] vector = embeddings.get(i).clone();
+                EmbeddingVector.normalizeInPlace(vector);
+                Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+                writeLog.appendAdd(document.getId(), document.getText(), objectMapper.writeValueAsBytes(metadata), vector);
+                applyAdd(document.getId(), document.getText(), metadata, vector);
+            }
+            writeLog.sync();
+            snapshotIfNecessary();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append documents to HNSW write log", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        if (idList == null || idList.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                if (nodeById.containsKey(id)) {
+                    writeLog.appendDelete(id);
+                    applyDelete(id);
+                }
+            }
+            writeLog.sync();
+            snapshotIfNecessary();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append deletes to HNSW write log", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delete(findIds(filterExpression));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        EmbeddingVector query = EmbeddingVector.of(embeddingModel.embed(request.getQuery()));
+        Filter.Expression filter = request.getFilterExpression();
+        String knowledgeBaseId = MetadataFilterEvaluator.extractEquality(filter, KNOWLEDGE_BASE_KEY);
+        return search(query, knowledgeBaseId, filter, request.getTopK(), request.getSimilarityThreshold(), null);
+    }
+
+    /**
+     * 使用已计算的查询向量在知识库内检索
+     *
+     * @param knowledgeBaseId 知识库ID，为null时检索全部文档
+     */
+    public List<Document> search(EmbeddingVector queryEmbedding, String knowledgeBaseId, int topK,
+                                 double similarityThreshold) {
+        return search(queryEmbedding, knowledgeBaseId, null, topK, similarityThreshold, null);
+    }
+
+    /**
+     * 使用已计算的查询向量在知识库内检索，并同时取回结果的全精度向量
+     *
+     * @param embeddings 非null时按文档ID写入结果的向量
+     */
+    public List<Document> search(EmbeddingVector queryEmbedding, String knowledgeBaseId, int topK,
+                                 double similarityThreshold, Map<String, float[]> embeddings) {
+        return search(queryEmbedding, knowledgeBaseId, null, topK, similarityThreshold, embeddings);
+    }
+
+    /**
+     * 查找满足过滤条件的文档ID
+     */
+    public List<String> findIds(Filter.Expression filterExpression) {
+        String knowledgeBaseId = MetadataFilterEvaluator.extractEquality(filterExpression, KNOWLEDGE_BASE_KEY);
+        return findIds(document -> (knowledgeBaseId == null || knowledgeBaseId.equals(document.knowledgeBaseId))
+                                   && MetadataFilterEvaluator.matches(filterExpression, document.metadata));
+    }
+
+    /**
+     * 按ID读取文档，不存在的ID忽略
+     */
+    public List<Document> findByIds(Collection<String> ids) {
+        lock.readLock().lock();
+        try {
+            List<Document> results = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                Integer node = nodeById.get(id);
+                StoredDocument document = node != null ? documents.get(node) : null;
+                if (document != null) {
+                    results.add(Document.builder()
+                                        .id(document.id)
+                                        .text(document.text)
+                                        .metadata(new HashMap<>(document.metadata))
+                                        .build());
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 存有文档的全部知识库ID
+     */
+    public Set<String> knowledgeBaseIds() {
+        lock.readLock().lock();
+        try {
+            Set<String> knowledgeBaseIds = new HashSet<>();
+            for (StoredDocument document : documents) {
+                if (document != null && document.knowledgeBaseId != null) {
+                    knowledgeBaseIds.add(document.knowledgeBaseId);
+                }
+            }
+            return knowledgeBaseIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 知识库内的文档数
+     */
+    public long count(String knowledgeBaseId) {
+        return findIds(document -> knowledgeBaseId.equals(document.knowledgeBaseId)).size();
+    }
+
+    public boolean isQuantized() {
+        return index.isQuantized();
+    }
+
+    /**
+     * 立即落盘快照并截断写日志
+     */
+    public void snapshot() {
+        lock.writeLock().lock();
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write HNSW snapshot", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (writeLog != null) {
+                if (writeLog.recordCount() > 0) {
+                    writeSnapshot();
+                }
+                writeLog.close();
+            }
+            if (vectorFile != null) {
+                vectorFile.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    private List<Document> search(EmbeddingVector queryEmbedding, String knowledgeBaseId, Filter.Expression filter,
+                                  int topK, double similarityThreshold, Map<String, float[]> embeddings) {
+        float[] query = queryEmbedding.toArray();
+        EmbeddingVector.normalizeInPlace(query);
+
+        lock.readLock().lock();
+        try {
+            List<HnswIndex.ScoredNode> nodes = searchNodes(query, topK, node -> {
+                StoredDocument document = documents.get(node);
+                return document != null
+                       && (knowledgeBaseId == null || knowledgeBaseId.equals(document.knowledgeBaseId))
+                       && (filter == null || MetadataFilterEvaluator.matches(filter, document.metadata));
+            });
+
+            List<Document> results = new ArrayList<>(nodes.size());
+            for (HnswIndex.ScoredNode node : nodes) {
+                if (node.score() < similarityThreshold) {
+                    break;
+                }
+                StoredDocument document = documents.get(node.node());
+                results.add(toDocument(document, node.score()));
+                if (embeddings != null) {
+                    embeddings.put(document.id, originalVector(node.node()));
+                }
+            }
+            return results;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read full-precision vectors for rescoring", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 图检索，量化索引先取rescoreFactor倍候选，再按全精度向量重打分取topK
+     */
+    private List<HnswIndex.ScoredNode> searchNodes(float[] query, int topK,
+                                                   IntPredicate filter) throws IOException {
+        if (!index.isQuantized()) {
+            return index.search(query, topK, efSearch, filter);
+        }
+
+        int candidateCount = topK * rescoreFactor;
+        List<HnswIndex.ScoredNode> candidates = index.search(query, candidateCount, Math.max(efSearch, candidateCount),
+                                                             filter);
+        List<HnswIndex.ScoredNode> rescored = new ArrayList<>(candidates.size());
+        for (HnswIndex.ScoredNode candidate : candidates) {
+            float[] original = vectorFile.read(candidate.node());
+            rescored.add(new HnswIndex.ScoredNode(candidate.node(), EmbeddingVector.dot(query, original)));
+        }
+        rescored.sort(Comparator.comparingDouble(HnswIndex.ScoredNode::score).reversed());
+        return rescored.size() > topK ? new ArrayList<>(rescored.subList(0, topK)) : rescored;
+    }
+
+    private List<String> findIds(Predicate<StoredDocument> predicate) {
+        lock.readLock().lock();
+        try {
+            List<String> ids = new ArrayList<>();
+            for (StoredDocument document : documents) {
+                if (document != null && predicate.test(document)) {
+                    ids.add(document.id);
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 插入或替换文档，同一ID的旧节点标记删除
+     */
+    private void applyAdd(String id, String text, Map<String, Object> metadata, float[] vector) throws IOException {
+        applyDelete(id);
+        if (quantizationEnabled && vectorFile == null) {
+            vectorFile = new VectorDataFile(vectorFilePath(vectorFileGeneration), vector.length);
+        }
+
+        int node = index.add(vector);
+        if (vectorFile != null) {
+            vectorFile.write(node, vector);
+        }
+        while (documents.size() <= node) {
+            documents.add(null);
+        }
+        documents.set(node, new StoredDocument(id, text, metadata));
+        nodeById.put(id, node);
+
+        if (quantizationEnabled && !index.isQuantized() && nodeById.size() >= calibrationSize) {
+            rebuild();
+            writeSnapshot();
+        }
+    }
+
+    private void applyDelete(String id) {
+        Integer node = nodeById.remove(id);
+        if (node != null) {
+            index.markDeleted(node);
+            documents.set(node, null);
+        }
+    }
+
+    private void snapshotIfNecessary() throws IOException {
+        if (writeLog.recordCount() >= snapshotThreshold) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * 写出快照，调用方需持有写锁
+     * 先写临时文件再原子替换，替换成功后才截断写日志，任一步骤崩溃都能从旧快照加日志恢复
+     */
+    private void writeSnapshot() throws IOException {
+        if (index.size() > 0 && index.deletedCount() > index.size() * compactRatio) {
+            rebuild();
+        }
+        if (vectorFile != null) {
+            vectorFile.sync();
+        }
+
+        Path snapshot = dataDir.resolve(SNAPSHOT_FILE);
+        Path temp = dataDir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(vectorFileGeneration);
+            out.writeInt(vectorFile != null ? vectorFile.dimensions() : 0);
+            out.writeInt(index.size());
+            for (int node = 0; node < index.size(); node++) {
+                StoredDocument document = documents.get(node);
+                out.writeBoolean(document != null);
+                if (document != null) {
+                    writeString(out, document.id);
+                    writeString(out, document.text);
+                    byte[] metadataJson = objectMapper.writeValueAsBytes(document.metadata);
+                    out.writeInt(metadataJson.length);
+                    out.write(metadataJson);
+                }
+            }
+            index.writeTo(out);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (writeLog != null) {
+            writeLog.truncate();
+            deleteStaleVectorFiles();
+        }
+        log.info("HNSW快照已落盘: documents={}, nodes={}, quantized={}",
+                 nodeById.size(), index.size(), index.isQuantized());
+    }
+
+    private void loadSnapshot(Path snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Invalid HNSW snapshot file: " + snapshot);
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported HNSW snapshot version: " + version);
+            }
+            int generation = in.readInt();
+            int dimensions = in.readInt();
+            int size = in.readInt();
+            List<StoredDocument> loadedDocuments = new ArrayList<>(size);
+            Map<String, Integer> loadedNodeById = new HashMap<>(size * 2);
+            for (int node = 0; node < size; node++) {
+                if (!in.readBoolean()) {
+                    loadedDocuments.add(null);
+                    continue;
+                }
+                String id = readString(in);
+                String text = readString(in);
+                byte[] metadataJson = new byte[in.readInt()];
+                in.readFully(metadataJson);
+                loadedDocuments.add(new StoredDocument(id, text, parseMetadata(metadataJson)));
+                loadedNodeById.put(id, node);
+            }
+
+            index = HnswIndex.readFrom(in);
+            documents = loadedDocuments;
+            nodeById = loadedNodeById;
+            vectorFileGeneration = generation;
+            if (dimensions > 0) {
+                vectorFile = new VectorDataFile(vectorFilePath(generation), dimensions);
+            }
+        }
+    }
+
+    /**
+     * 以存活文档重建索引：清除删除墓碑，启用量化时用全精度向量重新校准量化区间
+     * 重建改变节点编号，全精度向量写入新代次的数据文件，旧文件在下次快照落盘后删除
+     */
+    private void rebuild() throws IOException {
+        List<Integer> liveNodes = new ArrayList<>(nodeById.size());
+        for (int node = 0; node < index.size(); node++) {
+            if (documents.get(node) != null) {
+                liveNodes.add(node);
+            }
+        }
+
+        ScalarQuantizer quantizer = null;
+        if (quantizationEnabled && (index.isQuantized() || liveNodes.size() >= calibrationSize)) {
+            List<float[]> samples = new ArrayList<>(Math.min(calibrationSize, liveNodes.size()));
+            int stride = Math.max(1, liveNodes.size() / Math.max(1, calibrationSize));
+            for (int i = 0; i < liveNodes.size() && samples.size() < calibrationSize; i += stride) {
+                samples.add(originalVector(liveNodes.get(i)));
+            }
+            quantizer = ScalarQuantizer.calibrate(samples, calibrationQuantile);
+        }
+
+        HnswIndex rebuilt = new HnswIndex(m, efConstruction, quantizer);
+        VectorDataFile rebuiltVectorFile = null;
+        if (vectorFile != null) {
+            rebuiltVectorFile = new VectorDataFile(vectorFilePath(vectorFileGeneration + 1), vectorFile.dimensions());
+        }
+
+        List<StoredDocument> rebuiltDocuments = new ArrayList<>(liveNodes.size());
+        Map<String, Integer> rebuiltNodeById = new HashMap<>(liveNodes.size() * 2);
+        for (int node : liveNodes) {
+            float[] vector = originalVector(node);
+            int newNode = rebuilt.add(vector);
+            if (rebuiltVectorFile != null) {
+                rebuiltVectorFile.write(newNode, vector);
+            }
+            StoredDocument document = documents.get(node);
+            rebuiltDocuments.add(document);
+            rebuiltNodeById.put(document.id, newNode);
+        }
+
+        log.info("HNSW索引已重建: removedNodes={}, documents={}, quantized={}",
+                 index.deletedCount(), rebuiltNodeById.size(), rebuilt.isQuantized());
+        index = rebuilt;
+        documents = rebuiltDocuments;
+        nodeById = rebuiltNodeById;
+        if (rebuiltVectorFile != null) {
+            vectorFile.close();
+            vectorFile = rebuiltVectorFile;
+            vectorFileGeneration++;
+        }
+    }
+
+    private float[] originalVector(int node) throws IOException {
+        return vectorFile != null ? vectorFile.read(node) : index.vector(node);
+    }
+
+    private Path vectorFilePath(int generation) {
+        return dataDir.resolve(VECTOR_FILE_PREFIX + generation);
+    }
+
+    /**
+     * 删除快照不再引用的旧代次向量数据文件
+     */
+    private void deleteStaleVectorFiles() throws IOException {
+        String current = vectorFilePath(vectorFileGeneration).getFileName().toString();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dataDir, VECTOR_FILE_PREFIX + "*")) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(current)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private Document toDocument(StoredDocument stored, double score) {
+        Map<String, Object> metadata = new HashMap<>(stored.metadata);
+        metadata.put("distance", 1 - score);
+        return Document.builder()
+                       .id(stored.id)
+                       .text(stored.text)
+                       .metadata(metadata)
+                       .score(score)
+                       .build();
+    }
+
+    private Map<String, Object> parseMetadata(byte[] json) {
+        if (json == null || json.length == 0) {
+            return Collections.emptyMap();
+        }
+        try {
+            return objectMapper.readValue(json, METADATA_TYPE);
+        } catch (IOException e) {
+            log.warn("解析文档元数据失败: {}", e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class StoredDocument {
+
+        private final String id;
+
+        private final String text;
+
+        private final Map<String, Object> metadata;
+
+        private final String knowledgeBaseId;
+
+        private StoredDocument(String id, String text, Map<String, Object> metadata) {
+            this.id = id;
+            this.text = text;
+            this.metadata = metadata;
+            Object knowledgeBaseId = metadata.get(KNOWLEDGE_BASE_KEY);
+            this.knowledgeBaseId = knowledgeBaseId != null ? knowledgeBaseId.toString() : null;
+        }
+    }
+
+    public static final class Builder {
+
+        private final EmbeddingModel embeddingModel;
+
+        private final ObjectMapper objectMapper;
+
+        private Path dataDir = Path.of("./data/hnsw");
+
+        private int m = 16;
+
+        private int efConstruction = 200;
+
+        private int efSearch = 100;
+
+        private long snapshotThreshold = 10000;
+
+        private double compactRatio = 0.2;
+
+        private boolean fsync = true;
+
+        private boolean quantizationEnabled = false;
+
+        private int calibrationSize = 10000;
+
+        private double calibrationQuantile = 0.999;
+
+        private int rescoreFactor = 4;
+
+        private Builder(EmbeddingModel embeddingModel, ObjectMapper objectMapper) {
+            this.embeddingModel = embeddingModel;
+            this.objectMapper = objectMapper;
+        }
+
+        /**
+         * 快照、写日志和向量数据文件所在目录
+         */
+        public Builder dataDir(Path dataDir) {
+            this.dataDir = dataDir;
+            return this;
+        }
+
+        /**
+         * 每层最大连接数，第0层为其两倍
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * 检索时的候选集大小，实际取值不小于topK
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * 写日志累计多少条记录后落盘快照
+         */
+        public Builder snapshotThreshold(long snapshotThreshold) {
+            this.snapshotThreshold = snapshotThreshold;
+            return this;
+        }
+
+        /**
+         * 快照时已删除节点占比超过该值则重建索引
+         */
+        public Builder compactRatio(double compactRatio) {
+            this.compactRatio = compactRatio;
+            return this;
+        }
+
+        /**
+         * 每批写入后是否强制刷盘
+         */
+        public Builder fsync(boolean fsync) {
+            this.fsync = fsync;
+            return this;
+        }
+
+        public Builder quantizationEnabled(boolean quantizationEnabled) {
+            this.quantizationEnabled = quantizationEnabled;
+            return this;
+        }
+
+        /**
+         * 量化校准样本数，文档数达到该值时以int8编码重建索引
+         */
+        public Builder calibrationSize(int calibrationSize) {
+            this.calibrationSize = calibrationSize;
+            return this;
+        }
+
+        /**
+         * 量化区间的分位数，舍弃两端极值以提高主体区间的分辨率
+         */
+        public Builder calibrationQuantile(double calibrationQuantile) {
+            this.calibrationQuantile = calibrationQuantile;
+            return this;
+        }
+
+        /**
+         * 量化检索的候选倍数，取topK * rescoreFactor个候选做全精度重打分
+         */
+        public Builder rescoreFactor(int rescoreFactor) {
+            this.rescoreFactor = rescoreFactor;
+            return this;
+        }
+
+        public HnswVectorStore build() {
+            return new HnswVectorStore(this);
+        }
+    }
+}
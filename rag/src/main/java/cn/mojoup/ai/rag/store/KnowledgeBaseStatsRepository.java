@@ -0,0 +1,255 @@
+package cn.mojoup.ai.rag.store;
+
+import cn.mojoup.ai.rag.service.VectorStoreService.KnowledgeBaseStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 知识库统计表
+ * 每个知识库一行，记录分块数、字符数、文档（文件）数和最后更新时间，
+ * 由写入和删除路径在同一事务内增量维护，统计接口按主键O(1)读取，不再对向量表做聚合。
+ * 定时对账以向量表的实际聚合结果覆盖统计行，修正重复写入、对账期间并发写入等造成的偏差。
+ * 统计行同时保存知识库内容版本号，随每次增量在写入事务内递增，供各节点的查询缓存判断内容是否变更。
+ * 仅在pgvector向量存储下启用，进程内HNSW存储的统计直接由内存索引计算
+ *
+ * @author matt
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "rag.spring-ai.vectorstore.type", havingValue = "pgvector")
+public class KnowledgeBaseStatsRepository {
+
+    /**
+     * 分块元数据中的写入时间（毫秒），非数字的值忽略，避免一行脏数据使整个对账失败
+     */
+    private static final String CREATED_AT_MILLIS =
+            "CASE WHEN metadata->>'created_at' ~ '^[0-9]+$' THEN (metadata->>'created_at')::bigint END";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${rag.vector.kb-stats.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${rag.vector.kb-stats.table-name:knowledge_base_stats}")
+    private String statsTableName;
+
+    @Value("${rag.embedding.database.table-name:vector_store}")
+    private String tableName;
+
+    @Value("${rag.embedding.database.schema:public}")
+    private String schemaName;
+
+    /**
+     * 统计表已创建，写入路径开始增量维护
+     */
+    private volatile boolean writable;
+
+    /**
+     * 首次对账已完成，统计行可直接读取
+     */
+    private volatile boolean readable;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!Boolean.TRUE.equals(enabled)) {
+            log.info("知识库统计表已禁用，统计接口将直接聚合向量表");
+            return;
+        }
+
+        try {
+            jdbcTemplate.execute(String.format(
+                    "CREATE TABLE IF NOT EXISTS %s (" +
+                    "knowledge_base_id text PRIMARY KEY, " +
+                    "chunk_count bigint NOT NULL DEFAULT 0, " +
+                    "char_count bigint NOT NULL DEFAULT 0, " +
+                    "document_count bigint NOT NULL DEFAULT 0, " +
+                    "created_at bigint NOT NULL, " +
+                    "updated_at bigint NOT NULL, " +
+                    "reconciled_at timestamptz)",
+                    statsTable()));
+            jdbcTemplate.execute(String.format(
+                    "ALTER TABLE %s ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0",
+                    statsTable()));
+            writable = true;
+
+            reconcile();
+            log.info("知识库统计表初始化完成: table={}", statsTable());
+
+        } catch (Exception e) {
+            log.error("知识库统计表初始化失败，统计接口将直接聚合向量表: table={}", statsTable(), e);
+        }
+    }
+
+    /**
+     * 读取知识库统计
+     *
+     * @return 统计信息；统计表不可用或知识库无统计行时返回null，由调用方回退到聚合查询
+     */
+    public KnowledgeBaseStats find(String knowledgeBaseId) {
+        if (!readable) {
+            return null;
+        }
+
+        List<KnowledgeBaseStats> stats = jdbcTemplate.query(
+                String.format("SELECT * FROM %s WHERE knowledge_base_id = ?", statsTable()),
+                (rs, rowNum) -> new KnowledgeBaseStats(knowledgeBaseId,
+                                                       rs.getLong("chunk_count"),
+                                                       rs.getLong("char_count"),
+                                                       rs.getLong("document_count"),
+                                                       String.valueOf(rs.getLong("created_at")),
+                                                       String.valueOf(rs.getLong("updated_at"))),
+                knowledgeBaseId);
+        return stats.isEmpty() ? null : stats.get(0);
+    }
+
+    /**
+     * 读取知识库内容版本号
+     * 版本号在写入事务内递增，不依赖统计行是否已完成对账
+     *
+     * @return 版本号，知识库无统计行时返回0；统计表不可用时返回null，由调用方使用本进程内的版本号
+     */
+    public Long findVersion(String knowledgeBaseId) {
+        if (!writable) {
+            return null;
+        }
+
+        List<Long> versions = jdbcTemplate.queryForList(
+                String.format("SELECT version FROM %s WHERE knowledge_base_id = ?", statsTable()),
+                Long.class, knowledgeBaseId);
+        return versions.isEmpty() ? 0L : versions.get(0);
+    }
+
+    /**
+     * 给定文件中尚无分块的文件数
+     * 写入前调用得到新增文档数，删除后调用得到被删空的文档数
+     */
+    public int countAbsentFiles(String knowledgeBaseId, Collection<String> fileIds) {
+        if (!writable || fileIds.isEmpty()) {
+            return 0;
+        }
+
+        Integer count = jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(String.format(
+                    "SELECT COUNT(*) FROM unnest(?) AS f(file_id) WHERE NOT EXISTS (" +
+                    "SELECT 1 FROM %s.%s v WHERE v.knowledge_base_id = ? AND v.file_id = f.file_id)",
+                    schemaName, tableName));
+            ps.setArray(1, connection.createArrayOf("text", fileIds.toArray()));
+            ps.setString(2, knowledgeBaseId);
+            return ps;
+        }, rs -> rs.next() ? rs.getInt(1) : 0);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 累加写入的分块并递增版本号，需与写入在同一事务内调用
+     * 版本号取当前毫秒数与原版本号加一中的较大者，统计行被删除后重建时也不会回到用过的值
+     */
+    public void recordAdded(String knowledgeBaseId, long chunks, long chars, long newDocuments) {
+        if (!writable) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        jdbcTemplate.update(String.format(
+                "INSERT INTO %1$s AS s (knowledge_base_id, chunk_count, char_count, document_count, created_at, updated_at, version) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                "ON CONFLICT (knowledge_base_id) DO UPDATE SET " +
+                "chunk_count = s.chunk_count + EXCLUDED.chunk_count, " +
+                "char_count = s.char_count + EXCLUDED.char_count, " +
+                "document_count = s.document_count + EXCLUDED.document_count, " +
+                "updated_at = EXCLUDED.updated_at, " +
+                "version = GREATEST(s.version + 1, EXCLUDED.version)",
+                statsTable()),
+                knowledgeBaseId, chunks, chars, newDocuments, now, now, now);
+    }
+
+    /**
+     * 扣减删除的分块并递增版本号，需与删除在同一事务内调用
+     */
+    public void recordDeleted(String knowledgeBaseId, long chunks, long chars, long removedDocuments) {
+        if (!writable) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        jdbcTemplate.update(String.format(
+                "UPDATE %s SET " +
+                "chunk_count = GREATEST(chunk_count - ?, 0), " +
+                "char_count = GREATEST(char_count - ?, 0), " +
+                "document_count = GREATEST(document_count - ?, 0), " +
+                "updated_at = ?, " +
+                "version = GREATEST(version + 1, ?) " +
+                "WHERE knowledge_base_id = ?",
+                statsTable()),
+                chunks, chars, removedDocuments, now, now, knowledgeBaseId);
+    }
+
+    public void remove(String knowledgeBaseId) {
+        if (!writable) {
+            return;
+        }
+        jdbcTemplate.update(String.format("DELETE FROM %s WHERE knowledge_base_id = ?", statsTable()),
+                            knowledgeBaseId);
+    }
+
+    /**
+     * 以向量表的实际聚合结果对账全部统计行
+     * 聚合与覆盖在同一语句内完成；对账期间提交的写入可能被覆盖，由下一次对账修正。
+     * 创建和更新时间取分块元数据中created_at的最小、最大值，与聚合查询的口径一致；
+     * 元数据缺少该字段时才使用对账时间。对账不改变内容，已有行的版本号保持不变
+     */
+    @Scheduled(fixedDelayString = "${rag.vector.kb-stats.reconcile-interval-ms:3600000}",
+               initialDelayString = "${rag.vector.kb-stats.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        if (!writable) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            int upserted = jdbcTemplate.update(String.format(
+                    "INSERT INTO %1$s AS s (knowledge_base_id, chunk_count, char_count, document_count, " +
+                    "created_at, updated_at, reconciled_at, version) " +
+                    "SELECT knowledge_base_id, COUNT(*), COALESCE(SUM(LENGTH(content)), 0), COUNT(DISTINCT file_id), " +
+                    "COALESCE(MIN(%4$s), ?), COALESCE(MAX(%4$s), ?), now(), ? " +
+                    "FROM %2$s.%3$s WHERE knowledge_base_id IS NOT NULL GROUP BY knowledge_base_id " +
+                    "ON CONFLICT (knowledge_base_id) DO UPDATE SET " +
+                    "chunk_count = EXCLUDED.chunk_count, " +
+                    "char_count = EXCLUDED.char_count, " +
+                    "document_count = EXCLUDED.document_count, " +
+                    "created_at = LEAST(s.created_at, EXCLUDED.created_at), " +
+                    "updated_at = GREATEST(s.updated_at, EXCLUDED.updated_at), " +
+                    "reconciled_at = EXCLUDED.reconciled_at",
+                    statsTable(), schemaName, tableName, CREATED_AT_MILLIS),
+                    startTime, startTime, startTime);
+
+            int removed = jdbcTemplate.update(String.format(
+                    "DELETE FROM %1$s s WHERE NOT EXISTS (" +
+                    "SELECT 1 FROM %2$s.%3$s v WHERE v.knowledge_base_id = s.knowledge_base_id)",
+                    statsTable(), schemaName, tableName));
+
+            readable = true;
+            log.info("知识库统计对账完成: knowledgeBases={}, removed={}, time={}ms",
+                     upserted, removed, System.currentTimeMillis() - startTime);
+
+        } catch (Exception e) {
+            log.error("知识库统计对账失败: table={}", statsTable(), e);
+        }
+    }
+
+    private String statsTable() {
+        return schemaName + "." + statsTableName;
+    }
+}
@@ -0,0 +1,145 @@
+package cn.mojoup.ai.rag.store;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 元数据过滤表达式的内存求值器
+ * 供不能把过滤条件下推到数据库的内嵌向量存储使用，语义与Spring AI过滤表达式一致：
+ * 数值按double比较，其余类型按字符串比较，元数据缺失的键不满足任何比较条件
+ *
+ * @author matt
+ */
+public final class MetadataFilterEvaluator {
+
+    private MetadataFilterEvaluator() {
+    }
+
+    public static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        if (expression == null) {
+            return true;
+        }
+
+        switch (expression.type()) {
+            case AND:
+                return matchesOperand(expression.left(), metadata) && matchesOperand(expression.right(), metadata);
+            case OR:
+                return matchesOperand(expression.left(), metadata) || matchesOperand(expression.right(), metadata);
+            case NOT:
+                return !matchesOperand(expression.left(), metadata);
+            default:
+                return compare(expression, metadata);
+        }
+    }
+
+    /**
+     * 提取表达式顶层AND链上指定键的等值条件，用于在求值前按知识库等高选择性条件快速过滤
+     *
+     * @return 条件值，表达式未以AND限定该键时返回null
+     */
+    public static String extractEquality(Filter.Expression expression, String key) {
+        if (expression == null) {
+            return null;
+        }
+        if (expression.type() == Filter.ExpressionType.EQ
+            && expression.left() instanceof Filter.Key filterKey
+            && key.equals(filterKey.key())
+            && expression.right() instanceof Filter.Value value) {
+            return Objects.toString(value.value(), null);
+        }
+        if (expression.type() == Filter.ExpressionType.AND) {
+            String left = extractEquality(unwrap(expression.left()), key);
+            return left != null ? left : extractEquality(unwrap(expression.right()), key);
+        }
+        return null;
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    private static boolean matchesOperand(Filter.Operand operand, Map<String, Object> metadata) {
+        Filter.Expression expression = unwrap(operand);
+        if (expression == null) {
+            throw new IllegalArgumentException("Unsupported filter operand: " + operand);
+        }
+        return matches(expression, metadata);
+    }
+
+    private static Filter.Expression unwrap(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return group.content();
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return expression;
+        }
+        return null;
+    }
+
+    private static boolean compare(Filter.Expression expression, Map<String, Object> metadata) {
+        if (!(expression.left() instanceof Filter.Key key) || !(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("Unsupported filter expression: " + expression);
+        }
+
+        Object actual = metadata.get(normalizeKey(key.key()));
+        Object expected = value.value();
+
+        switch (expression.type()) {
+            case EQ:
+                return actual != null && valueEquals(actual, expected);
+            case NE:
+                return actual == null || !valueEquals(actual, expected);
+            case GT:
+                return actual != null && compareValues(actual, expected) > 0;
+            case GTE:
+                return actual != null && compareValues(actual, expected) >= 0;
+            case LT:
+                return actual != null && compareValues(actual, expected) < 0;
+            case LTE:
+                return actual != null && compareValues(actual, expected) <= 0;
+            case IN:
+                return actual != null && containsValue(expected, actual);
+            case NIN:
+                return actual == null || !containsValue(expected, actual);
+            default:
+                throw new IllegalArgumentException("Unsupported filter expression type: " + expression.type());
+        }
+    }
+
+    /**
+     * 过滤表达式文本解析出的键可能带引号
+     */
+    private static String normalizeKey(String key) {
+        if (key.length() >= 2 && (key.startsWith("\"") && key.endsWith("\"") || key.startsWith("'") && key.endsWith("'"))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    private static boolean containsValue(Object expected, Object actual) {
+        if (expected instanceof Collection<?> values) {
+            for (Object candidate : values) {
+                if (valueEquals(actual, candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return valueEquals(actual, expected);
+    }
+
+    private static boolean valueEquals(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue()) == 0;
+        }
+        return Objects.equals(String.valueOf(actual), String.valueOf(expected));
+    }
+
+    private static int compareValues(Object actual, Object expected) {
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return Double.compare(a.doubleValue(), b.doubleValue());
+        }
+        return String.valueOf(actual).compareTo(String.valueOf(expected));
+    }
+}
@@ -0,0 +1,283 @@
+package cn.mojoup.ai.rag.store;
+
+import cn.mojoup.ai.rag.cache.CachingEmbeddingModel;
+import cn.mojoup.ai.rag.service.EmbeddingMigrationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+/**
+ * PGVector批量导入器
+ * 通过COPY ... FROM STDIN (FORMAT BINARY)流式写入向量表，用于数十万分块级别的初始导入。
+ * 可选在导入前删除向量索引、导入后以调大的maintenance_work_mem和并行度重建，避免每行插入都维护HNSW图。
+ * 远程向量化耗时最长，在事务外先完成：逐批向量化并编码为COPY行写入临时文件，内存中只保留一批向量；
+ * 随后在一个事务内删除索引、从临时文件COPY并重建索引，失败时索引随事务回滚恢复；调用方的统计更新经回调在同一事务内执行。
+ * 删除索引到提交之间表被独占锁定，检索会等待，因此重建索引仅适合初始导入或维护窗口。
+ * COPY经过嵌入迁移的写入屏障，向量化期间迁移已切换模型时放弃导入，避免把旧模型的向量写入新列
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class PgVectorBulkLoader {
+
+    private static final byte[] COPY_SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int BUFFER_BYTES = 1024 * 1024;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EmbeddingMigrationService embeddingMigrationService;
+
+    @Value("${rag.embedding.database.table-name:vector_store}")
+    private String tableName;
+
+    @Value("${rag.embedding.database.schema:public}")
+    private String schemaName;
+
+    /**
+     * 每批向量化的文档数，向量化完成后立即编码写入临时文件，内存中只保留一批向量
+     */
+    @Value("${rag.vector.pgvector.bulk-load.batch-size:500}")
+    private Integer batchSize;
+
+    @Value("${rag.vector.pgvector.bulk-load.maintenance-work-mem:1GB}")
+    private String maintenanceWorkMem;
+
+    @Value("${rag.vector.pgvector.bulk-load.parallel-workers:4}")
+    private Integer parallelWorkers;
+
+    private final BatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+
+    /**
+     * 批量导入文档
+     * 不应在外层事务中调用：向量化期间会一直占用外层事务的连接
+     *
+     * @param documents    已补充知识库元数据的文档；id列为uuid类型时文档ID必须是UUID
+     * @param rebuildIndex 是否在导入前删除向量索引并在导入后重建
+     * @param beforeWrite  在COPY事务内、写入屏障之后COPY之前执行，如读取写入前的统计基线
+     * @param afterWrite   在COPY事务内COPY之后执行，参数为写入的行数，如更新统计增量，与写入一起提交或回滚
+     * @return 写入的行数
+     */
+    public long load(List<Document> documents, boolean rebuildIndex, Runnable beforeWrite, LongConsumer afterWrite) {
+        String table = schemaName + "." + tableName;
+        long startTime = System.currentTimeMillis();
+
+        boolean uuidId = "uuid".equals(columnType("id"));
+        boolean jsonbMetadata = "jsonb".equals(columnType("metadata"));
+        if (uuidId) {
+            validateUuidIds(documents);
+        }
+
+        Path rowsFile = null;
+        try {
+            rowsFile = Files.createTempFile("pgvector-bulk-", ".copy");
+            String embeddedModel = embeddingModel instanceof CachingEmbeddingModel caching
+                                   ? caching.getModelKey() : null;
+            encode(documents, rowsFile, table, uuidId, jsonbMetadata);
+            long embedTime = System.currentTimeMillis() - startTime;
+
+            Path copyFile = rowsFile;
+            CopyResult result = transactionTemplate.execute(status -> {
+                CopyResult[] copyResult = new CopyResult[1];
+                // 影子列不做双写，由后台迁移补齐
+                embeddingMigrationService.writeFenced(embeddedModel, null, () -> {
+                    beforeWrite.run();
+                    List<Map<String, Object>> vectorIndexes = rebuildIndex ? dropVectorIndexes() : List.of();
+                    Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection ->
+                            copy(connection, table, copyFile));
+                    if (!vectorIndexes.isEmpty()) {
+                        jdbcTemplate.execute("SET LOCAL maintenance_work_mem = '" + maintenanceWorkMem + "'");
+                        jdbcTemplate.execute("SET LOCAL max_parallel_maintenance_workers = " + parallelWorkers);
+                        for (Map<String, Object> vectorIndex : vectorIndexes) {
+                            jdbcTemplate.execute((String) vectorIndex.get("indexdef"));
+                        }
+                    }
+                    copyResult[0] = new CopyResult(copied != null ? copied : 0L, vectorIndexes.size());
+                });
+                afterWrite.accept(copyResult[0].rows());
+                return copyResult[0];
+            });
+
+            long rows = result != null ? result.rows() : 0L;
+            log.info("向量批量导入完成: table={}, rows={}, rebuiltIndexes={}, embedTime={}ms, totalTime={}ms",
+                     table, rows, result != null ? result.rebuiltIndexes() : 0, embedTime,
+                     System.currentTimeMillis() - startTime);
+            return rows;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spool COPY rows for " + table, e);
+        } finally {
+            deleteQuietly(rowsFile);
+        }
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * 删除向量表上的HNSW和IVFFlat索引，返回其定义用于重建
+     */
+    private List<Map<String, Object>> dropVectorIndexes() {
+        List<Map<String, Object>> indexes = jdbcTemplate.queryForList(
+                "SELECT indexname, indexdef FROM pg_indexes WHERE schemaname = ? AND tablename = ? " +
+                "AND (indexdef ILIKE '%USING hnsw%' OR indexdef ILIKE '%USING ivfflat%')",
+                schemaName, tableName);
+        for (Map<String, Object> index : indexes) {
+            jdbcTemplate.execute(String.format("DROP INDEX %s.%s", schemaName, index.get("indexname")));
+            log.info("批量导入前删除向量索引: index={}", index.get("indexname"));
+        }
+        return indexes;
+    }
+
+    private String columnType(String column) {
+        List<String> types = jdbcTemplate.queryForList(
+                "SELECT udt_name FROM information_schema.columns " +
+                "WHERE table_schema = ? AND table_name = ? AND column_name = ?",
+                String.class, schemaName, tableName, column);
+        return types.isEmpty() ? null : types.get(0);
+    }
+
+    /**
+     * id列为uuid类型时提前校验文档ID，避免向量化完成后才在编码阶段失败
+     */
+    private void validateUuidIds(List<Document> documents) {
+        for (Document document : documents) {
+            try {
+                UUID.fromString(document.getId());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Document id must be a UUID for column type uuid: "
+                                                   + document.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * 逐批向量化并按二进制COPY格式写入文件
+     */
+    private void encode(List<Document> documents, Path rowsFile, String table,
+                        boolean uuidId, boolean jsonbMetadata) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(rowsFile), BUFFER_BYTES))) {
+            out.write(COPY_SIGNATURE);
+            out.writeInt(0);
+            out.writeInt(0);
+
+            for (int start = 0; start < documents.size(); start += batchSize) {
+                List<Document> batch = documents.subList(start, Math.min(start + batchSize, documents.size()));
+                List<float[]> embeddings = embeddingModel.embed(batch, EmbeddingOptionsBuilder.builder().build(),
+                                                                batchingStrategy);
+                for (int i = 0; i < batch.size(); i++) {
+                    writeRow(out, batch.get(i), embeddings.get(i), uuidId, jsonbMetadata);
+                }
+                log.debug("向量批量导入进度: table={}, embedded={}/{}", table,
+                          Math.min(start + batchSize, documents.size()), documents.size());
+            }
+
+            out.writeShort(-1);
+        }
+    }
+
+    private long copy(Connection connection, String table, Path rowsFile) throws SQLException {
+        CopyManager copyManager = new CopyManager(connection.unwrap(BaseConnection.class));
+        try (InputStream in = Files.newInputStream(rowsFile)) {
+            return copyManager.copyIn(String.format(
+                    "COPY %s (id, content, metadata, embedding) FROM STDIN (FORMAT BINARY)", table), in, BUFFER_BYTES);
+        } catch (IOException e) {
+            throw new SQLException("Failed to stream COPY rows from " + rowsFile, e);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除批量导入临时文件失败: file={}, error={}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 按PostgreSQL二进制COPY格式写入一行：字段数，再逐字段写长度和二进制值
+     */
+    private void writeRow(DataOutputStream out, Document document, float[] embedding,
+                          boolean uuidId, boolean jsonbMetadata) throws IOException {
+        out.writeShort(4);
+
+        if (uuidId) {
+            UUID id = UUID.fromString(document.getId());
+            out.writeInt(16);
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+        } else {
+            writeBytes(out, document.getId().getBytes(StandardCharsets.UTF_8));
+        }
+
+        writeBytes(out, document.getText().getBytes(StandardCharsets.UTF_8));
+
+        byte[] metadata = objectMapper.writeValueAsBytes(document.getMetadata());
+        if (jsonbMetadata) {
+            // jsonb二进制格式以版本号1开头
+            out.writeInt(metadata.length + 1);
+            out.writeByte(1);
+            out.write(metadata);
+        } else {
+            writeBytes(out, metadata);
+        }
+
+        // vector二进制格式：维度(int16)、保留位(int16)、float4数组
+        out.writeInt(4 + embedding.length * Float.BYTES);
+        out.writeShort(embedding.length);
+        out.writeShort(0);
+        for (float value : embedding) {
+            out.writeFloat(value);
+        }
+    }
+
+    private void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private record CopyResult(long rows, int rebuiltIndexes) {
+    }
+}
@@ -0,0 +1,130 @@
+package cn.mojoup.ai.rag.store;
+
+import cn.mojoup.ai.rag.cache.CachingEmbeddingModel;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PGVector文档写入器
+ * 把PgVectorStore.add拆成两步：向量化在事务外完成，事务内只按预先计算的向量执行upsert，
+ * 远程嵌入调用期间不占用连接池连接，也不持有迁移屏障的表锁
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class PgVectorDocumentWriter {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${rag.embedding.database.table-name:vector_store}")
+    private String tableName;
+
+    @Value("${rag.embedding.database.schema:public}")
+    private String schemaName;
+
+    private final BatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+
+    private volatile String idCast;
+
+    /**
+     * 向量化文档，不应在事务中调用
+     *
+     * @param documents 待写入的文档
+     * @return 文档及其向量，附带向量化所用的模型标识
+     */
+    public EmbeddedDocuments embed(List<Document> documents) {
+        String modelKey = modelKey();
+        List<float[]> embeddings = embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(),
+                                                        batchingStrategy);
+        return new EmbeddedDocuments(documents, embeddings, modelKey);
+    }
+
+    /**
+     * 当前用于向量化的模型标识，嵌入模型未经缓存包装时为null
+     */
+    public String modelKey() {
+        return embeddingModel instanceof CachingEmbeddingModel caching ? caching.getModelKey() : null;
+    }
+
+    /**
+     * 按预先计算的向量写入向量表，与PgVectorStore相同按ID覆盖写入，须在写入事务内调用
+     *
+     * @param embedded 已向量化的文档
+     */
+    public void upsert(EmbeddedDocuments embedded) {
+        String cast = idCast();
+        String sql = String.format(
+                "INSERT INTO %s.%s (id, content, metadata, embedding) VALUES (?%s, ?, ?::jsonb, ?) " +
+                "ON CONFLICT (id) DO UPDATE SET content = ?, metadata = ?::jsonb, embedding = ?",
+                schemaName, tableName, cast);
+
+        List<Object[]> args = new ArrayList<>(embedded.documents().size());
+        for (int i = 0; i < embedded.documents().size(); i++) {
+            Document document = embedded.documents().get(i);
+            String metadata = toJson(document);
+            PGvector embedding = new PGvector(embedded.embeddings().get(i));
+            args.add(new Object[]{document.getId(), document.getText(), metadata, embedding,
+                                  document.getText(), metadata, embedding});
+        }
+        jdbcTemplate.batchUpdate(sql, args);
+        log.debug("向量写入完成: table={}.{}, rows={}", schemaName, tableName, args.size());
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * id列为uuid类型时绑定参数需要显式转换，列类型只查询一次
+     */
+    private String idCast() {
+        String cast = idCast;
+        if (cast == null) {
+            List<String> types = jdbcTemplate.queryForList(
+                    "SELECT udt_name FROM information_schema.columns " +
+                    "WHERE table_schema = ? AND table_name = ? AND column_name = 'id'",
+                    String.class, schemaName, tableName);
+            cast = types.contains("uuid") ? "::uuid" : "";
+            idCast = cast;
+        }
+        return cast;
+    }
+
+    private String toJson(Document document) {
+        try {
+            return objectMapper.writeValueAsString(document.getMetadata());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Failed to serialize metadata of document " + document.getId(), e);
+        }
+    }
+
+    /**
+     * 已向量化的文档
+     *
+     * @param documents  文档
+     * @param embeddings 与文档一一对应的向量
+     * @param modelKey   向量化所用的模型标识，嵌入模型未经缓存包装时为null
+     */
+    public record EmbeddedDocuments(List<Document> documents, List<float[]> embeddings, String modelKey) {
+    }
+}
@@ -0,0 +1,163 @@
+package cn.mojoup.ai.rag.store;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * PGVector表结构初始化器
+ * 在向量表上补充知识库过滤所需的生成列和索引，所有DDL均可重复执行：
+ * <ul>
+ *     <li>knowledge_base_id：由metadata派生的存储生成列，配合btree索引在SQL内完成知识库过滤</li>
+ *     <li>file_id：由metadata派生的存储生成列，与knowledge_base_id组成联合索引，支持按文件删除</li>
+ *     <li>embedding上的HNSW索引（若向量表尚无HNSW索引）</li>
+ *     <li>启用halfvec量化时，embedding::halfvec(D)上的半精度HNSW表达式索引，体积约为全精度索引的一半</li>
+ *     <li>启用SQL混合检索时，由content派生的content_tsv存储生成列及其GIN索引</li>
+ * </ul>
+ * 在Bean初始化阶段执行，先于Web服务开始接收请求；检索SQL直接引用knowledge_base_id、file_id列，
+ * 这两列及其索引创建失败时启动失败，其余索引创建失败只记录日志
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "rag.spring-ai.vectorstore.type", havingValue = "pgvector")
+public class PgVectorSchemaInitializer {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 依赖向量存储Bean，保证PgVectorStore建表完成后再执行
+     */
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Value("${rag.embedding.database.table-name:vector_store}")
+    private String tableName;
+
+    @Value("${rag.embedding.database.schema:public}")
+    private String schemaName;
+
+    @Value("${rag.vector.pgvector.schema-init.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${rag.vector.pgvector.hnsw.m:16}")
+    private Integer hnswM;
+
+    @Value("${rag.vector.pgvector.hnsw.ef-construction:64}")
+    private Integer hnswEfConstruction;
+
+    @Value("${rag.vector.pgvector.quantization.type:none}")
+    private String quantizationType;
+
+    @Value("${rag.spring-ai.vectorstore.pgvector.dimensions:1536}")
+    private Integer dimensions;
+
+    @Value("${rag.search.hybrid.sql.enabled:false}")
+    private Boolean hybridSqlEnabled;
+
+    @Value("${rag.search.hybrid.sql.text-search-config:simple}")
+    private String textSearchConfig;
+
+    @PostConstruct
+    public void initialize() {
+        if (!Boolean.TRUE.equals(enabled)) {
+            log.info("PGVector表结构初始化已禁用");
+            return;
+        }
+
+        String table = schemaName + "." + tableName;
+        try {
+            // 添加存储生成列会重写整表，已存在时为空操作
+            addGeneratedColumn(table, "knowledge_base_id");
+            addGeneratedColumn(table, "file_id");
+
+            jdbcTemplate.execute(String.format(
+                    "CREATE INDEX IF NOT EXISTS %s_knowledge_base_id_idx ON %s (knowledge_base_id)",
+                    tableName, table));
+
+            jdbcTemplate.execute(String.format(
+                    "CREATE INDEX IF NOT EXISTS %s_knowledge_base_file_id_idx ON %s (knowledge_base_id, file_id)",
+                    tableName, table));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to add knowledge base columns to " + table, e);
+        }
+
+        try {
+            if ("halfvec".equals(quantizationType)) {
+                jdbcTemplate.execute(String.format(
+                        "CREATE INDEX IF NOT EXISTS %s_embedding_halfvec_hnsw_idx ON %s " +
+                        "USING hnsw ((embedding::halfvec(%d)) halfvec_cosine_ops) WITH (m = %d, ef_construction = %d)",
+                        tableName, table, dimensions, hnswM, hnswEfConstruction));
+                if (hasFullPrecisionHnswIndex()) {
+                    log.warn("已启用halfvec量化索引，全精度HNSW索引不再参与检索，可手动删除以释放空间: table={}", table);
+                }
+            } else if (!hasHnswIndex()) {
+                jdbcTemplate.execute(String.format(
+                        "CREATE INDEX IF NOT EXISTS %s_embedding_hnsw_idx ON %s " +
+                        "USING hnsw (embedding vector_cosine_ops) WITH (m = %d, ef_construction = %d)",
+                        tableName, table, hnswM, hnswEfConstruction));
+            }
+
+            if (Boolean.TRUE.equals(hybridSqlEnabled)) {
+                addTextSearchColumn(table);
+            }
+
+            log.info("PGVector表结构初始化完成: table={}", table);
+
+        } catch (Exception e) {
+            log.error("PGVector索引初始化失败: table={}", table, e);
+        }
+    }
+
+    /**
+     * 添加由metadata同名字段派生的存储生成列
+     */
+    private void addGeneratedColumn(String table, String metadataKey) {
+        jdbcTemplate.execute(String.format(
+                "ALTER TABLE %s ADD COLUMN IF NOT EXISTS %s text " +
+                "GENERATED ALWAYS AS ((metadata->>'%s')) STORED",
+                table, metadataKey, metadataKey));
+    }
+
+    /**
+     * 添加全文检索生成列及GIN索引
+     * 生成列表达式要求不可变，因此检索配置以字面量写入；修改配置后需先删除该列再重启
+     */
+    private void addTextSearchColumn(String table) {
+        if (!textSearchConfig.matches("[A-Za-z_][A-Za-z0-9_.]*")) {
+            throw new IllegalArgumentException("Invalid text search config: " + textSearchConfig);
+        }
+
+        jdbcTemplate.execute(String.format(
+                "ALTER TABLE %s ADD COLUMN IF NOT EXISTS content_tsv tsvector " +
+                "GENERATED ALWAYS AS (to_tsvector('%s'::regconfig, coalesce(content, ''))) STORED",
+                table, textSearchConfig));
+
+        jdbcTemplate.execute(String.format(
+                "CREATE INDEX IF NOT EXISTS %s_content_tsv_idx ON %s USING gin (content_tsv)",
+                tableName, table));
+    }
+
+    private boolean hasHnswIndex() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_indexes WHERE schemaname = ? AND tablename = ? " +
+                "AND indexdef ILIKE '%USING hnsw%'",
+                Integer.class, schemaName, tableName);
+        return count != null && count > 0;
+    }
+
+    private boolean hasFullPrecisionHnswIndex() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_indexes WHERE schemaname = ? AND tablename = ? " +
+                "AND indexdef ILIKE '%USING hnsw%' AND indexdef ILIKE '%vector_cosine_ops%'",
+                Integer.class, schemaName, tableName);
+        return count != null && count > 0;
+    }
+}
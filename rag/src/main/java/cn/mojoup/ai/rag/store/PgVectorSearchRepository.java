@@ -0,0 +1,500 @@
+package cn.mojoup.ai.rag.store;
+
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.core.BaseConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.ai.document.Document;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * PGVector知识库内的近邻检索
+ * 知识库过滤通过knowledge_base_id生成列在SQL内完成，topK由HNSW索引扫描直接返回；
+ * 开启pgvector 0.8的迭代索引扫描后，过滤导致候选不足时索引会继续扫描，保证小知识库也能取满topK。
+ * 相似度阈值在取出topK之后过滤，避免阈值过高时迭代扫描遍历整个索引
+ * 距离按余弦距离计算，相似度 = 1 - 距离。
+ * 查询向量以pgvector二进制格式绑定，避免拼接和解析上千维的文本字面量。
+ * 启用halfvec量化时，先按半精度表达式索引取topK的若干倍候选，再用全精度向量重新计算距离取topK。
+ * 混合检索在一条SQL内完成：content_tsv生成列上的GIN索引取全文检索候选，向量索引取语义候选，
+ * 两路候选按排名做加权RRF融合后再回表取内容，只需一次往返且两路结果来自同一快照
+ *
+ * @author matt
+ */
+@Slf4j
+@Repository
+public class PgVectorSearchRepository {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private static final int SCAN_FETCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${rag.embedding.database.table-name:vector_store}")
+    private String tableName;
+
+    @Value("${rag.embedding.database.schema:public}")
+    private String schemaName;
+
+    @Value("${rag.vector.pgvector.hnsw.ef-search:100}")
+    private Integer efSearch;
+
+    /**
+     * 迭代索引扫描模式：off、relaxed_order、strict_order，pgvector 0.8以下版本需设为off
+     */
+    @Value("${rag.vector.pgvector.hnsw.iterative-scan:relaxed_order}")
+    private String iterativeScan;
+
+    /**
+     * 索引量化方式：none使用全精度向量索引，halfvec使用半精度表达式索引并按全精度重打分
+     */
+    @Value("${rag.vector.pgvector.quantization.type:none}")
+    private String quantizationType;
+
+    @Value("${rag.vector.pgvector.quantization.rescore-factor:4}")
+    private Integer rescoreFactor;
+
+    @Value("${rag.spring-ai.vectorstore.pgvector.dimensions:1536}")
+    private Integer dimensions;
+
+    /**
+     * 全文检索配置，需与content_tsv生成列建列时使用的配置一致
+     */
+    @Value("${rag.search.hybrid.sql.text-search-config:simple}")
+    private String textSearchConfig;
+
+    /**
+     * 在指定知识库内检索与查询向量最相近的文档
+     *
+     * @param embedding           查询向量
+     * @param knowledgeBaseId     知识库ID
+     * @param topK                最多返回的文档数
+     * @param similarityThreshold 相似度阈值，低于阈值的文档不返回
+     * @param metadataKeys        需要返回的元数据字段，为空时返回全部元数据
+     * @param embeddings          非null时按文档ID写入结果的全精度向量，供MMR等后续阶段使用而无需重新向量化
+     * @return 按相似度降序排列的文档，score为相似度，metadata中附带distance
+     */
+    @Transactional(readOnly = true)
+    public List<Document> nearestNeighbors(EmbeddingVector embedding, String knowledgeBaseId,
+                                           int topK, double similarityThreshold,
+                                           List<String> metadataKeys, Map<String, float[]> embeddings) {
+        boolean halfvec = "halfvec".equals(quantizationType);
+        int candidateCount = halfvec ? topK * Math.max(1, rescoreFactor) : topK;
+        configureIndexScan(candidateCount);
+
+        boolean selectAllMetadata = metadataKeys == null || metadataKeys.isEmpty();
+
+        String metadataColumn = selectAllMetadata ? "metadata" : metadataProjection(metadataKeys.size());
+        String embeddingColumn = embeddings != null ? ", embedding" : "";
+        String sql = halfvec ? rescoredSql(metadataColumn, embeddingColumn) : String.format(
+                "WITH nearest AS MATERIALIZED (" +
+                "  SELECT id, content, %1$s AS metadata%4$s, embedding <=> ? AS distance" +
+                "  FROM %2$s.%3$s WHERE knowledge_base_id = ?" +
+                "  ORDER BY distance LIMIT ?" +
+                ") SELECT id, content, metadata%4$s, distance FROM nearest" +
+                " WHERE distance <= ? ORDER BY distance",
+                metadataColumn, schemaName, tableName, embeddingColumn);
+
+        List<Object> params = new ArrayList<>();
+        if (!selectAllMetadata) {
+            for (String key : metadataKeys) {
+                params.add(key);
+                params.add(key);
+            }
+        }
+        PGvector queryVector = new PGvector(embedding.toArray());
+        if (halfvec) {
+            params.add(knowledgeBaseId);
+            params.add(queryVector);
+            params.add(candidateCount);
+            params.add(queryVector);
+        } else {
+            params.add(queryVector);
+            params.add(knowledgeBaseId);
+        }
+        params.add(topK);
+        params.add(1 - similarityThreshold);
+
+        RowMapper<Document> rowMapper = documentRowMapper();
+        List<Document> documents = jdbcTemplate.query(binaryVectorStatement(sql, params), (rs, rowNum) -> {
+            Document document = rowMapper.mapRow(rs, rowNum);
+            if (embeddings != null) {
+                embeddings.put(document.getId(), readVector(rs, "embedding"));
+            }
+            return document;
+        });
+
+        log.debug("知识库内近邻检索完成: knowledgeBaseId={}, topK={}, threshold={}, results={}",
+                  knowledgeBaseId, topK, similarityThreshold, documents.size());
+        return documents;
+    }
+
+    /**
+     * 在指定知识库内做全文检索与向量检索的混合检索
+     * 两路各取candidateCount个候选，融合分数 = Σ 权重 / (rrfK + 排名)，只命中一路的分块另一路记0
+     *
+     * @param queryText      全文检索语句，按websearch_to_tsquery语法解析
+     * @param candidateCount 每一路的候选数
+     * @param threshold      语义候选的相似度阈值，不影响全文检索候选
+     * @param embeddings     非null时按文档ID写入结果的全精度向量，包括只由全文检索命中的文档
+     * @return 按融合分数降序排列的文档，score为融合分数，metadata中附带两路的排名及distance、tsRank
+     */
+    @Transactional(readOnly = true)
+    public List<Document> hybridSearch(EmbeddingVector embedding, String queryText, String knowledgeBaseId,
+                                       int topK, int candidateCount, double semanticWeight,
+                                       double keywordWeight, int rrfK, double threshold,
+                                       List<String> metadataKeys, Map<String, float[]> embeddings) {
+        configureIndexScan(candidateCount);
+
+        boolean selectAllMetadata = metadataKeys == null || metadataKeys.isEmpty();
+        String metadataColumn = selectAllMetadata ? "metadata" : metadataProjection(metadataKeys.size());
+        // 排序表达式与向量索引一致才能走索引扫描；halfvec下的distance为半精度距离，只用于排名
+        String distanceExpression = "halfvec".equals(quantizationType)
+                                    ? String.format("embedding::halfvec(%1$d) <=> ?::halfvec(%1$d)", dimensions)
+                                    : "embedding <=> ?";
+        String sql = String.format(
+                "WITH semantic AS MATERIALIZED (" +
+                "  SELECT id, %4$s AS distance FROM %2$s.%3$s WHERE knowledge_base_id = ?" +
+                "  ORDER BY distance LIMIT ?" +
+                "), semantic_ranked AS (" +
+                "  SELECT id, distance, ROW_NUMBER() OVER (ORDER BY distance) AS rank FROM semantic" +
+                "  WHERE distance <= ?" +
+                "), keyword AS MATERIALIZED (" +
+                "  SELECT id, ts_rank_cd(content_tsv, query) AS ts_rank" +
+                "  FROM %2$s.%3$s, websearch_to_tsquery(?::regconfig, ?) query" +
+                "  WHERE knowledge_base_id = ? AND content_tsv @@ query" +
+                "  ORDER BY ts_rank DESC LIMIT ?" +
+                "), keyword_ranked AS (" +
+                "  SELECT id, ts_rank, ROW_NUMBER() OVER (ORDER BY ts_rank DESC) AS rank FROM keyword" +
+                "), fused AS (" +
+                "  SELECT COALESCE(s.id, k.id) AS id, s.distance, s.rank AS semantic_rank," +
+                "    k.ts_rank, k.rank AS keyword_rank," +
+                "    COALESCE(?::float8 / (?::float8 + s.rank), 0)" +
+                "    + COALESCE(?::float8 / (?::float8 + k.rank), 0) AS score" +
+                "  FROM semantic_ranked s FULL OUTER JOIN keyword_ranked k ON s.id = k.id" +
+                "  ORDER BY score DESC LIMIT ?" +
+                ") SELECT t.id::text AS id, t.content, %1$s AS metadata%5$s," +
+                " f.distance, f.semantic_rank, f.ts_rank, f.keyword_rank, f.score" +
+                " FROM fused f JOIN %2$s.%3$s t ON t.id = f.id ORDER BY f.score DESC",
+                metadataColumn, schemaName, tableName, distanceExpression,
+                embeddings != null ? ", t.embedding" : "");
+
+        // 参数按SQL中出现的顺序绑定，元数据投影位于最外层SELECT，排在最后
+        List<Object> params = new ArrayList<>();
+        params.add(new PGvector(embedding.toArray()));
+        params.add(knowledgeBaseId);
+        params.add(candidateCount);
+        params.add(1 - threshold);
+        params.add(textSearchConfig);
+        params.add(queryText);
+        params.add(knowledgeBaseId);
+        params.add(candidateCount);
+        params.add(semanticWeight);
+        params.add(rrfK);
+        params.add(keywordWeight);
+        params.add(rrfK);
+        params.add(topK);
+        if (!selectAllMetadata) {
+            for (String key : metadataKeys) {
+                params.add(key);
+                params.add(key);
+            }
+        }
+
+        List<Document> documents = jdbcTemplate.query(binaryVectorStatement(sql, params), (rs, rowNum) -> {
+            Map<String, Object> metadata = parseMetadata(rs.getString("metadata"));
+            putIfPresent(metadata, "distance", rs.getObject("distance"));
+            putIfPresent(metadata, "semanticRank", rs.getObject("semantic_rank"));
+            putIfPresent(metadata, "tsRank", rs.getObject("ts_rank"));
+            putIfPresent(metadata, "keywordRank", rs.getObject("keyword_rank"));
+            float[] vector = embeddings != null ? readVector(rs, "embedding") : null;
+            if (vector != null) {
+                embeddings.put(rs.getString("id"), vector);
+            }
+
+            return Document.builder()
+                           .id(rs.getString("id"))
+                           .text(rs.getString("content"))
+                           .metadata(metadata)
+                           .score(rs.getDouble("score"))
+                           .build();
+        });
+
+        log.debug("知识库内混合检索完成: knowledgeBaseId={}, topK={}, candidates={}, results={}",
+                  knowledgeBaseId, topK, candidateCount, documents.size());
+        return documents;
+    }
+
+    /**
+     * 知识库内的向量数
+     */
+    public long countByKnowledgeBase(String knowledgeBaseId) {
+        Long count = jdbcTemplate.queryForObject(
+                String.format("SELECT COUNT(*) FROM %s.%s WHERE knowledge_base_id = ?", schemaName, tableName),
+                Long.class, knowledgeBaseId);
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * 以游标分批读取知识库内全部向量，供精确检索在内存中建立平铺索引
+     */
+    @Transactional(readOnly = true)
+    public void scanEmbeddings(String knowledgeBaseId, BiConsumer<String, float[]> consumer) {
+        String sql = String.format("SELECT id::text AS id, embedding::text AS embedding FROM %s.%s " +
+                                   "WHERE knowledge_base_id = ?", schemaName, tableName);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(SCAN_FETCH_SIZE);
+            ps.setString(1, knowledgeBaseId);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getString("id"),
+                                                      new PGvector(rs.getString("embedding")).toArray()));
+    }
+
+    /**
+     * 存有分块的全部知识库ID
+     */
+    public List<String> knowledgeBaseIds() {
+        return jdbcTemplate.queryForList(String.format(
+                "SELECT DISTINCT knowledge_base_id FROM %s.%s WHERE knowledge_base_id IS NOT NULL",
+                schemaName, tableName), String.class);
+    }
+
+    /**
+     * 以游标分批读取知识库内全部分块ID
+     */
+    @Transactional(readOnly = true)
+    public void scanIds(String knowledgeBaseId, Consumer<String> consumer) {
+        String sql = String.format("SELECT id::text AS id FROM %s.%s WHERE knowledge_base_id = ?",
+                                   schemaName, tableName);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(SCAN_FETCH_SIZE);
+            ps.setString(1, knowledgeBaseId);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getString("id")));
+    }
+
+    /**
+     * 按ID读取知识库内的分块，不存在的ID忽略
+     */
+    public List<Document> findByIds(String knowledgeBaseId, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String sql = String.format("SELECT id::text AS id, content, metadata FROM %s.%s " +
+                                   "WHERE knowledge_base_id = ? AND id::text = ANY(?)", schemaName, tableName);
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setString(1, knowledgeBaseId);
+            ps.setArray(2, connection.createArrayOf("text", ids.toArray()));
+            return ps;
+        }, (rs, rowNum) -> Document.builder()
+                                   .id(rs.getString("id"))
+                                   .text(rs.getString("content"))
+                                   .metadata(parseMetadata(rs.getString("metadata")))
+                                   .build());
+    }
+
+    /**
+     * 按ID读取已在内存中完成打分的文档
+     *
+     * @param scores       文档ID到相似度的映射，返回结果按其迭代顺序排列
+     * @param metadataKeys 需要返回的元数据字段，为空时返回全部元数据
+     */
+    public List<Document> findScored(String knowledgeBaseId, Map<String, Double> scores,
+                                     List<String> metadataKeys) {
+        if (scores.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        boolean selectAllMetadata = metadataKeys == null || metadataKeys.isEmpty();
+        String sql = String.format(
+                "SELECT id::text AS id, content, %s AS metadata FROM %s.%s " +
+                "WHERE knowledge_base_id = ? AND id::text = ANY(?)",
+                selectAllMetadata ? "metadata" : metadataProjection(metadataKeys.size()),
+                schemaName, tableName);
+
+        Map<String, Document> found = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            int index = 1;
+            if (!selectAllMetadata) {
+                for (String key : metadataKeys) {
+                    ps.setString(index++, key);
+                    ps.setString(index++, key);
+                }
+            }
+            ps.setString(index++, knowledgeBaseId);
+            ps.setArray(index, connection.createArrayOf("text", scores.keySet().toArray()));
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            String id = rs.getString("id");
+            double score = scores.get(id);
+            Map<String, Object> metadata = parseMetadata(rs.getString("metadata"));
+            metadata.put("distance", 1 - score);
+            found.put(id, Document.builder()
+                                  .id(id)
+                                  .text(rs.getString("content"))
+                                  .metadata(metadata)
+                                  .score(score)
+                                  .build());
+        });
+
+        List<Document> documents = new ArrayList<>(found.size());
+        for (String id : scores.keySet()) {
+            Document document = found.get(id);
+            if (document != null) {
+                documents.add(document);
+            }
+        }
+        return documents;
+    }
+
+    private RowMapper<Document> documentRowMapper() {
+        return (rs, rowNum) -> {
+            double distance = rs.getDouble("distance");
+            Map<String, Object> metadata = parseMetadata(rs.getString("metadata"));
+            metadata.put("distance", distance);
+
+            return Document.builder()
+                           .id(rs.getString("id"))
+                           .text(rs.getString("content"))
+                           .metadata(metadata)
+                           .score(1 - distance)
+                           .build();
+        };
+    }
+
+    private void putIfPresent(Map<String, Object> metadata, String key, Object value) {
+        if (value != null) {
+            metadata.put(key, value);
+        }
+    }
+
+    private Map<String, Object> parseMetadata(String json) {
+        if (!StringUtils.hasText(json)) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(json, METADATA_TYPE);
+        } catch (Exception e) {
+            log.warn("解析文档元数据失败: {}", e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * 设置当前事务内的HNSW检索参数
+     * SET LOCAL仅在当前事务内生效，不会污染连接池中的连接
+     */
+    private void configureIndexScan(int candidateCount) {
+        jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + Math.max(efSearch, candidateCount));
+        if ("relaxed_order".equals(iterativeScan) || "strict_order".equals(iterativeScan)) {
+            jdbcTemplate.execute("SET LOCAL hnsw.iterative_scan = " + iterativeScan);
+        }
+    }
+
+    /**
+     * 半精度候选 + 全精度重打分的检索语句
+     * 候选CTE的排序表达式与halfvec表达式索引一致才能走索引扫描
+     */
+    private String rescoredSql(String metadataColumn, String embeddingColumn) {
+        return String.format(
+                "WITH candidates AS MATERIALIZED (" +
+                "  SELECT id, content, %1$s AS metadata, embedding" +
+                "  FROM %2$s.%3$s WHERE knowledge_base_id = ?" +
+                "  ORDER BY embedding::halfvec(%4$d) <=> ?::halfvec(%4$d) LIMIT ?" +
+                "), nearest AS (" +
+                "  SELECT id, content, metadata%5$s, embedding <=> ? AS distance FROM candidates" +
+                "  ORDER BY distance LIMIT ?" +
+                ") SELECT id, content, metadata%5$s, distance FROM nearest" +
+                " WHERE distance <= ? ORDER BY distance",
+                metadataColumn, schemaName, tableName, dimensions, embeddingColumn);
+    }
+
+    /**
+     * 读取向量列，已注册vector类型的连接直接得到PGvector，否则按文本格式解析
+     */
+    private float[] readVector(ResultSet rs, String column) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value instanceof PGvector vector) {
+            return vector.toArray();
+        }
+        return value != null ? new PGvector(value.toString()).toArray() : null;
+    }
+
+    /**
+     * 创建以二进制格式发送向量参数的语句
+     */
+    private PreparedStatementCreator binaryVectorStatement(String sql, List<Object> params) {
+        return connection -> {
+            enableBinaryVector(connection);
+            PreparedStatement ps = connection.prepareStatement(sql);
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            return ps;
+        };
+    }
+
+    /**
+     * 在连接上注册vector类型并开启其二进制发送；
+     * 连接无法解包为PostgreSQL驱动连接时退回文本格式，结果不受影响
+     */
+    private void enableBinaryVector(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(BaseConnection.class)) {
+            log.debug("连接不是PostgreSQL驱动连接，向量参数以文本格式发送");
+            return;
+        }
+
+        BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+        PGvector.addVectorType(pgConnection);
+        int vectorOid = pgConnection.getTypeInfo().getPGType("vector");
+        if (vectorOid != 0) {
+            pgConnection.getQueryExecutor().addBinarySendOid(vectorOid);
+        }
+    }
+
+    /**
+     * 仅选取指定元数据字段的投影，每个字段占用键名和键值两个参数
+     */
+    private String metadataProjection(int keyCount) {
+        StringBuilder projection = new StringBuilder("json_build_object(");
+        for (int i = 0; i < keyCount; i++) {
+            if (i > 0) {
+                projection.append(", ");
+            }
+            projection.append("?::text, metadata->?::text");
+        }
+        return projection.append(')').toString();
+    }
+}
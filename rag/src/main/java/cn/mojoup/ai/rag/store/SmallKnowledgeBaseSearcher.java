@@ -0,0 +1,250 @@
+package cn.mojoup.ai.rag.store;
+
+import cn.mojoup.ai.rag.cache.KnowledgeBaseVersionTracker;
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
+import cn.mojoup.ai.rag.vector.FlatVectorIndex;
+import cn.mojoup.ai.rag.vector.HnswIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 小知识库精确检索器
+ * 分块数不超过阈值的知识库把全部向量加载为内存中的平铺索引，直接精确扫描，
+ * 免去ANN索引的近似误差和往返开销；超过阈值的知识库返回null，由调用方回退到pgvector的HNSW索引。
+ * 平铺索引按知识库版本号失效，总内存超出上限时按最近最少使用淘汰；
+ * 同一知识库同一版本只加载一次，并发请求共享同一个加载结果
+ *
+ * @author matt
+ */
+@Slf4j
+@Component
+public class SmallKnowledgeBaseSearcher {
+
+    @Autowired
+    private PgVectorSearchRepository pgVectorSearchRepository;
+
+    @Autowired
+    private KnowledgeBaseVersionTracker versionTracker;
+
+    @Value("${rag.vector.exact-search.enabled:true}")
+    private Boolean enabled;
+
+    /**
+     * 分块数不超过该值的知识库走精确检索
+     */
+    @Value("${rag.vector.exact-search.max-chunks:5000}")
+    private Integer maxChunks;
+
+    @Value("${rag.vector.exact-search.max-cache-size-mb:512}")
+    private Long maxCacheSizeMb;
+
+    /**
+     * 加载结果的最长有效期，知识库统计表未启用时用于感知其他节点写入的数据（启用时各节点的写入都通过版本号即时失效）
+     */
+    @Value("${rag.vector.exact-search.refresh-seconds:300}")
+    private Long refreshSeconds;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<LoadKey, CompletableFuture<Entry>> loading = new HashMap<>();
+
+    private long cachedBytes;
+
+    /**
+     * 在小知识库内精确检索
+     *
+     * @return 按相似度降序排列的文档；未启用或知识库超过阈值时返回null
+     */
+    public List<Document> search(EmbeddingVector queryEmbedding, String knowledgeBaseId,
+                                 int topK, double similarityThreshold, List<String> metadataKeys) {
+        return search(queryEmbedding, knowledgeBaseId, topK, similarityThreshold, metadataKeys, null);
+    }
+
+    /**
+     * 在小知识库内精确检索，并同时取回结果的归一化向量
+     *
+     * @param embeddings 非null时按文档ID写入结果的向量
+     */
+    public List<Document> search(EmbeddingVector queryEmbedding, String knowledgeBaseId, int topK,
+                                 double similarityThreshold, List<String> metadataKeys,
+                                 Map<String, float[]> embeddings) {
+        if (!Boolean.TRUE.equals(enabled)) {
+            return null;
+        }
+
+        Entry entry = entry(knowledgeBaseId);
+        if (entry.index == null) {
+            return null;
+        }
+
+        float[] query = queryEmbedding.toArray();
+        EmbeddingVector.normalizeInPlace(query);
+        List<HnswIndex.ScoredNode> hits = entry.index.search(query, topK, similarityThreshold);
+
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (HnswIndex.ScoredNode hit : hits) {
+            scores.put(entry.ids[hit.node()], hit.score());
+            if (embeddings != null) {
+                embeddings.put(entry.ids[hit.node()], entry.index.vector(hit.node()));
+            }
+        }
+        List<Document> documents = pgVectorSearchRepository.findScored(knowledgeBaseId, scores, metadataKeys);
+
+        log.debug("小知识库精确检索完成: knowledgeBaseId={}, chunks={}, topK={}, results={}",
+                  knowledgeBaseId, entry.index.size(), topK, documents.size());
+        return documents;
+    }
+
+    /**
+     * 使知识库的平铺索引失效
+     */
+    public synchronized void invalidate(String knowledgeBaseId) {
+        Entry removed = entries.remove(knowledgeBaseId);
+        if (removed != null) {
+            cachedBytes -= removed.sizeInBytes();
+        }
+    }
+
+    /**
+     * 使全部平铺索引失效，用于嵌入模型切换后向量整体变化的场景
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        cachedBytes = 0;
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    private Entry entry(String knowledgeBaseId) {
+        long version = versionTracker.currentVersion(knowledgeBaseId);
+        LoadKey key = new LoadKey(knowledgeBaseId, version);
+        CompletableFuture<Entry> pending;
+        synchronized (this) {
+            Entry entry = entries.get(knowledgeBaseId);
+            if (entry != null && entry.version == version && !entry.isExpired(refreshSeconds)) {
+                return entry;
+            }
+            pending = loading.get(key);
+            if (pending == null) {
+                loading.put(key, new CompletableFuture<>());
+            }
+        }
+
+        if (pending != null) {
+            // 其他线程正在加载同一版本，等待其结果而不是重复扫描整个知识库
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        // 加载在锁外进行
+        CompletableFuture<Entry> future;
+        try {
+            Entry loaded = load(knowledgeBaseId, version);
+            synchronized (this) {
+                future = loading.remove(key);
+                Entry current = entries.get(knowledgeBaseId);
+                // 较旧版本的加载晚于新版本完成时不覆盖
+                if (current == null || current.version <= version) {
+                    entries.put(knowledgeBaseId, loaded);
+                    if (current != null) {
+                        cachedBytes -= current.sizeInBytes();
+                    }
+                    cachedBytes += loaded.sizeInBytes();
+                    evictIfNecessary(knowledgeBaseId);
+                }
+            }
+            future.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                future = loading.remove(key);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Entry load(String knowledgeBaseId, long version) {
+        long count = pgVectorSearchRepository.countByKnowledgeBase(knowledgeBaseId);
+        if (count > maxChunks) {
+            return new Entry(version, null, null);
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<String> ids = new ArrayList<>((int) count);
+        List<float[]> vectors = new ArrayList<>((int) count);
+        pgVectorSearchRepository.scanEmbeddings(knowledgeBaseId, (id, vector) -> {
+            ids.add(id);
+            vectors.add(vector);
+        });
+
+        FlatVectorIndex index = vectors.isEmpty() ? null : FlatVectorIndex.build(vectors, vectors.get(0).length);
+        log.info("加载小知识库平铺索引: knowledgeBaseId={}, chunks={}, sizeKb={}, time={}ms",
+                 knowledgeBaseId, ids.size(), index != null ? index.sizeInBytes() / 1024 : 0,
+                 System.currentTimeMillis() - startTime);
+        return new Entry(version, ids.toArray(new String[0]), index);
+    }
+
+    /**
+     * 按最近最少使用淘汰，刚加载的知识库保留
+     */
+    private void evictIfNecessary(String keep) {
+        long maxBytes = maxCacheSizeMb * 1024 * 1024;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (cachedBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            cachedBytes -= eldest.getValue().sizeInBytes();
+            iterator.remove();
+            log.debug("淘汰小知识库平铺索引: knowledgeBaseId={}", eldest.getKey());
+        }
+    }
+
+    private record LoadKey(String knowledgeBaseId, long version) {
+    }
+
+    /**
+     * 知识库的平铺索引，index为null表示知识库超过阈值或为空
+     */
+    private static final class Entry {
+
+        private final long version;
+
+        private final String[] ids;
+
+        private final FlatVectorIndex index;
+
+        private final long loadedAt = System.currentTimeMillis();
+
+        Entry(long version, String[] ids, FlatVectorIndex index) {
+            this.version = version;
+            this.ids = ids;
+            this.index = index;
+        }
+
+        long sizeInBytes() {
+            return index != null ? index.sizeInBytes() : 0L;
+        }
+
+        boolean isExpired(long refreshSeconds) {
+            return System.currentTimeMillis() - loadedAt > refreshSeconds * 1000;
+        }
+    }
+}
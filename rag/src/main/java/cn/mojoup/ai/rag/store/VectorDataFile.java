@@ -0,0 +1,77 @@
+package cn.mojoup.ai.rag.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 全精度向量数据文件
+ * 以节点编号为下标、定长记录存放原始float32向量，量化索引只在内存中保留int8编码，
+ * 全精度向量留在磁盘（由操作系统页缓存承载），仅在重打分和重建索引时读取
+ *
+ * @author matt
+ */
+public class VectorDataFile implements Closeable {
+
+    private final FileChannel channel;
+
+    private final int dimensions;
+
+    private final int recordBytes;
+
+    public VectorDataFile(Path path, int dimensions) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        this.dimensions = dimensions;
+        this.recordBytes = dimensions * Float.BYTES;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * 写入指定节点的向量，覆盖该位置已有内容
+     */
+    public void write(int node, float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Vector dimension mismatch: expected " + dimensions
+                                               + ", got " + vector.length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        long position = (long) node * recordBytes;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    public float[] read(int node) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        long position = (long) node * recordBytes;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Vector data file truncated at node " + node);
+            }
+            position += read;
+        }
+        buffer.flip();
+        float[] vector = new float[dimensions];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
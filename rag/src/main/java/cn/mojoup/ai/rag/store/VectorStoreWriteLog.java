@@ -0,0 +1,199 @@
+package cn.mojoup.ai.rag.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 内嵌向量存储的追加写日志
+ * 每条记录格式为 [长度][CRC32][内容]，重放时遇到长度或校验不符的记录即视为崩溃时的残缺尾部并停止，
+ * 之前的记录全部有效。快照落盘后日志被截断
+ *
+ * @author matt
+ */
+@Slf4j
+public class VectorStoreWriteLog implements Closeable {
+
+    private static final byte OP_ADD = 1;
+
+    private static final byte OP_DELETE = 2;
+
+    private final boolean fsync;
+
+    private final FileChannel channel;
+
+    private long recordCount;
+
+    public VectorStoreWriteLog(Path path, boolean fsync) throws IOException {
+        this.fsync = fsync;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.APPEND);
+    }
+
+    public void appendAdd(String id, String text, byte[] metadataJson, float[] vector) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + vector.length * Float.BYTES);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(OP_ADD);
+        writeBytes(out, id.getBytes(StandardCharsets.UTF_8));
+        writeBytes(out, text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+        writeBytes(out, metadataJson);
+        out.writeInt(vector.length);
+        for (float value : vector) {
+            out.writeFloat(value);
+        }
+        append(buffer.toByteArray());
+    }
+
+    public void appendDelete(String id) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(OP_DELETE);
+        writeBytes(out, id.getBytes(StandardCharsets.UTF_8));
+        append(buffer.toByteArray());
+    }
+
+    /**
+     * 将已追加的记录刷到磁盘，一批写操作结束后调用一次
+     */
+    public void sync() throws IOException {
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * 自上次截断以来追加的记录数
+     */
+    public long recordCount() {
+        return recordCount;
+    }
+
+    /**
+     * 快照落盘后清空日志
+     */
+    public void truncate() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+        recordCount = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 按写入顺序重放日志
+     *
+     * @return 成功重放的记录数
+     */
+    public static long replay(Path path, Consumer<Record> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        long count = 0;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(path));
+             DataInputStream in = new DataInputStream(stream)) {
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length <= 0) {
+                        log.warn("写日志记录长度非法，忽略后续内容: path={}, records={}", path, count);
+                        break;
+                    }
+                    payload = in.readNBytes(length);
+                    if (payload.length != length || checksum != crc(payload)) {
+                        log.warn("写日志尾部记录不完整，忽略后续内容: path={}, records={}", path, count);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+
+                consumer.accept(decode(payload));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    private void append(byte[] payload) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length);
+        record.putInt(crc(payload));
+        record.put(payload);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        recordCount++;
+    }
+
+    private static Record decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        String id = new String(readBytes(in), StandardCharsets.UTF_8);
+        if (op == OP_DELETE) {
+            return new Record(id, null, null, null);
+        }
+        if (op != OP_ADD) {
+            throw new IOException("Unknown write log operation: " + op);
+        }
+
+        String text = new String(readBytes(in), StandardCharsets.UTF_8);
+        byte[] metadataJson = readBytes(in);
+        float[] vector = new float[in.readInt()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = in.readFloat();
+        }
+        return new Record(id, text, metadataJson, vector);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 日志记录，vector为null表示删除
+     */
+    public record Record(String id, String text, byte[] metadataJson, float[] vector) {
+
+        public boolean isDelete() {
+            return vector == null;
+        }
+    }
+}
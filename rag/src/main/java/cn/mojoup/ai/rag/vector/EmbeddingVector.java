@@ -0,0 +1,167 @@
+package cn.mojoup.ai.rag.vector;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 基于float[]的不可变嵌入向量
+ * 每个分量占4字节，替代List&lt;Double&gt;的装箱表示；
+ * 创建时总是复制传入的数组，也不对外暴露内部数组，传入的数组可能是查询向量缓存的共享实例
+ *
+ * @author matt
+ */
+public final class EmbeddingVector {
+
+    private final float[] values;
+
+    private EmbeddingVector(float[] values) {
+        this.values = values;
+    }
+
+    /**
+     * 复制给定数组创建向量
+     */
+    public static EmbeddingVector of(float[] values) {
+        return new EmbeddingVector(values.clone());
+    }
+
+    /**
+     * 复制给定数组并归一化为单位向量，传入的数组保持不变
+     */
+    public static EmbeddingVector normalized(float[] values) {
+        float[] copy = values.clone();
+        normalizeInPlace(copy);
+        return new EmbeddingVector(copy);
+    }
+
+    /**
+     * 从装箱列表创建向量，兼容旧的List&lt;Double&gt;接口
+     */
+    public static EmbeddingVector fromList(List<? extends Number> values) {
+        float[] array = new float[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i).floatValue();
+        }
+        return new EmbeddingVector(array);
+    }
+
+    /**
+     * 原地归一化数组为单位向量，零向量保持不变
+     */
+    public static void normalizeInPlace(float[] values) {
+        double norm = norm(values);
+        if (norm == 0) {
+            return;
+        }
+        float scale = (float) (1.0 / norm);
+        for (int i = 0; i < values.length; i++) {
+            values[i] *= scale;
+        }
+    }
+
+    /**
+     * 两个数组的点积
+     */
+    public static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Vector dimensions do not match: " + a.length + " vs " + b.length);
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double norm(float[] values) {
+        double sumOfSquares = 0;
+        for (float value : values) {
+            sumOfSquares += value * value;
+        }
+        return Math.sqrt(sumOfSquares);
+    }
+
+    public int dimensions() {
+        return values.length;
+    }
+
+    public float get(int index) {
+        return values[index];
+    }
+
+    public double norm() {
+        return norm(values);
+    }
+
+    /**
+     * 返回归一化后的新向量
+     */
+    public EmbeddingVector normalize() {
+        return normalized(values);
+    }
+
+    public double dot(EmbeddingVector other) {
+        return dot(values, other.values);
+    }
+
+    /**
+     * 余弦相似度，两个向量均已归一化时等于点积
+     */
+    public double cosineSimilarity(EmbeddingVector other) {
+        double normProduct = norm() * other.norm();
+        return normProduct == 0 ? 0 : dot(other) / normProduct;
+    }
+
+    /**
+     * 返回内部数组的副本
+     */
+    public float[] toArray() {
+        return values.clone();
+    }
+
+    /**
+     * 转换为只读的List&lt;Double&gt;视图，兼容旧接口，元素在读取时才装箱
+     */
+    public List<Double> toList() {
+        return new DoubleListView(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof EmbeddingVector && Arrays.equals(values, ((EmbeddingVector) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return "EmbeddingVector{dimensions=" + values.length + "}";
+    }
+
+    private static final class DoubleListView extends AbstractList<Double> implements RandomAccess {
+
+        private final float[] values;
+
+        private DoubleListView(float[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Double get(int index) {
+            return (double) values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package cn.mojoup.ai.rag.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 精确检索的平铺向量索引
+ * 所有向量归一化后按行连续存放在一个float[]中，检索时顺序扫描计算点积，
+ * 用定长小顶堆保留topK。适合规模较小的知识库：没有近似误差，也没有图索引的构建和内存开销
+ *
+ * @author matt
+ */
+public final class FlatVectorIndex {
+
+    private final float[] data;
+
+    private final int dimensions;
+
+    private final int size;
+
+    private FlatVectorIndex(float[] data, int dimensions, int size) {
+        this.data = data;
+        this.dimensions = dimensions;
+        this.size = size;
+    }
+
+    /**
+     * 由向量列表构建索引，向量会被复制并归一化
+     */
+    public static FlatVectorIndex build(List<float[]> vectors, int dimensions) {
+        float[] data = new float[vectors.size() * dimensions];
+        for (int i = 0; i < vectors.size(); i++) {
+            float[] vector = vectors.get(i);
+            if (vector.length != dimensions) {
+                throw new IllegalArgumentException("Vector dimension mismatch: expected " + dimensions
+                                                   + ", got " + vector.length);
+            }
+            float[] normalized = vector.clone();
+            EmbeddingVector.normalizeInPlace(normalized);
+            System.arraycopy(normalized, 0, data, i * dimensions, dimensions);
+        }
+        return new FlatVectorIndex(data, dimensions, vectors.size());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * 第node行的归一化向量副本
+     */
+    public float[] vector(int node) {
+        return Arrays.copyOfRange(data, node * dimensions, (node + 1) * dimensions);
+    }
+
+    /**
+     * 索引占用的堆内存字节数
+     */
+    public long sizeInBytes() {
+        return (long) data.length * Float.BYTES;
+    }
+
+    /**
+     * 精确topK检索
+     *
+     * @param query    已归一化的查询向量
+     * @param topK     返回结果数
+     * @param minScore 最低相似度，低于该值的结果不返回
+     * @return 按相似度降序排列的结果
+     */
+    public List<HnswIndex.ScoredNode> search(float[] query, int topK, double minScore) {
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Query dimension mismatch: expected " + dimensions
+                                               + ", got " + query.length);
+        }
+        if (topK <= 0 || size == 0) {
+            return new ArrayList<>();
+        }
+
+        TopKHeap heap = new TopKHeap(Math.min(topK, size));
+        for (int node = 0, offset = 0; node < size; node++, offset += dimensions) {
+            double score = dot(query, data, offset, dimensions);
+            if (score >= minScore) {
+                heap.offer(node, score);
+            }
+        }
+        return heap.toSortedList();
+    }
+
+    /**
+     * 查询向量与第offset行的点积
+     * 4路独立累加打破加法依赖链，便于JIT展开并生成SIMD指令
+     */
+    static double dot(float[] query, float[] data, int offset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = length - (length & 3);
+        for (; i < bound; i += 4) {
+            s0 += query[i] * data[offset + i];
+            s1 += query[i + 1] * data[offset + i + 1];
+            s2 += query[i + 2] * data[offset + i + 2];
+            s3 += query[i + 3] * data[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += query[i] * data[offset + i];
+        }
+        return (double) s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * 基于原始类型数组的定长小顶堆，堆顶为当前topK中的最低分
+     */
+    private static final class TopKHeap {
+
+        private final int[] nodes;
+
+        private final double[] scores;
+
+        private int count;
+
+        TopKHeap(int capacity) {
+            this.nodes = new int[capacity];
+            this.scores = new double[capacity];
+        }
+
+        void offer(int node, double score) {
+            if (count < nodes.length) {
+                nodes[count] = node;
+                scores[count] = score;
+                siftUp(count++);
+            } else if (score > scores[0]) {
+                nodes[0] = node;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        List<HnswIndex.ScoredNode> toSortedList() {
+            HnswIndex.ScoredNode[] result = new HnswIndex.ScoredNode[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = new HnswIndex.ScoredNode(nodes[i], scores[i]);
+            }
+            Arrays.sort(result, (a, b) -> Double.compare(b.score(), a.score()));
+            return new ArrayList<>(Arrays.asList(result));
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (scores[parent] <= scores[index]) {
+                    break;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int left = 2 * index + 1;
+                if (left >= count) {
+                    break;
+                }
+                int smallest = left + 1 < count && scores[left + 1] < scores[left] ? left + 1 : left;
+                if (scores[index] <= scores[smallest]) {
+                    break;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int node = nodes[a];
+            nodes[a] = nodes[b];
+            nodes[b] = node;
+            double score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package cn.mojoup.ai.rag.vector;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * 内存HNSW图索引
+ * 在归一化的float[]向量上构建分层可导航小世界图，以点积作为余弦相似度。
+ * <ul>
+ *     <li>节点以插入顺序编号，删除仅做墓碑标记，被删节点继续参与图导航但不出现在结果中</li>
+ *     <li>检索时的过滤条件在第0层遍历过程中生效：不满足条件的节点仍可作为跳板扩展，但不进入结果集</li>
+ *     <li>指定{@link ScalarQuantizer}时只保存int8编码，内存占用约为全精度的1/4，返回的相似度为近似值</li>
+ * </ul>
+ * 本类非线程安全，读写互斥由调用方负责
+ *
+ * @author matt
+ */
+public class HnswIndex {
+
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private static final int[] NO_NEIGHBORS = new int[0];
+
+    private static final Comparator<ScoredNode> BEST_FIRST = Comparator.comparingDouble(ScoredNode::score).reversed();
+
+    private static final Comparator<ScoredNode> WORST_FIRST = Comparator.comparingDouble(ScoredNode::score);
+
+    private final int m;
+
+    private final int maxM0;
+
+    private final int efConstruction;
+
+    private final double levelMultiplier;
+
+    private final ScalarQuantizer quantizer;
+
+    private float[][] vectors;
+
+    private byte[][] codes;
+
+    private int[][][] neighbors;
+
+    private final BitSet deleted = new BitSet();
+
+    private int size;
+
+    private int deletedCount;
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    /**
+     * @param m              上层每个节点的最大连接数，第0层为其两倍
+     * @param efConstruction 构建时的候选集大小
+     */
+    public HnswIndex(int m, int efConstruction) {
+        this(m, efConstruction, null);
+    }
+
+    /**
+     * @param quantizer 量化器，为null时保存全精度向量
+     */
+    public HnswIndex(int m, int efConstruction, ScalarQuantizer quantizer) {
+        this(m, efConstruction, quantizer, 1024);
+    }
+
+    private HnswIndex(int m, int efConstruction, ScalarQuantizer quantizer, int initialCapacity) {
+        if (m < 2) {
+            throw new IllegalArgumentException("HNSW m must be at least 2");
+        }
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.quantizer = quantizer;
+        if (quantizer != null) {
+            this.codes = new byte[initialCapacity][];
+        } else {
+            this.vectors = new float[initialCapacity][];
+        }
+        this.neighbors = new int[initialCapacity][][];
+    }
+
+    /**
+     * 插入向量
+     *
+     * @param vector 已归一化的向量；非量化模式下索引直接持有该数组，调用方此后不得修改
+     * @return 节点编号
+     */
+    public int add(float[] vector) {
+        int node = size;
+        ensureCapacity(node + 1);
+        int level = randomLevel();
+        if (quantizer != null) {
+            codes[node] = quantizer.encode(vector);
+        } else {
+            vectors[node] = vector;
+        }
+        neighbors[node] = new int[level + 1][];
+        Arrays.fill(neighbors[node], NO_NEIGHBORS);
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        IntToDoubleFunction scorer = scorer(vector);
+        List<ScoredNode> entryPoints = List.of(new ScoredNode(entryPoint, scorer.applyAsDouble(entryPoint)));
+        for (int l = maxLevel; l > level; l--) {
+            entryPoints = searchLayer(scorer, entryPoints, 1, l, null);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<ScoredNode> candidates = searchLayer(scorer, entryPoints, efConstruction, l, null);
+            int[] selected = selectNeighbors(candidates, m);
+            neighbors[node][l] = selected;
+            int maxConnections = l == 0 ? maxM0 : m;
+            for (int neighbor : selected) {
+                connect(neighbor, node, l, maxConnections);
+            }
+            entryPoints = candidates;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * 标记节点删除
+     */
+    public void markDeleted(int node) {
+        if (node >= 0 && node < size && !deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    /**
+     * 近邻检索
+     *
+     * @param query  已归一化的查询向量
+     * @param k      返回结果数
+     * @param ef     第0层候选集大小，实际取值不小于k
+     * @param filter 节点过滤条件，为null时不过滤
+     * @return 按相似度降序排列的结果，不含已删除节点；量化模式下相似度为近似值
+     */
+    public List<ScoredNode> search(float[] query, int k, int ef, IntPredicate filter) {
+        if (entryPoint < 0 || k <= 0) {
+            return Collections.emptyList();
+        }
+
+        IntToDoubleFunction scorer = scorer(query);
+        List<ScoredNode> entryPoints = List.of(new ScoredNode(entryPoint, scorer.applyAsDouble(entryPoint)));
+        for (int l = maxLevel; l > 0; l--) {
+            entryPoints = searchLayer(scorer, entryPoints, 1, l, null);
+        }
+
+        IntPredicate accept = filter == null ? node -> !deleted.get(node) : node -> !deleted.get(node) && filter.test(node);
+        List<ScoredNode> results = searchLayer(scorer, entryPoints, Math.max(ef, k), 0, accept);
+        return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+    }
+
+    /**
+     * 节点向量，量化模式下返回反量化后的近似值
+     */
+    public float[] vector(int node) {
+        return quantizer != null ? quantizer.decode(codes[node]) : vectors[node];
+    }
+
+    public boolean isQuantized() {
+        return quantizer != null;
+    }
+
+    public ScalarQuantizer quantizer() {
+        return quantizer;
+    }
+
+    /**
+     * 节点总数，含已删除节点
+     */
+    public int size() {
+        return size;
+    }
+
+    public int liveSize() {
+        return size - deletedCount;
+    }
+
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    public int m() {
+        return m;
+    }
+
+    public int efConstruction() {
+        return efConstruction;
+    }
+
+    /**
+     * 写出完整图结构，包括向量（或量化编码）、层级连接和删除标记
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        out.writeBoolean(quantizer != null);
+        if (quantizer != null) {
+            quantizer.writeTo(out);
+        }
+        for (int node = 0; node < size; node++) {
+            out.writeBoolean(deleted.get(node));
+            if (quantizer != null) {
+                out.writeInt(codes[node].length);
+                out.write(codes[node]);
+            } else {
+                float[] vector = vectors[node];
+                out.writeInt(vector.length);
+                for (float value : vector) {
+                    out.writeFloat(value);
+                }
+            }
+            int[][] levels = neighbors[node];
+            out.writeInt(levels.length);
+            for (int[] links : levels) {
+                out.writeInt(links.length);
+                for (int link : links) {
+                    out.writeInt(link);
+                }
+            }
+        }
+    }
+
+    public static HnswIndex readFrom(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported HNSW snapshot version: " + version);
+        }
+        int m = in.readInt();
+        int efConstruction = in.readInt();
+        int size = in.readInt();
+        int entryPoint = in.readInt();
+        int maxLevel = in.readInt();
+        ScalarQuantizer quantizer = in.readBoolean() ? ScalarQuantizer.readFrom(in) : null;
+
+        HnswIndex index = new HnswIndex(m, efConstruction, quantizer, Math.max(size, 1024));
+        index.entryPoint = entryPoint;
+        index.maxLevel = maxLevel;
+        for (int node = 0; node < size; node++) {
+            if (in.readBoolean()) {
+                index.deleted.set(node);
+                index.deletedCount++;
+            }
+            int dimensions = in.readInt();
+            if (quantizer != null) {
+                byte[] nodeCodes = new byte[dimensions];
+                in.readFully(nodeCodes);
+                index.codes[node] = nodeCodes;
+            } else {
+                float[] vector = new float[dimensions];
+                for (int i = 0; i < dimensions; i++) {
+                    vector[i] = in.readFloat();
+                }
+                index.vectors[node] = vector;
+            }
+            int[][] levels = new int[in.readInt()][];
+            for (int l = 0; l < levels.length; l++) {
+                int[] links = new int[in.readInt()];
+                for (int i = 0; i < links.length; i++) {
+                    links[i] = in.readInt();
+                }
+                levels[l] = links;
+            }
+            index.neighbors[node] = levels;
+        }
+        index.size = size;
+        return index;
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * 创建查询向量与各节点的相似度函数，量化模式下直接在int8编码上计算
+     */
+    private IntToDoubleFunction scorer(float[] query) {
+        if (quantizer != null) {
+            ScalarQuantizer.Scorer quantizedScorer = quantizer.scorer(query);
+            return node -> quantizedScorer.score(codes[node]);
+        }
+        return node -> EmbeddingVector.dot(query, vectors[node]);
+    }
+
+    /**
+     * 在单层内做贪心扩展
+     *
+     * @param accept 可进入结果集的节点条件，为null时全部接受
+     * @return 按相似度降序排列、最多ef个的结果
+     */
+    private List<ScoredNode> searchLayer(IntToDoubleFunction scorer, List<ScoredNode> entryPoints, int ef, int level,
+                                         IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<ScoredNode> candidates = new PriorityQueue<>(BEST_FIRST);
+        PriorityQueue<ScoredNode> results = new PriorityQueue<>(WORST_FIRST);
+
+        for (ScoredNode entry : entryPoints) {
+            visited.set(entry.node());
+            candidates.add(entry);
+            if (accept == null || accept.test(entry.node())) {
+                results.add(entry);
+            }
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+
+        while (!candidates.isEmpty()) {
+            ScoredNode current = candidates.poll();
+            if (results.size() >= ef && current.score() < results.peek().score()) {
+                break;
+            }
+
+            int[][] levels = neighbors[current.node()];
+            if (level >= levels.length) {
+                continue;
+            }
+            for (int neighbor : levels[level]) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+
+                double score = scorer.applyAsDouble(neighbor);
+                if (results.size() < ef || score > results.peek().score()) {
+                    ScoredNode scored = new ScoredNode(neighbor, score);
+                    candidates.add(scored);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.add(scored);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<ScoredNode> sorted = new ArrayList<>(results);
+        sorted.sort(BEST_FIRST);
+        return sorted;
+    }
+
+    /**
+     * 启发式邻居选择：优先保留与已选邻居方向不同的候选，保持图的连通性；不足时用剩余候选补齐
+     *
+     * @param candidates 按与基准节点相似度降序排列的候选
+     */
+    private int[] selectNeighbors(List<ScoredNode> candidates, int maxCount) {
+        List<ScoredNode> selected = new ArrayList<>(maxCount);
+        List<ScoredNode> skipped = new ArrayList<>();
+        for (ScoredNode candidate : candidates) {
+            if (selected.size() >= maxCount) {
+                break;
+            }
+            boolean diverse = true;
+            if (!selected.isEmpty()) {
+                IntToDoubleFunction candidateScorer = scorer(vector(candidate.node()));
+                for (ScoredNode chosen : selected) {
+                    if (candidateScorer.applyAsDouble(chosen.node()) > candidate.score()) {
+                        diverse = false;
+                        break;
+                    }
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < maxCount; i++) {
+            selected.add(skipped.get(i));
+        }
+
+        int[] links = new int[selected.size()];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = selected.get(i).node();
+        }
+        return links;
+    }
+
+    /**
+     * 为已有节点添加反向连接，超出上限时按启发式规则重新裁剪
+     */
+    private void connect(int node, int newNeighbor, int level, int maxConnections) {
+        int[] links = neighbors[node][level];
+        if (links.length < maxConnections) {
+            int[] extended = Arrays.copyOf(links, links.length + 1);
+            extended[links.length] = newNeighbor;
+            neighbors[node][level] = extended;
+            return;
+        }
+
+        IntToDoubleFunction nodeScorer = scorer(vector(node));
+        List<ScoredNode> candidates = new ArrayList<>(links.length + 1);
+        for (int link : links) {
+            candidates.add(new ScoredNode(link, nodeScorer.applyAsDouble(link)));
+        }
+        candidates.add(new ScoredNode(newNeighbor, nodeScorer.applyAsDouble(newNeighbor)));
+        candidates.sort(BEST_FIRST);
+        neighbors[node][level] = selectNeighbors(candidates, maxConnections);
+    }
+
+    private int randomLevel() {
+        double uniform = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(uniform) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > neighbors.length) {
+            int newCapacity = Math.max(capacity, neighbors.length + (neighbors.length >> 1));
+            if (quantizer != null) {
+                codes = Arrays.copyOf(codes, newCapacity);
+            } else {
+                vectors = Arrays.copyOf(vectors, newCapacity);
+            }
+            neighbors = Arrays.copyOf(neighbors, newCapacity);
+        }
+    }
+
+    /**
+     * 节点编号及其与查询向量的相似度
+     */
+    public record ScoredNode(int node, double score) {
+    }
+}
@@ -0,0 +1,91 @@
+package cn.mojoup.ai.rag.vector;
+
+import java.util.Arrays;
+
+/**
+ * 最大边际相关性（MMR）选择
+ * 每一步从剩余候选中选出 lambda·相关度 − (1−lambda)·与已选结果的最大相似度 最高者，
+ * 在相关度和多样性之间折中，去除重叠分块带来的近似重复结果。
+ * 候选向量归一化后连续存放在一个float[]中，并为每个候选维护与已选集合的最大相似度，
+ * 每选一个只需计算它与剩余候选的点积，总计O(k·n)次点积
+ *
+ * @author matt
+ */
+public final class MaximalMarginalRelevance {
+
+    private MaximalMarginalRelevance() {
+    }
+
+    /**
+     * 从候选中选出k个结果
+     *
+     * @param relevance 候选与查询的相似度
+     * @param vectors   候选向量，与relevance一一对应，无需预先归一化
+     * @param k         选出的结果数
+     * @param lambda    相关度权重，1为只看相关度（等同原排序），0为只看多样性
+     * @return 选中候选的下标，按选中顺序排列
+     */
+    public static int[] select(double[] relevance, float[][] vectors, int k, double lambda) {
+        int size = relevance.length;
+        if (vectors.length != size) {
+            throw new IllegalArgumentException("Relevance and vector counts do not match: " + size
+                                               + " vs " + vectors.length);
+        }
+        int count = Math.min(k, size);
+        if (count <= 0) {
+            return new int[0];
+        }
+
+        int dimensions = vectors[0].length;
+        float[] data = new float[size * dimensions];
+        for (int i = 0; i < size; i++) {
+            if (vectors[i].length != dimensions) {
+                throw new IllegalArgumentException("Vector dimension mismatch: expected " + dimensions
+                                                   + ", got " + vectors[i].length);
+            }
+            float[] normalized = vectors[i].clone();
+            EmbeddingVector.normalizeInPlace(normalized);
+            System.arraycopy(normalized, 0, data, i * dimensions, dimensions);
+        }
+
+        double[] maxSimilarity = new double[size];
+        Arrays.fill(maxSimilarity, Double.NEGATIVE_INFINITY);
+        boolean[] selected = new boolean[size];
+        int[] result = new int[count];
+        float[] last = new float[dimensions];
+
+        for (int step = 0; step < count; step++) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                if (selected[i]) {
+                    continue;
+                }
+                double score = step == 0
+                               ? relevance[i]
+                               : lambda * relevance[i] - (1 - lambda) * maxSimilarity[i];
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+
+            selected[best] = true;
+            result[step] = best;
+            if (step == count - 1) {
+                break;
+            }
+
+            System.arraycopy(data, best * dimensions, last, 0, dimensions);
+            for (int i = 0, offset = 0; i < size; i++, offset += dimensions) {
+                if (!selected[i]) {
+                    double similarity = FlatVectorIndex.dot(last, data, offset, dimensions);
+                    if (similarity > maxSimilarity[i]) {
+                        maxSimilarity[i] = similarity;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
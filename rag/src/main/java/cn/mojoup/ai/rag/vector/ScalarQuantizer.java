@@ -0,0 +1,138 @@
+package cn.mojoup.ai.rag.vector;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按维度校准的int8标量量化器
+ * 每个维度根据样本向量的分位数确定[min, max]区间，线性映射到[-128, 127]，
+ * 每个分量由4字节压缩为1字节；超出区间的值被截断到边界。
+ * 查询向量保持全精度，与量化向量的点积通过预计算的权重直接在int8编码上计算，无需反量化
+ *
+ * @author matt
+ */
+public final class ScalarQuantizer {
+
+    private static final int LEVELS = 255;
+
+    private final float[] min;
+
+    private final float[] scale;
+
+    private ScalarQuantizer(float[] min, float[] scale) {
+        this.min = min;
+        this.scale = scale;
+    }
+
+    /**
+     * 用样本向量校准量化区间
+     *
+     * @param samples  样本向量，维度必须一致
+     * @param quantile 截取的分位数（如0.999），两端各舍弃(1 - quantile) / 2的极值，为1时取真实最小最大值
+     */
+    public static ScalarQuantizer calibrate(List<float[]> samples, double quantile) {
+        if (samples.isEmpty()) {
+            throw new IllegalArgumentException("Quantizer calibration requires at least one sample");
+        }
+
+        int dimensions = samples.get(0).length;
+        int count = samples.size();
+        double tail = Math.max(0.0, (1.0 - quantile) / 2);
+        int lowIndex = (int) Math.floor(tail * (count - 1));
+        int highIndex = (int) Math.ceil((1.0 - tail) * (count - 1));
+
+        float[] min = new float[dimensions];
+        float[] scale = new float[dimensions];
+        float[] column = new float[count];
+        for (int d = 0; d < dimensions; d++) {
+            for (int i = 0; i < count; i++) {
+                column[i] = samples.get(i)[d];
+            }
+            Arrays.sort(column);
+            float low = column[lowIndex];
+            float high = column[highIndex];
+            min[d] = low;
+            scale[d] = high > low ? (high - low) / LEVELS : Float.MIN_NORMAL;
+        }
+        return new ScalarQuantizer(min, scale);
+    }
+
+    public int dimensions() {
+        return min.length;
+    }
+
+    public byte[] encode(float[] vector) {
+        byte[] codes = new byte[min.length];
+        for (int d = 0; d < codes.length; d++) {
+            int level = Math.round((vector[d] - min[d]) / scale[d]);
+            codes[d] = (byte) (Math.max(0, Math.min(LEVELS, level)) - 128);
+        }
+        return codes;
+    }
+
+    public float[] decode(byte[] codes) {
+        float[] vector = new float[codes.length];
+        for (int d = 0; d < codes.length; d++) {
+            vector[d] = min[d] + scale[d] * (codes[d] + 128);
+        }
+        return vector;
+    }
+
+    /**
+     * 为全精度查询向量创建评分器，评分为查询与反量化向量的点积
+     */
+    public Scorer scorer(float[] query) {
+        float[] weights = new float[min.length];
+        double offset = 0;
+        for (int d = 0; d < weights.length; d++) {
+            weights[d] = query[d] * scale[d];
+            offset += query[d] * min[d] + 128.0 * weights[d];
+        }
+        return new Scorer(weights, offset);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(min.length);
+        for (int d = 0; d < min.length; d++) {
+            out.writeFloat(min[d]);
+            out.writeFloat(scale[d]);
+        }
+    }
+
+    public static ScalarQuantizer readFrom(DataInputStream in) throws IOException {
+        int dimensions = in.readInt();
+        float[] min = new float[dimensions];
+        float[] scale = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            min[d] = in.readFloat();
+            scale[d] = in.readFloat();
+        }
+        return new ScalarQuantizer(min, scale);
+    }
+
+    /**
+     * 绑定单个查询向量的评分器
+     */
+    public static final class Scorer {
+
+        private final float[] weights;
+
+        private final double offset;
+
+        private Scorer(float[] weights, double offset) {
+            this.weights = weights;
+            this.offset = offset;
+        }
+
+        public double score(byte[] codes) {
+            float sum = 0f;
+            for (int d = 0; d < weights.length; d++) {
+                sum += weights[d] * codes[d];
+            }
+            return offset + sum;
+        }
+    }
+}
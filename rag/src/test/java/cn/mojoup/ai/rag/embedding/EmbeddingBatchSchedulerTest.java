@@ -0,0 +1,199 @@
+package cn.mojoup.ai.rag.embedding;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 嵌入请求调度器测试
+ * 模型在调用线程上同步执行，按给定脚本返回结果或抛出异常
+ *
+ * @author matt
+ */
+class EmbeddingBatchSchedulerTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private EmbeddingBatchScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.destroy();
+        }
+    }
+
+    @Test
+    void isolatesFailingInputByBisection() {
+        scheduler = scheduler(texts -> {
+            if (texts.contains("text-5")) {
+                throw new NonTransientAiException("400 - invalid input");
+            }
+            return ordered(texts.size());
+        });
+
+        List<EmbeddingResult> results = scheduler.embedAll(texts(16));
+
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).isSuccess()).as("text %d", i).isEqualTo(i != 5);
+        }
+        // 每层二分两次调用，16条共4层：1 + 2 * 4
+        assertThat(calls.get()).isEqualTo(9);
+    }
+
+    @Test
+    void retriesRateLimitedBatchWithoutSplitting() {
+        scheduler = scheduler(texts -> {
+            throw new NonTransientAiException("429 - rate limit exceeded");
+        });
+
+        List<EmbeddingResult> results = scheduler.embedAll(texts(8));
+
+        assertThat(results).noneMatch(EmbeddingResult::isSuccess);
+        assertThat(results.get(0).getErrorMessage()).contains("429");
+        // 首次调用加2次重试，不拆分批次
+        assertThat(calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void recoversAfterTransientFailure() {
+        scheduler = scheduler(texts -> {
+            if (calls.get() == 1) {
+                throw new TransientAiException("503 - service unavailable");
+            }
+            return ordered(texts.size());
+        });
+
+        List<EmbeddingResult> results = scheduler.embedAll(texts(8));
+
+        assertThat(results).allMatch(EmbeddingResult::isSuccess);
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void failsWholeBatchOnAuthenticationError() {
+        scheduler = scheduler(texts -> {
+            throw new NonTransientAiException("401 - invalid api key");
+        });
+
+        List<EmbeddingResult> results = scheduler.embedAll(texts(8));
+
+        assertThat(results).noneMatch(EmbeddingResult::isSuccess);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void failsBatchOnDuplicatedIndex() {
+        scheduler = scheduler(texts -> List.of(
+                new Embedding(new float[]{1f}, 0),
+                new Embedding(new float[]{2f}, 0),
+                new Embedding(new float[]{3f}, 2)));
+
+        List<EmbeddingResult> results = scheduler.embedAll(texts(3));
+
+        assertThat(results).noneMatch(EmbeddingResult::isSuccess);
+        assertThat(results.get(0).getErrorMessage()).contains("index");
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void failsBatchOnOutOfRangeIndex() {
+        scheduler = scheduler(texts -> List.of(
+                new Embedding(new float[]{1f}, 0),
+                new Embedding(new float[]{2f}, 5)));
+
+        assertThat(scheduler.embedAll(texts(2))).noneMatch(EmbeddingResult::isSuccess);
+        assertThat(scheduler.submit("single")).isCompletedExceptionally();
+    }
+
+    @Test
+    void mapsResultsByProviderIndex() {
+        scheduler = scheduler(texts -> {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = texts.size() - 1; i >= 0; i--) {
+                embeddings.add(new Embedding(new float[]{i}, i));
+            }
+            return embeddings;
+        });
+
+        List<EmbeddingResult> results = scheduler.embedAll(texts(4));
+
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).getVector().toArray()).containsExactly((float) i);
+        }
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    private EmbeddingBatchScheduler scheduler(Function<List<String>, List<Embedding>> model) {
+        EmbeddingBatchScheduler batchScheduler = new EmbeddingBatchScheduler();
+        ReflectionTestUtils.setField(batchScheduler, "embeddingModel", new ScriptedEmbeddingModel(model));
+        ReflectionTestUtils.setField(batchScheduler, "embeddingExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(batchScheduler, "maxInputsPerBatch", 2048);
+        ReflectionTestUtils.setField(batchScheduler, "maxTokensPerBatch", 300000);
+        ReflectionTestUtils.setField(batchScheduler, "maxTokensPerInput", 8191);
+        ReflectionTestUtils.setField(batchScheduler, "coalesceWindowMs", 0L);
+        ReflectionTestUtils.setField(batchScheduler, "coalesceMaxSize", 64);
+        ReflectionTestUtils.setField(batchScheduler, "maxRetries", 2);
+        ReflectionTestUtils.setField(batchScheduler, "retryBackoffMs", 1L);
+        ReflectionTestUtils.setField(batchScheduler, "timeoutMs", 5000L);
+        batchScheduler.init();
+        return batchScheduler;
+    }
+
+    private static List<String> texts(int count) {
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            texts.add("text-" + i);
+        }
+        return texts;
+    }
+
+    private static List<Embedding> ordered(int count) {
+        List<Embedding> embeddings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            embeddings.add(new Embedding(new float[]{i}, i));
+        }
+        return embeddings;
+    }
+
+    private final class ScriptedEmbeddingModel implements EmbeddingModel {
+
+        private final Function<List<String>, List<Embedding>> script;
+
+        private ScriptedEmbeddingModel(Function<List<String>, List<Embedding>> script) {
+            this.script = script;
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            calls.incrementAndGet();
+            return new EmbeddingResponse(script.apply(request.getInstructions()));
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int dimensions() {
+            return 1;
+        }
+    }
+}
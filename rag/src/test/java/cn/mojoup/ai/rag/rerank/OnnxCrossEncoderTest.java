@@ -0,0 +1,161 @@
+package cn.mojoup.ai.rag.rerank;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 本地ONNX Cross-Encoder测试
+ * 测试资源中的模型不含权重，logit为注意力掩码内词元ID的均值乘以0.05：
+ * 分数只取决于句对本身，被补齐的位置若未被掩码排除，分数会随批内最长序列变化
+ *
+ * @author matt
+ */
+class OnnxCrossEncoderTest {
+
+    private static final String QUERY = "how does search";
+
+    private static final List<String> PASSAGES = List.of(
+            "hello world hello world hello world hello world",
+            "cafe",
+            "检索重排序",
+            "hello",
+            "the query, the passage.",
+            "reranking cafe cafe");
+
+    private final WordPieceTokenizer tokenizer = WordPieceTokenizer.fromVocabFile(WordPieceTokenizerTest.vocabFile(), true);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    private OnnxCrossEncoder crossEncoder;
+
+    @AfterEach
+    void tearDown() {
+        if (crossEncoder != null) {
+            crossEncoder.close();
+        }
+        executor.shutdownNow();
+    }
+
+    @Test
+    void scoresFollowInputOrder() {
+        crossEncoder = crossEncoder(2, 512);
+
+        float[] scores = crossEncoder.score(QUERY, PASSAGES);
+
+        assertThat(scores).hasSize(PASSAGES.size());
+        for (int i = 0; i < PASSAGES.size(); i++) {
+            assertThat(scores[i]).as("passage %d", i).isCloseTo(expectedScore(QUERY, PASSAGES.get(i), 512), within(1e-5f));
+        }
+        // 高ID词元多的文本分数更高，结果顺序与输入一致而不是按长度排序后的顺序
+        assertThat(scores[1]).isGreaterThan(scores[3]);
+        assertThat(scores[5]).isGreaterThan(scores[0]);
+    }
+
+    @Test
+    void paddingDoesNotChangeScores() {
+        crossEncoder = crossEncoder(PASSAGES.size(), 512);
+        float[] batched = crossEncoder.score(QUERY, PASSAGES);
+
+        for (int i = 0; i < PASSAGES.size(); i++) {
+            float alone = crossEncoder.score(QUERY, List.of(PASSAGES.get(i)))[0];
+            assertThat(batched[i]).as("passage %d", i).isCloseTo(alone, within(1e-6f));
+        }
+    }
+
+    @Test
+    void batchSizeDoesNotChangeScores() {
+        crossEncoder = crossEncoder(1, 512);
+        float[] single = crossEncoder.score(QUERY, PASSAGES);
+        crossEncoder.close();
+
+        crossEncoder = crossEncoder(4, 512);
+        float[] batched = crossEncoder.score(QUERY, PASSAGES);
+
+        for (int i = 0; i < PASSAGES.size(); i++) {
+            assertThat(batched[i]).as("passage %d", i).isCloseTo(single[i], within(1e-6f));
+        }
+    }
+
+    @Test
+    void truncatesPairsToMaxLength() {
+        crossEncoder = crossEncoder(2, 8);
+
+        float[] scores = crossEncoder.score(QUERY, PASSAGES);
+
+        for (int i = 0; i < PASSAGES.size(); i++) {
+            assertThat(scores[i]).as("passage %d", i).isCloseTo(expectedScore(QUERY, PASSAGES.get(i), 8), within(1e-5f));
+        }
+    }
+
+    @Test
+    void returnsEmptyScoresForNoPassages() {
+        crossEncoder = crossEncoder(2, 512);
+
+        assertThat(crossEncoder.score(QUERY, List.of())).isEmpty();
+    }
+
+    @Test
+    void failsWhenBatchesExceedTimeout() throws InterruptedException {
+        crossEncoder = crossEncoder(2, 512);
+        // 占满线程池，批次只能排队直至超时
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        try {
+            assertThatThrownBy(() -> crossEncoder.score(QUERY, PASSAGES, 50))
+                    .isInstanceOf(CompletionException.class)
+                    .hasCauseInstanceOf(TimeoutException.class);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    private OnnxCrossEncoder crossEncoder(int batchSize, int maxLength) {
+        OnnxCrossEncoder encoder = new OnnxCrossEncoder();
+        ReflectionTestUtils.setField(encoder, "crossEncoderExecutor", executor);
+        ReflectionTestUtils.setField(encoder, "modelPath",
+                                     WordPieceTokenizerTest.resource("/cross-encoder/model.onnx").toString());
+        ReflectionTestUtils.setField(encoder, "vocabPath", WordPieceTokenizerTest.vocabFile().toString());
+        ReflectionTestUtils.setField(encoder, "lowerCase", true);
+        ReflectionTestUtils.setField(encoder, "maxLength", maxLength);
+        ReflectionTestUtils.setField(encoder, "batchSize", batchSize);
+        ReflectionTestUtils.setField(encoder, "intraOpThreads", 1);
+        encoder.init();
+        return encoder;
+    }
+
+    /**
+     * 按测试模型的计算方式得到的期望分数
+     */
+    private float expectedScore(String query, String passage, int maxLength) {
+        long[] ids = tokenizer.encodePair(query, passage, maxLength).inputIds();
+        double sum = 0;
+        for (long id : ids) {
+            sum += id;
+        }
+        double logit = sum / ids.length * 0.05;
+        return (float) (1 / (1 + Math.exp(-logit)));
+    }
+}
@@ -0,0 +1,127 @@
+package cn.mojoup.ai.rag.rerank;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * WordPiece分词器测试
+ * 使用测试资源中的小词表，词元ID即vocab.txt中的行号
+ *
+ * @author matt
+ */
+class WordPieceTokenizerTest {
+
+    private static final int PAD = 0;
+
+    private static final int UNK = 1;
+
+    private static final int CLS = 2;
+
+    private static final int SEP = 3;
+
+    private final WordPieceTokenizer tokenizer = WordPieceTokenizer.fromVocabFile(vocabFile(), true);
+
+    @Test
+    void splitsOnWhitespaceAndPunctuation() {
+        // hello , world ##s !
+        assertThat(tokenizer.tokenize("Hello, Worlds!")).containsExactly(4, 18, 5, 9, 20);
+    }
+
+    @Test
+    void splitsWordsIntoLongestMatchingPieces() {
+        // re ##rank ##ing
+        assertThat(tokenizer.tokenize("reranking")).containsExactly(6, 7, 8);
+    }
+
+    @Test
+    void splitsCjkCharactersIndividually() {
+        assertThat(tokenizer.tokenize("检索重排序")).containsExactly(13, 14, 15, 16, 17);
+        assertThat(tokenizer.tokenize("hello检索")).containsExactly(4, 13, 14);
+    }
+
+    @Test
+    void lowerCasesAndStripsAccents() {
+        assertThat(tokenizer.tokenize("CAFÉ")).containsExactly(26);
+    }
+
+    @Test
+    void keepsCaseWhenNotLowerCasing() {
+        WordPieceTokenizer cased = WordPieceTokenizer.fromVocabFile(vocabFile(), false);
+
+        assertThat(cased.tokenize("Hello hello")).containsExactly(UNK, 4);
+    }
+
+    @Test
+    void mapsUnknownWordsToSingleUnknownToken() {
+        // 前缀re能匹配，但剩余部分无法切分时整个词记为[UNK]
+        assertThat(tokenizer.tokenize("xyz rexyz hello")).containsExactly(UNK, UNK, 4);
+    }
+
+    @Test
+    void ignoresControlCharacters() {
+        assertThat(tokenizer.tokenize("hel\u0000lo\u200B world")).containsExactly(4, 5);
+    }
+
+    @Test
+    void encodesPairWithSpecialTokensAndSegments() {
+        WordPieceTokenizer.Encoding encoding = tokenizer.encodePair("how does", "hello world", 512);
+
+        assertThat(encoding.inputIds()).containsExactly(CLS, 10, 11, SEP, 4, 5, SEP);
+        assertThat(encoding.tokenTypeIds()).containsExactly(0, 0, 0, 0, 1, 1, 1);
+        assertThat(encoding.length()).isEqualTo(7);
+    }
+
+    @Test
+    void truncatesLongerSegmentFirst() {
+        WordPieceTokenizer.Encoding encoding = tokenizer.encodePair(
+                "query", "hello world hello world hello world", 8);
+
+        // 预算5个词元：查询只有1个，文本截断为4个
+        assertThat(encoding.inputIds()).containsExactly(CLS, 24, SEP, 4, 5, 4, 5, SEP);
+        assertThat(encoding.length()).isEqualTo(8);
+    }
+
+    @Test
+    void truncatesBothSegmentsWhenEquallyLong() {
+        WordPieceTokenizer.Encoding encoding = tokenizer.encodePair(
+                "hello world hello world", "search search search search", 7);
+
+        assertThat(encoding.inputIds()).containsExactly(CLS, 4, 5, SEP, 12, 12, SEP);
+    }
+
+    @Test
+    void exposesPaddingId() {
+        assertThat(tokenizer.padId()).isEqualTo(PAD);
+    }
+
+    @Test
+    void rejectsVocabularyWithoutSpecialTokens() {
+        assertThatThrownBy(() -> new WordPieceTokenizer(Map.of("[UNK]", 0, "[CLS]", 1, "[SEP]", 2), true))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("[PAD]");
+    }
+
+    @Test
+    void encodesEmptyTextAsSpecialTokensOnly() {
+        assertThat(tokenizer.tokenize("")).isEqualTo(List.of());
+        assertThat(tokenizer.encodePair("", null, 512).inputIds()).containsExactly(CLS, SEP, SEP);
+    }
+
+    static Path vocabFile() {
+        return resource("/cross-encoder/vocab.txt");
+    }
+
+    static Path resource(String name) {
+        try {
+            return Path.of(WordPieceTokenizerTest.class.getResource(name).toURI());
+        } catch (Exception e) {
+            throw new IllegalStateException("Missing test resource: " + name, e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cn.mojoup.ai.rag.store;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按文本返回预先给定向量的嵌入模型，用于在不调用远程模型的情况下向向量存储写入已知向量
+ *
+ * @author matt
+ */
+public class FixedEmbeddingModel implements EmbeddingModel {
+
+    private final Map<String, float[]> vectors;
+
+    private final int dimensions;
+
+    public FixedEmbeddingModel(Map<String, float[]> vectors, int dimensions) {
+        this.vectors = vectors;
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<Embedding> embeddings = new ArrayList<>(request.getInstructions().size());
+        for (int i = 0; i < request.getInstructions().size(); i++) {
+            embeddings.add(new Embedding(vector(request.getInstructions().get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return vector(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private float[] vector(String text) {
+        float[] vector = vectors.get(text);
+        if (vector == null) {
+            throw new IllegalArgumentException("No fixed embedding for text: " + text);
+        }
+        return vector.clone();
+    }
+}
@@ -0,0 +1,144 @@
+package cn.mojoup.ai.rag.store;
+
+import cn.mojoup.ai.rag.vector.EmbeddingVector;
+import cn.mojoup.ai.rag.vector.SyntheticVectors;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 进程内HNSW向量存储的召回率测试
+ * 在合成语料上对比全精度、int8量化+重打分、int8量化不重打分三种检索相对暴力检索的召回率
+ *
+ * @author matt
+ */
+class HnswVectorStoreRecallTest {
+
+    private static final int CORPUS_SIZE = 2000;
+
+    private static final int DIMENSIONS = 64;
+
+    private static final int TOP_K = 10;
+
+    private static final String KNOWLEDGE_BASE_ID = "kb-recall";
+
+    private static final List<float[]> CORPUS = SyntheticVectors.clustered(CORPUS_SIZE, DIMENSIONS, 32, 0.6, 42);
+
+    private static final List<float[]> QUERIES = SyntheticVectors.queries(CORPUS, 100, 0.3, 7);
+
+    private static final List<Set<Integer>> EXPECTED = SyntheticVectors.exactTopK(CORPUS, QUERIES, TOP_K);
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void fullPrecisionRecall() throws Exception {
+        try (HnswVectorStore vectorStore = load(builder())) {
+            assertThat(vectorStore.isQuantized()).isFalse();
+            assertThat(recall(vectorStore)).isGreaterThanOrEqualTo(0.95);
+        }
+    }
+
+    @Test
+    void quantizedRecallWithRescoring() throws Exception {
+        try (HnswVectorStore vectorStore = load(quantized(4))) {
+            assertThat(vectorStore.isQuantized()).isTrue();
+            assertThat(recall(vectorStore)).isGreaterThanOrEqualTo(0.95);
+        }
+    }
+
+    @Test
+    void rescoringRecoversQuantizationLoss() throws Exception {
+        double withoutRescoring;
+        try (HnswVectorStore vectorStore = load(quantized(1))) {
+            withoutRescoring = recall(vectorStore);
+        }
+        double withRescoring;
+        try (HnswVectorStore vectorStore = load(quantized(4).dataDir(dataDir.resolve("rescored")))) {
+            withRescoring = recall(vectorStore);
+        }
+
+        assertThat(withoutRescoring).isGreaterThanOrEqualTo(0.8);
+        assertThat(withRescoring).isGreaterThanOrEqualTo(withoutRescoring);
+    }
+
+    @Test
+    void recallSurvivesRestart() throws Exception {
+        double before;
+        try (HnswVectorStore vectorStore = load(quantized(4))) {
+            before = recall(vectorStore);
+        }
+
+        try (HnswVectorStore reopened = quantized(4).build()) {
+            reopened.initialize();
+            assertThat(reopened.isQuantized()).isTrue();
+            assertThat(reopened.count(KNOWLEDGE_BASE_ID)).isEqualTo(CORPUS_SIZE);
+            assertThat(recall(reopened)).isEqualTo(before);
+        }
+    }
+
+    private HnswVectorStore.Builder builder() {
+        return HnswVectorStore.builder(embeddingModel(), new ObjectMapper())
+                              .dataDir(dataDir)
+                              .fsync(false);
+    }
+
+    private HnswVectorStore.Builder quantized(int rescoreFactor) {
+        return builder().quantizationEnabled(true)
+                        .calibrationSize(CORPUS_SIZE / 2)
+                        .rescoreFactor(rescoreFactor);
+    }
+
+    private static HnswVectorStore load(HnswVectorStore.Builder builder) {
+        HnswVectorStore vectorStore = builder.build();
+        vectorStore.initialize();
+        vectorStore.add(documents());
+        return vectorStore;
+    }
+
+    private static double recall(HnswVectorStore vectorStore) {
+        List<List<Integer>> actual = new ArrayList<>(QUERIES.size());
+        for (float[] query : QUERIES) {
+            List<Integer> nodes = new ArrayList<>(TOP_K);
+            for (Document document : vectorStore.search(EmbeddingVector.of(query), KNOWLEDGE_BASE_ID, TOP_K, 0.0)) {
+                nodes.add(Integer.valueOf(document.getId()));
+            }
+            actual.add(nodes);
+        }
+        return SyntheticVectors.recall(EXPECTED, actual);
+    }
+
+    private static List<Document> documents() {
+        List<Document> documents = new ArrayList<>(CORPUS_SIZE);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            documents.add(Document.builder()
+                                  .id(String.valueOf(i))
+                                  .text(text(i))
+                                  .metadata(Map.of("knowledge_base_id", KNOWLEDGE_BASE_ID))
+                                  .build());
+        }
+        return documents;
+    }
+
+    private static FixedEmbeddingModel embeddingModel() {
+        Map<String, float[]> vectors = new HashMap<>(CORPUS_SIZE * 2);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            vectors.put(text(i), CORPUS.get(i));
+        }
+        return new FixedEmbeddingModel(vectors, DIMENSIONS);
+    }
+
+    private static String text(int i) {
+        return "chunk " + i;
+    }
+}
@@ -0,0 +1,103 @@
+package cn.mojoup.ai.rag.vector;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 测试和基准测试用的合成向量
+ * 向量围绕若干随机簇心生成，比均匀随机向量更接近真实嵌入的分布，近邻检索的难度也更接近真实场景
+ *
+ * @author matt
+ */
+public final class SyntheticVectors {
+
+    private SyntheticVectors() {
+    }
+
+    /**
+     * 生成count个已归一化的聚簇向量
+     *
+     * @param clusters 簇数
+     * @param spread   簇内噪声相对簇心的幅度
+     */
+    public static List<float[]> clustered(int count, int dimensions, int clusters, double spread, long seed) {
+        Random random = new Random(seed);
+        List<float[]> centroids = gaussian(clusters, dimensions, random);
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            vectors.add(perturb(centroids.get(random.nextInt(clusters)), spread, random));
+        }
+        return vectors;
+    }
+
+    /**
+     * 以语料中随机抽取的向量加噪声作为查询，查询与语料同分布但不与任何文档完全重合
+     */
+    public static List<float[]> queries(List<float[]> corpus, int count, double spread, long seed) {
+        Random random = new Random(seed);
+        List<float[]> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            queries.add(perturb(corpus.get(random.nextInt(corpus.size())), spread, random));
+        }
+        return queries;
+    }
+
+    /**
+     * 暴力检索的精确topK节点编号，作为召回率的基准
+     */
+    public static List<Set<Integer>> exactTopK(List<float[]> corpus, List<float[]> queries, int topK) {
+        FlatVectorIndex flat = FlatVectorIndex.build(corpus, corpus.get(0).length);
+        List<Set<Integer>> results = new ArrayList<>(queries.size());
+        for (float[] query : queries) {
+            Set<Integer> nodes = new HashSet<>();
+            for (HnswIndex.ScoredNode scored : flat.search(query, topK, -1.0)) {
+                nodes.add(scored.node());
+            }
+            results.add(nodes);
+        }
+        return results;
+    }
+
+    /**
+     * 平均召回率：各查询命中的精确topK占比
+     */
+    public static double recall(List<Set<Integer>> expected, List<? extends Iterable<Integer>> actual) {
+        long hits = 0;
+        long total = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            for (Integer node : actual.get(i)) {
+                if (expected.get(i).contains(node)) {
+                    hits++;
+                }
+            }
+            total += expected.get(i).size();
+        }
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    private static List<float[]> gaussian(int count, int dimensions, Random random) {
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            EmbeddingVector.normalizeInPlace(vector);
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+
+    private static float[] perturb(float[] base, double spread, Random random) {
+        double scale = spread / Math.sqrt(base.length);
+        float[] vector = new float[base.length];
+        for (int d = 0; d < base.length; d++) {
+            vector[d] = (float) (base[d] + random.nextGaussian() * scale);
+        }
+        EmbeddingVector.normalizeInPlace(vector);
+        return vector;
+    }
+}